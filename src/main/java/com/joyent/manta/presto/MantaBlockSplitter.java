@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import com.joyent.manta.client.MantaObject;
+import com.joyent.manta.http.MantaHttpHeaders;
+import com.joyent.manta.presto.compression.Bzip2BlockInputStream;
+import com.joyent.manta.presto.compression.MantaCompressionType;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tukaani.xz.SeekableInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Connector-wide settings used to split large bzip2 and XZ objects into
+ * several splits along the boundaries of their compressed blocks.
+ *
+ * <p>Bzip2 objects are cut into ranges of compressed bytes without reading
+ * them, and each split reads the blocks that start within its range by
+ * finding their magic numbers. XZ objects are only split when they were
+ * compressed into several blocks, which the <code>xz</code> tool only does
+ * in multi-threaded mode. The block index at the end of the object is read
+ * with a few small range requests, and blocks are grouped into ranges that
+ * each split decompresses by seeking to its first block.</p>
+ *
+ * @since 1.0.0
+ */
+public class MantaBlockSplitter {
+    private static final Logger LOG = LoggerFactory.getLogger(MantaBlockSplitter.class);
+
+    /**
+     * Default size in bytes of the smallest object split along block boundaries.
+     */
+    public static final long DEFAULT_MIN_OBJECT_SIZE = 67_108_864L;
+
+    /**
+     * Default number of compressed bytes read by each split of an object.
+     */
+    public static final long DEFAULT_SPLIT_SIZE = 67_108_864L;
+
+    private final boolean enabled;
+    private final long minObjectSize;
+    private final long splitSize;
+    private final MantaClientPool clientPool;
+    private final MantaRetryPolicy retryPolicy;
+    private final MantaConcurrencyLimiter limiter;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param enabled true to split large bzip2 and XZ objects
+     * @param minObjectSize size in bytes of the smallest object that is split
+     * @param splitSize number of compressed bytes read by each split of an object
+     * @param clientPool clients used to read the block index of XZ objects
+     * @param retryPolicy policy used to retry transient failures when reading block indexes
+     * @param limiter limit on the number of concurrent requests sent to Manta
+     */
+    @Inject
+    public MantaBlockSplitter(@Named("BlockSplitEnabled") final boolean enabled,
+                              @Named("BlockSplitMinObjectSize") final long minObjectSize,
+                              @Named("BlockSplitSize") final long splitSize,
+                              final MantaClientPool clientPool,
+                              final MantaRetryPolicy retryPolicy,
+                              final MantaConcurrencyLimiter limiter) {
+        if (splitSize < 1L) {
+            throw new IllegalArgumentException("Block split size must be greater than zero");
+        }
+
+        this.enabled = enabled;
+        this.minObjectSize = minObjectSize;
+        this.splitSize = splitSize;
+        this.clientPool = requireNonNull(clientPool, "Manta client pool is null");
+        this.retryPolicy = requireNonNull(retryPolicy, "Retry policy is null");
+        this.limiter = requireNonNull(limiter, "Limiter is null");
+    }
+
+    /**
+     * Determines if an object is compressed in independent blocks that can
+     * be read by several splits.
+     *
+     * @param objectPath path to the object
+     * @return true if the object is a bzip2 or XZ object
+     */
+    public static boolean isBlockCompressed(final String objectPath) {
+        final MantaCompressionType type = MantaCompressionType.valueOfExtension(
+                Files.getFileExtension(objectPath));
+
+        return type == MantaCompressionType.BZIP2 || type == MantaCompressionType.XZ;
+    }
+
+    /**
+     * Determines if an object should be split along block boundaries.
+     *
+     * @param object object as listed
+     * @return true if the object is a bzip2 or XZ object at least as large as the minimum size
+     */
+    public boolean isCandidate(final MantaObject object) {
+        return enabled
+                && isBlockCompressed(object.getPath())
+                && object.getContentLength() != null
+                && object.getContentLength() >= minObjectSize;
+    }
+
+    /**
+     * Divides an object into ranges of blocks using the configured split
+     * size. XZ objects whose block index can't be read aren't split.
+     *
+     * @param object object as listed
+     * @return ranges covering the whole object or an empty list if the object can't be split
+     */
+    public List<MantaSplitRange> ranges(final MantaObject object) {
+        final String objectPath = object.getPath();
+        final long size = object.getContentLength();
+        final List<MantaSplitRange> ranges;
+
+        if (MantaCompressionType.valueOfExtension(Files.getFileExtension(objectPath))
+                == MantaCompressionType.BZIP2) {
+            ranges = bzip2Ranges(size, splitSize, object.getEtag());
+        } else {
+            final MantaRangedInputStream.RangeOpener opener = (start, endInclusive) -> {
+                final MantaHttpHeaders headers = new MantaHttpHeaders();
+                headers.setByteRange(start, endInclusive);
+
+                if (object.getEtag() != null) {
+                    headers.setIfMatch(object.getEtag());
+                }
+
+                return retryPolicy.execute(MantaRetryPolicy.Operation.OPEN, objectPath,
+                        () -> request(client -> client.getAsInputStream(objectPath, headers)));
+            };
+
+            try (SeekableXZInputStream xz = new SeekableXZInputStream(
+                    new MantaSeekableInputStream(size, opener))) {
+                ranges = xzRanges(xz, splitSize, object.getEtag());
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Unable to read block index of XZ object [objectPath={}]", objectPath, e);
+                return ImmutableList.of();
+            }
+        }
+
+        if (ranges.size() < 2) {
+            return ImmutableList.of();
+        }
+
+        LOG.debug("Splitting object along block boundaries [objectPath={},ranges={}]",
+                objectPath, ranges.size());
+
+        return ranges;
+    }
+
+    /**
+     * Cuts a bzip2 object into ranges of compressed bytes of the split size,
+     * except for the last range.
+     *
+     * @param size size of the object in bytes
+     * @param splitSize number of compressed bytes in each range
+     * @param etag etag of the object when it was listed or null if unknown
+     * @return ranges covering the whole object
+     */
+    static List<MantaSplitRange> bzip2Ranges(final long size, final long splitSize, final String etag) {
+        final ImmutableList.Builder<MantaSplitRange> ranges = ImmutableList.builder();
+
+        for (long start = 0L; start < size; start += splitSize) {
+            ranges.add(MantaSplitRange.ofCompressed(start, Math.min(size, start + splitSize), etag));
+        }
+
+        return ranges.build();
+    }
+
+    /**
+     * Groups the blocks of an XZ object into ranges that each hold at least
+     * the split size of compressed bytes, except for the last range.
+     *
+     * @param xz decoder that has read the object's block index
+     * @param splitSize number of compressed bytes in each range
+     * @param etag etag of the object when it was listed or null if unknown
+     * @return ranges covering the whole object
+     */
+    static List<MantaSplitRange> xzRanges(final SeekableXZInputStream xz, final long splitSize,
+                                          final String etag) {
+        final ImmutableList.Builder<MantaSplitRange> ranges = ImmutableList.builder();
+        final int blockCount = xz.getBlockCount();
+        int first = 0;
+
+        for (int i = 0; i < blockCount; i++) {
+            final long compressedEnd = xz.getBlockCompPos(i) + xz.getBlockCompSize(i);
+
+            if (compressedEnd - xz.getBlockCompPos(first) >= splitSize || i == blockCount - 1) {
+                ranges.add(MantaSplitRange.ofBlocks(xz.getBlockPos(first),
+                        xz.getBlockPos(i) + xz.getBlockSize(i), xz.getBlockCompPos(first),
+                        compressedEnd, etag));
+                first = i + 1;
+            }
+        }
+
+        return ranges.build();
+    }
+
+    /**
+     * Opens a stream to the lines of an object that belong to a range of
+     * its blocks.
+     *
+     * @param objectPath path to the object
+     * @param objectSize size of the object in bytes
+     * @param range range of the object's blocks
+     * @param opener opens range requests of the object
+     * @param bufferPool pool that buffers are borrowed from
+     * @return stream of the lines that belong to the range
+     * @throws IOException thrown when the object can't be opened
+     */
+    public static InputStream openRange(final String objectPath,
+                                        final long objectSize,
+                                        final MantaSplitRange range,
+                                        final MantaRangedInputStream.RangeOpener opener,
+                                        final MantaBufferPool bufferPool) throws IOException {
+        if (MantaCompressionType.valueOfExtension(Files.getFileExtension(objectPath))
+                == MantaCompressionType.BZIP2) {
+            return bzip2Lines(opener.open(range.getCompressedOffset(), objectSize - 1),
+                    range, bufferPool);
+        }
+
+        return xzLines(new MantaSeekableInputStream(objectSize, opener), range, bufferPool);
+    }
+
+    /**
+     * Decompresses the lines of a bzip2 object that belong to a range,
+     * continuing into the blocks after the range to read the end of the
+     * range's last line.
+     *
+     * @param compressed stream positioned at the range's compressed offset and continuing to the end of the object
+     * @param range range of compressed bytes
+     * @param bufferPool pool that buffers are borrowed from
+     * @return stream of the lines that belong to the range
+     * @throws IOException thrown when the stream can't be read
+     */
+    static InputStream bzip2Lines(final InputStream compressed,
+                                  final MantaSplitRange range,
+                                  final MantaBufferPool bufferPool) throws IOException {
+        final Bzip2BlockInputStream blocks = new Bzip2BlockInputStream(compressed,
+                range.getCompressedOffset(), range.getCompressedEnd(), bufferPool);
+        final InputStream decompressed;
+
+        try {
+            decompressed = new BZip2CompressorInputStream(blocks, false);
+        } catch (IOException | RuntimeException e) {
+            blocks.close();
+            throw e;
+        }
+
+        return new MantaLineRangeInputStream(decompressed,
+                () -> new BZip2CompressorInputStream(blocks.following(), false),
+                range.isStartOfObject(), bufferPool);
+    }
+
+    /**
+     * Decompresses the lines of an XZ object that belong to a range,
+     * starting at the range's first block.
+     *
+     * @param compressed seekable stream of the whole object
+     * @param range range of blocks
+     * @param bufferPool pool that buffers are borrowed from
+     * @return stream of the lines that belong to the range
+     * @throws IOException thrown when the stream can't be read
+     */
+    static InputStream xzLines(final SeekableInputStream compressed,
+                               final MantaSplitRange range,
+                               final MantaBufferPool bufferPool) throws IOException {
+        final SeekableXZInputStream xz;
+
+        try {
+            xz = new SeekableXZInputStream(compressed);
+            xz.seek(range.getStart());
+        } catch (IOException | RuntimeException e) {
+            compressed.close();
+            throw e;
+        }
+
+        return new MantaLineRangeInputStream(xz, range.isStartOfObject(),
+                range.getEnd() - range.getStart(), bufferPool);
+    }
+
+    private <T> T request(final MantaClientPool.ClientCall<T> call) throws IOException {
+        return limiter.execute(() -> clientPool.execute(call));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMinObjectSize() {
+        return minObjectSize;
+    }
+
+    public long getSplitSize() {
+        return splitSize;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("minObjectSize", minObjectSize)
+                .append("splitSize", splitSize)
+                .toString();
+    }
+}
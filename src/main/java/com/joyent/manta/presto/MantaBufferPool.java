@@ -0,0 +1,548 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.weakref.jmx.MBeanExporter;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Inflater;
+
+/**
+ * Connector-wide pool of the heap arrays and direct buffers used to read and
+ * decompress data files. Buffers are grouped in power of two size classes
+ * from {@value #MIN_BUFFER_SIZE} bytes to {@value #MAX_BUFFER_SIZE} bytes,
+ * so a borrowed buffer may be larger than requested. The bytes retained by
+ * the pool are bounded separately for heap and direct buffers; buffers
+ * returned while the pool is full are left to the garbage collector.
+ *
+ * <p>The pool also retains a bounded number of raw deflate
+ * {@link Inflater} instances, whose native state would otherwise be
+ * allocated and freed for every gzip stream. Inflaters returned while the
+ * pool is full are ended immediately rather than left to finalization.</p>
+ *
+ * <p>When created by the connector's injector, the occupancy of the pool is
+ * exported as a JMX MBean named after the connector.</p>
+ *
+ * @since 1.0.0
+ */
+public class MantaBufferPool {
+    /**
+     * Smallest size class in bytes.
+     */
+    public static final int MIN_BUFFER_SIZE = 4_096;
+
+    /**
+     * Largest size class in bytes. Larger buffers are never pooled.
+     */
+    public static final int MAX_BUFFER_SIZE = 8_388_608;
+
+    /**
+     * Default upper bound of the bytes retained in heap arrays.
+     */
+    public static final long DEFAULT_MAX_HEAP_BYTES = 67_108_864L;
+
+    /**
+     * Default upper bound of the bytes retained in direct buffers.
+     */
+    public static final long DEFAULT_MAX_DIRECT_BYTES = 16_777_216L;
+
+    /**
+     * Default upper bound of the inflaters retained.
+     */
+    public static final int DEFAULT_MAX_INFLATERS = 64;
+
+    private static final int MIN_SIZE_SHIFT = Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE) - MIN_SIZE_SHIFT + 1;
+
+    private static final MantaBufferPool DISABLED = new MantaBufferPool(0L, 0L, 0);
+
+    private final String objectName;
+    private final SizeClasses<byte[]> heap;
+    private final SizeClasses<ByteBuffer> direct;
+    private final int maxInflaters;
+    private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger retainedInflaters = new AtomicInteger();
+    private final LongAdder inflaterHits = new LongAdder();
+    private final LongAdder inflaterMisses = new LongAdder();
+
+    private MBeanExporter exporter;
+
+    /**
+     * Creates a new instance that isn't associated with a connector.
+     *
+     * @param maxHeapBytes upper bound of the bytes retained in heap arrays
+     * @param maxDirectBytes upper bound of the bytes retained in direct buffers
+     */
+    public MantaBufferPool(final long maxHeapBytes, final long maxDirectBytes) {
+        this(maxHeapBytes, maxDirectBytes, DEFAULT_MAX_INFLATERS);
+    }
+
+    /**
+     * Creates a new instance that isn't associated with a connector.
+     *
+     * @param maxHeapBytes upper bound of the bytes retained in heap arrays
+     * @param maxDirectBytes upper bound of the bytes retained in direct buffers
+     * @param maxInflaters upper bound of the inflaters retained
+     */
+    public MantaBufferPool(final long maxHeapBytes, final long maxDirectBytes,
+                           final int maxInflaters) {
+        this(maxHeapBytes, maxDirectBytes, maxInflaters, (String) null);
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param maxHeapBytes upper bound of the bytes retained in heap arrays
+     * @param maxDirectBytes upper bound of the bytes retained in direct buffers
+     * @param maxInflaters upper bound of the inflaters retained
+     * @param connectorId connector id used to name the exported MBean
+     */
+    @Inject
+    public MantaBufferPool(@Named("BufferPoolMaxHeapBytes") final long maxHeapBytes,
+                           @Named("BufferPoolMaxDirectBytes") final long maxDirectBytes,
+                           @Named("BufferPoolMaxInflaters") final int maxInflaters,
+                           final MantaConnectorId connectorId) {
+        this(maxHeapBytes, maxDirectBytes, maxInflaters,
+                MantaMBeans.objectName(MantaBufferPool.class, connectorId));
+    }
+
+    private MantaBufferPool(final long maxHeapBytes, final long maxDirectBytes,
+                            final int maxInflaters, final String objectName) {
+        if (maxHeapBytes < 0L || maxDirectBytes < 0L || maxInflaters < 0) {
+            String msg = String.format("Invalid buffer pool bounds [maxHeapBytes=%d,maxDirectBytes=%d,"
+                    + "maxInflaters=%d]", maxHeapBytes, maxDirectBytes, maxInflaters);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.objectName = objectName;
+        this.heap = new SizeClasses<>(maxHeapBytes);
+        this.direct = new SizeClasses<>(maxDirectBytes);
+        this.maxInflaters = maxInflaters;
+    }
+
+    /**
+     * @return an instance that never retains buffers
+     */
+    public static MantaBufferPool disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Exports this instance to the platform MBean server.
+     */
+    @PostConstruct
+    public synchronized void export() {
+        if (objectName != null && exporter == null) {
+            exporter = MantaMBeans.export(objectName, this);
+        }
+    }
+
+    /**
+     * Removes this instance from the platform MBean server and releases all
+     * retained buffers and inflaters.
+     */
+    @PreDestroy
+    public synchronized void unexport() {
+        MantaMBeans.unexport(exporter, objectName);
+        exporter = null;
+        heap.clear();
+        direct.clear();
+
+        for (Inflater inflater = inflaters.poll(); inflater != null; inflater = inflaters.poll()) {
+            retainedInflaters.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    /**
+     * Borrows a heap array that must be passed to {@link #returnArray(byte[])}
+     * once it is no longer used.
+     *
+     * @param minSize minimum size of the array in bytes
+     * @return array of at least the requested size
+     */
+    public byte[] borrowArray(final int minSize) {
+        final int index = sizeClass(minSize);
+
+        if (index < 0) {
+            heap.misses.increment();
+            return new byte[minSize];
+        }
+
+        final byte[] pooled = heap.poll(index);
+
+        if (pooled != null) {
+            return pooled;
+        }
+
+        return new byte[classSize(index)];
+    }
+
+    /**
+     * Returns a heap array to the pool. Arrays that weren't borrowed from
+     * a pool are accepted if their size matches a size class.
+     *
+     * @param array array to return, may be null
+     */
+    public void returnArray(final byte[] array) {
+        if (array != null) {
+            heap.offer(array, array.length);
+        }
+    }
+
+    /**
+     * Borrows a cleared direct buffer that must be passed to
+     * {@link #returnDirect(ByteBuffer)} once it is no longer used.
+     *
+     * @param minSize minimum capacity of the buffer in bytes
+     * @return direct buffer of at least the requested capacity
+     */
+    public ByteBuffer borrowDirect(final int minSize) {
+        final int index = sizeClass(minSize);
+
+        if (index < 0) {
+            direct.misses.increment();
+            return ByteBuffer.allocateDirect(minSize);
+        }
+
+        final ByteBuffer pooled = direct.poll(index);
+
+        if (pooled != null) {
+            pooled.clear();
+            return pooled;
+        }
+
+        return ByteBuffer.allocateDirect(classSize(index));
+    }
+
+    /**
+     * Returns a direct buffer to the pool. Heap buffers and buffers whose
+     * capacity doesn't match a size class are ignored.
+     *
+     * @param buffer buffer to return, may be null
+     */
+    public void returnDirect(final ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect()) {
+            direct.offer(buffer, buffer.capacity());
+        }
+    }
+
+    /**
+     * Borrows an inflater of raw deflate data, as found within gzip members,
+     * that must be passed to {@link #returnInflater(Inflater)} once it is no
+     * longer used.
+     *
+     * @return inflater ready for new input
+     */
+    public Inflater borrowInflater() {
+        final Inflater pooled = inflaters.poll();
+
+        if (pooled == null) {
+            inflaterMisses.increment();
+            return new Inflater(true);
+        }
+
+        retainedInflaters.decrementAndGet();
+        inflaterHits.increment();
+
+        return pooled;
+    }
+
+    /**
+     * Returns an inflater borrowed from {@link #borrowInflater()} to the
+     * pool. The inflater is ended if the pool is full.
+     *
+     * @param inflater inflater to return, may be null
+     */
+    public void returnInflater(final Inflater inflater) {
+        if (inflater == null) {
+            return;
+        }
+
+        if (retainedInflaters.incrementAndGet() > maxInflaters) {
+            retainedInflaters.decrementAndGet();
+            inflater.end();
+            return;
+        }
+
+        inflater.reset();
+        inflaters.offer(inflater);
+    }
+
+    /**
+     * Finds the size class of buffers of at least the specified size.
+     *
+     * @param minSize minimum size in bytes
+     * @return index of size class or -1 if the size is too large to pool
+     */
+    static int sizeClass(final int minSize) {
+        if (minSize > MAX_BUFFER_SIZE) {
+            return -1;
+        }
+
+        if (minSize <= MIN_BUFFER_SIZE) {
+            return 0;
+        }
+
+        return Integer.SIZE - Integer.numberOfLeadingZeros(minSize - 1) - MIN_SIZE_SHIFT;
+    }
+
+    /**
+     * Finds the size class that a buffer of the exact specified size belongs to.
+     *
+     * @param size size in bytes
+     * @return index of size class or -1 if the size isn't a size class
+     */
+    static int exactSizeClass(final int size) {
+        if (size < MIN_BUFFER_SIZE || size > MAX_BUFFER_SIZE || Integer.bitCount(size) != 1) {
+            return -1;
+        }
+
+        return Integer.numberOfTrailingZeros(size) - MIN_SIZE_SHIFT;
+    }
+
+    /**
+     * @param index index of size class
+     * @return size in bytes of the buffers in the size class
+     */
+    static int classSize(final int index) {
+        return 1 << (index + MIN_SIZE_SHIFT);
+    }
+
+    /**
+     * @return bytes currently retained in heap arrays
+     */
+    @Managed
+    public long getHeapRetainedBytes() {
+        return heap.retainedBytes.get();
+    }
+
+    /**
+     * @return number of heap arrays currently retained
+     */
+    @Managed
+    public long getHeapRetainedBuffers() {
+        return heap.retainedBuffers.get();
+    }
+
+    /**
+     * @return upper bound of the bytes retained in heap arrays
+     */
+    @Managed
+    public long getHeapMaxBytes() {
+        return heap.maxBytes;
+    }
+
+    /**
+     * @return number of heap arrays borrowed from the pool
+     */
+    @Managed
+    public long getHeapHits() {
+        return heap.hits.sum();
+    }
+
+    /**
+     * @return number of heap arrays allocated because none were pooled
+     */
+    @Managed
+    public long getHeapMisses() {
+        return heap.misses.sum();
+    }
+
+    /**
+     * @return number of heap arrays returned that weren't retained
+     */
+    @Managed
+    public long getHeapDiscards() {
+        return heap.discards.sum();
+    }
+
+    /**
+     * @return bytes currently retained in direct buffers
+     */
+    @Managed
+    public long getDirectRetainedBytes() {
+        return direct.retainedBytes.get();
+    }
+
+    /**
+     * @return number of direct buffers currently retained
+     */
+    @Managed
+    public long getDirectRetainedBuffers() {
+        return direct.retainedBuffers.get();
+    }
+
+    /**
+     * @return upper bound of the bytes retained in direct buffers
+     */
+    @Managed
+    public long getDirectMaxBytes() {
+        return direct.maxBytes;
+    }
+
+    /**
+     * @return number of direct buffers borrowed from the pool
+     */
+    @Managed
+    public long getDirectHits() {
+        return direct.hits.sum();
+    }
+
+    /**
+     * @return number of direct buffers allocated because none were pooled
+     */
+    @Managed
+    public long getDirectMisses() {
+        return direct.misses.sum();
+    }
+
+    /**
+     * @return number of direct buffers returned that weren't retained
+     */
+    @Managed
+    public long getDirectDiscards() {
+        return direct.discards.sum();
+    }
+
+    /**
+     * @return number of inflaters currently retained
+     */
+    @Managed
+    public long getInflaterRetained() {
+        return retainedInflaters.get();
+    }
+
+    /**
+     * @return upper bound of the inflaters retained
+     */
+    @Managed
+    public long getInflaterMax() {
+        return maxInflaters;
+    }
+
+    /**
+     * @return number of inflaters borrowed from the pool
+     */
+    @Managed
+    public long getInflaterHits() {
+        return inflaterHits.sum();
+    }
+
+    /**
+     * @return number of inflaters created because none were pooled
+     */
+    @Managed
+    public long getInflaterMisses() {
+        return inflaterMisses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("heapRetainedBytes", getHeapRetainedBytes())
+                .append("heapMaxBytes", getHeapMaxBytes())
+                .append("directRetainedBytes", getDirectRetainedBytes())
+                .append("directMaxBytes", getDirectMaxBytes())
+                .append("inflaterRetained", getInflaterRetained())
+                .toString();
+    }
+
+    /**
+     * Bounded free lists of buffers of one kind, one per size class.
+     *
+     * @param <T> type of buffer
+     */
+    private static final class SizeClasses<T> {
+        private final long maxBytes;
+        private final List<Queue<T>> free = new ArrayList<>(SIZE_CLASSES);
+        private final AtomicLong retainedBytes = new AtomicLong();
+        private final AtomicLong retainedBuffers = new AtomicLong();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder discards = new LongAdder();
+
+        private SizeClasses(final long maxBytes) {
+            this.maxBytes = maxBytes;
+
+            for (int i = 0; i < SIZE_CLASSES; i++) {
+                free.add(new ConcurrentLinkedQueue<>());
+            }
+        }
+
+        private T poll(final int index) {
+            final T buffer = free.get(index).poll();
+
+            if (buffer == null) {
+                misses.increment();
+                return null;
+            }
+
+            retainedBytes.addAndGet(-classSize(index));
+            retainedBuffers.decrementAndGet();
+            hits.increment();
+
+            return buffer;
+        }
+
+        private void offer(final T buffer, final int size) {
+            final int index = exactSizeClass(size);
+
+            if (index < 0 || !reserve(size)) {
+                discards.increment();
+                return;
+            }
+
+            retainedBuffers.incrementAndGet();
+            free.get(index).offer(buffer);
+        }
+
+        /**
+         * Accounts for a buffer about to be retained if it fits within the
+         * upper bound.
+         *
+         * @param size size of buffer in bytes
+         * @return true if the buffer may be retained
+         */
+        private boolean reserve(final int size) {
+            while (true) {
+                final long current = retainedBytes.get();
+
+                if (current + size > maxBytes) {
+                    return false;
+                }
+
+                if (retainedBytes.compareAndSet(current, current + size)) {
+                    return true;
+                }
+            }
+        }
+
+        private void clear() {
+            for (int i = 0; i < SIZE_CLASSES; i++) {
+                while (free.get(i).poll() != null) {
+                    retainedBytes.addAndGet(-classSize(i));
+                    retainedBuffers.decrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.collect.ImmutableList;
+import com.joyent.manta.client.MantaClient;
+import com.joyent.manta.client.MantaMetadata;
+import com.joyent.manta.client.MantaObjectInputStream;
+import com.joyent.manta.config.ChainedConfigContext;
+import com.joyent.manta.config.ConfigContext;
+import com.joyent.manta.config.StandardConfigContext;
+import com.joyent.manta.http.MantaHttpHeaders;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Fixed set of {@link MantaClient} instances, each with its own HTTP
+ * connection pool, that requests for objects are spread across. When
+ * several Manta endpoint addresses are configured the clients are assigned
+ * to them in turn, otherwise every client uses the configured Manta URL.
+ *
+ * <p>Each request is sent with the client that has the fewest requests
+ * outstanding, starting the search from the next client in round-robin
+ * order so that ties are spread evenly. A request that returns an object
+ * stream stays outstanding until the stream is closed, so that clients
+ * busy streaming long downloads aren't chosen ahead of idle ones. The
+ * first client is also used for
+ * the requests made through the injected {@link MantaClient}, such as
+ * directory listings and metadata lookups.</p>
+ *
+ * @since 1.0.0
+ */
+public class MantaClientPool implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(MantaClientPool.class);
+
+    /**
+     * Default number of clients.
+     */
+    public static final int DEFAULT_SIZE = 1;
+
+    private final List<MantaClient> clients;
+    private final AtomicIntegerArray outstanding;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * Request sent with one of the pooled clients.
+     *
+     * @param <T> type of value returned by the request
+     */
+    @FunctionalInterface
+    public interface ClientCall<T> {
+        /**
+         * Sends the request.
+         *
+         * @param client client to send the request with
+         * @return result of request
+         * @throws IOException thrown when the request fails
+         */
+        T call(MantaClient client) throws IOException;
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param config Manta configuration context shared by all clients
+     * @param size number of clients, at least one client is created per endpoint address
+     * @param urls Manta endpoint addresses to spread the clients across,
+     *             or an empty list to use the configured Manta URL
+     */
+    @Inject
+    public MantaClientPool(final ConfigContext config,
+                           @Named("ClientPoolSize") final int size,
+                           @Named("ClientPoolUrls") final List<String> urls) {
+        this(createClients(clientConfigs(config, size, urls)));
+    }
+
+    /**
+     * Creates a new instance that spreads requests across the passed clients.
+     *
+     * @param clients clients to pool, the first is used as the primary client
+     */
+    MantaClientPool(final List<MantaClient> clients) {
+        requireNonNull(clients, "Clients are null");
+
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("At least one Manta client is required");
+        }
+
+        this.clients = ImmutableList.copyOf(clients);
+        this.outstanding = new AtomicIntegerArray(clients.size());
+    }
+
+    /**
+     * Builds the configuration of each client.
+     *
+     * @param config Manta configuration context shared by all clients
+     * @param size number of clients, at least one client is created per endpoint address
+     * @param urls Manta endpoint addresses to spread the clients across
+     * @return configuration of each client
+     */
+    static List<ConfigContext> clientConfigs(final ConfigContext config,
+                                             final int size,
+                                             final List<String> urls) {
+        requireNonNull(config, "Manta configuration is null");
+        requireNonNull(urls, "Manta endpoint addresses are null");
+
+        if (urls.isEmpty()) {
+            final ImmutableList.Builder<ConfigContext> configs = ImmutableList.builder();
+
+            for (int i = 0; i < Math.max(size, 1); i++) {
+                configs.add(config);
+            }
+
+            return configs.build();
+        }
+
+        final ImmutableList.Builder<ConfigContext> configs = ImmutableList.builder();
+
+        for (int i = 0; i < Math.max(size, urls.size()); i++) {
+            final StandardConfigContext endpoint = new StandardConfigContext();
+            endpoint.setMantaURL(urls.get(i % urls.size()));
+            configs.add(new ChainedConfigContext(config, endpoint));
+        }
+
+        return configs.build();
+    }
+
+    private static List<MantaClient> createClients(final List<ConfigContext> configs) {
+        final ImmutableList.Builder<MantaClient> clients = ImmutableList.builder();
+
+        for (ConfigContext config : configs) {
+            clients.add(new MantaClient(config));
+        }
+
+        LOG.debug("Created pool of {} Manta clients", configs.size());
+
+        return clients.build();
+    }
+
+    /**
+     * @return client used for requests that aren't spread across the pool
+     */
+    public MantaClient getPrimary() {
+        return clients.get(0);
+    }
+
+    /**
+     * Sends a request with the client that has the fewest requests outstanding.
+     *
+     * @param call request to send
+     * @param <T> type of value returned by the request
+     * @return result of the request
+     * @throws IOException thrown when the request fails
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(final ClientCall<T> call) throws IOException {
+        if (clients.size() == 1) {
+            return call.call(clients.get(0));
+        }
+
+        final int index = select();
+        outstanding.incrementAndGet(index);
+        boolean streaming = false;
+
+        try {
+            final T result = call.call(clients.get(index));
+
+            if (result instanceof MantaObjectInputStream) {
+                streaming = true;
+                return (T) new OutstandingObjectInputStream((MantaObjectInputStream) result,
+                        () -> outstanding.decrementAndGet(index));
+            }
+
+            return result;
+        } finally {
+            if (!streaming) {
+                outstanding.decrementAndGet(index);
+            }
+        }
+    }
+
+    /**
+     * Finds the client with the fewest requests outstanding.
+     *
+     * @return index of client
+     */
+    private int select() {
+        final int size = clients.size();
+        final int start = Math.floorMod(next.getAndIncrement(), size);
+        int selected = start;
+
+        for (int i = 1; i < size; i++) {
+            final int candidate = (start + i) % size;
+
+            if (outstanding.get(candidate) < outstanding.get(selected)) {
+                selected = candidate;
+            }
+        }
+
+        return selected;
+    }
+
+    /**
+     * @return number of clients in the pool
+     */
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * @param index index of client
+     * @return number of requests outstanding for the client
+     */
+    int getOutstanding(final int index) {
+        return outstanding.get(index);
+    }
+
+    /**
+     * Closes every client, logging a warning for those that can't be closed.
+     */
+    @Override
+    public void close() {
+        for (MantaClient client : clients) {
+            client.closeWithWarning();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("size", clients.size())
+                .toString();
+    }
+
+    /**
+     * Object stream that keeps the request that opened it outstanding until
+     * it is closed or its connection is aborted. Every call is delegated to
+     * the wrapped stream.
+     */
+    private static final class OutstandingObjectInputStream extends MantaObjectInputStream {
+        private final MantaObjectInputStream wrapped;
+        private final Runnable finished;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        OutstandingObjectInputStream(final MantaObjectInputStream wrapped, final Runnable finished) {
+            super(wrapped);
+            this.wrapped = wrapped;
+            this.finished = finished;
+        }
+
+        private void finish() {
+            if (done.compareAndSet(false, true)) {
+                finished.run();
+            }
+        }
+
+        @Override
+        public String getPath() {
+            return wrapped.getPath();
+        }
+
+        @Override
+        public Long getContentLength() {
+            return wrapped.getContentLength();
+        }
+
+        @Override
+        public String getContentType() {
+            return wrapped.getContentType();
+        }
+
+        @Override
+        public String getEtag() {
+            return wrapped.getEtag();
+        }
+
+        @Override
+        public Date getLastModifiedTime() {
+            return wrapped.getLastModifiedTime();
+        }
+
+        @Override
+        public String getMtime() {
+            return wrapped.getMtime();
+        }
+
+        @Override
+        public String getType() {
+            return wrapped.getType();
+        }
+
+        @Override
+        public MantaHttpHeaders getHttpHeaders() {
+            return wrapped.getHttpHeaders();
+        }
+
+        @Override
+        public Object getHeader(final String fieldName) {
+            return wrapped.getHeader(fieldName);
+        }
+
+        @Override
+        public String getHeaderAsString(final String fieldName) {
+            return wrapped.getHeaderAsString(fieldName);
+        }
+
+        @Override
+        public MantaMetadata getMetadata() {
+            return wrapped.getMetadata();
+        }
+
+        @Override
+        public byte[] getMd5Bytes() {
+            return wrapped.getMd5Bytes();
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return wrapped.isDirectory();
+        }
+
+        @Override
+        public String getRequestId() {
+            return wrapped.getRequestId();
+        }
+
+        @Override
+        public Object getHttpResponse() {
+            return wrapped.getHttpResponse();
+        }
+
+        @Override
+        public InputStream getBackingStream() {
+            return wrapped.getBackingStream();
+        }
+
+        @Override
+        public int read() throws IOException {
+            return wrapped.read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            return wrapped.read(b, off, len);
+        }
+
+        @Override
+        public int read(final byte[] b) throws IOException {
+            return wrapped.read(b);
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            return wrapped.skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return wrapped.available();
+        }
+
+        @Override
+        public void mark(final int readlimit) {
+            wrapped.mark(readlimit);
+        }
+
+        @Override
+        public void reset() throws IOException {
+            wrapped.reset();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return wrapped.markSupported();
+        }
+
+        @Override
+        public void abortConnection() throws IOException {
+            try {
+                wrapped.abortConnection();
+            } finally {
+                finish();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                wrapped.close();
+            } finally {
+                finish();
+            }
+        }
+    }
+}
@@ -8,32 +8,31 @@
 package com.joyent.manta.presto;
 
 import com.joyent.manta.client.MantaClient;
-import com.joyent.manta.config.ConfigContext;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 
 /**
- * Provides a configured instance of {@link MantaClient}. Remember, you will
- * need to close this instance.
+ * Provides the primary {@link MantaClient} of the connector's
+ * {@link MantaClientPool}. The instance is closed when the pool is closed.
  *
  * @since 1.0.0
  */
 public class MantaClientProvider implements Provider<MantaClient> {
-    private final ConfigContext config;
+    private final MantaClientPool clientPool;
 
     /**
      * Creates a new instance based on the specified parameters.
      *
-     * @param config Manta configuration context
+     * @param clientPool pool of configured Manta clients
      */
     @Inject
-    public MantaClientProvider(final ConfigContext config) {
-        this.config = config;
+    public MantaClientProvider(final MantaClientPool clientPool) {
+        this.clientPool = clientPool;
     }
 
     @Override
     public MantaClient get() {
-        return new MantaClient(config);
+        return clientPool.getPrimary();
     }
 }
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import com.joyent.manta.client.MantaObject;
+import com.joyent.manta.presto.compression.MantaCompressionType;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Connector-wide estimates of the decompressed size of compressed objects.
+ * The listing only gives the compressed size of an object, while its rows
+ * are parsed from the decompressed data, so sizes compared against
+ * decompressed byte counts are estimated instead.
+ *
+ * <p>Each table learns the ratio between the decompressed and compressed
+ * sizes of every compression algorithm from the objects it has read to
+ * their end. Older observations are decayed so that the ratio follows
+ * changes to the data. Until a table has read an object of an algorithm,
+ * a typical ratio of the algorithm for text data is used. The size of a
+ * gzip object can also be read from the <code>ISIZE</code> field of its
+ * trailer, which holds the decompressed size of its last member modulo
+ * 2<sup>32</sup>.</p>
+ *
+ * @since 1.0.0
+ */
+public class MantaCompressionEstimator {
+    /**
+     * Default size in bytes of the smallest gzip object whose trailer is read.
+     */
+    public static final long DEFAULT_TRAILER_MIN_OBJECT_SIZE = 16_777_216L;
+
+    /**
+     * Number of compressed bytes observed for a table and algorithm after
+     * which older observations are halved.
+     */
+    static final long DECAY_THRESHOLD_BYTES = 1_073_741_824L;
+
+    /**
+     * Ratio used for algorithms without a typical ratio.
+     */
+    static final double DEFAULT_RATIO = 4.0;
+
+    private static final double GZIP_RATIO = 5.0;
+    private static final double BZIP2_RATIO = 7.0;
+    private static final double XZ_RATIO = 8.0;
+    private static final double ZSTD_RATIO = 6.0;
+
+    /**
+     * Typical ratio of the LZ4, LZO and Snappy algorithms, which trade
+     * ratio for speed.
+     */
+    private static final double FAST_RATIO = 3.0;
+
+    /**
+     * Typical ratios of the supported algorithms for JSON text.
+     */
+    private static final Map<MantaCompressionType, Double> PRIORS = ImmutableMap.<MantaCompressionType, Double>builder()
+            .put(MantaCompressionType.GZIP, GZIP_RATIO)
+            .put(MantaCompressionType.BZIP2, BZIP2_RATIO)
+            .put(MantaCompressionType.XZ, XZ_RATIO)
+            .put(MantaCompressionType.ZSTD, ZSTD_RATIO)
+            .put(MantaCompressionType.LZ4, FAST_RATIO)
+            .put(MantaCompressionType.LZ4_FRAMED, FAST_RATIO)
+            .put(MantaCompressionType.HADOOP_LZ4, FAST_RATIO)
+            .put(MantaCompressionType.HADOOP_LZO, FAST_RATIO)
+            .put(MantaCompressionType.HADOOP_SNAPPY, FAST_RATIO)
+            .put(MantaCompressionType.XERIAL_SNAPPY, FAST_RATIO)
+            .put(MantaCompressionType.FRAMED_SNAPPY, FAST_RATIO)
+            .build();
+
+    /**
+     * Smallest ratio of a decompressed size read from a trailer that is
+     * believed. Trailers of objects made of several gzip members, such as
+     * BGZF objects, only hold the size of the last member.
+     */
+    private static final double MIN_TRAILER_RATIO = 0.5;
+
+    /**
+     * Largest ratio that deflate can achieve.
+     */
+    private static final double MAX_DEFLATE_RATIO = 1032.0;
+
+    private static final long ISIZE_MODULUS = 1L << Integer.SIZE;
+
+    /**
+     * Size of the header and trailer of a gzip member.
+     */
+    private static final long GZIP_FRAMING_BYTES = 18L;
+
+    private final long trailerMinObjectSize;
+    private final ConcurrentMap<Key, Observations> observations = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param trailerMinObjectSize size in bytes of the smallest gzip object whose trailer is read
+     */
+    @Inject
+    public MantaCompressionEstimator(
+            @Named("CompressionEstimateTrailerMinObjectSize") final long trailerMinObjectSize) {
+        if (trailerMinObjectSize < 0L) {
+            throw new IllegalArgumentException("Trailer minimum object size must not be negative");
+        }
+
+        this.trailerMinObjectSize = trailerMinObjectSize;
+    }
+
+    /**
+     * Estimates the decompressed size of an object as listed, choosing the
+     * algorithm by the object's extension.
+     *
+     * @param schemaName schema of the table the object belongs to
+     * @param tableName table the object belongs to
+     * @param object object as listed
+     * @return estimated decompressed size or null if the object's size isn't known
+     */
+    public Long estimate(final String schemaName, final String tableName, final MantaObject object) {
+        final Long size = object.getContentLength();
+
+        if (size == null) {
+            return null;
+        }
+
+        final MantaCompressionType type = MantaCompressionType.valueOfExtension(
+                Files.getFileExtension(object.getPath()));
+
+        return estimate(schemaName, tableName, type, size);
+    }
+
+    /**
+     * Estimates the decompressed size of an object.
+     *
+     * @param schemaName schema of the table the object belongs to
+     * @param tableName table the object belongs to
+     * @param type algorithm the object is compressed with or null if it isn't compressed
+     * @param compressedBytes size of the object
+     * @return estimated decompressed size
+     */
+    public long estimate(final String schemaName, final String tableName,
+                         final MantaCompressionType type, final long compressedBytes) {
+        if (type == null) {
+            return compressedBytes;
+        }
+
+        final double estimate = compressedBytes * ratio(schemaName, tableName, type);
+
+        if (estimate >= Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+
+        return Math.round(estimate);
+    }
+
+    /**
+     * Returns the ratio between the decompressed and compressed sizes that
+     * the table's objects of an algorithm are expected to have.
+     *
+     * @param schemaName schema of the table
+     * @param tableName table
+     * @param type algorithm objects are compressed with
+     * @return learned ratio or the algorithm's typical ratio if none was learned
+     */
+    public double ratio(final String schemaName, final String tableName, final MantaCompressionType type) {
+        final Observations observed = observations.get(new Key(schemaName, tableName, type));
+
+        if (observed != null) {
+            final double ratio = observed.ratio();
+
+            if (ratio > 0.0) {
+                return ratio;
+            }
+        }
+
+        return PRIORS.getOrDefault(type, DEFAULT_RATIO);
+    }
+
+    /**
+     * Records the sizes of an object of the table that was read to its end.
+     *
+     * @param schemaName schema of the table the object belongs to
+     * @param tableName table the object belongs to
+     * @param type algorithm the object is compressed with or null if it isn't compressed
+     * @param compressedBytes size of the object
+     * @param uncompressedBytes number of bytes the object decompressed to
+     */
+    public void record(final String schemaName, final String tableName,
+                       final MantaCompressionType type, final long compressedBytes,
+                       final long uncompressedBytes) {
+        if (type == null || compressedBytes <= 0L || uncompressedBytes < 0L) {
+            return;
+        }
+
+        observations.computeIfAbsent(new Key(schemaName, tableName, type), key -> new Observations())
+                .add(compressedBytes, uncompressedBytes);
+    }
+
+    /**
+     * Determines if the decompressed size of an object should be read from
+     * its trailer before it is read. Smaller objects are read quickly enough
+     * that an additional request isn't worth its latency.
+     *
+     * @param type algorithm the object is compressed with or null if it isn't compressed
+     * @param compressedBytes size of the object
+     * @return true if the object is a gzip object at least as large as the minimum size
+     */
+    public boolean readsTrailer(final MantaCompressionType type, final long compressedBytes) {
+        return type == MantaCompressionType.GZIP
+                && compressedBytes >= trailerMinObjectSize
+                && compressedBytes > GZIP_FRAMING_BYTES;
+    }
+
+    /**
+     * Resolves the decompressed size of a gzip object from the
+     * <code>ISIZE</code> field of its trailer. The field only holds the size
+     * modulo 2<sup>32</sup>, so the multiple of 2<sup>32</sup> that brings it
+     * closest to the estimated size, without exceeding what deflate can
+     * achieve, is added to it. Sizes far smaller than the compressed size
+     * can only come from the last of several members and are ignored.
+     *
+     * @param isize value of the <code>ISIZE</code> field
+     * @param compressedBytes size of the object
+     * @param estimate size estimated from the compression ratio
+     * @return decompressed size read from the trailer or the estimate when
+     *         the trailer can't be believed
+     */
+    static long resolveTrailerSize(final long isize, final long compressedBytes, final long estimate) {
+        final double maxSize = compressedBytes * MAX_DEFLATE_RATIO;
+        final long maxWraps = (long) Math.max(0.0, Math.floor((maxSize - isize) / ISIZE_MODULUS));
+        final long wraps = Math.min(maxWraps,
+                Math.max(0L, Math.round((double) (estimate - isize) / ISIZE_MODULUS)));
+        final long size = isize + wraps * ISIZE_MODULUS;
+
+        if (size < compressedBytes * MIN_TRAILER_RATIO) {
+            return estimate;
+        }
+
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("trailerMinObjectSize", trailerMinObjectSize)
+                .append("observations", observations.size())
+                .toString();
+    }
+
+    /**
+     * Table and algorithm that observations are kept for.
+     */
+    private static final class Key {
+        private final String schemaName;
+        private final String tableName;
+        private final MantaCompressionType type;
+
+        private Key(final String schemaName, final String tableName, final MantaCompressionType type) {
+            this.schemaName = requireNonNull(schemaName, "Schema name is null");
+            this.tableName = requireNonNull(tableName, "Table name is null");
+            this.type = requireNonNull(type, "Compression type is null");
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final Key key = (Key) o;
+
+            return schemaName.equals(key.schemaName)
+                    && tableName.equals(key.tableName)
+                    && type == key.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(schemaName, tableName, type);
+        }
+    }
+
+    /**
+     * Decayed totals of the compressed and decompressed sizes of the
+     * objects read.
+     */
+    private static final class Observations {
+        private double compressedBytes = 0.0;
+        private double uncompressedBytes = 0.0;
+
+        private synchronized void add(final long compressed, final long uncompressed) {
+            compressedBytes += compressed;
+            uncompressedBytes += uncompressed;
+
+            while (compressedBytes > DECAY_THRESHOLD_BYTES) {
+                compressedBytes /= 2.0;
+                uncompressedBytes /= 2.0;
+            }
+        }
+
+        private synchronized double ratio() {
+            if (compressedBytes <= 0.0) {
+                return 0.0;
+            }
+
+            return uncompressedBytes / compressedBytes;
+        }
+    }
+}
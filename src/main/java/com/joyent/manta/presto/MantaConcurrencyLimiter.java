@@ -0,0 +1,395 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.base.Throwables;
+import com.joyent.manta.exception.MantaClientHttpResponseException;
+import com.joyent.manta.org.apache.http.conn.ConnectTimeoutException;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weakref.jmx.MBeanExporter;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connector-wide limit on the number of requests sent to Manta at the same
+ * time that adapts to how Manta is coping. The limit is adjusted using
+ * additive increase and multiplicative decrease: each request that succeeds
+ * while the limit is being used raises the limit by roughly one per limit's
+ * worth of requests, and each request that is throttled, times out or
+ * takes longer than the latency threshold lowers the limit by
+ * {@link #BACKOFF_RATIO}. Only one decrease is applied for the requests that
+ * were already in flight when the limit was last lowered, so a burst of
+ * failures doesn't collapse the limit.
+ *
+ * <p>Requests that would exceed the limit wait until another request
+ * completes. A permit is only held until the response headers have been
+ * received or a listing page has been read, so that streams that are read
+ * slowly by Presto never starve other requests. The limit, the number of
+ * requests in flight and waiting and the time spent waiting are exported as
+ * a JMX MBean named after the connector.</p>
+ *
+ * @since 1.0.0
+ */
+public class MantaConcurrencyLimiter {
+    private static final Logger LOG = LoggerFactory.getLogger(MantaConcurrencyLimiter.class);
+
+    /**
+     * Default limit when the connector starts.
+     */
+    public static final int DEFAULT_INITIAL_LIMIT = 32;
+
+    /**
+     * Default lowest limit.
+     */
+    public static final int DEFAULT_MIN_LIMIT = 4;
+
+    /**
+     * Default highest limit.
+     */
+    public static final int DEFAULT_MAX_LIMIT = 256;
+
+    /**
+     * Default time in milliseconds after which a successful request is
+     * treated as a sign of overload.
+     */
+    public static final long DEFAULT_LATENCY_THRESHOLD_MILLIS = 5_000L;
+
+    /**
+     * Factor the limit is multiplied by when overload is detected.
+     */
+    static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * HTTP status codes that Manta returns when it is overloaded.
+     */
+    private static final int[] OVERLOAD_STATUS_CODES = new int[] {
+            429, 503
+    };
+
+    private static final MantaConcurrencyLimiter DISABLED = new MantaConcurrencyLimiter(
+            false, DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT,
+            DEFAULT_LATENCY_THRESHOLD_MILLIS, null);
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final String objectName;
+
+    /**
+     * Current limit, only the integer part is enforced.
+     */
+    private double limit;
+    private int inFlight = 0;
+    private int waiting = 0;
+
+    /**
+     * Time at which the limit was last lowered.
+     */
+    private long lastDecreaseNanos;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder overloads = new LongAdder();
+    private final LongAdder queuedRequests = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+
+    private MBeanExporter exporter;
+
+    /**
+     * Creates a new instance that isn't associated with a connector.
+     *
+     * @param enabled true to limit requests
+     * @param initialLimit limit when the connector starts
+     * @param minLimit lowest limit
+     * @param maxLimit highest limit
+     * @param latencyThresholdMillis time in milliseconds after which a
+     *                               successful request is treated as a sign of overload
+     */
+    public MantaConcurrencyLimiter(final boolean enabled,
+                                   final int initialLimit,
+                                   final int minLimit,
+                                   final int maxLimit,
+                                   final long latencyThresholdMillis) {
+        this(enabled, initialLimit, minLimit, maxLimit, latencyThresholdMillis, null);
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param enabled true to limit requests
+     * @param initialLimit limit when the connector starts
+     * @param minLimit lowest limit
+     * @param maxLimit highest limit
+     * @param latencyThresholdMillis time in milliseconds after which a
+     *                               successful request is treated as a sign of overload
+     * @param connectorId connector id used to name the exported MBean
+     */
+    @Inject
+    public MantaConcurrencyLimiter(@Named("LimiterEnabled") final boolean enabled,
+                                   @Named("LimiterInitialLimit") final int initialLimit,
+                                   @Named("LimiterMinLimit") final int minLimit,
+                                   @Named("LimiterMaxLimit") final int maxLimit,
+                                   @Named("LimiterLatencyThresholdMillis") final long latencyThresholdMillis,
+                                   final MantaConnectorId connectorId) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            String msg = String.format("Invalid concurrency limits [initialLimit=%d,minLimit=%d,maxLimit=%d]",
+                    initialLimit, minLimit, maxLimit);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (latencyThresholdMillis < 1L) {
+            throw new IllegalArgumentException("Latency threshold must be greater than zero");
+        }
+
+        this.enabled = enabled;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.lastDecreaseNanos = System.nanoTime();
+
+        if (connectorId == null) {
+            this.objectName = null;
+        } else {
+            this.objectName = MantaMBeans.objectName(MantaConcurrencyLimiter.class, connectorId);
+        }
+    }
+
+    /**
+     * @return an instance that never limits requests
+     */
+    public static MantaConcurrencyLimiter disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @return true if requests are limited
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Exports this instance to the platform MBean server.
+     */
+    @PostConstruct
+    public synchronized void export() {
+        if (objectName != null && exporter == null) {
+            exporter = MantaMBeans.export(objectName, this);
+        }
+    }
+
+    /**
+     * Removes this instance from the platform MBean server.
+     */
+    @PreDestroy
+    public synchronized void unexport() {
+        MantaMBeans.unexport(exporter, objectName);
+        exporter = null;
+    }
+
+    /**
+     * Sends a request once doing so doesn't exceed the limit and adjusts
+     * the limit based on its outcome.
+     *
+     * @param call operation sending the request
+     * @param <T> type of value returned by the operation
+     * @return result of the operation
+     * @throws IOException thrown when the operation fails or when
+     *         interrupted while waiting for other requests to complete
+     */
+    public <T> T execute(final MantaRetryPolicy.RetryableCall<T> call) throws IOException {
+        if (!enabled) {
+            return call.call();
+        }
+
+        final long start = acquire();
+        boolean overloaded = false;
+
+        try {
+            return call.call();
+        } catch (IOException | RuntimeException e) {
+            overloaded = isOverloaded(e);
+            throw e;
+        } finally {
+            release(start, System.nanoTime() - start, overloaded);
+        }
+    }
+
+    /**
+     * Waits until a request can be sent without exceeding the limit.
+     *
+     * @return time at which the request was allowed to be sent
+     * @throws InterruptedIOException thrown when interrupted while waiting
+     */
+    synchronized long acquire() throws InterruptedIOException {
+        requests.increment();
+
+        if (inFlight < currentLimit()) {
+            inFlight++;
+            return System.nanoTime();
+        }
+
+        queuedRequests.increment();
+        waiting++;
+        final long waitStart = System.nanoTime();
+
+        try {
+            while (inFlight >= currentLimit()) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send request to Manta");
+        } finally {
+            waiting--;
+            queueWaitNanos.add(System.nanoTime() - waitStart);
+        }
+
+        inFlight++;
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the outcome of a request and allows a waiting request to be sent.
+     *
+     * @param start time at which the request was allowed to be sent
+     * @param latencyNanos time the request took in nanoseconds
+     * @param overloaded true if the request failed because Manta is overloaded
+     */
+    synchronized void release(final long start, final long latencyNanos, final boolean overloaded) {
+        final boolean limited = inFlight >= currentLimit();
+        inFlight--;
+
+        if (overloaded || latencyNanos > latencyThresholdNanos) {
+            overloads.increment();
+
+            // Requests sent before the last decrease already contributed to it
+            if (start - lastDecreaseNanos >= 0L) {
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                lastDecreaseNanos = System.nanoTime();
+                LOG.debug("Lowered Manta concurrency limit [limit={},latencyMillis={},overloaded={}]",
+                        currentLimit(), TimeUnit.NANOSECONDS.toMillis(latencyNanos), overloaded);
+            }
+        } else if (limited) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+
+        notifyAll();
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Determines if a failure indicates that Manta is overloaded.
+     *
+     * @param failure failure to classify
+     * @return true if Manta throttled the request or didn't respond in time
+     */
+    static boolean isOverloaded(final Throwable failure) {
+        for (Throwable t : Throwables.getCausalChain(failure)) {
+            if (t instanceof MantaClientHttpResponseException) {
+                final int statusCode = ((MantaClientHttpResponseException) t).getStatusCode();
+
+                for (int code : OVERLOAD_STATUS_CODES) {
+                    if (code == statusCode) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+
+            if (t instanceof SocketTimeoutException || t instanceof ConnectTimeoutException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return number of requests that may currently be sent at the same time
+     */
+    @Managed
+    public synchronized int getLimit() {
+        return currentLimit();
+    }
+
+    /**
+     * @return number of requests currently being sent
+     */
+    @Managed
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return number of requests currently waiting to be sent
+     */
+    @Managed
+    public synchronized int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * @return number of requests sent through the limiter
+     */
+    @Managed
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * @return number of requests that had to wait before being sent
+     */
+    @Managed
+    public long getQueuedRequests() {
+        return queuedRequests.sum();
+    }
+
+    /**
+     * @return total number of milliseconds requests waited before being sent
+     */
+    @Managed
+    public long getQueueWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(queueWaitNanos.sum());
+    }
+
+    /**
+     * @return number of requests that were throttled, timed out or exceeded the latency threshold
+     */
+    @Managed
+    public long getOverloads() {
+        return overloads.sum();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("limit", getLimit())
+                .append("minLimit", minLimit)
+                .append("maxLimit", maxLimit)
+                .append("latencyThresholdNanos", latencyThresholdNanos)
+                .toString();
+    }
+}
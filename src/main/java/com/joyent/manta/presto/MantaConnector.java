@@ -14,7 +14,6 @@ import com.facebook.presto.spi.connector.ConnectorRecordSetProvider;
 import com.facebook.presto.spi.connector.ConnectorSplitManager;
 import com.facebook.presto.spi.connector.ConnectorTransactionHandle;
 import com.facebook.presto.spi.transaction.IsolationLevel;
-import com.joyent.manta.client.MantaClient;
 import io.airlift.bootstrap.LifeCycleManager;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.slf4j.Logger;
@@ -39,7 +38,7 @@ public class MantaConnector implements Connector {
     private final MantaSplitManager splitManager;
     private final MantaRecordSetProvider recordSetProvider;
     private final ConnectorAccessControl accessControl;
-    private final MantaClient mantaClient;
+    private final MantaClientPool clientPool;
 
     /**
      * Creates a new instance based on the specified parameters.
@@ -49,7 +48,7 @@ public class MantaConnector implements Connector {
      * @param splitManager object that determines where to "split" data
      * @param recordSetProvider object that provides record sets based on table's columns
      * @param accessControl access control object that specifies what operations are valid
-     * @param mantaClient object that allows for direct operations on Manta
+     * @param clientPool clients that allow for direct operations on Manta
      */
     @Inject
     public MantaConnector(final LifeCycleManager lifeCycleManager,
@@ -57,13 +56,13 @@ public class MantaConnector implements Connector {
                           final MantaSplitManager splitManager,
                           final MantaRecordSetProvider recordSetProvider,
                           final ConnectorAccessControl accessControl,
-                          final MantaClient mantaClient) {
+                          final MantaClientPool clientPool) {
         this.lifeCycleManager = requireNonNull(lifeCycleManager, "lifeCycleManager is null");
         this.metadata = requireNonNull(metadata, "metadata is null");
         this.splitManager = requireNonNull(splitManager, "splitManager is null");
         this.recordSetProvider = requireNonNull(recordSetProvider, "recordSetProvider is null");
         this.accessControl = requireNonNull(accessControl, "access control is null");
-        this.mantaClient = requireNonNull(mantaClient, "Manta client is null");
+        this.clientPool = requireNonNull(clientPool, "Manta client pool is null");
     }
 
     @Override
@@ -97,7 +96,7 @@ public class MantaConnector implements Connector {
 
     @Override
     public void shutdown() {
-        mantaClient.closeWithWarning();
+        clientPool.close();
 
         try {
             lifeCycleManager.stop();
@@ -15,23 +15,33 @@ import com.joyent.manta.http.MantaHttpHeaders;
 import com.joyent.manta.presto.compression.MantaCompressionType;
 
 import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Date;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * A custom {@link InputStream} that wraps a {@link MantaObjectInputStream}
- * in a buffered stream and a counting stream.
+ * in a buffered stream and a counting stream. Buffers are borrowed from a
+ * {@link MantaBufferPool} and returned when the stream is closed.
  * @since 1.0.0
  */
 public class MantaCountingInputStream extends InputStream implements MantaObject {
     private static final int STREAM_BUFFER_SIZE = 65536;
 
     private final MantaObject mantaObject;
+    private final MantaBufferPool bufferPool;
     private final InputStream decompressingStream;
-    private final BufferedInputStream bufferedInputStream;
+    private final InputStream bufferedInputStream;
     private final CountingInputStream finalByteCountingStream;
 
+    /**
+     * Position within the decompressed stream at which this stream starts.
+     */
+    private final long startingPosition;
+
     /**
      * Creates a new {@link InputStream} that wraps a {@link MantaObjectInputStream}
      * in a buffered stream and a counting stream.
@@ -39,10 +49,26 @@ public class MantaCountingInputStream extends InputStream implements MantaObject
      * @param mantaObjectInputStream stream to wrap
      */
     public MantaCountingInputStream(final MantaObjectInputStream mantaObjectInputStream) {
-        this.mantaObject = mantaObjectInputStream;
-        this.decompressingStream = MantaCompressionType.wrapMantaStreamIfCompressed(mantaObjectInputStream);
-        this.bufferedInputStream = new BufferedInputStream(decompressingStream, STREAM_BUFFER_SIZE);
-        this.finalByteCountingStream = new CountingInputStream(bufferedInputStream);
+        this(mantaObjectInputStream, 0L, MantaReadAhead.disabled(), MantaBufferPool.disabled());
+    }
+
+    /**
+     * Creates a new {@link InputStream} that wraps a {@link MantaObjectInputStream}
+     * that was opened part way through an uncompressed object in a stream
+     * that reads and decompresses ahead on a background thread and a counting
+     * stream. When reading ahead is disabled, a buffered stream is used
+     * instead.
+     *
+     * @param mantaObjectInputStream stream to wrap
+     * @param startingPosition byte position within the object at which the stream starts
+     * @param readAhead settings used to read ahead of the caller
+     * @param bufferPool pool that buffers are borrowed from
+     */
+    public MantaCountingInputStream(final MantaObjectInputStream mantaObjectInputStream,
+                                    final long startingPosition,
+                                    final MantaReadAhead readAhead,
+                                    final MantaBufferPool bufferPool) {
+        this(mantaObjectInputStream, mantaObjectInputStream, startingPosition, readAhead, bufferPool);
     }
 
     /**
@@ -54,14 +80,99 @@ public class MantaCountingInputStream extends InputStream implements MantaObject
      */
     public MantaCountingInputStream(final InputStream anyInputStream,
                                     final MantaObject object) {
+        this(anyInputStream, object, 0L, MantaReadAhead.disabled(), MantaBufferPool.disabled());
+    }
+
+    /**
+     * Creates a new {@link InputStream} that wraps any {@link InputStream}
+     * in a stream that reads and decompresses ahead on a background thread
+     * and a counting stream. When reading ahead is disabled, a buffered
+     * stream is used instead.
+     *
+     * @param anyInputStream stream to wrap
+     * @param object Manta object to derive path information from
+     * @param startingPosition byte position within the object at which the stream starts
+     * @param readAhead settings used to read ahead of the caller
+     * @param bufferPool pool that buffers are borrowed from
+     */
+    public MantaCountingInputStream(final InputStream anyInputStream,
+                                    final MantaObject object,
+                                    final long startingPosition,
+                                    final MantaReadAhead readAhead,
+                                    final MantaBufferPool bufferPool) {
+        this(anyInputStream, object, startingPosition, readAhead, bufferPool, true);
+    }
+
+    /**
+     * Creates a new {@link InputStream} that wraps any {@link InputStream}
+     * in a stream that reads ahead on a background thread and a counting
+     * stream, optionally decompressing it based on the object's extension,
+     * headers or magic number.
+     * When reading ahead is disabled, a buffered stream is used instead.
+     *
+     * @param anyInputStream stream to wrap
+     * @param object Manta object to derive path information from
+     * @param startingPosition byte position within the object at which the stream starts
+     * @param readAhead settings used to read ahead of the caller
+     * @param bufferPool pool that buffers are borrowed from
+     * @param decompress false if the stream has already been decompressed or is known to be uncompressed
+     */
+    public MantaCountingInputStream(final InputStream anyInputStream,
+                                    final MantaObject object,
+                                    final long startingPosition,
+                                    final MantaReadAhead readAhead,
+                                    final MantaBufferPool bufferPool,
+                                    final boolean decompress) {
+        this.startingPosition = startingPosition;
         this.mantaObject = object;
-        this.decompressingStream = MantaCompressionType.wrapMantaStreamIfCompressed(object, anyInputStream);
-        this.bufferedInputStream = new BufferedInputStream(decompressingStream, STREAM_BUFFER_SIZE);
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+
+        // Streams opened part way through an object are never decompressed
+        if (decompress && startingPosition == 0L) {
+            this.decompressingStream = MantaCompressionType.wrapMantaStreamIfCompressed(
+                    object, anyInputStream, bufferPool);
+        } else {
+            this.decompressingStream = anyInputStream;
+        }
+
+        if (readAhead.isEnabled()) {
+            this.bufferedInputStream = readAhead.wrap(decompressingStream, abortAction(object));
+        } else {
+            this.bufferedInputStream = new PooledBufferedInputStream(
+                    decompressingStream, STREAM_BUFFER_SIZE, bufferPool);
+        }
+
         this.finalByteCountingStream = new CountingInputStream(bufferedInputStream);
     }
 
+    /**
+     * Finds how to abort the connection of an object's response so that a
+     * background thread blocked reading from it is released when this
+     * stream is closed early.
+     *
+     * @param object object being read
+     * @return action aborting the object's connection or an action doing nothing
+     */
+    private static Closeable abortAction(final MantaObject object) {
+        if (object instanceof MantaObjectInputStream) {
+            return ((MantaObjectInputStream) object)::abortConnection;
+        }
+
+        return () -> { };
+    }
+
+    /**
+     * @return pool that buffers used to read from this stream are borrowed from
+     */
+    public MantaBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * @return position within the decompressed object of the next byte to be read
+     */
     public long getCount() {
-        return finalByteCountingStream.getCount();
+        return startingPosition + finalByteCountingStream.getCount();
     }
 
     @Override
@@ -178,4 +289,30 @@ public class MantaCountingInputStream extends InputStream implements MantaObject
     public String getRequestId() {
         return mantaObject.getRequestId();
     }
+
+    /**
+     * {@link BufferedInputStream} whose buffer is borrowed from a pool and
+     * returned when the stream is closed.
+     */
+    private static final class PooledBufferedInputStream extends BufferedInputStream {
+        private final MantaBufferPool pool;
+
+        private PooledBufferedInputStream(final InputStream in, final int size,
+                                          final MantaBufferPool pool) {
+            super(in, 1);
+            this.pool = pool;
+            this.buf = pool.borrowArray(size);
+        }
+
+        @Override
+        public void close() throws IOException {
+            final byte[] buffer = buf;
+
+            try {
+                super.close();
+            } finally {
+                pool.returnArray(buffer);
+            }
+        }
+    }
 }
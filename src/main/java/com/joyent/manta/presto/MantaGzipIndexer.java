@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.client.MantaObject;
+import com.joyent.manta.client.MantaObjectInputStream;
+import com.joyent.manta.exception.MantaClientHttpResponseException;
+import com.joyent.manta.http.MantaHttpHeaders;
+import com.joyent.manta.org.apache.http.HttpStatus;
+import com.joyent.manta.presto.compression.GzipIndex;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Connector-wide settings used to split large gzip objects into several
+ * splits using a sidecar index of seek points stored next to each object.
+ * The index of an object is stored at the object's path with the
+ * {@link GzipIndex#SIDECAR_EXTENSION} extension appended and is only used
+ * while the etag and size recorded in it match the object. Indexes can
+ * optionally be built and uploaded the first time an unindexed object is
+ * read from start to end.
+ *
+ * @since 1.0.0
+ */
+public class MantaGzipIndexer {
+    private static final Logger LOG = LoggerFactory.getLogger(MantaGzipIndexer.class);
+
+    /**
+     * Default size in bytes of the smallest gzip object looked up in an index.
+     */
+    public static final long DEFAULT_MIN_OBJECT_SIZE = 67_108_864L;
+
+    /**
+     * Default minimum number of decompressed bytes between checkpoints of a built index.
+     */
+    public static final long DEFAULT_CHECKPOINT_SPACING = 16_777_216L;
+
+    /**
+     * Default number of decompressed bytes read by each split of an indexed object.
+     */
+    public static final long DEFAULT_SPLIT_SIZE = 67_108_864L;
+
+    private static final String GZIP_EXTENSION = ".gz";
+
+    private final boolean enabled;
+    private final long minObjectSize;
+    private final long checkpointSpacing;
+    private final long splitSize;
+    private final boolean buildOnScan;
+    private final MantaClientPool clientPool;
+    private final MantaRetryPolicy retryPolicy;
+    private final MantaConcurrencyLimiter limiter;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param enabled true to look up indexes of large gzip objects when creating splits
+     * @param minObjectSize size in bytes of the smallest gzip object looked up in an index
+     * @param checkpointSpacing minimum number of decompressed bytes between checkpoints of a built index
+     * @param splitSize number of decompressed bytes read by each split of an indexed object
+     * @param buildOnScan true to build and upload the index of unindexed objects when they are read
+     * @param clientPool clients used to read and write indexes
+     * @param retryPolicy policy used to retry transient failures when reading indexes
+     * @param limiter limit on the number of concurrent requests sent to Manta
+     */
+    @Inject
+    @SuppressWarnings("ParameterNumber")
+    public MantaGzipIndexer(@Named("GzipIndexEnabled") final boolean enabled,
+                            @Named("GzipIndexMinObjectSize") final long minObjectSize,
+                            @Named("GzipIndexCheckpointSpacing") final long checkpointSpacing,
+                            @Named("GzipIndexSplitSize") final long splitSize,
+                            @Named("GzipIndexBuildOnScan") final boolean buildOnScan,
+                            final MantaClientPool clientPool,
+                            final MantaRetryPolicy retryPolicy,
+                            final MantaConcurrencyLimiter limiter) {
+        if (checkpointSpacing < 1L || splitSize < 1L) {
+            throw new IllegalArgumentException("Gzip index checkpoint spacing and split size must be greater than zero");
+        }
+
+        this.enabled = enabled;
+        this.minObjectSize = minObjectSize;
+        this.checkpointSpacing = checkpointSpacing;
+        this.splitSize = splitSize;
+        this.buildOnScan = buildOnScan;
+        this.clientPool = requireNonNull(clientPool, "Manta client pool is null");
+        this.retryPolicy = requireNonNull(retryPolicy, "Retry policy is null");
+        this.limiter = requireNonNull(limiter, "Limiter is null");
+    }
+
+    /**
+     * Determines if an object may have an index or should have one built.
+     *
+     * @param object object as listed
+     * @return true if the object is a gzip object at least as large as the minimum size
+     */
+    public boolean isCandidate(final MantaObject object) {
+        return enabled
+                && object.getPath().endsWith(GZIP_EXTENSION)
+                && object.getContentLength() != null
+                && object.getContentLength() >= minObjectSize;
+    }
+
+    /**
+     * Reads the checkpoint table of an object's index. Indexes that are
+     * missing, unreadable or that were built from a different version of
+     * the object are ignored.
+     *
+     * @param object object as listed
+     * @return index without windows or null if the object has no usable index
+     */
+    public GzipIndex lookup(final MantaObject object) {
+        final String indexPath = GzipIndex.sidecarPath(object.getPath());
+        final GzipIndex index;
+
+        try {
+            index = retryPolicy.execute(MantaRetryPolicy.Operation.OPEN, indexPath,
+                    () -> request(client -> readTable(client.getAsInputStream(indexPath))));
+        } catch (MantaClientHttpResponseException e) {
+            if (e.getStatusCode() != HttpStatus.SC_NOT_FOUND) {
+                LOG.warn("Unable to read gzip index [indexPath={}]", indexPath, e);
+            }
+
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Unable to read gzip index [indexPath={}]", indexPath, e);
+            return null;
+        }
+
+        if (!Objects.equals(index.getCompressedSize(), object.getContentLength())
+                || (object.getEtag() != null && !object.getEtag().equals(index.getEtag()))) {
+            LOG.debug("Ignoring gzip index built from a different version of object [indexPath={}]",
+                    indexPath);
+            return null;
+        }
+
+        return index;
+    }
+
+    private static GzipIndex readTable(final MantaObjectInputStream in) throws IOException {
+        try {
+            return GzipIndex.readTable(in);
+        } finally {
+            // The windows that follow the table aren't needed
+            in.abortConnection();
+            in.close();
+        }
+    }
+
+    /**
+     * Divides the decompressed data of an indexed object into ranges that
+     * each start at a checkpoint and cover at least the split size, except
+     * for the last range.
+     *
+     * @param index index of the object
+     * @param splitSize number of decompressed bytes read by each range
+     * @return ranges covering the whole object
+     */
+    static List<MantaSplitRange> ranges(final GzipIndex index, final long splitSize) {
+        final ImmutableList.Builder<MantaSplitRange> ranges = ImmutableList.builder();
+        GzipIndex.Checkpoint start = null;
+        long startOffset = 0L;
+
+        for (GzipIndex.Checkpoint checkpoint : index.getCheckpoints()) {
+            if (checkpoint.getUncompressedOffset() - startOffset >= splitSize) {
+                ranges.add(MantaSplitRange.of(start, checkpoint.getUncompressedOffset(), index.getEtag()));
+                start = checkpoint;
+                startOffset = checkpoint.getUncompressedOffset();
+            }
+        }
+
+        ranges.add(MantaSplitRange.of(start, index.getUncompressedSize(), index.getEtag()));
+
+        return ranges.build();
+    }
+
+    /**
+     * Divides the decompressed data of an indexed object into ranges using
+     * the configured split size.
+     *
+     * @param index index of the object
+     * @return ranges covering the whole object
+     */
+    public List<MantaSplitRange> ranges(final GzipIndex index) {
+        return ranges(index, splitSize);
+    }
+
+    /**
+     * Reads the window of decompressed data that precedes the checkpoint a
+     * range starts at.
+     *
+     * @param objectPath path to the indexed object
+     * @param range range starting at a checkpoint
+     * @return decompressed data preceding the checkpoint
+     * @throws IOException thrown when the index can't be read
+     */
+    public byte[] readWindow(final String objectPath, final MantaSplitRange range) throws IOException {
+        if (!range.hasCheckpoint()) {
+            return new byte[0];
+        }
+
+        final String indexPath = GzipIndex.sidecarPath(objectPath);
+        final MantaHttpHeaders headers = new MantaHttpHeaders();
+        headers.setByteRange(range.getWindowOffset(), range.getWindowOffset() + range.getWindowLength() - 1);
+
+        final byte[] compressedWindow = retryPolicy.execute(MantaRetryPolicy.Operation.READ, indexPath,
+                () -> request(client -> {
+                    try (MantaObjectInputStream in = client.getAsInputStream(indexPath, headers)) {
+                        final byte[] bytes = new byte[range.getWindowLength()];
+                        ByteStreams.readFully(in, bytes);
+                        return bytes;
+                    }
+                }));
+
+        return GzipIndex.inflateWindow(compressedWindow);
+    }
+
+    /**
+     * Stores the index built while reading an object. Failures are logged
+     * rather than failing the query that read the object.
+     *
+     * @param objectPath path to the indexed object
+     * @param index index built from the object
+     */
+    public void upload(final String objectPath, final GzipIndex index) {
+        final String indexPath = GzipIndex.sidecarPath(objectPath);
+
+        try {
+            request(client -> client.put(indexPath, index.toByteArray()));
+            LOG.debug("Uploaded gzip index [indexPath={},checkpoints={}]",
+                    indexPath, index.getCheckpoints().size());
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to upload gzip index [indexPath={}]", indexPath, e);
+        }
+    }
+
+    private <T> T request(final MantaClientPool.ClientCall<T> call) throws IOException {
+        return limiter.execute(() -> clientPool.execute(call));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMinObjectSize() {
+        return minObjectSize;
+    }
+
+    public long getCheckpointSpacing() {
+        return checkpointSpacing;
+    }
+
+    public long getSplitSize() {
+        return splitSize;
+    }
+
+    /**
+     * @return true if indexes of unindexed objects are built when they are read
+     */
+    public boolean isBuildOnScan() {
+        return buildOnScan;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("minObjectSize", minObjectSize)
+                .append("checkpointSpacing", checkpointSpacing)
+                .append("splitSize", splitSize)
+                .append("buildOnScan", buildOnScan)
+                .toString();
+    }
+}
@@ -0,0 +1,566 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.joyent.manta.client.MantaObjectInputStream;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weakref.jmx.MBeanExporter;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connector-wide settings, latency history and threads used to hedge
+ * requests that open objects. When the first bytes of an object haven't
+ * arrived within a delay derived from a percentile of recently observed
+ * times to first byte, a second identical request is sent. Whichever request
+ * returns its first bytes first is used and the other is aborted.
+ *
+ * <p>Until enough latencies have been observed the maximum delay is used. The
+ * number of hedged requests, the number of times the hedged request won and
+ * the number of bytes read from discarded responses are exported as a JMX
+ * MBean named after the connector.</p>
+ *
+ * @since 1.0.0
+ */
+public class MantaHedging {
+    private static final Logger LOG = LoggerFactory.getLogger(MantaHedging.class);
+
+    /**
+     * Default percentile of observed times to first byte used as the delay.
+     */
+    public static final double DEFAULT_PERCENTILE = 95.0;
+
+    /**
+     * Default lower bound in milliseconds of the delay before hedging.
+     */
+    public static final long DEFAULT_MIN_DELAY_MILLIS = 20L;
+
+    /**
+     * Default upper bound in milliseconds of the delay before hedging.
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2_000L;
+
+    /**
+     * Number of most recent times to first byte that the delay is derived from.
+     */
+    static final int LATENCY_SAMPLES = 1_024;
+
+    /**
+     * Number of times to first byte that must be observed before the
+     * percentile is used instead of the maximum delay.
+     */
+    static final int MIN_LATENCY_SAMPLES = 32;
+
+    /**
+     * Maximum number of bytes read when waiting for the first bytes of a response.
+     */
+    static final int FIRST_BYTES_SIZE = 4_096;
+
+    private static final double MAX_PERCENTILE = 100.0;
+
+    private static final MantaHedging DISABLED = new MantaHedging(false, DEFAULT_PERCENTILE,
+            DEFAULT_MIN_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, null);
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final String objectName;
+    private final ExecutorService executor;
+
+    /**
+     * Ring of the most recent times to first byte in nanoseconds.
+     */
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+
+    /**
+     * Total number of times to first byte recorded in {@link #latencies}.
+     */
+    private long latencyCount = 0L;
+
+    private final LongAdder opens = new LongAdder();
+    private final LongAdder hedgedRequests = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder wastedBytes = new LongAdder();
+
+    private MBeanExporter exporter;
+
+    /**
+     * Operation that opens an object.
+     */
+    @FunctionalInterface
+    public interface Opener {
+        /**
+         * Sends a request for an object.
+         *
+         * @return stream of the response
+         * @throws IOException thrown when the request fails
+         */
+        MantaObjectInputStream open() throws IOException;
+    }
+
+    /**
+     * Creates a new instance that isn't associated with a connector.
+     *
+     * @param enabled true to hedge requests
+     * @param percentile percentile of observed times to first byte used as the delay
+     * @param minDelayMillis lower bound in milliseconds of the delay before hedging
+     * @param maxDelayMillis upper bound in milliseconds of the delay before hedging
+     */
+    public MantaHedging(final boolean enabled,
+                        final double percentile,
+                        final long minDelayMillis,
+                        final long maxDelayMillis) {
+        this(enabled, percentile, minDelayMillis, maxDelayMillis, null);
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param enabled true to hedge requests
+     * @param percentile percentile of observed times to first byte used as the delay
+     * @param minDelayMillis lower bound in milliseconds of the delay before hedging
+     * @param maxDelayMillis upper bound in milliseconds of the delay before hedging
+     * @param connectorId connector id used to name the exported MBean
+     */
+    @Inject
+    public MantaHedging(@Named("HedgeEnabled") final boolean enabled,
+                        @Named("HedgePercentile") final double percentile,
+                        @Named("HedgeMinDelayMillis") final long minDelayMillis,
+                        @Named("HedgeMaxDelayMillis") final long maxDelayMillis,
+                        final MantaConnectorId connectorId) {
+        if (percentile <= 0.0 || percentile > MAX_PERCENTILE) {
+            String msg = String.format("Hedge percentile must be greater than 0 and at most 100 "
+                    + "[percentile=%s]", percentile);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (minDelayMillis < 0L || maxDelayMillis < minDelayMillis) {
+            String msg = String.format("Invalid hedge delays [minDelayMillis=%d,maxDelayMillis=%d]",
+                    minDelayMillis, maxDelayMillis);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+
+        if (connectorId == null) {
+            this.objectName = null;
+        } else {
+            this.objectName = MantaMBeans.objectName(MantaHedging.class, connectorId);
+        }
+
+        if (enabled) {
+            this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                    .setNameFormat("manta-hedge-%d")
+                    .setDaemon(true)
+                    .build());
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * @return an instance that never hedges requests
+     */
+    public static MantaHedging disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @return true if requests are hedged
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Exports this instance to the platform MBean server.
+     */
+    @PostConstruct
+    public synchronized void export() {
+        if (objectName != null && exporter == null) {
+            exporter = MantaMBeans.export(objectName, this);
+        }
+    }
+
+    /**
+     * Stops all background threads and removes this instance from the
+     * platform MBean server.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+
+        MantaMBeans.unexport(exporter, objectName);
+        exporter = null;
+    }
+
+    /**
+     * Opens an object, sending a second request when the first bytes of the
+     * first request take longer than the hedge delay to arrive.
+     *
+     * @param path path of the object being opened, used for logging
+     * @param opener operation sending a request for the object
+     * @return stream of the first response to return its first bytes
+     * @throws IOException thrown when every request sent fails
+     */
+    public MantaObjectInputStream open(final String path, final Opener opener) throws IOException {
+        if (!enabled) {
+            return opener.open();
+        }
+
+        opens.increment();
+
+        final CompletionService<MantaObjectInputStream> completion =
+                new ExecutorCompletionService<>(executor);
+        final Attempt primary = new Attempt(opener);
+        final Future<MantaObjectInputStream> primaryFuture = completion.submit(primary);
+        Attempt hedge = null;
+
+        try {
+            Future<MantaObjectInputStream> done = completion.poll(hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+
+            if (done == null) {
+                hedgedRequests.increment();
+                LOG.debug("Hedging request that hasn't returned its first bytes [objectPath={}]", path);
+
+                hedge = new Attempt(opener);
+                completion.submit(hedge);
+                done = completion.take();
+
+                if (failed(done)) {
+                    done = completion.take();
+                }
+            }
+
+            final MantaObjectInputStream in = done.get();
+
+            if (hedge != null) {
+                if (done == primaryFuture) {
+                    hedge.discard();
+                } else {
+                    hedgeWins.increment();
+                    primary.discard();
+                }
+            }
+
+            return in;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            discard(primary, hedge);
+            throw new InterruptedIOException("Interrupted while waiting for object to open");
+        } catch (ExecutionException e) {
+            discard(primary, hedge);
+            Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IOException("Unable to open object", e.getCause());
+        }
+    }
+
+    private static boolean failed(final Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    private static void discard(final Attempt primary, final Attempt hedge) {
+        primary.discard();
+
+        if (hedge != null) {
+            hedge.discard();
+        }
+    }
+
+    /**
+     * Calculates how long to wait for the first bytes of a response before
+     * sending a hedged request.
+     *
+     * @return delay in nanoseconds
+     */
+    synchronized long hedgeDelayNanos() {
+        if (latencyCount < MIN_LATENCY_SAMPLES) {
+            return maxDelayNanos;
+        }
+
+        final int count = (int) Math.min(latencyCount, LATENCY_SAMPLES);
+        final long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+
+        final int index = (int) Math.ceil(percentile / MAX_PERCENTILE * count) - 1;
+        final long delay = sorted[Math.max(index, 0)];
+
+        return Math.min(Math.max(delay, minDelayNanos), maxDelayNanos);
+    }
+
+    /**
+     * Records the time it took for the first bytes of a response to arrive.
+     *
+     * @param nanos time to first byte in nanoseconds
+     */
+    synchronized void recordLatency(final long nanos) {
+        latencies[(int) (latencyCount % LATENCY_SAMPLES)] = nanos;
+        latencyCount++;
+    }
+
+    /**
+     * Aborts a response that won't be read and counts the bytes already read from it.
+     *
+     * @param in response to abort
+     */
+    private void abort(final FirstBytesInputStream in) {
+        wastedBytes.add(in.getFirstBytesLength());
+
+        try {
+            in.abortConnection();
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Unable to abort discarded response [objectPath={}]", in.getPath(), e);
+        }
+
+        try {
+            in.close();
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Unable to close discarded response [objectPath={}]", in.getPath(), e);
+        }
+    }
+
+    /**
+     * @return number of object opens that were eligible for hedging
+     */
+    @Managed
+    public long getOpens() {
+        return opens.sum();
+    }
+
+    /**
+     * @return number of hedged requests sent
+     */
+    @Managed
+    public long getHedgedRequests() {
+        return hedgedRequests.sum();
+    }
+
+    /**
+     * @return fraction of object opens that sent a hedged request
+     */
+    @Managed
+    public double getHedgeRate() {
+        final long total = getOpens();
+
+        if (total == 0L) {
+            return 0.0;
+        }
+
+        return (double) getHedgedRequests() / total;
+    }
+
+    /**
+     * @return number of times the hedged request returned its first bytes first
+     */
+    @Managed
+    public long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * @return number of bytes read from responses that were discarded
+     */
+    @Managed
+    public long getWastedBytes() {
+        return wastedBytes.sum();
+    }
+
+    /**
+     * @return current delay in milliseconds before a request is hedged
+     */
+    @Managed
+    public long getHedgeDelayMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos());
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("percentile", percentile)
+                .append("minDelayNanos", minDelayNanos)
+                .append("maxDelayNanos", maxDelayNanos)
+                .toString();
+    }
+
+    /**
+     * Single request for an object that can be discarded at any time. A
+     * response that arrives after its attempt was discarded is aborted.
+     */
+    private final class Attempt implements Callable<MantaObjectInputStream> {
+        private final Opener opener;
+        private boolean discarded = false;
+        private FirstBytesInputStream result;
+
+        private Attempt(final Opener opener) {
+            this.opener = opener;
+        }
+
+        @Override
+        public MantaObjectInputStream call() throws IOException {
+            synchronized (this) {
+                if (discarded) {
+                    return null;
+                }
+            }
+
+            final long start = System.nanoTime();
+            final FirstBytesInputStream in = FirstBytesInputStream.read(opener.open());
+            recordLatency(System.nanoTime() - start);
+
+            synchronized (this) {
+                if (!discarded) {
+                    result = in;
+                    return in;
+                }
+            }
+
+            abort(in);
+            return null;
+        }
+
+        private void discard() {
+            final FirstBytesInputStream in;
+
+            synchronized (this) {
+                discarded = true;
+                in = result;
+                result = null;
+            }
+
+            if (in != null) {
+                abort(in);
+            }
+        }
+    }
+
+    /**
+     * Object stream that has already read the first bytes of the response
+     * and returns them before the rest of the response.
+     */
+    private static final class FirstBytesInputStream extends MantaObjectInputStream {
+        private final byte[] firstBytes;
+        private int position = 0;
+
+        private FirstBytesInputStream(final MantaObjectInputStream in, final byte[] firstBytes) {
+            super(in);
+            this.firstBytes = firstBytes;
+        }
+
+        /**
+         * Waits for the first bytes of a response.
+         *
+         * @param in response to read from
+         * @return stream returning every byte of the response
+         * @throws IOException thrown when the first bytes can't be read
+         */
+        private static FirstBytesInputStream read(final MantaObjectInputStream in) throws IOException {
+            final byte[] buffer = new byte[FIRST_BYTES_SIZE];
+            final int read;
+
+            try {
+                read = in.read(buffer);
+            } catch (IOException | RuntimeException e) {
+                try {
+                    in.abortConnection();
+                } catch (IOException ae) {
+                    e.addSuppressed(ae);
+                }
+
+                throw e;
+            }
+
+            return new FirstBytesInputStream(in, Arrays.copyOf(buffer, Math.max(read, 0)));
+        }
+
+        private int getFirstBytesLength() {
+            return firstBytes.length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position < firstBytes.length) {
+                return Byte.toUnsignedInt(firstBytes[position++]);
+            }
+
+            return super.read();
+        }
+
+        @Override
+        public int read(final byte[] b) throws IOException {
+            return read(b, 0, b.length);
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (position < firstBytes.length && len > 0) {
+                final int n = Math.min(len, firstBytes.length - position);
+                System.arraycopy(firstBytes, position, b, off, n);
+                position += n;
+                return n;
+            }
+
+            return super.read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (position < firstBytes.length) {
+                return firstBytes.length - position;
+            }
+
+            return super.available();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void mark(final int readlimit) {
+        }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("Mark isn't supported");
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link InputStream} that limits a stream of newline delimited data to the
+ * lines owned by a range of bytes, so that adjacent ranges of the same object
+ * can be read by different splits without reading a line twice or missing
+ * one. A range owns each line whose preceding newline falls within the
+ * range, and the range at the start of the object also owns the first line.
+ * The bytes before the first owned line are skipped and the last owned line
+ * is read to its end, even when it ends after the range.
+ *
+ * <p>When the length of the range isn't known in advance, such as for a
+ * range of compressed blocks, the range is read from one stream and the
+ * bytes that follow it are opened as a second stream once the first ends.</p>
+ *
+ * @since 1.0.0
+ */
+public class MantaLineRangeInputStream extends InputStream {
+    private static final int BUFFER_SIZE = 65_536;
+    private static final int BYTE_MASK = 0xFF;
+
+    private final MantaBufferPool bufferPool;
+    private final InputStream owned;
+    private FollowingOpener following;
+    private InputStream followingStream;
+
+    /**
+     * Stream currently being read, either the stream of the range or the
+     * stream of the bytes that follow it.
+     */
+    private InputStream in;
+
+    /**
+     * Number of bytes in the range, unknown until the first stream ends when
+     * a following stream is used.
+     */
+    private long length;
+
+    private byte[] buffer;
+    private int bufferPosition = 0;
+    private int bufferLength = 0;
+
+    /**
+     * Number of bytes read from the start of the range.
+     */
+    private long position = 0L;
+    private boolean skipFirstLine;
+    private boolean done = false;
+
+    /**
+     * Opens the stream of the bytes that follow a range.
+     */
+    @FunctionalInterface
+    public interface FollowingOpener {
+        /**
+         * Opens the stream.
+         *
+         * @return stream positioned at the first byte after the range
+         * @throws IOException thrown when the stream can't be opened
+         */
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Creates a new instance for a range of known length.
+     *
+     * @param in stream positioned at the start of the range that continues past its end
+     * @param startOfObject true if the range starts at the first byte of the object
+     * @param length number of bytes in the range
+     * @param bufferPool pool that buffers are borrowed from
+     */
+    public MantaLineRangeInputStream(final InputStream in,
+                                     final boolean startOfObject,
+                                     final long length,
+                                     final MantaBufferPool bufferPool) {
+        this(in, null, startOfObject, length, bufferPool);
+
+        if (length < 0L) {
+            throw new IllegalArgumentException("Range length must not be negative");
+        }
+    }
+
+    /**
+     * Creates a new instance for a range whose length is known once the
+     * stream of the range ends.
+     *
+     * @param in stream of the bytes in the range
+     * @param following opens the stream of the bytes after the range
+     * @param startOfObject true if the range starts at the first byte of the object
+     * @param bufferPool pool that buffers are borrowed from
+     */
+    public MantaLineRangeInputStream(final InputStream in,
+                                     final FollowingOpener following,
+                                     final boolean startOfObject,
+                                     final MantaBufferPool bufferPool) {
+        this(in, requireNonNull(following, "Following stream opener is null"),
+                startOfObject, Long.MAX_VALUE, bufferPool);
+    }
+
+    private MantaLineRangeInputStream(final InputStream in,
+                                      final FollowingOpener following,
+                                      final boolean startOfObject,
+                                      final long length,
+                                      final MantaBufferPool bufferPool) {
+        this.owned = requireNonNull(in, "Input stream is null");
+        this.in = owned;
+        this.following = following;
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+        this.length = length;
+        this.skipFirstLine = !startOfObject;
+        this.buffer = bufferPool.borrowArray(BUFFER_SIZE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+
+        if (read(single, 0, 1) < 0) {
+            return -1;
+        }
+
+        return single[0] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (skipFirstLine) {
+            skipFirstLine = false;
+            skipLine();
+        }
+
+        if (done || !fill()) {
+            done = true;
+            return -1;
+        }
+
+        int count = Math.min(len, bufferLength - bufferPosition);
+
+        // Only a newline within the range can precede an owned line
+        final int from = (int) Math.max(0L, Math.min(count, length - position));
+
+        for (int i = from; i < count; i++) {
+            if (buffer[bufferPosition + i] == '\n') {
+                count = i + 1;
+                done = true;
+                break;
+            }
+        }
+
+        System.arraycopy(buffer, bufferPosition, b, off, count);
+        bufferPosition += count;
+        position += count;
+
+        return count;
+    }
+
+    /**
+     * Discards the bytes up to and including the first newline. Nothing more
+     * is read when that newline is after the range.
+     *
+     * @throws IOException thrown when the underlying stream can't be read
+     */
+    private void skipLine() throws IOException {
+        while (fill()) {
+            for (int i = bufferPosition; i < bufferLength; i++) {
+                if (buffer[i] == '\n') {
+                    position += i + 1 - bufferPosition;
+                    bufferPosition = i + 1;
+                    done = position > length;
+                    return;
+                }
+            }
+
+            position += bufferLength - bufferPosition;
+            bufferPosition = bufferLength;
+        }
+
+        done = true;
+    }
+
+    private boolean fill() throws IOException {
+        if (bufferPosition < bufferLength) {
+            return true;
+        }
+
+        bufferPosition = 0;
+        bufferLength = 0;
+
+        int read = 0;
+
+        while (read == 0) {
+            read = in.read(buffer, 0, buffer.length);
+
+            if (read < 0 && following != null) {
+                length = position;
+                followingStream = following.open();
+                following = null;
+                in = followingStream;
+                read = 0;
+            }
+        }
+
+        if (read < 0) {
+            return false;
+        }
+
+        bufferLength = read;
+
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+
+        try {
+            if (followingStream != null) {
+                followingStream.close();
+            }
+        } finally {
+            try {
+                owned.close();
+            } finally {
+                bufferPool.returnArray(buffer);
+                buffer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.weakref.jmx.JmxException;
+import org.weakref.jmx.MBeanExporter;
+
+/**
+ * Utility methods for exporting connector metrics as JMX MBeans on the
+ * platform MBean server. Failures are only logged because metrics must never
+ * prevent the connector from starting or stopping.
+ *
+ * @since 1.0.0
+ */
+final class MantaMBeans {
+    private static final Logger LOG = LoggerFactory.getLogger(MantaMBeans.class);
+
+    /**
+     * Private constructor for utility class.
+     */
+    private MantaMBeans() {
+    }
+
+    /**
+     * Builds the object name of a connector MBean.
+     *
+     * @param type simple name of the class being exported
+     * @param connectorId id of the connector the MBean belongs to
+     * @return JMX object name
+     */
+    static String objectName(final Class<?> type, final MantaConnectorId connectorId) {
+        return String.format("com.joyent.manta.presto:type=%s,name=%s",
+                type.getSimpleName(), connectorId);
+    }
+
+    /**
+     * Exports an object annotated with <code>@Managed</code> attributes.
+     *
+     * @param objectName JMX object name to export as
+     * @param bean object to export
+     * @return exporter used, which must be passed to {@link #unexport(MBeanExporter, String)},
+     *         or null if the object couldn't be exported
+     */
+    static MBeanExporter export(final String objectName, final Object bean) {
+        try {
+            final MBeanExporter exporter = MBeanExporter.withPlatformMBeanServer();
+            exporter.export(objectName, bean);
+            return exporter;
+        } catch (JmxException e) {
+            LOG.warn("Unable to export MBean [objectName={}]", objectName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Removes a previously exported object.
+     *
+     * @param exporter exporter returned when the object was exported, may be null
+     * @param objectName JMX object name the object was exported as
+     */
+    static void unexport(final MBeanExporter exporter, final String objectName) {
+        if (exporter == null) {
+            return;
+        }
+
+        try {
+            exporter.unexport(objectName);
+        } catch (JmxException e) {
+            LOG.warn("Unable to unexport MBean [objectName={}]", objectName, e);
+        }
+    }
+}
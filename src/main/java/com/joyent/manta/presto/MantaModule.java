@@ -11,6 +11,8 @@ import com.facebook.presto.spi.connector.ConnectorAccessControl;
 import com.facebook.presto.spi.type.TypeManager;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.inject.Binder;
 import com.google.inject.Module;
@@ -25,6 +27,7 @@ import com.joyent.manta.config.EnvVarConfigContext;
 import com.joyent.manta.config.MapConfigContext;
 import com.joyent.manta.presto.column.PredefinedColumnLister;
 import com.joyent.manta.presto.column.RedirectingColumnLister;
+import com.joyent.manta.presto.compression.ZstdDictionaries;
 import com.joyent.manta.presto.record.json.MantaJsonDataFileObjectMapperProvider;
 import com.joyent.manta.presto.record.json.MantaJsonFileColumnLister;
 import com.joyent.manta.presto.record.telegraf.MantaTelegrafColumnLister;
@@ -37,6 +40,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.joyent.manta.client.MantaClient.SEPARATOR;
@@ -60,11 +64,142 @@ public class MantaModule implements Module {
 
     private static final String MAX_BYTES_PER_LINE_KEY = "manta.max_bytes_per_line";
 
+    private static final String RETRY_MAX_ATTEMPTS_KEY = "manta.retry.max_attempts";
+
+    private static final String RETRY_INITIAL_DELAY_KEY = "manta.retry.initial_delay_ms";
+
+    private static final String RETRY_MAX_DELAY_KEY = "manta.retry.max_delay_ms";
+
+    private static final String READ_AHEAD_BUFFER_COUNT_KEY = "manta.read_ahead.buffer_count";
+
+    private static final String READ_AHEAD_BUFFER_SIZE_KEY = "manta.read_ahead.buffer_size";
+
+    private static final String READ_AHEAD_THREADS_KEY = "manta.read_ahead.threads";
+
+    private static final String BUFFER_POOL_MAX_HEAP_BYTES_KEY = "manta.buffer_pool.max_heap_bytes";
+
+    private static final String BUFFER_POOL_MAX_DIRECT_BYTES_KEY = "manta.buffer_pool.max_direct_bytes";
+
+    private static final String BUFFER_POOL_MAX_INFLATERS_KEY = "manta.buffer_pool.max_inflaters";
+
+    private static final String PARALLEL_DOWNLOAD_CONCURRENCY_KEY = "manta.parallel_download.concurrency";
+
+    private static final String PARALLEL_DOWNLOAD_CHUNK_SIZE_KEY = "manta.parallel_download.chunk_size";
+
+    private static final String PARALLEL_DOWNLOAD_MIN_OBJECT_SIZE_KEY = "manta.parallel_download.min_object_size";
+
+    private static final String SPLIT_MAX_OBJECTS_KEY = "manta.split.max_objects";
+
+    private static final String SPLIT_MAX_BYTES_KEY = "manta.split.max_bytes";
+
+    private static final String PREFETCH_ENABLED_KEY = "manta.prefetch.enabled";
+
+    private static final String HEDGE_ENABLED_KEY = "manta.hedge.enabled";
+
+    private static final String HEDGE_PERCENTILE_KEY = "manta.hedge.percentile";
+
+    private static final String HEDGE_MIN_DELAY_KEY = "manta.hedge.min_delay_ms";
+
+    private static final String HEDGE_MAX_DELAY_KEY = "manta.hedge.max_delay_ms";
+
+    private static final String LIMITER_ENABLED_KEY = "manta.limiter.enabled";
+
+    private static final String LIMITER_INITIAL_LIMIT_KEY = "manta.limiter.initial_limit";
+
+    private static final String LIMITER_MIN_LIMIT_KEY = "manta.limiter.min_limit";
+
+    private static final String LIMITER_MAX_LIMIT_KEY = "manta.limiter.max_limit";
+
+    private static final String LIMITER_LATENCY_THRESHOLD_KEY = "manta.limiter.latency_threshold_ms";
+
+    private static final String CLIENT_POOL_SIZE_KEY = "manta.client_pool.size";
+
+    private static final String CLIENT_POOL_URLS_KEY = "manta.client_pool.urls";
+
+    private static final String GZIP_INDEX_ENABLED_KEY = "manta.gzip_index.enabled";
+
+    private static final String GZIP_INDEX_MIN_OBJECT_SIZE_KEY = "manta.gzip_index.min_object_size";
+
+    private static final String GZIP_INDEX_CHECKPOINT_SPACING_KEY = "manta.gzip_index.checkpoint_spacing";
+
+    private static final String GZIP_INDEX_SPLIT_SIZE_KEY = "manta.gzip_index.split_size";
+
+    private static final String GZIP_INDEX_BUILD_ON_SCAN_KEY = "manta.gzip_index.build_on_scan";
+
+    private static final String BLOCK_SPLIT_ENABLED_KEY = "manta.block_split.enabled";
+
+    private static final String BLOCK_SPLIT_MIN_OBJECT_SIZE_KEY = "manta.block_split.min_object_size";
+
+    private static final String BLOCK_SPLIT_SIZE_KEY = "manta.block_split.split_size";
+
+    private static final String PARALLEL_DECOMPRESSION_ENABLED_KEY = "manta.parallel_decompression.enabled";
+
+    private static final String PARALLEL_DECOMPRESSION_THREADS_KEY = "manta.parallel_decompression.threads";
+
+    private static final String PARALLEL_DECOMPRESSION_MAX_PENDING_UNITS_KEY =
+            "manta.parallel_decompression.max_pending_units";
+
+    private static final String ZSTD_DICTIONARY_PATHS_KEY = "manta.zstd.dictionary_paths";
+
+    private static final String COMPRESSION_ESTIMATE_TRAILER_MIN_OBJECT_SIZE_KEY =
+            "manta.compression_estimate.trailer_min_object_size";
+
+    /**
+     * Disabled by default because plain gzip objects that record resume
+     * points are decompressed by a pure Java inflater instead of the JDK's,
+     * which slows down every large gzip scan to speed up rare retries.
+     */
+    private static final String RESUME_CHECKPOINT_ENABLED_KEY = "manta.resume_checkpoint.enabled";
+    private static final String RESUME_CHECKPOINT_MIN_OBJECT_SIZE_KEY = "manta.resume_checkpoint.min_object_size";
+    private static final String RESUME_CHECKPOINT_SPACING_KEY = "manta.resume_checkpoint.spacing";
+
     private final String connectorId;
     private final TypeManager typeManager;
     private final ConfigContext config;
     private final Map<String, String> schemaMapping = new HashMap<>();
     private final Integer maxBytesPerLine;
+    private final int retryMaxAttempts;
+    private final long retryInitialDelayMillis;
+    private final long retryMaxDelayMillis;
+    private final int readAheadBufferCount;
+    private final int readAheadBufferSize;
+    private final int readAheadThreads;
+    private final long bufferPoolMaxHeapBytes;
+    private final long bufferPoolMaxDirectBytes;
+    private final int bufferPoolMaxInflaters;
+    private final int parallelDownloadConcurrency;
+    private final int parallelDownloadChunkSize;
+    private final long parallelDownloadMinObjectSize;
+    private final int splitMaxObjects;
+    private final long splitMaxBytes;
+    private final boolean prefetchEnabled;
+    private final boolean hedgeEnabled;
+    private final double hedgePercentile;
+    private final long hedgeMinDelayMillis;
+    private final long hedgeMaxDelayMillis;
+    private final boolean limiterEnabled;
+    private final int limiterInitialLimit;
+    private final int limiterMinLimit;
+    private final int limiterMaxLimit;
+    private final long limiterLatencyThresholdMillis;
+    private final int clientPoolSize;
+    private final List<String> clientPoolUrls;
+    private final boolean gzipIndexEnabled;
+    private final long gzipIndexMinObjectSize;
+    private final long gzipIndexCheckpointSpacing;
+    private final long gzipIndexSplitSize;
+    private final boolean gzipIndexBuildOnScan;
+    private final boolean blockSplitEnabled;
+    private final long blockSplitMinObjectSize;
+    private final long blockSplitSize;
+    private final boolean parallelDecompressionEnabled;
+    private final int parallelDecompressionThreads;
+    private final int parallelDecompressionMaxPendingUnits;
+    private final List<String> zstdDictionaryPaths;
+    private final long compressionEstimateTrailerMinObjectSize;
+    private final boolean resumeCheckpointEnabled;
+    private final long resumeCheckpointMinObjectSize;
+    private final long resumeCheckpointSpacing;
 
     /**
      * Creates a new instance with the specified parameters.
@@ -90,6 +225,88 @@ public class MantaModule implements Module {
             maxBytesPerLine = DEFAULT_MAX_BYTES_PER_LINE;
         }
 
+        this.retryMaxAttempts = Integer.parseInt(configParams.getOrDefault(RETRY_MAX_ATTEMPTS_KEY,
+                String.valueOf(MantaRetryPolicy.DEFAULT_MAX_ATTEMPTS)));
+        this.retryInitialDelayMillis = Long.parseLong(configParams.getOrDefault(RETRY_INITIAL_DELAY_KEY,
+                String.valueOf(MantaRetryPolicy.DEFAULT_INITIAL_DELAY_MILLIS)));
+        this.retryMaxDelayMillis = Long.parseLong(configParams.getOrDefault(RETRY_MAX_DELAY_KEY,
+                String.valueOf(MantaRetryPolicy.DEFAULT_MAX_DELAY_MILLIS)));
+        this.readAheadBufferCount = Integer.parseInt(configParams.getOrDefault(READ_AHEAD_BUFFER_COUNT_KEY,
+                String.valueOf(MantaReadAhead.DEFAULT_BUFFER_COUNT)));
+        this.readAheadBufferSize = Integer.parseInt(configParams.getOrDefault(READ_AHEAD_BUFFER_SIZE_KEY,
+                String.valueOf(MantaReadAhead.DEFAULT_BUFFER_SIZE)));
+        this.readAheadThreads = Integer.parseInt(configParams.getOrDefault(READ_AHEAD_THREADS_KEY,
+                String.valueOf(MantaReadAhead.DEFAULT_THREADS)));
+        this.bufferPoolMaxHeapBytes = Long.parseLong(configParams.getOrDefault(BUFFER_POOL_MAX_HEAP_BYTES_KEY,
+                String.valueOf(MantaBufferPool.DEFAULT_MAX_HEAP_BYTES)));
+        this.bufferPoolMaxDirectBytes = Long.parseLong(configParams.getOrDefault(BUFFER_POOL_MAX_DIRECT_BYTES_KEY,
+                String.valueOf(MantaBufferPool.DEFAULT_MAX_DIRECT_BYTES)));
+        this.bufferPoolMaxInflaters = Integer.parseInt(configParams.getOrDefault(BUFFER_POOL_MAX_INFLATERS_KEY,
+                String.valueOf(MantaBufferPool.DEFAULT_MAX_INFLATERS)));
+        this.parallelDownloadConcurrency = Integer.parseInt(configParams.getOrDefault(
+                PARALLEL_DOWNLOAD_CONCURRENCY_KEY, String.valueOf(MantaParallelDownload.DEFAULT_CONCURRENCY)));
+        this.parallelDownloadChunkSize = Integer.parseInt(configParams.getOrDefault(
+                PARALLEL_DOWNLOAD_CHUNK_SIZE_KEY, String.valueOf(MantaParallelDownload.DEFAULT_CHUNK_SIZE)));
+        this.parallelDownloadMinObjectSize = Long.parseLong(configParams.getOrDefault(
+                PARALLEL_DOWNLOAD_MIN_OBJECT_SIZE_KEY, String.valueOf(MantaParallelDownload.DEFAULT_MIN_OBJECT_SIZE)));
+        this.splitMaxObjects = Integer.parseInt(configParams.getOrDefault(SPLIT_MAX_OBJECTS_KEY,
+                String.valueOf(MantaStreamingSplitSource.DEFAULT_MAX_OBJECTS_PER_SPLIT)));
+        this.splitMaxBytes = Long.parseLong(configParams.getOrDefault(SPLIT_MAX_BYTES_KEY,
+                String.valueOf(MantaStreamingSplitSource.DEFAULT_MAX_BYTES_PER_SPLIT)));
+        this.prefetchEnabled = Boolean.parseBoolean(configParams.getOrDefault(PREFETCH_ENABLED_KEY, "true"));
+        this.hedgeEnabled = Boolean.parseBoolean(configParams.getOrDefault(HEDGE_ENABLED_KEY, "false"));
+        this.hedgePercentile = Double.parseDouble(configParams.getOrDefault(HEDGE_PERCENTILE_KEY,
+                String.valueOf(MantaHedging.DEFAULT_PERCENTILE)));
+        this.hedgeMinDelayMillis = Long.parseLong(configParams.getOrDefault(HEDGE_MIN_DELAY_KEY,
+                String.valueOf(MantaHedging.DEFAULT_MIN_DELAY_MILLIS)));
+        this.hedgeMaxDelayMillis = Long.parseLong(configParams.getOrDefault(HEDGE_MAX_DELAY_KEY,
+                String.valueOf(MantaHedging.DEFAULT_MAX_DELAY_MILLIS)));
+        this.limiterEnabled = Boolean.parseBoolean(configParams.getOrDefault(LIMITER_ENABLED_KEY, "true"));
+        this.limiterInitialLimit = Integer.parseInt(configParams.getOrDefault(LIMITER_INITIAL_LIMIT_KEY,
+                String.valueOf(MantaConcurrencyLimiter.DEFAULT_INITIAL_LIMIT)));
+        this.limiterMinLimit = Integer.parseInt(configParams.getOrDefault(LIMITER_MIN_LIMIT_KEY,
+                String.valueOf(MantaConcurrencyLimiter.DEFAULT_MIN_LIMIT)));
+        this.limiterMaxLimit = Integer.parseInt(configParams.getOrDefault(LIMITER_MAX_LIMIT_KEY,
+                String.valueOf(MantaConcurrencyLimiter.DEFAULT_MAX_LIMIT)));
+        this.limiterLatencyThresholdMillis = Long.parseLong(configParams.getOrDefault(LIMITER_LATENCY_THRESHOLD_KEY,
+                String.valueOf(MantaConcurrencyLimiter.DEFAULT_LATENCY_THRESHOLD_MILLIS)));
+        this.clientPoolSize = Integer.parseInt(configParams.getOrDefault(CLIENT_POOL_SIZE_KEY,
+                String.valueOf(MantaClientPool.DEFAULT_SIZE)));
+        this.clientPoolUrls = ImmutableList.copyOf(Splitter.on(',').trimResults().omitEmptyStrings()
+                .split(configParams.getOrDefault(CLIENT_POOL_URLS_KEY, "")));
+        this.gzipIndexEnabled = Boolean.parseBoolean(configParams.getOrDefault(GZIP_INDEX_ENABLED_KEY, "true"));
+        this.gzipIndexMinObjectSize = Long.parseLong(configParams.getOrDefault(GZIP_INDEX_MIN_OBJECT_SIZE_KEY,
+                String.valueOf(MantaGzipIndexer.DEFAULT_MIN_OBJECT_SIZE)));
+        this.gzipIndexCheckpointSpacing = Long.parseLong(configParams.getOrDefault(GZIP_INDEX_CHECKPOINT_SPACING_KEY,
+                String.valueOf(MantaGzipIndexer.DEFAULT_CHECKPOINT_SPACING)));
+        this.gzipIndexSplitSize = Long.parseLong(configParams.getOrDefault(GZIP_INDEX_SPLIT_SIZE_KEY,
+                String.valueOf(MantaGzipIndexer.DEFAULT_SPLIT_SIZE)));
+        this.gzipIndexBuildOnScan = Boolean.parseBoolean(configParams.getOrDefault(GZIP_INDEX_BUILD_ON_SCAN_KEY,
+                "false"));
+        this.blockSplitEnabled = Boolean.parseBoolean(configParams.getOrDefault(BLOCK_SPLIT_ENABLED_KEY, "true"));
+        this.blockSplitMinObjectSize = Long.parseLong(configParams.getOrDefault(BLOCK_SPLIT_MIN_OBJECT_SIZE_KEY,
+                String.valueOf(MantaBlockSplitter.DEFAULT_MIN_OBJECT_SIZE)));
+        this.blockSplitSize = Long.parseLong(configParams.getOrDefault(BLOCK_SPLIT_SIZE_KEY,
+                String.valueOf(MantaBlockSplitter.DEFAULT_SPLIT_SIZE)));
+        this.parallelDecompressionEnabled = Boolean.parseBoolean(configParams.getOrDefault(
+                PARALLEL_DECOMPRESSION_ENABLED_KEY, "true"));
+        this.parallelDecompressionThreads = Integer.parseInt(configParams.getOrDefault(
+                PARALLEL_DECOMPRESSION_THREADS_KEY, String.valueOf(MantaParallelDecompression.DEFAULT_THREADS)));
+        this.parallelDecompressionMaxPendingUnits = Integer.parseInt(configParams.getOrDefault(
+                PARALLEL_DECOMPRESSION_MAX_PENDING_UNITS_KEY,
+                String.valueOf(MantaParallelDecompression.DEFAULT_MAX_PENDING_UNITS)));
+        this.zstdDictionaryPaths = ImmutableList.copyOf(Splitter.on(',').trimResults().omitEmptyStrings()
+                .split(configParams.getOrDefault(ZSTD_DICTIONARY_PATHS_KEY, "")));
+        this.compressionEstimateTrailerMinObjectSize = Long.parseLong(configParams.getOrDefault(
+                COMPRESSION_ESTIMATE_TRAILER_MIN_OBJECT_SIZE_KEY,
+                String.valueOf(MantaCompressionEstimator.DEFAULT_TRAILER_MIN_OBJECT_SIZE)));
+        this.resumeCheckpointEnabled = Boolean.parseBoolean(configParams.getOrDefault(
+                RESUME_CHECKPOINT_ENABLED_KEY, "false"));
+        this.resumeCheckpointMinObjectSize = Long.parseLong(configParams.getOrDefault(
+                RESUME_CHECKPOINT_MIN_OBJECT_SIZE_KEY, String.valueOf(MantaResumeCheckpoints.DEFAULT_MIN_OBJECT_SIZE)));
+        this.resumeCheckpointSpacing = Long.parseLong(configParams.getOrDefault(
+                RESUME_CHECKPOINT_SPACING_KEY, String.valueOf(MantaResumeCheckpoints.DEFAULT_SPACING)));
+
         LOG.debug("Manta Configuration: {}", this.config);
     }
 
@@ -168,10 +385,106 @@ public class MantaModule implements Module {
                 .annotatedWith(Names.named("SchemaMapping"))
                 .toInstance(ImmutableMap.copyOf(schemaMapping));
 
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("ClientPoolSize"))
+                .toInstance(clientPoolSize);
+
+        binder.bind(new TypeLiteral<List<String>>() { })
+                .annotatedWith(Names.named("ClientPoolUrls"))
+                .toInstance(clientPoolUrls);
+
         binder.bind(Integer.class)
                 .annotatedWith(Names.named("MaxBytesPerLine"))
                 .toInstance(maxBytesPerLine);
 
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("RetryMaxAttempts"))
+                .toInstance(retryMaxAttempts);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("RetryInitialDelayMillis"))
+                .toInstance(retryInitialDelayMillis);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("RetryMaxDelayMillis"))
+                .toInstance(retryMaxDelayMillis);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("ReadAheadBufferCount"))
+                .toInstance(readAheadBufferCount);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("ReadAheadBufferSize"))
+                .toInstance(readAheadBufferSize);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("ReadAheadThreads"))
+                .toInstance(readAheadThreads);
+
+        bindBufferPoolSettings(binder);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("ParallelDownloadConcurrency"))
+                .toInstance(parallelDownloadConcurrency);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("ParallelDownloadChunkSize"))
+                .toInstance(parallelDownloadChunkSize);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("ParallelDownloadMinObjectSize"))
+                .toInstance(parallelDownloadMinObjectSize);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("SplitMaxObjects"))
+                .toInstance(splitMaxObjects);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("SplitMaxBytes"))
+                .toInstance(splitMaxBytes);
+
+        binder.bind(Boolean.class)
+                .annotatedWith(Names.named("PrefetchEnabled"))
+                .toInstance(prefetchEnabled);
+
+        binder.bind(Boolean.class)
+                .annotatedWith(Names.named("HedgeEnabled"))
+                .toInstance(hedgeEnabled);
+
+        binder.bind(Double.class)
+                .annotatedWith(Names.named("HedgePercentile"))
+                .toInstance(hedgePercentile);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("HedgeMinDelayMillis"))
+                .toInstance(hedgeMinDelayMillis);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("HedgeMaxDelayMillis"))
+                .toInstance(hedgeMaxDelayMillis);
+
+        binder.bind(Boolean.class)
+                .annotatedWith(Names.named("LimiterEnabled"))
+                .toInstance(limiterEnabled);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("LimiterInitialLimit"))
+                .toInstance(limiterInitialLimit);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("LimiterMinLimit"))
+                .toInstance(limiterMinLimit);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("LimiterMaxLimit"))
+                .toInstance(limiterMaxLimit);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("LimiterLatencyThresholdMillis"))
+                .toInstance(limiterLatencyThresholdMillis);
+
+        bindCompressionSettings(binder);
+
         binder.bind(TypeManager.class).toInstance(typeManager);
 
         binder.bind(ObjectMapper.class)
@@ -180,6 +493,7 @@ public class MantaModule implements Module {
                 .in(Scopes.SINGLETON);
 
         binder.bind(ConfigContext.class).toInstance(this.config);
+        binder.bind(MantaClientPool.class).in(Scopes.SINGLETON);
         binder.bind(MantaClient.class).toProvider(MantaClientProvider.class).in(Scopes.SINGLETON);
         binder.bind(ConnectorAccessControl.class).to(MantaReadOnlyAccessControl.class).in(Scopes.SINGLETON);
         binder.bind(MantaConnector.class).in(Scopes.SINGLETON);
@@ -192,6 +506,20 @@ public class MantaModule implements Module {
         binder.bind(MantaMetadata.class).in(Scopes.SINGLETON);
         binder.bind(MantaSplitManager.class).in(Scopes.SINGLETON);
         binder.bind(MantaRecordSetProvider.class).in(Scopes.SINGLETON);
+        binder.bind(MantaRetryStats.class).in(Scopes.SINGLETON);
+        binder.bind(MantaRetryPolicy.class).in(Scopes.SINGLETON);
+        binder.bind(MantaBufferPool.class).in(Scopes.SINGLETON);
+        binder.bind(MantaReadAhead.class).in(Scopes.SINGLETON);
+        binder.bind(MantaParallelDownload.class).in(Scopes.SINGLETON);
+        binder.bind(MantaPrefetcher.class).in(Scopes.SINGLETON);
+        binder.bind(MantaHedging.class).in(Scopes.SINGLETON);
+        binder.bind(MantaConcurrencyLimiter.class).in(Scopes.SINGLETON);
+        binder.bind(MantaGzipIndexer.class).in(Scopes.SINGLETON);
+        binder.bind(MantaBlockSplitter.class).in(Scopes.SINGLETON);
+        binder.bind(ZstdDictionaries.class).in(Scopes.SINGLETON);
+        binder.bind(MantaParallelDecompression.class).in(Scopes.SINGLETON);
+        binder.bind(MantaCompressionEstimator.class).in(Scopes.SINGLETON);
+        binder.bind(MantaResumeCheckpoints.class).in(Scopes.SINGLETON);
 
         binder.requestStaticInjection(TypeUtils.class);
 
@@ -199,4 +527,95 @@ public class MantaModule implements Module {
         jsonBinder(binder).addDeserializerBinding(MantaLogicalTable.class)
                 .to(MantaLogicalTableDeserializer.class).in(Scopes.SINGLETON);
     }
+
+    /**
+     * Binds the bounds of the connector-wide buffer pool.
+     *
+     * @param binder binder to add the settings to
+     */
+    private void bindBufferPoolSettings(final Binder binder) {
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("BufferPoolMaxHeapBytes"))
+                .toInstance(bufferPoolMaxHeapBytes);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("BufferPoolMaxDirectBytes"))
+                .toInstance(bufferPoolMaxDirectBytes);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("BufferPoolMaxInflaters"))
+                .toInstance(bufferPoolMaxInflaters);
+    }
+
+    /**
+     * Binds the settings used to split, decompress and resume large compressed
+     * objects and to estimate their decompressed size.
+     *
+     * @param binder binder to add the settings to
+     */
+    private void bindCompressionSettings(final Binder binder) {
+        binder.bind(Boolean.class)
+                .annotatedWith(Names.named("GzipIndexEnabled"))
+                .toInstance(gzipIndexEnabled);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("GzipIndexMinObjectSize"))
+                .toInstance(gzipIndexMinObjectSize);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("GzipIndexCheckpointSpacing"))
+                .toInstance(gzipIndexCheckpointSpacing);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("GzipIndexSplitSize"))
+                .toInstance(gzipIndexSplitSize);
+
+        binder.bind(Boolean.class)
+                .annotatedWith(Names.named("GzipIndexBuildOnScan"))
+                .toInstance(gzipIndexBuildOnScan);
+
+        binder.bind(Boolean.class)
+                .annotatedWith(Names.named("BlockSplitEnabled"))
+                .toInstance(blockSplitEnabled);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("BlockSplitMinObjectSize"))
+                .toInstance(blockSplitMinObjectSize);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("BlockSplitSize"))
+                .toInstance(blockSplitSize);
+
+        binder.bind(Boolean.class)
+                .annotatedWith(Names.named("ParallelDecompressionEnabled"))
+                .toInstance(parallelDecompressionEnabled);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("ParallelDecompressionThreads"))
+                .toInstance(parallelDecompressionThreads);
+
+        binder.bind(new TypeLiteral<List<String>>() { })
+                .annotatedWith(Names.named("ZstdDictionaryPaths"))
+                .toInstance(zstdDictionaryPaths);
+
+        binder.bind(Integer.class)
+                .annotatedWith(Names.named("ParallelDecompressionMaxPendingUnits"))
+                .toInstance(parallelDecompressionMaxPendingUnits);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("CompressionEstimateTrailerMinObjectSize"))
+                .toInstance(compressionEstimateTrailerMinObjectSize);
+
+        binder.bind(Boolean.class)
+                .annotatedWith(Names.named("ResumeCheckpointEnabled"))
+                .toInstance(resumeCheckpointEnabled);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("ResumeCheckpointMinObjectSize"))
+                .toInstance(resumeCheckpointMinObjectSize);
+
+        binder.bind(Long.class)
+                .annotatedWith(Names.named("ResumeCheckpointSpacing"))
+                .toInstance(resumeCheckpointSpacing);
+    }
 }
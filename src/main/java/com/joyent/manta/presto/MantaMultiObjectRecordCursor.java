@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.facebook.presto.spi.RecordCursor;
+import com.facebook.presto.spi.type.Type;
+import io.airlift.slice.Slice;
+
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link RecordCursor} that reads the objects of a split one after another
+ * by opening a cursor for each object once the previous one is exhausted.
+ *
+ * @since 1.0.0
+ */
+public class MantaMultiObjectRecordCursor implements RecordCursor {
+    private final List<Type> columnTypes;
+    private final int objectCount;
+    private final IntFunction<RecordCursor> cursorOpener;
+    private final Runnable onClose;
+
+    /**
+     * Index of the object read by {@link #current}.
+     */
+    private int index = -1;
+    private RecordCursor current;
+
+    private long finishedCompletedBytes = 0L;
+    private long finishedReadTimeNanos = 0L;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param columnTypes types of the columns read
+     * @param objectCount number of objects to read
+     * @param cursorOpener function opening a cursor for the object at an index
+     * @param onClose action run when this cursor is closed
+     */
+    public MantaMultiObjectRecordCursor(final List<Type> columnTypes,
+                                        final int objectCount,
+                                        final IntFunction<RecordCursor> cursorOpener,
+                                        final Runnable onClose) {
+        this.columnTypes = requireNonNull(columnTypes, "Column types are null");
+        this.objectCount = objectCount;
+        this.cursorOpener = requireNonNull(cursorOpener, "Cursor opener is null");
+        this.onClose = requireNonNull(onClose, "Close action is null");
+    }
+
+    @Override
+    public long getCompletedBytes() {
+        if (current == null) {
+            return finishedCompletedBytes;
+        }
+
+        return finishedCompletedBytes + current.getCompletedBytes();
+    }
+
+    @Override
+    public long getReadTimeNanos() {
+        if (current == null) {
+            return finishedReadTimeNanos;
+        }
+
+        return finishedReadTimeNanos + current.getReadTimeNanos();
+    }
+
+    @Override
+    public Type getType(final int field) {
+        return columnTypes.get(field);
+    }
+
+    @Override
+    public boolean advanceNextPosition() {
+        while (true) {
+            if (current != null) {
+                if (current.advanceNextPosition()) {
+                    return true;
+                }
+
+                finishCurrent();
+            }
+
+            if (index + 1 >= objectCount) {
+                return false;
+            }
+
+            index++;
+            current = cursorOpener.apply(index);
+        }
+    }
+
+    private void finishCurrent() {
+        finishedCompletedBytes += current.getCompletedBytes();
+        finishedReadTimeNanos += current.getReadTimeNanos();
+        current.close();
+        current = null;
+    }
+
+    @Override
+    public boolean getBoolean(final int field) {
+        return current.getBoolean(field);
+    }
+
+    @Override
+    public long getLong(final int field) {
+        return current.getLong(field);
+    }
+
+    @Override
+    public double getDouble(final int field) {
+        return current.getDouble(field);
+    }
+
+    @Override
+    public Slice getSlice(final int field) {
+        return current.getSlice(field);
+    }
+
+    @Override
+    public Object getObject(final int field) {
+        return current.getObject(field);
+    }
+
+    @Override
+    public boolean isNull(final int field) {
+        return current.isNull(field);
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        } finally {
+            onClose.run();
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.joyent.manta.client.MantaObject;
+import com.joyent.manta.presto.compression.Bzip2BlockInputStream;
+import com.joyent.manta.presto.compression.GzipCheckpointInputStream;
+import com.joyent.manta.presto.compression.GzipIndex;
+import com.joyent.manta.presto.compression.GzipIndexingInputStream;
+import com.joyent.manta.presto.compression.MantaCompressionType;
+import com.joyent.manta.presto.compression.ParallelDecompressingInputStream;
+import com.joyent.manta.presto.compression.PooledGzipCompressorInputStream;
+import com.joyent.manta.presto.compression.ResumePoint;
+import com.joyent.manta.presto.compression.ZstdDictionaries;
+import com.joyent.manta.presto.exceptions.MantaPrestoUncheckedIOException;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Connector-wide settings and threads used to decompress a single bzip2 or
+ * BGZF object on several cores at once. Objects that can't be divided into
+ * several splits, or that are read by few splits, would otherwise be
+ * decompressed on a single core. Each stream has at most
+ * <code>maxPendingUnits</code> units of about one megabyte of compressed
+ * data being decompressed at a time, and the streams share a bounded set of
+ * threads.
+ *
+ * <p>Streams can also report the points from which decompression can be
+ * resumed part way through an object, and be resumed from them with a
+ * range request, so that a lost connection doesn't require the object to
+ * be read and decompressed again from its start.</p>
+ *
+ * @since 1.0.0
+ */
+public class MantaParallelDecompression {
+    /**
+     * Default number of units each stream decompresses ahead of the reader.
+     */
+    public static final int DEFAULT_MAX_PENDING_UNITS = 4;
+
+    /**
+     * Default number of threads shared by all streams.
+     */
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Seconds after which an idle thread is stopped.
+     */
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 60L;
+
+    private static final MantaParallelDecompression DISABLED = new MantaParallelDecompression(
+            false, DEFAULT_THREADS, DEFAULT_MAX_PENDING_UNITS);
+
+    private final boolean enabled;
+    private final int threads;
+    private final int maxPendingUnits;
+    private final ZstdDictionaries zstdDictionaries;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param enabled true to decompress bzip2 and BGZF objects on several threads
+     * @param threads maximum number of threads shared by all streams
+     * @param maxPendingUnits number of units each stream decompresses ahead of the reader
+     */
+    public MantaParallelDecompression(final boolean enabled,
+                                      final int threads,
+                                      final int maxPendingUnits) {
+        this(enabled, threads, maxPendingUnits, ZstdDictionaries.none());
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param enabled true to decompress bzip2 and BGZF objects on several threads
+     * @param threads maximum number of threads shared by all streams
+     * @param maxPendingUnits number of units each stream decompresses ahead of the reader
+     * @param zstdDictionaries dictionaries that Zstandard frames may be compressed with
+     */
+    @Inject
+    public MantaParallelDecompression(@Named("ParallelDecompressionEnabled") final boolean enabled,
+                                      @Named("ParallelDecompressionThreads") final int threads,
+                                      @Named("ParallelDecompressionMaxPendingUnits") final int maxPendingUnits,
+                                      final ZstdDictionaries zstdDictionaries) {
+        if (threads < 1 || maxPendingUnits < 1) {
+            throw new IllegalArgumentException(
+                    "Parallel decompression threads and pending units must be greater than zero");
+        }
+
+        this.enabled = enabled;
+        this.threads = threads;
+        this.maxPendingUnits = maxPendingUnits;
+        this.zstdDictionaries = requireNonNull(zstdDictionaries, "Zstandard dictionaries are null");
+
+        if (enabled) {
+            this.executor = new ThreadPoolExecutor(threads, threads,
+                    THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("manta-decompress-%d")
+                            .setDaemon(true)
+                            .build());
+            this.executor.allowCoreThreadTimeOut(true);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * @return an instance that always decompresses on the reading thread
+     */
+    public static MantaParallelDecompression disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Wraps a stream of an object with a decompressing stream chosen by the
+     * object's extension, headers or magic number. Bzip2 objects and gzip
+     * objects in the BGZF format are decompressed on several threads.
+     *
+     * @param object Manta object to derive path and header information from
+     * @param in stream positioned at the start of the object
+     * @param bufferPool pool that decompression buffers are borrowed from
+     * @return decompressing stream or a stream of the object's data if it isn't compressed
+     */
+    public InputStream wrap(final MantaObject object,
+                            final InputStream in,
+                            final MantaBufferPool bufferPool) {
+        final PushbackInputStream peekable = peekable(in);
+        final MantaCompressionType type;
+
+        try {
+            type = MantaCompressionType.detect(object, peekable);
+        } catch (IOException e) {
+            String msg = "Unable to read the first bytes of the object";
+            MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
+            me.addContextValue("objectPath", object.getPath());
+            throw me;
+        }
+
+        return wrap(type, peekable, bufferPool);
+    }
+
+    /**
+     * Creates a stream that the first bytes of an object can be peeked from
+     * by {@link MantaCompressionType#detect(MantaObject, PushbackInputStream)}
+     * and by {@link #wrap(MantaCompressionType, PushbackInputStream, MantaBufferPool)}.
+     *
+     * @param in stream positioned at the start of the object
+     * @return stream able to push back the bytes peeked
+     */
+    public static PushbackInputStream peekable(final InputStream in) {
+        return new PushbackInputStream(in, Math.max(ParallelDecompressingInputStream.BGZF_HEADER_SIZE,
+                MantaCompressionType.MAGIC_PREFIX_LENGTH));
+    }
+
+    /**
+     * Wraps a stream of an object with a decompressing stream for an
+     * algorithm that was already detected. Bzip2 objects and gzip objects in
+     * the BGZF format are decompressed on several threads.
+     *
+     * @param type algorithm the object is compressed with or null if it isn't compressed
+     * @param in stream positioned at the start of the object created by {@link #peekable(InputStream)}
+     * @param bufferPool pool that decompression buffers are borrowed from
+     * @return decompressing stream or the passed stream if the object isn't compressed
+     */
+    public InputStream wrap(final MantaCompressionType type,
+                            final PushbackInputStream in,
+                            final MantaBufferPool bufferPool) {
+        if (type == null) {
+            return in;
+        }
+
+        if (!enabled || (type != MantaCompressionType.BZIP2 && type != MantaCompressionType.GZIP)) {
+            return type.createStream(in, bufferPool, zstdDictionaries);
+        }
+
+        if (type == MantaCompressionType.BZIP2) {
+            return ParallelDecompressingInputStream.bzip2(in, executor, maxPendingUnits, bufferPool);
+        }
+
+        if (isBgzf(in)) {
+            return ParallelDecompressingInputStream.bgzf(in, executor, maxPendingUnits, bufferPool);
+        }
+
+        return MantaCompressionType.GZIP.createStream(in, bufferPool);
+    }
+
+    /**
+     * Wraps a stream of an object with a decompressing stream for an
+     * algorithm that was already detected, passing the points from which
+     * decompression can be resumed to a listener as they are reached.
+     * Points are found at the start of the units of bzip2 and BGZF objects
+     * decompressed on several threads, and at deflate block boundaries
+     * every <code>checkpointSpacing</code> bytes of other gzip objects,
+     * which are decompressed by a {@link GzipIndexingInputStream} instead
+     * of the JDK inflater. Objects of other algorithms report no points.
+     *
+     * @param type algorithm the object is compressed with or null if it isn't compressed
+     * @param in stream positioned at the start of the object created by {@link #peekable(InputStream)}
+     * @param bufferPool pool that decompression buffers are borrowed from
+     * @param checkpointSpacing minimum number of decompressed bytes between deflate checkpoints
+     * @param listener receives each point once it is reached or null to not report points
+     * @return decompressing stream or the passed stream if the object isn't compressed
+     */
+    public InputStream wrap(final MantaCompressionType type,
+                            final PushbackInputStream in,
+                            final MantaBufferPool bufferPool,
+                            final long checkpointSpacing,
+                            final Consumer<ResumePoint> listener) {
+        if (listener == null || (type != MantaCompressionType.BZIP2 && type != MantaCompressionType.GZIP)) {
+            return wrap(type, in, bufferPool);
+        }
+
+        if (type == MantaCompressionType.BZIP2) {
+            if (!enabled) {
+                return type.createStream(in, bufferPool);
+            }
+
+            final ParallelDecompressingInputStream stream = ParallelDecompressingInputStream.bzip2(
+                    in, executor, maxPendingUnits, bufferPool);
+            stream.setUnitListener(unitListener(type, null, listener));
+            return stream;
+        }
+
+        if (enabled && isBgzf(in)) {
+            final ParallelDecompressingInputStream stream = ParallelDecompressingInputStream.bgzf(
+                    in, executor, maxPendingUnits, bufferPool);
+            stream.setUnitListener(unitListener(type, null, listener));
+            return stream;
+        }
+
+        return new GzipIndexingInputStream(in, checkpointSpacing, bufferPool,
+                checkpoint -> listener.accept(ResumePoint.ofDeflate(checkpoint)));
+    }
+
+    /**
+     * Creates a decompressing stream that continues an object from a point
+     * recorded while it was previously read. Points found by the resumed
+     * stream are passed to the listener relative to the start of the
+     * object. Streams resumed within a deflate stream report no points,
+     * though the points recorded before them remain valid.
+     *
+     * @param point point recorded while the object was previously read
+     * @param compressed stream of the object positioned at the point's compressed offset
+     * @param bufferPool pool that decompression buffers are borrowed from
+     * @param listener receives each point once it is reached or null to not report points
+     * @return stream of the decompressed data following the point
+     * @throws IOException thrown when the point's deflate window can't be read
+     */
+    public InputStream resume(final ResumePoint point,
+                              final InputStream compressed,
+                              final MantaBufferPool bufferPool,
+                              final Consumer<ResumePoint> listener) throws IOException {
+        final GzipIndex.Checkpoint checkpoint = point.getCheckpoint();
+
+        if (checkpoint != null) {
+            return new GzipCheckpointInputStream(compressed, checkpoint.getBits(),
+                    checkpoint.getWindow(), bufferPool);
+        }
+
+        final ParallelDecompressingInputStream stream;
+
+        if (point.getType() == MantaCompressionType.BZIP2) {
+            if (!enabled) {
+                return new BZip2CompressorInputStream(
+                        new Bzip2BlockInputStream(compressed, 0L, Long.MAX_VALUE, bufferPool), false);
+            }
+
+            stream = ParallelDecompressingInputStream.bzip2(compressed, executor, maxPendingUnits, bufferPool);
+        } else if (point.getType() == MantaCompressionType.GZIP) {
+            if (!enabled) {
+                return new PooledGzipCompressorInputStream(compressed, bufferPool);
+            }
+
+            stream = ParallelDecompressingInputStream.bgzf(compressed, executor, maxPendingUnits, bufferPool);
+        } else {
+            String msg = String.format("Objects compressed with %s can't be resumed", point.getType());
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (listener != null) {
+            stream.setUnitListener(unitListener(point.getType(), point, listener));
+        }
+
+        return stream;
+    }
+
+    private static ParallelDecompressingInputStream.UnitListener unitListener(
+            final MantaCompressionType type, final ResumePoint base, final Consumer<ResumePoint> listener) {
+        return (uncompressedOffset, compressedOffset) -> {
+            final ResumePoint point = ResumePoint.ofUnit(type, uncompressedOffset, compressedOffset);
+
+            if (base == null) {
+                listener.accept(point);
+            } else {
+                listener.accept(point.after(base));
+            }
+        };
+    }
+
+    /**
+     * Peeks at the header of a gzip object to find if it is in the BGZF format.
+     *
+     * @param in stream positioned at the start of the object
+     * @return true if the first member is a BGZF block
+     */
+    private static boolean isBgzf(final PushbackInputStream in) {
+        final byte[] header = new byte[ParallelDecompressingInputStream.BGZF_HEADER_SIZE];
+        final int read;
+
+        try {
+            read = ByteStreams.read(in, header, 0, header.length);
+            in.unread(header, 0, read);
+        } catch (IOException e) {
+            String msg = "Unable to read the gzip header of the object";
+            throw new MantaPrestoUncheckedIOException(msg, e);
+        }
+
+        return ParallelDecompressingInputStream.isBgzfHeader(header, read);
+    }
+
+    /**
+     * Stops all background threads.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getMaxPendingUnits() {
+        return maxPendingUnits;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("threads", threads)
+                .append("maxPendingUnits", maxPendingUnits)
+                .toString();
+    }
+}
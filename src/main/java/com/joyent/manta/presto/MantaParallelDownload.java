@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Connector-wide settings and threads used to download large objects as
+ * several concurrent <code>Range</code> requests using
+ * {@link MantaRangedInputStream}. Objects smaller than the minimum object
+ * size, or whose size wasn't reported by the directory listing, are
+ * downloaded with a single request.
+ *
+ * @since 1.0.0
+ */
+public class MantaParallelDownload {
+    /**
+     * Default maximum number of concurrent range requests per object.
+     */
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    /**
+     * Default number of bytes downloaded by each range request.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8_388_608;
+
+    /**
+     * Default size in bytes of the smallest object downloaded in parallel.
+     */
+    public static final long DEFAULT_MIN_OBJECT_SIZE = 134_217_728L;
+
+    private final int concurrency;
+    private final int chunkSize;
+    private final long minObjectSize;
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param concurrency maximum number of concurrent range requests per object,
+     *                    less than two disables parallel downloads
+     * @param chunkSize number of bytes downloaded by each range request
+     * @param minObjectSize size in bytes of the smallest object downloaded in parallel
+     */
+    @Inject
+    public MantaParallelDownload(@Named("ParallelDownloadConcurrency") final int concurrency,
+                                 @Named("ParallelDownloadChunkSize") final int chunkSize,
+                                 @Named("ParallelDownloadMinObjectSize") final long minObjectSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Parallel download chunk size must be greater than zero");
+        }
+
+        this.concurrency = concurrency;
+        this.chunkSize = chunkSize;
+        this.minObjectSize = minObjectSize;
+
+        if (concurrency >= 2) {
+            this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                    .setNameFormat("manta-range-download-%d")
+                    .setDaemon(true)
+                    .build());
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Determines if an object is large enough to be downloaded in parallel.
+     *
+     * @param objectSize size of object in bytes as listed or null if unknown
+     * @return true if the object should be downloaded with concurrent range requests
+     */
+    public boolean isEnabledFor(final Long objectSize) {
+        return executor != null && objectSize != null && objectSize >= minObjectSize;
+    }
+
+    /**
+     * Stops all download threads.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public long getMinObjectSize() {
+        return minObjectSize;
+    }
+
+    ExecutorService getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("concurrency", concurrency)
+                .append("chunkSize", chunkSize)
+                .append("minObjectSize", minObjectSize)
+                .toString();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.joyent.manta.presto.exceptions.MantaPrestoRuntimeException;
+import com.joyent.manta.presto.exceptions.MantaPrestoUncheckedIOException;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Connector-wide threads used to open the next object of a split while the
+ * current object is being parsed. Opening an object costs a full round trip
+ * before the first byte arrives, which dominates the time spent reading
+ * small objects. A prefetched stream has its request sent and its first
+ * buffer filled by the time the cursor reaches it.
+ *
+ * @since 1.0.0
+ */
+public class MantaPrefetcher {
+    private static final Logger LOG = LoggerFactory.getLogger(MantaPrefetcher.class);
+
+    private static final MantaPrefetcher DISABLED = new MantaPrefetcher(false);
+
+    private final ExecutorService executor;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param enabled true to open streams on background threads
+     */
+    @Inject
+    public MantaPrefetcher(@Named("PrefetchEnabled") final boolean enabled) {
+        if (enabled) {
+            this.executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                    .setNameFormat("manta-prefetch-%d")
+                    .setDaemon(true)
+                    .build());
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Creates a new instance that opens streams with the passed executor.
+     *
+     * @param executor executor providing the background threads
+     */
+    MantaPrefetcher(final ExecutorService executor) {
+        this.executor = requireNonNull(executor, "Executor is null");
+    }
+
+    /**
+     * @return an instance that opens streams only when they are needed
+     */
+    public static MantaPrefetcher disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @return true if streams are opened on background threads
+     */
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * Starts opening a stream on a background thread.
+     *
+     * @param opener function that opens the stream
+     * @return handle used to take the opened stream or to discard it
+     */
+    public Prefetch prefetch(final Supplier<MantaCountingInputStream> opener) {
+        requireNonNull(opener, "Stream opener is null");
+        return new Prefetch(opener, executor);
+    }
+
+    /**
+     * Stops all background threads.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", isEnabled())
+                .toString();
+    }
+
+    /**
+     * Fills the buffer of a stream without consuming any bytes from it.
+     * Streams that read ahead on their own don't support marking and are
+     * left as is.
+     *
+     * @param in stream to fill
+     */
+    static void prime(final MantaCountingInputStream in) {
+        if (!in.markSupported()) {
+            return;
+        }
+
+        try {
+            in.mark(1);
+            in.read();
+            in.reset();
+        } catch (IOException e) {
+            /* The failure will happen again when the stream is read by the
+             * cursor, which knows how to retry it. */
+            LOG.debug("Unable to prefetch first bytes of object [objectPath={}]", in.getPath(), e);
+        }
+    }
+
+    /**
+     * Stream being opened on a background thread. Exactly one of
+     * {@link #get()} or {@link #close()} must be called.
+     */
+    public static final class Prefetch implements AutoCloseable {
+        private final Supplier<MantaCountingInputStream> opener;
+        private final Future<MantaCountingInputStream> future;
+
+        /**
+         * Whether {@link #close()} was called, guarded by this instance.
+         */
+        private boolean closed = false;
+
+        /**
+         * Stream opened in the background and not yet discarded, guarded by
+         * this instance. Whichever of {@link #open()} and {@link #close()}
+         * finishes second closes it.
+         */
+        private MantaCountingInputStream opened;
+
+        private Prefetch(final Supplier<MantaCountingInputStream> opener,
+                         final ExecutorService executor) {
+            this.opener = opener;
+
+            if (executor == null) {
+                this.future = null;
+            } else {
+                this.future = executor.submit(this::open);
+            }
+        }
+
+        private MantaCountingInputStream open() {
+            synchronized (this) {
+                if (closed) {
+                    return null;
+                }
+            }
+
+            final MantaCountingInputStream in = opener.get();
+            prime(in);
+
+            synchronized (this) {
+                if (!closed) {
+                    opened = in;
+                    return in;
+                }
+            }
+
+            Closeables.closeQuietly(in);
+            return null;
+        }
+
+        /**
+         * Waits for the stream to be opened or opens it on the calling
+         * thread when prefetching is disabled.
+         *
+         * @return opened stream
+         */
+        public MantaCountingInputStream get() {
+            if (future == null) {
+                return opener.get();
+            }
+
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                String msg = "Interrupted while waiting for prefetched object";
+                throw new MantaPrestoUncheckedIOException(msg, new InterruptedIOException(msg));
+            } catch (ExecutionException e) {
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new MantaPrestoRuntimeException("Unable to prefetch object", e.getCause());
+            }
+        }
+
+        /**
+         * Discards the stream, closing it if it was already opened.
+         */
+        @Override
+        public void close() {
+            final MantaCountingInputStream in;
+
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+
+                closed = true;
+                in = opened;
+                opened = null;
+            }
+
+            if (future != null) {
+                future.cancel(false);
+            }
+
+            if (in != null) {
+                Closeables.closeQuietly(in);
+            }
+        }
+    }
+}
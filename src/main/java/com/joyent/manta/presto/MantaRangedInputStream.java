@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link InputStream} that downloads a range of an object as several
+ * concurrent <code>Range</code> requests and returns their bytes in order.
+ * A window of at most <code>concurrency</code> chunks is downloaded ahead of
+ * the chunk being read, so no more than <code>(concurrency + 1) *
+ * chunkSize</code> bytes are buffered per stream. Chunk buffers are borrowed
+ * from a {@link MantaBufferPool}.
+ *
+ * <p>Each chunk is downloaded in full by a single request and is downloaded
+ * again from its start when the request fails with a transient failure.</p>
+ *
+ * @since 1.0.0
+ */
+public class MantaRangedInputStream extends InputStream {
+    private final String objectPath;
+    private final long endPosition;
+    private final int chunkSize;
+    private final int concurrency;
+    private final RangeOpener opener;
+    private final MantaRetryPolicy retryPolicy;
+    private final MantaBufferPool bufferPool;
+    private final ExecutorService executor;
+
+    /**
+     * Chunks being downloaded in the order they are to be read.
+     */
+    private final Deque<Future<Chunk>> pending = new ArrayDeque<>();
+
+    /**
+     * Chunks whose download finished but that haven't been taken by the
+     * reader yet. Whichever of the reader, {@link #close()} or the download
+     * removes a chunk from this set owns its buffer, so that a chunk that
+     * finishes while its download is being cancelled is still returned to
+     * the pool.
+     */
+    private final Set<Chunk> downloaded = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Position within the object of the first byte of the next chunk to be
+     * downloaded.
+     */
+    private long nextChunkStart;
+
+    /**
+     * Chunk currently being read from or null before the first read.
+     */
+    private Chunk current;
+
+    /**
+     * Position of the next byte to be read within {@link #current}.
+     */
+    private int position = 0;
+
+    private volatile boolean closed = false;
+
+    /**
+     * Opens a stream to a range of an object.
+     */
+    @FunctionalInterface
+    public interface RangeOpener {
+        /**
+         * Opens a stream containing the specified range of bytes.
+         *
+         * @param start position of the first byte
+         * @param endInclusive position of the last byte
+         * @return stream containing exactly the requested bytes
+         * @throws IOException thrown when the range can't be opened
+         */
+        InputStream open(long start, long endInclusive) throws IOException;
+    }
+
+    /**
+     * Creates a new instance and immediately starts downloading the first
+     * chunks.
+     *
+     * @param objectPath path of the object, used for logging
+     * @param startPosition position of the first byte to download
+     * @param endPosition position after the last byte to download
+     * @param settings chunk size, concurrency and threads to download with
+     * @param opener function opening a range of the object
+     * @param retryPolicy policy used to retry downloading chunks
+     * @param bufferPool pool that chunk buffers are borrowed from
+     */
+    @SuppressWarnings("ParameterNumber")
+    public MantaRangedInputStream(final String objectPath,
+                                  final long startPosition,
+                                  final long endPosition,
+                                  final MantaParallelDownload settings,
+                                  final RangeOpener opener,
+                                  final MantaRetryPolicy retryPolicy,
+                                  final MantaBufferPool bufferPool) {
+        this(objectPath, startPosition, endPosition, settings.getChunkSize(),
+                settings.getConcurrency(), opener, retryPolicy, bufferPool, settings.getExecutor());
+    }
+
+    /**
+     * Creates a new instance and immediately starts downloading the first
+     * chunks.
+     *
+     * @param objectPath path of the object, used for logging
+     * @param startPosition position of the first byte to download
+     * @param endPosition position after the last byte to download
+     * @param chunkSize number of bytes downloaded by each request
+     * @param concurrency maximum number of chunks downloaded ahead of the reader
+     * @param opener function opening a range of the object
+     * @param retryPolicy policy used to retry downloading chunks
+     * @param bufferPool pool that chunk buffers are borrowed from
+     * @param executor executor providing the download threads
+     */
+    @SuppressWarnings("ParameterNumber")
+    public MantaRangedInputStream(final String objectPath,
+                                  final long startPosition,
+                                  final long endPosition,
+                                  final int chunkSize,
+                                  final int concurrency,
+                                  final RangeOpener opener,
+                                  final MantaRetryPolicy retryPolicy,
+                                  final MantaBufferPool bufferPool,
+                                  final ExecutorService executor) {
+        if (startPosition < 0L || endPosition < startPosition) {
+            String msg = String.format("Invalid range [startPosition=%d,endPosition=%d]",
+                    startPosition, endPosition);
+            throw new IllegalArgumentException(msg);
+        }
+
+        if (chunkSize < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("Chunk size and concurrency must be greater than zero");
+        }
+
+        this.objectPath = objectPath;
+        this.nextChunkStart = startPosition;
+        this.endPosition = endPosition;
+        this.chunkSize = chunkSize;
+        this.concurrency = concurrency;
+        this.opener = requireNonNull(opener, "Range opener is null");
+        this.retryPolicy = requireNonNull(retryPolicy, "Retry policy is null");
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+        this.executor = requireNonNull(executor, "Executor is null");
+
+        fillWindow();
+    }
+
+    /**
+     * Starts downloading chunks until the window is full or the end of the
+     * range is reached.
+     */
+    private void fillWindow() {
+        while (pending.size() < concurrency && nextChunkStart < endPosition) {
+            final long start = nextChunkStart;
+            final int length = (int) Math.min(chunkSize, endPosition - start);
+
+            pending.add(executor.submit(() -> download(start, length)));
+            nextChunkStart += length;
+        }
+    }
+
+    /**
+     * Downloads a single chunk, retrying transient failures.
+     *
+     * @param start position of the first byte of the chunk
+     * @param length number of bytes in the chunk
+     * @return downloaded chunk or null if this stream was closed
+     * @throws IOException thrown when the chunk can't be downloaded
+     */
+    private Chunk download(final long start, final int length) throws IOException {
+        final byte[] buffer = bufferPool.borrowArray(length);
+        boolean filled = false;
+
+        try {
+            retryPolicy.execute(MantaRetryPolicy.Operation.READ, objectPath, () -> {
+                try (InputStream in = opener.open(start, start + length - 1)) {
+                    ByteStreams.readFully(in, buffer, 0, length);
+                }
+
+                return null;
+            });
+
+            filled = true;
+        } finally {
+            if (!filled) {
+                bufferPool.returnArray(buffer);
+            }
+        }
+
+        final Chunk chunk = new Chunk(buffer, length);
+        downloaded.add(chunk);
+
+        if (closed && downloaded.remove(chunk)) {
+            bufferPool.returnArray(buffer);
+            return null;
+        }
+
+        return chunk;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunkIfNeeded()) {
+            return -1;
+        }
+
+        return Byte.toUnsignedInt(current.buffer[position++]);
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!nextChunkIfNeeded()) {
+            return -1;
+        }
+
+        final int n = Math.min(len, current.length - position);
+        System.arraycopy(current.buffer, position, b, off, n);
+        position += n;
+
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        long skipped = 0L;
+
+        while (skipped < n && nextChunkIfNeeded()) {
+            final int step = (int) Math.min(n - skipped, current.length - position);
+            position += step;
+            skipped += step;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (current == null) {
+            return 0;
+        }
+
+        return current.length - position;
+    }
+
+    /**
+     * Makes sure that {@link #current} has unread bytes, waiting for the
+     * download of the next chunk if needed.
+     *
+     * @return false if the end of the range was reached
+     * @throws IOException thrown when this stream is closed or a chunk couldn't be downloaded
+     */
+    private boolean nextChunkIfNeeded() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        while (current == null || position == current.length) {
+            if (current != null) {
+                bufferPool.returnArray(current.buffer);
+                current = null;
+            }
+
+            final Future<Chunk> next = pending.poll();
+
+            if (next == null) {
+                return false;
+            }
+
+            current = await(next);
+            position = 0;
+            fillWindow();
+        }
+
+        return true;
+    }
+
+    private Chunk await(final Future<Chunk> future) throws IOException {
+        try {
+            final Chunk chunk = future.get();
+            downloaded.remove(chunk);
+
+            return chunk;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for range download");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException("Unexpected failure downloading range of object", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        if (current != null) {
+            bufferPool.returnArray(current.buffer);
+            current = null;
+        }
+
+        for (Future<Chunk> future : pending) {
+            future.cancel(true);
+        }
+
+        for (Chunk chunk : downloaded) {
+            if (downloaded.remove(chunk)) {
+                bufferPool.returnArray(chunk.buffer);
+            }
+        }
+
+        pending.clear();
+    }
+
+    /**
+     * Downloaded bytes of a single range request.
+     */
+    private static final class Chunk {
+        private final byte[] buffer;
+        private final int length;
+
+        private Chunk(final byte[] buffer, final int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+}
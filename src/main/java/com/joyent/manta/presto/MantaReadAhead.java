@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Connector-wide settings and threads used to read data files ahead of the
+ * cursors parsing them. Each split that reads ahead uses at most
+ * <code>bufferCount * bufferSize</code> bytes of buffers. The splits share a
+ * bounded set of threads, taking turns to fill one buffer at a time, and a
+ * split doesn't occupy a thread while it has no free buffer to read into, so
+ * the number of objects being read ahead at once isn't limited by the number
+ * of threads.
+ *
+ * @since 1.0.0
+ */
+public class MantaReadAhead {
+    /**
+     * Default number of buffers per split.
+     */
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+
+    /**
+     * Default size of each buffer in bytes.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 262_144;
+
+    /**
+     * Default number of threads shared by all splits.
+     */
+    public static final int DEFAULT_THREADS = 32;
+
+    /**
+     * Seconds after which an idle thread is stopped.
+     */
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 60L;
+
+    private static final MantaReadAhead DISABLED = new MantaReadAhead(0, DEFAULT_BUFFER_SIZE,
+            DEFAULT_THREADS, MantaBufferPool.disabled());
+
+    private final int bufferCount;
+    private final int bufferSize;
+    private final int threads;
+    private final MantaBufferPool bufferPool;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param bufferCount number of buffers per split, zero disables reading ahead
+     * @param bufferSize size of each buffer in bytes
+     * @param threads maximum number of threads shared by all splits
+     * @param bufferPool pool the buffers are borrowed from
+     */
+    @Inject
+    public MantaReadAhead(@Named("ReadAheadBufferCount") final int bufferCount,
+                          @Named("ReadAheadBufferSize") final int bufferSize,
+                          @Named("ReadAheadThreads") final int threads,
+                          final MantaBufferPool bufferPool) {
+        if (bufferCount != 0 && bufferCount < 2) {
+            throw new IllegalArgumentException("Read ahead buffer count must be zero to disable "
+                    + "reading ahead or at least two");
+        }
+
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Read ahead buffer size must be greater than zero");
+        }
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("Read ahead threads must be greater than zero");
+        }
+
+        this.bufferCount = bufferCount;
+        this.bufferSize = bufferSize;
+        this.threads = threads;
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+
+        if (isEnabled()) {
+            this.executor = new ThreadPoolExecutor(threads, threads,
+                    THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("manta-read-ahead-%d")
+                            .setDaemon(true)
+                            .build());
+            this.executor.allowCoreThreadTimeOut(true);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * @return an instance that never reads ahead
+     */
+    public static MantaReadAhead disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @return true if streams are read ahead
+     */
+    public boolean isEnabled() {
+        return bufferCount > 0;
+    }
+
+    /**
+     * Wraps a stream so that it is read ahead on a background thread.
+     *
+     * @param source stream to wrap
+     * @return stream reading ahead from the source or the source itself when disabled
+     */
+    public InputStream wrap(final InputStream source) {
+        return wrap(source, () -> { });
+    }
+
+    /**
+     * Wraps a stream so that it is read ahead on a background thread.
+     *
+     * @param source stream to wrap
+     * @param abort closed to abort the source's connection when the stream
+     *              is closed while a background thread is reading from it
+     * @return stream reading ahead from the source or the source itself when disabled
+     */
+    public InputStream wrap(final InputStream source, final Closeable abort) {
+        if (!isEnabled()) {
+            return source;
+        }
+
+        return new MantaReadAheadInputStream(source, abort, bufferCount, bufferSize, bufferPool, executor);
+    }
+
+    /**
+     * Stops all background threads.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public int getBufferCount() {
+        return bufferCount;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("bufferCount", bufferCount)
+                .append("bufferSize", bufferSize)
+                .append("threads", threads)
+                .toString();
+    }
+}
@@ -0,0 +1,514 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link InputStream} that reads from a source stream on a background thread
+ * so that network I/O and decompression overlap with the parsing done by the
+ * thread reading from this stream.
+ *
+ * <p>A background task fills a fixed ring of reusable buffers, so no more
+ * than <code>bufferCount * bufferSize</code> bytes are ever held per stream.
+ * The task fills a single buffer each time it runs and then submits itself
+ * again, so that streams sharing a small, bounded executor take turns on its
+ * threads even when their readers keep pace with them. When every buffer is
+ * full and hasn't been consumed, the task isn't submitted again until the
+ * reader hands a buffer back, so a slow reader never holds a thread.
+ * The buffers are borrowed from a {@link MantaBufferPool} and returned once
+ * both this stream is closed and the background task has stopped writing to
+ * them. The source is closed at the same time rather than when this stream
+ * is closed, because closing it may return pooled buffers and inflaters
+ * that the background task is still reading into. When this stream is
+ * closed while the background task is blocked reading from the source, the
+ * source's connection is aborted so that the task stops promptly. Failures
+ * when reading from the source are delivered to the reader after all of
+ * the bytes read before the failure.</p>
+ *
+ * @since 1.0.0
+ */
+public class MantaReadAheadInputStream extends InputStream {
+    private static final Logger LOG = LoggerFactory.getLogger(MantaReadAheadInputStream.class);
+
+    private final InputStream source;
+    private final Closeable abort;
+    private final MantaBufferPool bufferPool;
+    private final List<Chunk> chunks;
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> filled;
+    private final Executor executor;
+
+    /**
+     * Chunk currently being read from or null before the first read.
+     */
+    private Chunk current;
+
+    /**
+     * Position of the next byte to be read within {@link #current}.
+     */
+    private int position = 0;
+
+    private volatile boolean closed = false;
+
+    /**
+     * State of the background task, guarded by {@link #chunks}.
+     */
+    private ProducerState producerState = ProducerState.IDLE;
+
+    /**
+     * Number of parties, the reader and the background task, that may still
+     * use the buffers or the source. The source is closed and the buffers are
+     * returned to the pool when it reaches zero.
+     */
+    private final AtomicInteger owners = new AtomicInteger(2);
+
+    /**
+     * Creates a new instance and immediately starts reading from the source.
+     *
+     * @param source stream to read ahead from
+     * @param bufferCount number of buffers in the ring
+     * @param bufferSize minimum size of each buffer in bytes
+     * @param bufferPool pool the buffers are borrowed from
+     * @param executor executor providing the background threads
+     */
+    public MantaReadAheadInputStream(final InputStream source,
+                                     final int bufferCount,
+                                     final int bufferSize,
+                                     final MantaBufferPool bufferPool,
+                                     final Executor executor) {
+        this(source, () -> { }, bufferCount, bufferSize, bufferPool, executor);
+    }
+
+    /**
+     * Creates a new instance and immediately starts reading from the source.
+     *
+     * @param source stream to read ahead from
+     * @param abort closed to abort the source's connection when this stream
+     *              is closed while the background task is reading from it
+     * @param bufferCount number of buffers in the ring
+     * @param bufferSize minimum size of each buffer in bytes
+     * @param bufferPool pool the buffers are borrowed from
+     * @param executor executor providing the background threads
+     */
+    public MantaReadAheadInputStream(final InputStream source,
+                                     final Closeable abort,
+                                     final int bufferCount,
+                                     final int bufferSize,
+                                     final MantaBufferPool bufferPool,
+                                     final Executor executor) {
+        this.source = requireNonNull(source, "Source stream is null");
+        this.abort = requireNonNull(abort, "Abort action is null");
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+        this.executor = requireNonNull(executor, "Executor is null");
+
+        if (bufferCount < 2) {
+            throw new IllegalArgumentException("At least two buffers are required to read ahead");
+        }
+
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be greater than zero");
+        }
+
+        this.free = new ArrayBlockingQueue<>(bufferCount);
+        this.filled = new ArrayBlockingQueue<>(bufferCount);
+        this.chunks = new ArrayList<>(bufferCount);
+
+        for (int i = 0; i < bufferCount; i++) {
+            final Chunk chunk = new Chunk(bufferPool.borrowArray(bufferSize));
+            chunks.add(chunk);
+            free.add(chunk);
+        }
+
+        schedule();
+    }
+
+    /**
+     * Submits the background task unless it is already running or has finished.
+     */
+    private void schedule() {
+        synchronized (chunks) {
+            if (producerState != ProducerState.IDLE || closed) {
+                return;
+            }
+
+            producerState = ProducerState.SCHEDULED;
+        }
+
+        submit();
+    }
+
+    /**
+     * Submits the running background task again so that it gives its thread
+     * to the other streams waiting for one before filling another buffer.
+     */
+    private void requeue() {
+        synchronized (chunks) {
+            if (!closed) {
+                producerState = ProducerState.SCHEDULED;
+            }
+        }
+
+        if (closed) {
+            finishProducing(null);
+            return;
+        }
+
+        submit();
+    }
+
+    private void submit() {
+        try {
+            executor.execute(this::produce);
+        } catch (RuntimeException e) {
+            LOG.warn("Unable to schedule reading ahead from stream", e);
+            final Chunk failed = new Chunk(new byte[0]);
+            failed.failure = new IOException("Unable to schedule reading ahead from stream", e);
+            finishProducing(failed);
+        }
+    }
+
+    /**
+     * Fills the next free buffer from the source, unless no buffer is free,
+     * and submits this task again afterwards when the end of the source
+     * wasn't reached, reading didn't fail and this stream wasn't closed.
+     */
+    private void produce() {
+        synchronized (chunks) {
+            if (producerState != ProducerState.SCHEDULED) {
+                return;
+            }
+
+            producerState = ProducerState.RUNNING;
+        }
+
+        try {
+            while (true) {
+                if (closed) {
+                    finishProducing(null);
+                    return;
+                }
+
+                final Chunk chunk = free.poll();
+
+                if (chunk == null) {
+                    if (pause()) {
+                        return;
+                    }
+
+                    continue;
+                }
+
+                chunk.reset();
+
+                try {
+                    chunk.fill(source);
+                } catch (IOException e) {
+                    chunk.failure = e;
+                }
+
+                if (chunk.end || chunk.failure != null) {
+                    finishProducing(chunk);
+                    return;
+                }
+
+                filled.add(chunk);
+                requeue();
+                return;
+            }
+        } catch (RuntimeException e) {
+            Chunk failed = null;
+
+            if (!closed) {
+                LOG.warn("Unexpected failure reading ahead from stream", e);
+                failed = new Chunk(new byte[0]);
+                failed.failure = new IOException("Unexpected failure reading ahead from stream", e);
+            }
+
+            finishProducing(failed);
+        }
+    }
+
+    /**
+     * Stops the background task until a buffer is handed back by the reader.
+     *
+     * @return true if the task should return, false if a buffer became free
+     *         in the meantime and the task should continue
+     */
+    private boolean pause() {
+        synchronized (chunks) {
+            if (!closed && free.isEmpty()) {
+                producerState = ProducerState.IDLE;
+                return true;
+            }
+
+            if (!closed) {
+                return false;
+            }
+        }
+
+        finishProducing(null);
+        return true;
+    }
+
+    /**
+     * Stops the background task for good, delivering its last chunk to the reader.
+     *
+     * @param last last chunk read or null if there is nothing to deliver
+     */
+    private void finishProducing(final Chunk last) {
+        if (last != null) {
+            filled.offer(last);
+        }
+
+        if (markProducerDone()) {
+            try {
+                release();
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("Unable to close stream read ahead from", e);
+            }
+        }
+    }
+
+    /**
+     * Marks the background task as finished for good.
+     *
+     * @return true if the task wasn't already marked as finished, in which
+     *         case the caller must release the task's share of the buffers
+     */
+    private boolean markProducerDone() {
+        synchronized (chunks) {
+            if (producerState == ProducerState.DONE) {
+                return false;
+            }
+
+            producerState = ProducerState.DONE;
+            return true;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunkIfNeeded()) {
+            return -1;
+        }
+
+        return Byte.toUnsignedInt(current.buffer[position++]);
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!nextChunkIfNeeded()) {
+            return -1;
+        }
+
+        final int n = Math.min(len, current.length - position);
+        System.arraycopy(current.buffer, position, b, off, n);
+        position += n;
+
+        return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        long skipped = 0L;
+
+        while (skipped < n && nextChunkIfNeeded()) {
+            final int step = (int) Math.min(n - skipped, current.length - position);
+            position += step;
+            skipped += step;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (current == null) {
+            return 0;
+        }
+
+        return current.length - position;
+    }
+
+    /**
+     * Makes sure that {@link #current} has unread bytes, waiting for the
+     * background thread if needed.
+     *
+     * @return false if the end of the source was reached
+     * @throws IOException thrown when this stream is closed or the source failed
+     */
+    private boolean nextChunkIfNeeded() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        while (current == null || position == current.length) {
+            if (current != null) {
+                if (current.failure != null) {
+                    throw current.failure;
+                }
+
+                if (current.end) {
+                    return false;
+                }
+
+                free.offer(current);
+                schedule();
+            }
+
+            try {
+                current = filled.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for read ahead");
+            }
+
+            position = 0;
+        }
+
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        // A paused or not yet started background task will never run, so it won't release its share
+        boolean producerStopped = false;
+        boolean producerRunning = false;
+
+        synchronized (chunks) {
+            if (producerState == ProducerState.IDLE || producerState == ProducerState.SCHEDULED) {
+                producerState = ProducerState.DONE;
+                producerStopped = true;
+            } else if (producerState == ProducerState.RUNNING) {
+                producerRunning = true;
+            }
+        }
+
+        if (producerStopped) {
+            owners.decrementAndGet();
+        }
+
+        // The running task closes the source once its read returns
+        if (producerRunning) {
+            try {
+                abort.close();
+            } catch (IOException | RuntimeException e) {
+                LOG.debug("Unable to abort stream read ahead from", e);
+            }
+        }
+
+        release();
+    }
+
+    /**
+     * Closes the source and returns the buffers to the pool once neither
+     * the reader nor the background task can use them.
+     *
+     * @throws IOException thrown when the source can't be closed
+     */
+    private void release() throws IOException {
+        if (owners.decrementAndGet() != 0) {
+            return;
+        }
+
+        try {
+            source.close();
+        } finally {
+            for (Chunk chunk : chunks) {
+                bufferPool.returnArray(chunk.buffer);
+            }
+        }
+    }
+
+    /**
+     * Lifecycle of the background task.
+     */
+    private enum ProducerState {
+        /**
+         * Not running, waiting for a free buffer.
+         */
+        IDLE,
+        /**
+         * Submitted to the executor but not yet started.
+         */
+        SCHEDULED,
+        /**
+         * Filling buffers.
+         */
+        RUNNING,
+        /**
+         * Finished for good and released its share of the buffers.
+         */
+        DONE
+    }
+
+    /**
+     * Reusable buffer and the outcome of filling it.
+     */
+    private static final class Chunk {
+        private final byte[] buffer;
+        private int length;
+        private boolean end;
+        private IOException failure;
+
+        private Chunk(final byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        private void reset() {
+            length = 0;
+            end = false;
+            failure = null;
+        }
+
+        /**
+         * Reads from the source until the buffer is full or the end of the
+         * source is reached.
+         *
+         * @param source stream to read from
+         * @throws IOException thrown when the source can't be read
+         */
+        private void fill(final InputStream source) throws IOException {
+            while (length < buffer.length) {
+                final int read = source.read(buffer, length, buffer.length - length);
+
+                if (read < 0) {
+                    end = true;
+                    return;
+                }
+
+                length += read;
+            }
+        }
+    }
+}
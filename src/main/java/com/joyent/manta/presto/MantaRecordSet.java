@@ -9,44 +9,122 @@ package com.joyent.manta.presto;
 
 import com.facebook.presto.spi.RecordCursor;
 import com.facebook.presto.spi.RecordSet;
+import com.facebook.presto.spi.predicate.TupleDomain;
 import com.facebook.presto.spi.type.Type;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.google.common.collect.ImmutableList;
-import com.joyent.manta.client.MantaClient;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.joyent.manta.client.MantaObject;
 import com.joyent.manta.client.MantaObjectInputStream;
+import com.joyent.manta.client.MantaObjectResponse;
+import com.joyent.manta.http.MantaHttpHeaders;
 import com.joyent.manta.presto.column.MantaColumn;
+import com.joyent.manta.presto.compression.GzipCheckpointInputStream;
+import com.joyent.manta.presto.compression.GzipIndexingInputStream;
+import com.joyent.manta.presto.compression.MantaCompressionType;
+import com.joyent.manta.presto.compression.ResumePoint;
 import com.joyent.manta.presto.exceptions.MantaPrestoExceptionUtils;
 import com.joyent.manta.presto.exceptions.MantaPrestoIllegalArgumentException;
 import com.joyent.manta.presto.exceptions.MantaPrestoUncheckedIOException;
+import com.joyent.manta.presto.record.json.MantaJsonLineCountingRecordCursor;
 import com.joyent.manta.presto.record.json.MantaJsonRecordCursor;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tukaani.xz.SeekableXZInputStream;
+
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.function.Supplier;
+import java.util.function.IntFunction;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
 
 import static java.util.Objects.requireNonNull;
 
 /**
  * {@link RecordSet} implementation that provides a {@link RecordCursor} to
  * a single file object in Manta and chooses the correct cursor for the data
- * type.
+ * type. Splits containing several objects are read one object after another
+ * while the next object is opened by a {@link MantaPrefetcher}. Splits that
+ * read a range of a compressed object start decompressing at the range's
+ * gzip checkpoint or first compressed block and only read the lines that
+ * belong to the range. The decompressed size of a compressed object is
+ * estimated when it is opened, and the sizes of objects read to their end
+ * are recorded so that later estimates for the table improve. While a
+ * large compressed object is read from its start, points from which it
+ * can be resumed are recorded so that a lost connection is resumed with a
+ * range request rather than by reading the object again.
  *
  * @since 1.0.0
  */
 public class MantaRecordSet implements RecordSet {
+    private static final Logger LOG = LoggerFactory.getLogger(MantaRecordSet.class);
+
+    /**
+     * Size of the field at the end of a gzip object holding its decompressed size.
+     */
+    private static final int GZIP_ISIZE_BYTES = 4;
+
+    private static final int BYTE_MASK = 0xFF;
+
     private final List<MantaColumn> columns;
     private final List<Type> columnTypes;
     private final String objectPath;
-    private final MantaClient mantaClient;
+    private final MantaClientPool clientPool;
     private final MantaDataFileType dataFileType;
     private final ObjectReader streamingReader;
     private final Map<String, String> partitionToMachValue;
+    private final TupleDomain<MantaColumn> rowPredicate;
+    private final boolean lineDelimited;
+    private final MantaRetryPolicy retryPolicy;
+    private final MantaReadAhead readAhead;
+    private final MantaBufferPool bufferPool;
+    private final MantaParallelDownload parallelDownload;
+    private final Long objectSize;
+    private final List<MantaSplitObject> objects;
+    private final MantaPrefetcher prefetcher;
+    private final MantaHedging hedging;
+    private final MantaConcurrencyLimiter limiter;
+    private final MantaGzipIndexer gzipIndexer;
+    private final MantaParallelDecompression parallelDecompression;
+    private final MantaCompressionEstimator estimator;
+    private final MantaResumeCheckpoints resumeCheckpoints;
+    private final String schemaName;
+    private final String tableName;
+    private final MantaSplitRange range;
+    private final boolean buildGzipIndex;
 
-    private final Supplier<MantaCountingInputStream> streamRecreator = () -> {
-        final MantaObjectInputStream in = buildSourceStream();
-        return new MantaCountingInputStream(in);
-    };
+    /**
+     * True once the object has been found to be compressed when it was
+     * opened, including objects whose extension doesn't name an algorithm.
+     */
+    private volatile boolean compressedContent = false;
+
+    /**
+     * Estimated decompressed size of a compressed object read from its
+     * start, or null when the object's listed size is used.
+     */
+    private volatile Long uncompressedSize;
+
+    /**
+     * Algorithm the object was found to be compressed with when it was
+     * opened from its start, or null if it isn't compressed.
+     */
+    private volatile MantaCompressionType compressionType;
+
+    /**
+     * Points recorded while the object was last read from its start.
+     */
+    private final ResumePoints resumePoints = new ResumePoints();
 
     /**
      * Creates a new instance based on the specified parameters.
@@ -54,20 +132,62 @@ public class MantaRecordSet implements RecordSet {
      * @param split split instance that informs the record set of the object
      *              path to use for the cursor creation
      * @param columns list of columns to use in the record set
-     * @param mantaClient object that allows for direct operations on Manta
+     * @param clientPool clients that allow for direct operations on Manta
      * @param streamingReader streaming json deserialization reader
+     * @param retryPolicy policy used to retry transient failures when reading the object
+     * @param readAhead settings used to read the object ahead of the cursor
+     * @param bufferPool pool that stream buffers are borrowed from
+     * @param parallelDownload settings used to download large objects with concurrent range requests
+     * @param prefetcher threads used to open the next object of the split in advance
+     * @param hedging settings used to hedge requests that are slow to return their first bytes
+     * @param limiter limit on the number of concurrent requests sent to Manta
+     * @param gzipIndexer settings used to read and build indexes of gzip objects
+     * @param parallelDecompression threads used to decompress the object on several cores
+     * @param estimator estimates of the decompressed size of compressed objects
+     * @param resumeCheckpoints settings used to resume compressed objects after a lost connection
      */
+    @SuppressWarnings("ParameterNumber")
     public MantaRecordSet(final MantaSplit split,
                           final List<MantaColumn> columns,
-                          final MantaClient mantaClient,
-                          final ObjectReader streamingReader) {
+                          final MantaClientPool clientPool,
+                          final ObjectReader streamingReader,
+                          final MantaRetryPolicy retryPolicy,
+                          final MantaReadAhead readAhead,
+                          final MantaBufferPool bufferPool,
+                          final MantaParallelDownload parallelDownload,
+                          final MantaPrefetcher prefetcher,
+                          final MantaHedging hedging,
+                          final MantaConcurrencyLimiter limiter,
+                          final MantaGzipIndexer gzipIndexer,
+                          final MantaParallelDecompression parallelDecompression,
+                          final MantaCompressionEstimator estimator,
+                          final MantaResumeCheckpoints resumeCheckpoints) {
         requireNonNull(split, "split is null");
         this.columns = requireNonNull(columns, "column handles is null");
-        this.mantaClient = requireNonNull(mantaClient, "Manta client is null");
+        this.clientPool = requireNonNull(clientPool, "Manta client pool is null");
         this.dataFileType = requireNonNull(split.getDataFileType(), "data file type is null");
         this.objectPath = requireNonNull(split.getObjectPath(), "object path is null");
         this.streamingReader = requireNonNull(streamingReader, "object streaming reader is null");
         this.partitionToMachValue = split.generateColumnToMatchValueMapping();
+        this.rowPredicate = split.getRowPredicate();
+        this.lineDelimited = split.isLineDelimited();
+        this.retryPolicy = requireNonNull(retryPolicy, "retry policy is null");
+        this.readAhead = requireNonNull(readAhead, "read ahead is null");
+        this.bufferPool = requireNonNull(bufferPool, "buffer pool is null");
+        this.parallelDownload = requireNonNull(parallelDownload, "parallel download is null");
+        this.objectSize = split.getObjectSize();
+        this.objects = split.getObjects();
+        this.prefetcher = requireNonNull(prefetcher, "prefetcher is null");
+        this.hedging = requireNonNull(hedging, "hedging is null");
+        this.limiter = requireNonNull(limiter, "limiter is null");
+        this.gzipIndexer = requireNonNull(gzipIndexer, "gzip indexer is null");
+        this.parallelDecompression = requireNonNull(parallelDecompression, "parallel decompression is null");
+        this.estimator = requireNonNull(estimator, "compression estimator is null");
+        this.resumeCheckpoints = requireNonNull(resumeCheckpoints, "resume checkpoints is null");
+        this.schemaName = split.getSchemaName();
+        this.tableName = split.getTableName();
+        this.range = split.getRange();
+        this.buildGzipIndex = split.isBuildGzipIndex();
 
         ImmutableList.Builder<Type> types = ImmutableList.builder();
         for (MantaColumn column : columns) {
@@ -76,6 +196,42 @@ public class MantaRecordSet implements RecordSet {
         this.columnTypes = types.build();
     }
 
+    /**
+     * Creates a new instance that reads a single object of the split read
+     * by the parent record set.
+     *
+     * @param parent record set reading all objects of the split
+     * @param object object to read
+     */
+    private MantaRecordSet(final MantaRecordSet parent, final MantaSplitObject object) {
+        this.columns = parent.columns;
+        this.columnTypes = parent.columnTypes;
+        this.clientPool = parent.clientPool;
+        this.dataFileType = parent.dataFileType;
+        this.streamingReader = parent.streamingReader;
+        this.partitionToMachValue = parent.partitionToMachValue;
+        this.rowPredicate = parent.rowPredicate;
+        this.lineDelimited = parent.lineDelimited;
+        this.retryPolicy = parent.retryPolicy;
+        this.readAhead = parent.readAhead;
+        this.bufferPool = parent.bufferPool;
+        this.parallelDownload = parent.parallelDownload;
+        this.prefetcher = parent.prefetcher;
+        this.hedging = parent.hedging;
+        this.limiter = parent.limiter;
+        this.gzipIndexer = parent.gzipIndexer;
+        this.parallelDecompression = parent.parallelDecompression;
+        this.estimator = parent.estimator;
+        this.resumeCheckpoints = parent.resumeCheckpoints;
+        this.schemaName = parent.schemaName;
+        this.tableName = parent.tableName;
+        this.range = null;
+        this.buildGzipIndex = false;
+        this.objectPath = object.getPath();
+        this.objectSize = object.getSize();
+        this.objects = ImmutableList.of(object);
+    }
+
     @Override
     public List<Type> getColumnTypes() {
         return columnTypes;
@@ -83,15 +239,55 @@ public class MantaRecordSet implements RecordSet {
 
     @Override
     public RecordCursor cursor() {
-        final MantaObjectInputStream in = buildSourceStream();
-        final MantaCountingInputStream mantaInputStream = new MantaCountingInputStream(in);
-        final long totalBytes = mantaInputStream.getContentLength();
+        if (objects.size() == 1) {
+            return cursor(openStream());
+        }
+
+        final ImmutableList.Builder<MantaRecordSet> children = ImmutableList.builder();
+
+        for (MantaSplitObject object : objects) {
+            children.add(new MantaRecordSet(this, object));
+        }
+
+        final PrefetchingCursorOpener opener = new PrefetchingCursorOpener(children.build());
+
+        return new MantaMultiObjectRecordCursor(columnTypes, objects.size(), opener, opener::close);
+    }
+
+    /**
+     * Creates a cursor reading the object from the passed stream.
+     *
+     * @param mantaInputStream stream positioned at the start of the object
+     * @return cursor for the object's data file type
+     */
+    private RecordCursor cursor(final MantaCountingInputStream mantaInputStream) {
+        final Long totalBytes;
+
+        if (range == null && uncompressedSize != null) {
+            totalBytes = uncompressedSize;
+        } else if (range == null) {
+            totalBytes = mantaInputStream.getContentLength();
+        } else {
+            totalBytes = range.getLength();
+        }
+
+        final String etag = mantaInputStream.getEtag();
+        final LongFunction<MantaCountingInputStream> streamRecreator =
+                position -> reopenSourceStream(position, etag);
 
         switch (dataFileType) {
             case NDJSON:
             case TELEGRAF_NDJSON:
+                // Lines are only rows when the table is declared as one object per line
+                if (lineDelimited && readsNoColumnsFromData()) {
+                    return new MantaJsonLineCountingRecordCursor(streamRecreator, columns,
+                            objectPath, totalBytes, mantaInputStream, partitionToMachValue,
+                            retryPolicy);
+                }
+
                 return new MantaJsonRecordCursor(streamRecreator, columns, objectPath,
-                        totalBytes, mantaInputStream, streamingReader, partitionToMachValue);
+                        totalBytes, mantaInputStream, streamingReader, partitionToMachValue,
+                        rowPredicate, lineDelimited, retryPolicy);
             default:
                 String msg = "Can't create cursor for unsupported file type";
                 MantaPrestoIllegalArgumentException me = new MantaPrestoIllegalArgumentException(msg);
@@ -102,14 +298,751 @@ public class MantaRecordSet implements RecordSet {
 
     }
 
+    /**
+     * Determines if the query can be answered without reading any values from
+     * the data file. This is the case for <code>count(*)</code> queries and for
+     * queries that only project partition columns with known values.
+     *
+     * @return true if rows only need to be counted
+     */
+    private boolean readsNoColumnsFromData() {
+        if (rowPredicate.isNone()) {
+            return false;
+        }
+
+        for (MantaColumn column : columns) {
+            if (!partitionToMachValue.containsKey(column.getName())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Opens a stream to the start of the object. Objects that the listing
+     * reported as large enough are downloaded with concurrent range requests
+     * that are all conditional on the etag returned by a <code>HEAD</code>
+     * request. When the split asks for it, an index of the gzip object is
+     * built as it is decompressed and uploaded once the whole object has
+     * been read. Otherwise bzip2 and BGZF objects are decompressed on
+     * several threads. The decompressed size of compressed objects is
+     * estimated and recorded once they have been read to their end, and
+     * points from which large compressed objects can be resumed are
+     * recorded as they are decompressed.
+     *
+     * @return stream positioned at the start of the object or of the split's range
+     */
+    private MantaCountingInputStream openStream() {
+        if (range != null && MantaBlockSplitter.isBlockCompressed(objectPath)) {
+            return openBlockRange();
+        }
+
+        if (range != null) {
+            return openGzipRange();
+        }
+
+        final MantaObject object;
+        final InputStream source;
+
+        if (parallelDownload.isEnabledFor(objectSize)) {
+            object = headObject();
+            source = openRanges(object, 0L, object.getEtag());
+        } else {
+            final MantaObjectInputStream in = buildSourceStream();
+            object = in;
+            source = in;
+        }
+
+        if (buildGzipIndex) {
+            final InputStream indexing = new GzipIndexingInputStream(source,
+                    gzipIndexer.getCheckpointSpacing(), object.getEtag(), bufferPool,
+                    index -> gzipIndexer.upload(objectPath, index));
+            return new MantaCountingInputStream(recordingSize(indexing, object, MantaCompressionType.GZIP),
+                    object, 0L, readAhead, bufferPool, false);
+        }
+
+        final PushbackInputStream peekable = MantaParallelDecompression.peekable(source);
+        final MantaCompressionType type;
+
+        try {
+            type = MantaCompressionType.detect(object, peekable);
+        } catch (IOException e) {
+            String msg = "Unable to read the first bytes of the object";
+            MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
+            MantaPrestoExceptionUtils.annotateMantaObjectDetails(object, me);
+            Closeables.closeQuietly(source);
+            throw me;
+        }
+
+        compressedContent = type != null;
+        compressionType = type;
+
+        final InputStream decompressed;
+
+        if (type != null && object.getEtag() != null
+                && resumeCheckpoints.isEnabledFor(object.getContentLength())) {
+            resumePoints.reset(object.getEtag());
+            decompressed = parallelDecompression.wrap(type, peekable, bufferPool,
+                    resumeCheckpoints.getSpacing(), resumePoints::add);
+        } else {
+            resumePoints.reset(null);
+            decompressed = parallelDecompression.wrap(type, peekable, bufferPool);
+        }
+
+        return new MantaCountingInputStream(recordingSize(decompressed, object, type),
+                object, 0L, readAhead, bufferPool, false);
+    }
+
+    /**
+     * Estimates the decompressed size of a compressed object that is read
+     * from its start and wraps its decompressed stream so that the actual
+     * size is recorded once the stream reaches its end.
+     *
+     * @param decompressed stream of the decompressed object
+     * @param object metadata of the object
+     * @param type algorithm the object is compressed with or null if it isn't compressed
+     * @return stream that records the object's size or the passed stream
+     */
+    private InputStream recordingSize(final InputStream decompressed, final MantaObject object,
+                                      final MantaCompressionType type) {
+        final Long compressedBytes = object.getContentLength();
+
+        if (type == null || compressedBytes == null) {
+            return decompressed;
+        }
+
+        if (uncompressedSize == null) {
+            uncompressedSize = estimateUncompressedSize(object, type, compressedBytes);
+        }
+
+        return new SizeRecordingInputStream(decompressed, size ->
+                estimator.record(schemaName, tableName, type, compressedBytes, size));
+    }
+
+    /**
+     * Estimates the decompressed size of a compressed object. Large gzip
+     * objects have the size stored in their trailer read with a range
+     * request that is conditional on the object's etag. Other objects, and
+     * gzip objects whose trailer can't be read, are estimated from the
+     * compression ratio learned for the table.
+     *
+     * @param object metadata of the object
+     * @param type algorithm the object is compressed with
+     * @param compressedBytes size of the object
+     * @return estimated decompressed size
+     */
+    private long estimateUncompressedSize(final MantaObject object, final MantaCompressionType type,
+                                          final long compressedBytes) {
+        final long estimate = estimator.estimate(schemaName, tableName, type, compressedBytes);
+
+        if (!estimator.readsTrailer(type, compressedBytes)) {
+            return estimate;
+        }
+
+        final MantaHttpHeaders headers = new MantaHttpHeaders();
+        headers.setByteRange(compressedBytes - GZIP_ISIZE_BYTES, compressedBytes - 1);
+
+        if (object.getEtag() != null) {
+            headers.setIfMatch(object.getEtag());
+        }
+
+        final byte[] trailer = new byte[GZIP_ISIZE_BYTES];
+
+        try (InputStream in = retryPolicy.execute(MantaRetryPolicy.Operation.OPEN, objectPath,
+                () -> request(client -> client.getAsInputStream(objectPath, headers)))) {
+            ByteStreams.readFully(in, trailer);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Unable to read gzip trailer, estimating decompressed size [objectPath={}]",
+                    objectPath, e);
+            return estimate;
+        }
+
+        long isize = 0L;
+
+        for (int i = GZIP_ISIZE_BYTES - 1; i >= 0; i--) {
+            isize = (isize << Byte.SIZE) | (trailer[i] & BYTE_MASK);
+        }
+
+        return MantaCompressionEstimator.resolveTrailerSize(isize, compressedBytes, estimate);
+    }
+
+    /**
+     * Opens a stream to the lines of an indexed gzip object that start
+     * within the split's range. The object is requested from the byte
+     * containing the range's checkpoint and decompression resumes using the
+     * window of data that precedes the checkpoint, which is read from the
+     * index. The request is conditional on the etag the index was built from.
+     *
+     * @return stream positioned at the start of the range
+     */
+    private MantaCountingInputStream openGzipRange() {
+        final byte[] window;
+
+        try {
+            window = gzipIndexer.readWindow(objectPath, range);
+        } catch (IOException e) {
+            String msg = "There was a problem reading the gzip index of the object";
+            MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
+            me.addContextValue("objectPath", objectPath);
+            me.addContextValue("range", range);
+            throw me;
+        }
+
+        final MantaHttpHeaders headers = new MantaHttpHeaders();
+        headers.setByteRange(range.getCompressedOffset(), null);
+
+        if (range.getEtag() != null) {
+            headers.setIfMatch(range.getEtag());
+        }
+
+        LOG.debug("Reading range of indexed gzip object [objectPath={},range={}]", objectPath, range);
+
+        final MantaObjectInputStream source = buildSourceStream(headers);
+        final InputStream compressed = new AbortingInputStream(source);
+        final InputStream decompressed;
+
+        if (range.hasCheckpoint()) {
+            decompressed = new GzipCheckpointInputStream(compressed, range.getBits(), window, bufferPool);
+        } else {
+            decompressed = MantaCompressionType.wrapMantaStreamIfCompressed(source, compressed, bufferPool);
+        }
+
+        final InputStream lines = new MantaLineRangeInputStream(decompressed,
+                range.getStart() == 0L, range.getEnd() - range.getStart(), bufferPool);
+
+        return new MantaCountingInputStream(lines, source, 0L, readAhead, bufferPool, false);
+    }
+
+    /**
+     * Opens a stream to the lines of a bzip2 or XZ object that belong to the
+     * split's range of compressed blocks. Every request is conditional on
+     * the etag of the object when it was listed, and requests that aren't
+     * read to their end are aborted when they are closed.
+     *
+     * @return stream positioned at the start of the range
+     */
+    private MantaCountingInputStream openBlockRange() {
+        final MantaObject object;
+        final long size;
+
+        if (objectSize == null) {
+            object = headObject();
+            size = object.getContentLength();
+        } else {
+            // The listing already gave the size, so no HEAD request is needed
+            object = listedObject(range.getEtag());
+            size = objectSize;
+        }
+
+        LOG.debug("Reading range of compressed blocks [objectPath={},range={}]", objectPath, range);
+
+        final InputStream lines;
+
+        try {
+            lines = MantaBlockSplitter.openRange(objectPath, size, range, rangeOpener(range.getEtag()), bufferPool);
+        } catch (IOException e) {
+            String msg = "There was a problem reading the compressed blocks of the object";
+            MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
+            me.addContextValue("objectPath", objectPath);
+            me.addContextValue("range", range);
+            throw me;
+        }
+
+        return new MantaCountingInputStream(lines, object, 0L, readAhead, bufferPool, false);
+    }
+
+    /**
+     * Creates the metadata of the object from its listed size, so that no
+     * <code>HEAD</code> request is needed.
+     *
+     * @param etag etag of the object or null if unknown
+     * @return metadata holding the object's size and etag
+     */
+    private MantaObject listedObject(final String etag) {
+        final MantaHttpHeaders listed = new MantaHttpHeaders();
+        listed.setContentLength(objectSize);
+        listed.setETag(etag);
+
+        return new MantaObjectResponse(objectPath, listed);
+    }
+
+    /**
+     * Creates an opener of range requests of the object that are conditional
+     * on its etag and that are aborted when closed before their end.
+     *
+     * @param etag etag that all requests are conditional on or null
+     * @return opener of range requests
+     */
+    private MantaRangedInputStream.RangeOpener rangeOpener(final String etag) {
+        return (first, last) -> {
+            final MantaHttpHeaders headers = new MantaHttpHeaders();
+            headers.setByteRange(first, last);
+
+            if (etag != null) {
+                headers.setIfMatch(etag);
+            }
+
+            return new AbortingInputStream(buildSourceStream(headers));
+        };
+    }
+
+    /**
+     * Opens a stream that downloads the object from the specified position
+     * to its end with concurrent range requests.
+     *
+     * @param object metadata of the object
+     * @param start position within the object of the first byte to download
+     * @param etag etag that all requests are conditional on or null
+     * @return stream positioned at the specified byte
+     */
+    private InputStream openRanges(final MantaObject object, final long start, final String etag) {
+        long end = objectSize;
+
+        if (object.getContentLength() != null) {
+            end = object.getContentLength();
+        }
+
+        LOG.debug("Downloading object with concurrent range requests [objectPath={},start={},end={}]",
+                objectPath, start, end);
+
+        final MantaRangedInputStream.RangeOpener opener = (first, last) -> {
+            final MantaHttpHeaders headers = new MantaHttpHeaders();
+            headers.setByteRange(first, last);
+
+            if (etag != null) {
+                headers.setIfMatch(etag);
+            }
+
+            return request(client -> client.getAsInputStream(objectPath, headers));
+        };
+
+        return new MantaRangedInputStream(objectPath, start, end, parallelDownload,
+                opener, retryPolicy, bufferPool);
+    }
+
+    /**
+     * Sends a request with one of the pooled clients once the concurrency
+     * limit allows it.
+     *
+     * @param call request to send
+     * @param <T> type of value returned by the request
+     * @return result of the request
+     * @throws IOException thrown when the request fails
+     */
+    private <T> T request(final MantaClientPool.ClientCall<T> call) throws IOException {
+        return limiter.execute(() -> clientPool.execute(call));
+    }
+
+    private MantaObject headObject() {
+        try {
+            return retryPolicy.execute(MantaRetryPolicy.Operation.OPEN, objectPath,
+                    () -> request(client -> client.head(objectPath)));
+        } catch (IOException e) {
+            String msg = "There was a problem requesting object metadata from Manta";
+            MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
+            me.addContextValue("objectPath", objectPath);
+            throw me;
+        }
+    }
+
     private MantaObjectInputStream buildSourceStream() {
+        return buildSourceStream(null);
+    }
+
+    private MantaObjectInputStream buildSourceStream(final MantaHttpHeaders headers) {
         try {
-            return mantaClient.getAsInputStream(objectPath);
+            return retryPolicy.execute(MantaRetryPolicy.Operation.OPEN, objectPath,
+                    () -> hedging.open(objectPath,
+                            () -> request(client -> client.getAsInputStream(objectPath, headers))));
         } catch (IOException e) {
             String msg = "There was a problem opening a connection to Manta";
             MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
             me.addContextValue("objectPath", objectPath);
+            if (headers != null) {
+                me.addContextValue("range", headers.getRange());
+            }
             throw me;
         }
     }
+
+    /**
+     * Opens a new connection to the object positioned at the specified byte
+     * of the decompressed data. Uncompressed objects are requested with a
+     * <code>Range</code> header so that the bytes already read aren't
+     * downloaded again. The request is conditional on the object's etag so
+     * that we never resume reading from a different version of the object.
+     * Compressed objects are resumed from the last point recorded before the
+     * position when there is one, and multi-block XZ objects from the block
+     * containing the position. Otherwise they are read from the start and
+     * the decompressed bytes before the position are skipped without being
+     * parsed.
+     *
+     * @param position position within the decompressed data to resume at
+     * @param etag etag of the object when it was first opened
+     * @return stream positioned at the specified byte
+     */
+    private MantaCountingInputStream reopenSourceStream(final long position, final String etag) {
+        final boolean compressed = compressedContent || MantaCompressionType.isExtensionSupported(
+                Files.getFileExtension(objectPath));
+
+        if (position > 0L && compressed && etag != null && range == null) {
+            final MantaCountingInputStream resumed = resumeCompressed(position, etag);
+
+            if (resumed != null) {
+                return resumed;
+            }
+        }
+
+        if (position <= 0L || compressed || etag == null) {
+            final MantaCountingInputStream in = openStream();
+
+            try {
+                ByteStreams.skipFully(in, position);
+            } catch (IOException e) {
+                String msg = "Unable to skip to previously read position in object";
+                MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
+                MantaPrestoExceptionUtils.annotateMantaObjectDetails(in, me);
+                me.setContextValue("position", position);
+                throw me;
+            }
+
+            return in;
+        }
+
+        if (parallelDownload.isEnabledFor(objectSize)) {
+            final MantaObject object = headObject();
+            return new MantaCountingInputStream(openRanges(object, position, etag),
+                    object, position, readAhead, bufferPool);
+        }
+
+        final MantaHttpHeaders headers = new MantaHttpHeaders();
+        headers.setByteRange(position, null);
+        headers.setIfMatch(etag);
+
+        LOG.debug("Resuming download of object using a range request [objectPath={},position={}]",
+                objectPath, position);
+
+        return new MantaCountingInputStream(buildSourceStream(headers), position, readAhead, bufferPool);
+    }
+
+    /**
+     * Resumes a compressed object part way through with a range request that
+     * is conditional on the object's etag. Any failure to resume is logged
+     * and left to the caller, which reads the object again from its start.
+     *
+     * @param position position within the decompressed data to resume at
+     * @param etag etag of the object when it was first opened
+     * @return stream positioned at the specified byte or null if the object can't be resumed
+     */
+    private MantaCountingInputStream resumeCompressed(final long position, final String etag) {
+        final ResumePoint point = resumePoints.latest(position, etag);
+
+        if (point != null) {
+            return resumeFrom(point, position, etag);
+        }
+
+        if (compressionType == MantaCompressionType.XZ && resumeCheckpoints.isEnabledFor(objectSize)) {
+            return resumeXz(position, etag);
+        }
+
+        return null;
+    }
+
+    /**
+     * Resumes decompressing the object from a point recorded while it was
+     * read, skipping the decompressed bytes between the point and the
+     * position.
+     *
+     * @param point last point recorded before the position
+     * @param position position within the decompressed data to resume at
+     * @param etag etag of the object when it was first opened
+     * @return stream positioned at the specified byte or null if the object can't be resumed
+     */
+    private MantaCountingInputStream resumeFrom(final ResumePoint point, final long position, final String etag) {
+        final MantaHttpHeaders headers = new MantaHttpHeaders();
+        headers.setByteRange(point.getCompressedOffset(), null);
+        headers.setIfMatch(etag);
+
+        LOG.debug("Resuming compressed object from checkpoint [objectPath={},position={},point={}]",
+                objectPath, position, point);
+
+        MantaObjectInputStream source = null;
+        InputStream decompressed = null;
+
+        try {
+            source = buildSourceStream(headers);
+            decompressed = parallelDecompression.resume(point, new AbortingInputStream(source),
+                    bufferPool, resumePoints::add);
+            ByteStreams.skipFully(decompressed, position - point.getUncompressedOffset());
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Unable to resume compressed object, reading from its start [objectPath={},point={}]",
+                    objectPath, point, e);
+
+            if (decompressed != null) {
+                Closeables.closeQuietly(decompressed);
+            } else if (source != null) {
+                Closeables.closeQuietly(source);
+            }
+
+            return null;
+        }
+
+        return new MantaCountingInputStream(decompressed, source, position, readAhead, bufferPool, false);
+    }
+
+    /**
+     * Resumes an XZ object from the block containing the position, found
+     * using the index at the end of the object. Objects of a single block
+     * would be decompressed from their start anyway.
+     *
+     * @param position position within the decompressed data to resume at
+     * @param etag etag of the object when it was first opened
+     * @return stream positioned at the specified byte or null if the object can't be resumed
+     */
+    private MantaCountingInputStream resumeXz(final long position, final String etag) {
+        SeekableXZInputStream xz = null;
+
+        try {
+            xz = new SeekableXZInputStream(new MantaSeekableInputStream(objectSize, rangeOpener(etag)));
+
+            if (xz.getBlockCount() < 2) {
+                xz.close();
+                return null;
+            }
+
+            LOG.debug("Resuming XZ object from the block containing the position [objectPath={},position={}]",
+                    objectPath, position);
+
+            xz.seek(position);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Unable to resume XZ object, reading from its start [objectPath={},position={}]",
+                    objectPath, position, e);
+
+            if (xz != null) {
+                Closeables.closeQuietly(xz);
+            }
+
+            return null;
+        }
+
+        return new MantaCountingInputStream(xz, listedObject(etag), position, readAhead, bufferPool, false);
+    }
+
+    /**
+     * Stream that aborts the connection of a response that hasn't been read
+     * to its end when it is closed, rather than reading the rest of the
+     * object. Splits reading a range of an object stop well before its end.
+     */
+    private static final class AbortingInputStream extends FilterInputStream {
+        private final MantaObjectInputStream response;
+        private boolean eof = false;
+
+        private AbortingInputStream(final MantaObjectInputStream response) {
+            super(response);
+            this.response = response;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            eof = b < 0;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+            eof = read < 0;
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!eof) {
+                try {
+                    response.abortConnection();
+                } catch (IOException | RuntimeException e) {
+                    LOG.debug("Unable to abort partially read response [objectPath={}]",
+                            response.getPath(), e);
+                }
+            }
+
+            super.close();
+        }
+    }
+
+    /**
+     * Stream that counts the decompressed bytes of an object and passes the
+     * total to a consumer the first time the end of the object is reached.
+     */
+    private static final class SizeRecordingInputStream extends FilterInputStream {
+        private final LongConsumer onEnd;
+        private long count = 0L;
+        private boolean recorded = false;
+
+        private SizeRecordingInputStream(final InputStream in, final LongConsumer onEnd) {
+            super(in);
+            this.onEnd = onEnd;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+
+            if (b < 0) {
+                end();
+            } else {
+                count++;
+            }
+
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = super.read(b, off, len);
+
+            if (read < 0) {
+                end();
+            } else {
+                count += read;
+            }
+
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void end() {
+            if (!recorded) {
+                recorded = true;
+                onEnd.accept(count);
+            }
+        }
+    }
+
+    /**
+     * Most recent points from which the object can be resumed, recorded
+     * while it was read from its start and while it was resumed. Only the
+     * last few points are kept, since the cursor is never far behind the
+     * decompressor.
+     */
+    private static final class ResumePoints {
+        private static final int MAX_POINTS = 16;
+
+        private final Deque<ResumePoint> points = new ArrayDeque<>();
+        private String etag;
+
+        /**
+         * Forgets all points and starts recording the points of a new read
+         * of the object.
+         *
+         * @param objectEtag etag of the object being read or null to not record points
+         */
+        private synchronized void reset(final String objectEtag) {
+            points.clear();
+            etag = objectEtag;
+        }
+
+        /**
+         * Records a point, unless it precedes the last point recorded, which
+         * is the case for the points found again by a resumed stream.
+         *
+         * @param point point reached by the decompressor
+         */
+        private synchronized void add(final ResumePoint point) {
+            if (etag == null) {
+                return;
+            }
+
+            final ResumePoint last = points.peekLast();
+
+            if (last != null && last.getUncompressedOffset() >= point.getUncompressedOffset()) {
+                return;
+            }
+
+            points.addLast(point);
+
+            while (points.size() > MAX_POINTS) {
+                points.removeFirst();
+            }
+        }
+
+        /**
+         * Finds the last point at or before a position.
+         *
+         * @param position position within the decompressed data
+         * @param objectEtag etag of the object that is being resumed
+         * @return point or null if none was recorded for the same version of the object
+         */
+        private synchronized ResumePoint latest(final long position, final String objectEtag) {
+            if (etag == null || !etag.equals(objectEtag)) {
+                return null;
+            }
+
+            final Iterator<ResumePoint> descending = points.descendingIterator();
+
+            while (descending.hasNext()) {
+                final ResumePoint point = descending.next();
+
+                if (point.getUncompressedOffset() <= position) {
+                    return point;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Opens the cursor of each object of a multi-object split and, as soon
+     * as it is open, starts opening the stream of the following object.
+     */
+    private final class PrefetchingCursorOpener implements IntFunction<RecordCursor> {
+        private final List<MantaRecordSet> children;
+        private MantaPrefetcher.Prefetch next;
+
+        private PrefetchingCursorOpener(final List<MantaRecordSet> children) {
+            this.children = children;
+        }
+
+        @Override
+        public RecordCursor apply(final int index) {
+            final MantaRecordSet child = children.get(index);
+            final MantaCountingInputStream in;
+
+            if (next == null) {
+                in = child.openStream();
+            } else {
+                in = next.get();
+                next = null;
+            }
+
+            final RecordCursor cursor = child.cursor(in);
+
+            if (index + 1 < children.size()) {
+                next = prefetcher.prefetch(children.get(index + 1)::openStream);
+            }
+
+            return cursor;
+        }
+
+        private void close() {
+            if (next != null) {
+                next.close();
+                next = null;
+            }
+        }
+    }
 }
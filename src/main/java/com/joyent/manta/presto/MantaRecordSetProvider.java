@@ -17,7 +17,6 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.ImmutableList;
-import com.joyent.manta.client.MantaClient;
 import com.joyent.manta.presto.column.MantaColumn;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
@@ -35,24 +34,69 @@ import static java.util.Objects.requireNonNull;
  */
 public class MantaRecordSetProvider implements ConnectorRecordSetProvider {
     private final String connectorId;
-    private final MantaClient mantaClient;
+    private final MantaClientPool clientPool;
     private final ObjectReader streamingReader;
+    private final MantaRetryPolicy retryPolicy;
+    private final MantaReadAhead readAhead;
+    private final MantaBufferPool bufferPool;
+    private final MantaParallelDownload parallelDownload;
+    private final MantaPrefetcher prefetcher;
+    private final MantaHedging hedging;
+    private final MantaConcurrencyLimiter limiter;
+    private final MantaGzipIndexer gzipIndexer;
+    private final MantaParallelDecompression parallelDecompression;
+    private final MantaCompressionEstimator estimator;
+    private final MantaResumeCheckpoints resumeCheckpoints;
 
     /**
      * Creates a new instance based on the specified parameters.
      *
      * @param connectorId presto connection id object for debugging
-     * @param mantaClient object that allows for direct operations on Manta
+     * @param clientPool clients that allow for direct operations on Manta
      * @param jsonDataFileMapper jackson object mapper instance used only for data files
+     * @param retryPolicy policy used to retry transient failures when reading objects
+     * @param readAhead settings used to read objects ahead of the cursors
+     * @param bufferPool pool that stream buffers are borrowed from
+     * @param parallelDownload settings used to download large objects with concurrent range requests
+     * @param prefetcher threads used to open the next object of a split in advance
+     * @param hedging settings used to hedge requests that are slow to return their first bytes
+     * @param limiter limit on the number of concurrent requests sent to Manta
+     * @param gzipIndexer settings used to read and build indexes of gzip objects
+     * @param parallelDecompression threads used to decompress objects on several cores
+     * @param estimator estimates of the decompressed size of compressed objects
+     * @param resumeCheckpoints settings used to resume compressed objects after a lost connection
      */
     @Inject
+    @SuppressWarnings("ParameterNumber")
     public MantaRecordSetProvider(final MantaConnectorId connectorId,
-                                  final MantaClient mantaClient,
-                                  @Named("JsonData") final ObjectMapper jsonDataFileMapper) {
+                                  final MantaClientPool clientPool,
+                                  @Named("JsonData") final ObjectMapper jsonDataFileMapper,
+                                  final MantaRetryPolicy retryPolicy,
+                                  final MantaReadAhead readAhead,
+                                  final MantaBufferPool bufferPool,
+                                  final MantaParallelDownload parallelDownload,
+                                  final MantaPrefetcher prefetcher,
+                                  final MantaHedging hedging,
+                                  final MantaConcurrencyLimiter limiter,
+                                  final MantaGzipIndexer gzipIndexer,
+                                  final MantaParallelDecompression parallelDecompression,
+                                  final MantaCompressionEstimator estimator,
+                                  final MantaResumeCheckpoints resumeCheckpoints) {
         this.connectorId = requireNonNull(connectorId, "connectorId is null").toString();
-        this.mantaClient = requireNonNull(mantaClient, "Manta client is null");
+        this.clientPool = requireNonNull(clientPool, "Manta client pool is null");
         requireNonNull(jsonDataFileMapper, "object mapper is null");
         this.streamingReader = jsonDataFileMapper.readerFor(ObjectNode.class);
+        this.retryPolicy = requireNonNull(retryPolicy, "Retry policy is null");
+        this.readAhead = requireNonNull(readAhead, "Read ahead is null");
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+        this.parallelDownload = requireNonNull(parallelDownload, "Parallel download is null");
+        this.prefetcher = requireNonNull(prefetcher, "Prefetcher is null");
+        this.hedging = requireNonNull(hedging, "Hedging is null");
+        this.limiter = requireNonNull(limiter, "Limiter is null");
+        this.gzipIndexer = requireNonNull(gzipIndexer, "Gzip indexer is null");
+        this.parallelDecompression = requireNonNull(parallelDecompression, "Parallel decompression is null");
+        this.estimator = requireNonNull(estimator, "Compression estimator is null");
+        this.resumeCheckpoints = requireNonNull(resumeCheckpoints, "Resume checkpoints is null");
     }
 
     @Override
@@ -72,8 +116,10 @@ public class MantaRecordSetProvider implements ConnectorRecordSetProvider {
             handles.add((MantaColumn) column);
         }
 
-        return new MantaRecordSet(mantaSplit, handles.build(), mantaClient,
-                streamingReader);
+        return new MantaRecordSet(mantaSplit, handles.build(), clientPool,
+                streamingReader, retryPolicy, readAhead, bufferPool, parallelDownload, prefetcher,
+                hedging, limiter, gzipIndexer, parallelDecompression, estimator,
+                resumeCheckpoints);
     }
 
     @Override
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.joyent.manta.presto.exceptions.MantaPrestoRuntimeException;
+import com.joyent.manta.presto.exceptions.MantaPrestoUncheckedIOException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Objects;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Iterator over a lazily listed stream of objects that recovers from
+ * transient failures part way through the listing. Manta returns directory
+ * listings sorted by name, so after a failure the listing is started again
+ * and resumed after the last element that was returned, which is found by
+ * its key. Elements added or removed before that element in the meantime
+ * therefore can't cause other elements to be skipped or listed twice. When
+ * the last element returned is no longer listed, the position to resume
+ * from can't be determined and the listing fails.
+ *
+ * @param <T> type of element listed
+ * @since 1.0.0
+ */
+final class MantaResumableListing<T> implements Iterator<T>, AutoCloseable {
+    private final Supplier<Stream<T>> listing;
+    private final Function<T, String> key;
+    private final MantaRetryPolicy retryPolicy;
+    private final MantaConcurrencyLimiter limiter;
+    private final String path;
+
+    private Stream<T> stream;
+    private Iterator<T> iterator;
+
+    /**
+     * Number of elements returned by this iterator.
+     */
+    private long returned = 0L;
+
+    /**
+     * Key of the last element returned by this iterator or null if none was returned.
+     */
+    private String lastKey;
+
+    /**
+     * Number of consecutive failed attempts to advance the listing.
+     */
+    private int failedAttempts = 0;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param listing function that starts the listing from the beginning
+     * @param key function returning the unique key, such as the path, of an element
+     * @param retryPolicy policy deciding which failures are retried
+     * @param limiter limit on the number of concurrent requests sent to Manta
+     * @param path root path being listed, used for logging
+     */
+    private MantaResumableListing(final Supplier<Stream<T>> listing,
+                                  final Function<T, String> key,
+                                  final MantaRetryPolicy retryPolicy,
+                                  final MantaConcurrencyLimiter limiter,
+                                  final String path) {
+        this.listing = requireNonNull(listing, "Listing is null");
+        this.key = requireNonNull(key, "Key function is null");
+        this.retryPolicy = requireNonNull(retryPolicy, "Retry policy is null");
+        this.limiter = requireNonNull(limiter, "Limiter is null");
+        this.path = path;
+    }
+
+    /**
+     * Creates a stream that lists the elements supplied by the passed
+     * function and restarts the listing after transient failures.
+     *
+     * @param listing function that starts the listing from the beginning
+     * @param key function returning the unique key, such as the path, of an element
+     * @param retryPolicy policy deciding which failures are retried
+     * @param path root path being listed, used for logging
+     * @param <T> type of element listed
+     * @return stream that must be closed to release the underlying listing
+     */
+    static <T> Stream<T> stream(final Supplier<Stream<T>> listing,
+                                final Function<T, String> key,
+                                final MantaRetryPolicy retryPolicy,
+                                final String path) {
+        return stream(listing, key, retryPolicy, MantaConcurrencyLimiter.disabled(), path);
+    }
+
+    /**
+     * Creates a stream that lists the elements supplied by the passed
+     * function and restarts the listing after transient failures. Each step
+     * of the listing, which may request the next page of a directory, is
+     * counted against the passed limiter.
+     *
+     * @param listing function that starts the listing from the beginning
+     * @param key function returning the unique key, such as the path, of an element
+     * @param retryPolicy policy deciding which failures are retried
+     * @param limiter limit on the number of concurrent requests sent to Manta
+     * @param path root path being listed, used for logging
+     * @param <T> type of element listed
+     * @return stream that must be closed to release the underlying listing
+     */
+    static <T> Stream<T> stream(final Supplier<Stream<T>> listing,
+                                final Function<T, String> key,
+                                final MantaRetryPolicy retryPolicy,
+                                final MantaConcurrencyLimiter limiter,
+                                final String path) {
+        final MantaResumableListing<T> iterator = new MantaResumableListing<>(listing, key,
+                retryPolicy, limiter, path);
+        final Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(
+                iterator, Spliterator.ORDERED | Spliterator.NONNULL);
+
+        return StreamSupport.stream(spliterator, false).onClose(iterator::close);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (true) {
+            try {
+                final boolean hasNext = limitedHasNext();
+                failedAttempts = 0;
+                return hasNext;
+            } catch (RuntimeException e) {
+                failedAttempts++;
+                close();
+
+                if (!awaitRetry(e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final T next = iterator.next();
+        lastKey = key.apply(next);
+        returned++;
+
+        return next;
+    }
+
+    @Override
+    public void close() {
+        if (stream != null) {
+            stream.close();
+        }
+
+        stream = null;
+        iterator = null;
+    }
+
+    /**
+     * Advances the listing, starting it if needed, while holding a permit
+     * from the limiter.
+     *
+     * @return true if the listing has more elements
+     */
+    private boolean limitedHasNext() {
+        try {
+            return limiter.execute(() -> {
+                if (iterator == null) {
+                    open();
+                }
+
+                return iterator.hasNext();
+            });
+        } catch (IOException e) {
+            String msg = "Unable to advance listing";
+            MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
+            me.setContextValue("path", path);
+            me.setContextValue("returned", returned);
+            throw me;
+        }
+    }
+
+    /**
+     * Starts the listing and skips the elements up to and including the
+     * last element returned.
+     */
+    private void open() {
+        stream = listing.get();
+        iterator = stream.iterator();
+
+        if (lastKey == null) {
+            return;
+        }
+
+        while (iterator.hasNext()) {
+            if (Objects.equals(key.apply(iterator.next()), lastKey)) {
+                return;
+            }
+        }
+
+        String msg = "Unable to resume listing because the last object listed is no longer present";
+        MantaPrestoRuntimeException me = new MantaPrestoRuntimeException(msg);
+        me.setContextValue("path", path);
+        me.setContextValue("returned", returned);
+        me.setContextValue("lastKey", lastKey);
+        throw me;
+    }
+
+    private boolean awaitRetry(final RuntimeException e) {
+        try {
+            return retryPolicy.awaitRetry(MantaRetryPolicy.Operation.LIST, path, e, failedAttempts);
+        } catch (InterruptedIOException ie) {
+            String msg = "Interrupted while waiting to retry listing";
+            MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, ie);
+            me.setContextValue("path", path);
+            me.setContextValue("returned", returned);
+            throw me;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Connector-wide settings used to record points from which a large
+ * compressed object can be resumed with a range request after its
+ * connection is lost, rather than being read and decompressed again from
+ * its start. Points are recorded at the start of the units of bzip2 and
+ * BGZF objects decompressed in parallel, and at deflate block boundaries
+ * every <code>spacing</code> bytes of other gzip objects. Gzip objects are
+ * then decompressed by a pure Java inflater, which is slower than the JDK
+ * inflater, so smaller objects are read without recording points.
+ *
+ * @since 1.0.0
+ */
+public class MantaResumeCheckpoints {
+    /**
+     * Default size in bytes of the smallest compressed object that points are recorded for.
+     */
+    public static final long DEFAULT_MIN_OBJECT_SIZE = 67_108_864L;
+
+    /**
+     * Default minimum number of decompressed bytes between deflate checkpoints.
+     */
+    public static final long DEFAULT_SPACING = 16_777_216L;
+
+    private static final MantaResumeCheckpoints DISABLED = new MantaResumeCheckpoints(
+            false, DEFAULT_MIN_OBJECT_SIZE, DEFAULT_SPACING);
+
+    private final boolean enabled;
+    private final long minObjectSize;
+    private final long spacing;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param enabled true to record points from which compressed objects can be resumed
+     * @param minObjectSize size in bytes of the smallest compressed object that points are recorded for
+     * @param spacing minimum number of decompressed bytes between deflate checkpoints
+     */
+    @Inject
+    public MantaResumeCheckpoints(@Named("ResumeCheckpointEnabled") final boolean enabled,
+                                  @Named("ResumeCheckpointMinObjectSize") final long minObjectSize,
+                                  @Named("ResumeCheckpointSpacing") final long spacing) {
+        if (spacing < 1L) {
+            throw new IllegalArgumentException("Resume checkpoint spacing must be greater than zero");
+        }
+
+        this.enabled = enabled;
+        this.minObjectSize = minObjectSize;
+        this.spacing = spacing;
+    }
+
+    /**
+     * @return an instance that never records points
+     */
+    public static MantaResumeCheckpoints disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Determines if points should be recorded while reading an object.
+     *
+     * @param compressedBytes size of the object or null if unknown
+     * @return true if the object is at least as large as the minimum size
+     */
+    public boolean isEnabledFor(final Long compressedBytes) {
+        return enabled && compressedBytes != null && compressedBytes >= minObjectSize;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMinObjectSize() {
+        return minObjectSize;
+    }
+
+    public long getSpacing() {
+        return spacing;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("enabled", enabled)
+                .append("minObjectSize", minObjectSize)
+                .append("spacing", spacing)
+                .toString();
+    }
+}
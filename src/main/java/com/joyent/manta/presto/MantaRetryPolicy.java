@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.base.Throwables;
+import com.joyent.manta.exception.MantaClientHttpResponseException;
+import com.joyent.manta.exception.MantaNoHttpResponseException;
+import com.joyent.manta.org.apache.http.ConnectionClosedException;
+import com.joyent.manta.org.apache.http.NoHttpResponseException;
+import com.joyent.manta.org.apache.http.TruncatedChunkException;
+import com.joyent.manta.org.apache.http.conn.ConnectTimeoutException;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Connector-wide policy that decides which failures when communicating with
+ * Manta are transient and how long to wait before retrying them. Delays grow
+ * exponentially from the initial delay up to the maximum delay and are
+ * randomized with full jitter so that many splits failing at once don't
+ * retry in lockstep.
+ *
+ * <p>Retryable failures are socket timeouts, connection resets, closed or
+ * truncated responses, connect timeouts and HTTP responses with a status of
+ * 408, 429, 500, 502, 503 or 504. The whole chain of causes is examined, so
+ * failures wrapped in unchecked exceptions are classified the same way.</p>
+ *
+ * @since 1.0.0
+ */
+public class MantaRetryPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(MantaRetryPolicy.class);
+
+    /**
+     * Default number of attempts made for an operation including the first.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    /**
+     * Default delay in milliseconds before the first retry.
+     */
+    public static final long DEFAULT_INITIAL_DELAY_MILLIS = 100L;
+
+    /**
+     * Default upper bound in milliseconds of the delay before any retry.
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 10_000L;
+
+    /**
+     * HTTP status codes that indicate a transient failure.
+     */
+    private static final int[] RETRYABLE_STATUS_CODES = new int[] {
+            408, 429, 500, 502, 503, 504
+    };
+
+    private final int maxAttempts;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final MantaRetryStats stats;
+
+    /**
+     * Operations that the policy is applied to. Each operation is counted
+     * separately in {@link MantaRetryStats}.
+     */
+    public enum Operation {
+        /**
+         * Opening a connection to an object with a GET request.
+         */
+        OPEN,
+        /**
+         * Listing the contents of directories.
+         */
+        LIST,
+        /**
+         * Reading from an already open object stream.
+         */
+        READ
+    }
+
+    /**
+     * Operation that can be retried.
+     *
+     * @param <T> type of value returned by the operation
+     */
+    @FunctionalInterface
+    public interface RetryableCall<T> {
+        /**
+         * Performs the operation.
+         *
+         * @return result of operation
+         * @throws IOException thrown when the operation fails
+         */
+        T call() throws IOException;
+    }
+
+    /**
+     * Creates a new instance with the default settings that records its
+     * statistics in an instance that isn't exported.
+     */
+    public MantaRetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS,
+                new MantaRetryStats());
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param maxAttempts number of attempts made for an operation including the first
+     * @param initialDelayMillis delay in milliseconds before the first retry
+     * @param maxDelayMillis upper bound in milliseconds of the delay before any retry
+     * @param stats statistics to record retries in
+     */
+    @Inject
+    public MantaRetryPolicy(@Named("RetryMaxAttempts") final int maxAttempts,
+                            @Named("RetryInitialDelayMillis") final long initialDelayMillis,
+                            @Named("RetryMaxDelayMillis") final long maxDelayMillis,
+                            final MantaRetryStats stats) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Maximum attempts must be at least one");
+        }
+
+        if (initialDelayMillis < 0L || maxDelayMillis < initialDelayMillis) {
+            String msg = String.format("Invalid retry delays [initialDelayMillis=%d,maxDelayMillis=%d]",
+                    initialDelayMillis, maxDelayMillis);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.stats = requireNonNull(stats, "Retry stats are null");
+    }
+
+    /**
+     * Performs an operation, retrying it when it fails with a transient
+     * failure until all attempts are used.
+     *
+     * @param operation type of operation being performed
+     * @param path path of the object or directory being operated on
+     * @param call operation to perform
+     * @param <T> type of value returned by the operation
+     * @return result of the operation
+     * @throws IOException thrown when the operation fails with a failure
+     *         that isn't transient or when all attempts fail
+     */
+    public <T> T execute(final Operation operation, final String path,
+                         final RetryableCall<T> call) throws IOException {
+        int failedAttempts = 0;
+
+        while (true) {
+            try {
+                return call.call();
+            } catch (IOException | UncheckedIOException e) {
+                failedAttempts++;
+
+                if (!awaitRetry(operation, path, e, failedAttempts)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decides if a failed operation should be retried and, if so, waits
+     * for the backoff delay before returning.
+     *
+     * @param operation type of operation that failed
+     * @param path path of the object or directory being operated on
+     * @param failure failure of the last attempt
+     * @param failedAttempts number of attempts that have failed so far
+     * @return true if the operation should be attempted again
+     * @throws InterruptedIOException thrown when interrupted while waiting
+     */
+    public boolean awaitRetry(final Operation operation, final String path,
+                              final Throwable failure, final int failedAttempts)
+            throws InterruptedIOException {
+        if (!isRetryable(failure)) {
+            stats.recordNonRetryable();
+            return false;
+        }
+
+        if (failedAttempts >= maxAttempts) {
+            stats.recordExhausted();
+            return false;
+        }
+
+        final long delay = backoffMillis(failedAttempts);
+        stats.recordRetry(operation, delay);
+
+        LOG.info("Retrying Manta operation after transient failure "
+                + "[operation={},path={},attempt={},delayMillis={}]",
+                operation, path, failedAttempts + 1, delay, failure);
+
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ie = new InterruptedIOException(
+                    "Interrupted while waiting to retry Manta operation");
+            ie.initCause(failure);
+            throw ie;
+        }
+
+        return true;
+    }
+
+    /**
+     * Determines if a failure is transient.
+     *
+     * @param failure failure to classify
+     * @return true if any exception within the chain of causes is transient
+     */
+    public boolean isRetryable(final Throwable failure) {
+        if (failure == null) {
+            return false;
+        }
+
+        for (Throwable t : Throwables.getCausalChain(failure)) {
+            if (t instanceof MantaClientHttpResponseException) {
+                return isRetryableStatusCode(((MantaClientHttpResponseException) t).getStatusCode());
+            }
+
+            if (t instanceof SocketTimeoutException
+                    || t instanceof SocketException
+                    || t instanceof ConnectTimeoutException
+                    || t instanceof NoHttpResponseException
+                    || t instanceof MantaNoHttpResponseException
+                    || t instanceof ConnectionClosedException
+                    || t instanceof TruncatedChunkException) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isRetryableStatusCode(final int statusCode) {
+        for (int code : RETRYABLE_STATUS_CODES) {
+            if (code == statusCode) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Calculates the delay before the next attempt using exponential backoff
+     * with full jitter.
+     *
+     * @param failedAttempts number of attempts that have failed so far
+     * @return delay in milliseconds
+     */
+    long backoffMillis(final int failedAttempts) {
+        final long ceiling = backoffCeilingMillis(failedAttempts);
+
+        if (ceiling <= 0L) {
+            return 0L;
+        }
+
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Calculates the upper bound of the delay before the next attempt.
+     *
+     * @param failedAttempts number of attempts that have failed so far
+     * @return upper bound of delay in milliseconds
+     */
+    long backoffCeilingMillis(final int failedAttempts) {
+        long ceiling = initialDelayMillis;
+
+        for (int i = 1; i < failedAttempts && ceiling < maxDelayMillis; i++) {
+            ceiling *= 2;
+        }
+
+        return Math.min(ceiling, maxDelayMillis);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public MantaRetryStats getStats() {
+        return stats;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("maxAttempts", maxAttempts)
+                .append("initialDelayMillis", initialDelayMillis)
+                .append("maxDelayMillis", maxDelayMillis)
+                .toString();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.weakref.jmx.MBeanExporter;
+import org.weakref.jmx.Managed;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing the retries performed by {@link MantaRetryPolicy}.
+ * When created by the connector's injector, the counters are exported as a
+ * JMX MBean named after the connector so that they can be queried through
+ * Presto's <code>jmx</code> catalog.
+ *
+ * @since 1.0.0
+ */
+public class MantaRetryStats {
+    private final String objectName;
+    private final Map<MantaRetryPolicy.Operation, LongAdder> retries =
+            new EnumMap<>(MantaRetryPolicy.Operation.class);
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder nonRetryableFailures = new LongAdder();
+    private final LongAdder backoffMillis = new LongAdder();
+
+    private MBeanExporter exporter;
+
+    /**
+     * Creates a new instance that isn't associated with a connector.
+     */
+    public MantaRetryStats() {
+        this((String) null);
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param connectorId connector id used to name the exported MBean
+     */
+    @Inject
+    public MantaRetryStats(final MantaConnectorId connectorId) {
+        this(MantaMBeans.objectName(MantaRetryStats.class, connectorId));
+    }
+
+    private MantaRetryStats(final String objectName) {
+        this.objectName = objectName;
+
+        for (MantaRetryPolicy.Operation operation : MantaRetryPolicy.Operation.values()) {
+            retries.put(operation, new LongAdder());
+        }
+    }
+
+    /**
+     * Exports this instance to the platform MBean server.
+     */
+    @PostConstruct
+    public synchronized void export() {
+        if (objectName != null && exporter == null) {
+            exporter = MantaMBeans.export(objectName, this);
+        }
+    }
+
+    /**
+     * Removes this instance from the platform MBean server.
+     */
+    @PreDestroy
+    public synchronized void unexport() {
+        MantaMBeans.unexport(exporter, objectName);
+        exporter = null;
+    }
+
+    /**
+     * Records a retry that is about to be performed.
+     *
+     * @param operation operation being retried
+     * @param delayMillis milliseconds waited before retrying
+     */
+    void recordRetry(final MantaRetryPolicy.Operation operation, final long delayMillis) {
+        retries.get(operation).increment();
+        backoffMillis.add(delayMillis);
+    }
+
+    /**
+     * Records a retryable failure that wasn't retried because all attempts
+     * were used.
+     */
+    void recordExhausted() {
+        exhausted.increment();
+    }
+
+    /**
+     * Records a failure that wasn't retried because it isn't transient.
+     */
+    void recordNonRetryable() {
+        nonRetryableFailures.increment();
+    }
+
+    /**
+     * @return number of times opening an object was retried
+     */
+    @Managed
+    public long getOpenRetries() {
+        return retries.get(MantaRetryPolicy.Operation.OPEN).sum();
+    }
+
+    /**
+     * @return number of times listing a directory was retried
+     */
+    @Managed
+    public long getListRetries() {
+        return retries.get(MantaRetryPolicy.Operation.LIST).sum();
+    }
+
+    /**
+     * @return number of times reading from an object stream was retried
+     */
+    @Managed
+    public long getReadRetries() {
+        return retries.get(MantaRetryPolicy.Operation.READ).sum();
+    }
+
+    /**
+     * @return number of retryable failures that failed after all attempts were used
+     */
+    @Managed
+    public long getExhaustedRetries() {
+        return exhausted.sum();
+    }
+
+    /**
+     * @return number of failures that weren't retried because they aren't transient
+     */
+    @Managed
+    public long getNonRetryableFailures() {
+        return nonRetryableFailures.sum();
+    }
+
+    /**
+     * @return total number of milliseconds spent waiting before retries
+     */
+    @Managed
+    public long getBackoffMillis() {
+        return backoffMillis.sum();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("openRetries", getOpenRetries())
+                .append("listRetries", getListRetries())
+                .append("readRetries", getReadRetries())
+                .append("exhaustedRetries", getExhaustedRetries())
+                .append("nonRetryableFailures", getNonRetryableFailures())
+                .append("backoffMillis", getBackoffMillis())
+                .toString();
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.io.ByteStreams;
+import org.tukaani.xz.SeekableInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link SeekableInputStream} over an object in Manta that reads from a
+ * range request opened at the current position. The request reads to the
+ * end of the object and is only replaced when seeking backwards or further
+ * forwards than is worth reading through, so that reading the index at the
+ * end of an XZ object and then the blocks of a range takes a few requests.
+ *
+ * @since 1.0.0
+ */
+public class MantaSeekableInputStream extends SeekableInputStream {
+    /**
+     * Largest number of bytes read and discarded to seek forwards rather
+     * than opening a new request.
+     */
+    private static final long MAX_SKIP_BYTES = 1_048_576L;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private final long length;
+    private final MantaRangedInputStream.RangeOpener opener;
+
+    /**
+     * Current range request or null if none is open.
+     */
+    private InputStream in;
+    private long inPosition;
+
+    private long position = 0L;
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param length size of the object in bytes
+     * @param opener opens range requests of the object
+     */
+    public MantaSeekableInputStream(final long length,
+                                    final MantaRangedInputStream.RangeOpener opener) {
+        if (length < 0L) {
+            throw new IllegalArgumentException("Object length must not be negative");
+        }
+
+        this.length = length;
+        this.opener = requireNonNull(opener, "Range opener is null");
+    }
+
+    @Override
+    public long length() throws IOException {
+        ensureOpen();
+        return length;
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public void seek(final long pos) throws IOException {
+        ensureOpen();
+
+        if (pos < 0L) {
+            throw new IOException("Negative seek position: " + pos);
+        }
+
+        position = pos;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+
+        if (read(single, 0, 1) < 0) {
+            return -1;
+        }
+
+        return single[0] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        ensureOpen();
+
+        if (len == 0) {
+            return 0;
+        }
+
+        if (position >= length) {
+            return -1;
+        }
+
+        positionRequest();
+
+        final int read = in.read(b, off, (int) Math.min(len, length - position));
+
+        if (read < 0) {
+            throw new EOFException("Object ended before its expected length");
+        }
+
+        position += read;
+        inPosition += read;
+
+        return read;
+    }
+
+    /**
+     * Makes sure that the current request is positioned at the current
+     * position, reading forwards through it or replacing it.
+     *
+     * @throws IOException thrown when a request can't be opened or read
+     */
+    private void positionRequest() throws IOException {
+        if (in != null && position >= inPosition && position - inPosition <= MAX_SKIP_BYTES) {
+            ByteStreams.skipFully(in, position - inPosition);
+            inPosition = position;
+            return;
+        }
+
+        closeRequest();
+        in = opener.open(position, length - 1);
+        inPosition = position;
+    }
+
+    private void closeRequest() throws IOException {
+        if (in != null) {
+            final InputStream previous = in;
+            in = null;
+            previous.close();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        closeRequest();
+    }
+}
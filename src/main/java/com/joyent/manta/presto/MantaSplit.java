@@ -9,9 +9,13 @@ package com.joyent.manta.presto;
 
 import com.facebook.presto.spi.ConnectorSplit;
 import com.facebook.presto.spi.HostAddress;
+import com.facebook.presto.spi.predicate.TupleDomain;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.joyent.manta.presto.column.MantaColumn;
 import com.joyent.manta.presto.column.MantaPartitionColumn;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
@@ -22,7 +26,10 @@ import static java.util.Objects.requireNonNull;
 
 /**
  * {@link ConnectorSplit} implementation that represent a single file object
- * within Manta.
+ * within Manta, optionally followed by additional small objects that are
+ * read one after another by the same cursor. Large gzip objects that have
+ * been indexed are instead divided into several splits that each read a
+ * {@link MantaSplitRange} of the object.
  *
  * @since 1.0.0
  */
@@ -34,6 +41,35 @@ public class MantaSplit implements ConnectorSplit {
     private final MantaDataFileType dataFileType;
     private final MantaSplitPartitionPredicate filePartitionPredicate;
     private final MantaSplitPartitionPredicate dirPartitionPredicate;
+    private final TupleDomain<MantaColumn> rowPredicate;
+    private final Long objectSize;
+    private final List<MantaSplitObject> additionalObjects;
+    private final MantaSplitRange range;
+    private final boolean buildGzipIndex;
+    private final boolean lineDelimited;
+
+    /**
+     * Creates a new instance based on the specified parameters without a
+     * row level predicate.
+     *
+     * @param connectorId presto connection id object for debugging
+     * @param schemaName schema as defined in Presto catalog configuration
+     * @param tableName table as defined in table definition file
+     * @param objectPath path to object in Manta
+     * @param dataFileType data type of all objects in table
+     * @param filePartitionPredicate partitioning scheme used to partition by filename
+     * @param dirPartitionPredicate partitioning scheme used to partition by directory
+     */
+    public MantaSplit(final String connectorId,
+                      final String schemaName,
+                      final String tableName,
+                      final String objectPath,
+                      final MantaDataFileType dataFileType,
+                      final MantaSplitPartitionPredicate filePartitionPredicate,
+                      final MantaSplitPartitionPredicate dirPartitionPredicate) {
+        this(connectorId, schemaName, tableName, objectPath, dataFileType,
+                filePartitionPredicate, dirPartitionPredicate, TupleDomain.all(), null, null, null, false, false);
+    }
 
     /**
      * Creates a new instance based on the specified parameters.
@@ -45,15 +81,28 @@ public class MantaSplit implements ConnectorSplit {
      * @param dataFileType data type of all objects in table
      * @param filePartitionPredicate partitioning scheme used to partition by filename
      * @param dirPartitionPredicate partitioning scheme used to partition by directory
+     * @param rowPredicate predicate on non-partition columns used to skip rows while reading
+     * @param objectSize size in bytes of the object as reported by the directory listing or null if unknown
+     * @param additionalObjects objects read after the first object or null if none
+     * @param range part of the object read by this split or null to read the whole object
+     * @param buildGzipIndex true to build an index of the gzip object while reading it
+     * @param lineDelimited true if the table declares one JSON object per line
      */
     @JsonCreator
+    @SuppressWarnings("ParameterNumber")
     public MantaSplit(@JsonProperty("connectorId") final String connectorId,
                       @JsonProperty("schemaName") final String schemaName,
                       @JsonProperty("tableName") final String tableName,
                       @JsonProperty("objectPath") final String objectPath,
                       @JsonProperty("dataFileType") final MantaDataFileType dataFileType,
                       @JsonProperty("filePartitionPredicate") final MantaSplitPartitionPredicate filePartitionPredicate,
-                      @JsonProperty("dirPartitionPredicate") final MantaSplitPartitionPredicate dirPartitionPredicate) {
+                      @JsonProperty("dirPartitionPredicate") final MantaSplitPartitionPredicate dirPartitionPredicate,
+                      @JsonProperty("rowPredicate") final TupleDomain<MantaColumn> rowPredicate,
+                      @JsonProperty("objectSize") final Long objectSize,
+                      @JsonProperty("additionalObjects") final List<MantaSplitObject> additionalObjects,
+                      @JsonProperty("range") final MantaSplitRange range,
+                      @JsonProperty("buildGzipIndex") final boolean buildGzipIndex,
+                      @JsonProperty("lineDelimited") final boolean lineDelimited) {
         this.schemaName = requireNonNull(schemaName, "schema name is null");
         this.connectorId = requireNonNull(connectorId, "connector id is null");
         this.tableName = requireNonNull(tableName, "table name is null");
@@ -61,6 +110,28 @@ public class MantaSplit implements ConnectorSplit {
         this.dataFileType = requireNonNull(dataFileType, "data file type is null");
         this.filePartitionPredicate = requireNonNull(filePartitionPredicate, "file partition predicate is null");
         this.dirPartitionPredicate = requireNonNull(dirPartitionPredicate, "directory partition predicate is null");
+
+        if (rowPredicate == null) {
+            this.rowPredicate = TupleDomain.all();
+        } else {
+            this.rowPredicate = rowPredicate;
+        }
+
+        this.objectSize = objectSize;
+
+        if (additionalObjects == null) {
+            this.additionalObjects = ImmutableList.of();
+        } else {
+            this.additionalObjects = ImmutableList.copyOf(additionalObjects);
+        }
+
+        if (range != null && !this.additionalObjects.isEmpty()) {
+            throw new IllegalArgumentException("Split reading part of an object can't read other objects");
+        }
+
+        this.range = range;
+        this.buildGzipIndex = buildGzipIndex;
+        this.lineDelimited = lineDelimited;
     }
 
     @JsonProperty
@@ -104,6 +175,47 @@ public class MantaSplit implements ConnectorSplit {
         return dirPartitionPredicate;
     }
 
+    @JsonProperty
+    public TupleDomain<MantaColumn> getRowPredicate() {
+        return rowPredicate;
+    }
+
+    @JsonProperty
+    public Long getObjectSize() {
+        return objectSize;
+    }
+
+    @JsonProperty
+    public List<MantaSplitObject> getAdditionalObjects() {
+        return additionalObjects;
+    }
+
+    @JsonProperty
+    public MantaSplitRange getRange() {
+        return range;
+    }
+
+    @JsonProperty
+    public boolean isBuildGzipIndex() {
+        return buildGzipIndex;
+    }
+
+    @JsonProperty
+    public boolean isLineDelimited() {
+        return lineDelimited;
+    }
+
+    /**
+     * @return all objects read by this split in the order they are read
+     */
+    @JsonIgnore
+    public List<MantaSplitObject> getObjects() {
+        return ImmutableList.<MantaSplitObject>builder()
+                .add(new MantaSplitObject(objectPath, objectSize))
+                .addAll(additionalObjects)
+                .build();
+    }
+
     @Override
     public List<HostAddress> getAddresses() {
         throw new UnsupportedOperationException("get Addresses is not supported");
@@ -150,6 +262,12 @@ public class MantaSplit implements ConnectorSplit {
                 .append("dataFileType", dataFileType)
                 .append("filePartitionPredicate", filePartitionPredicate)
                 .append("dirPartitionPredicate", dirPartitionPredicate)
+                .append("rowPredicate", rowPredicate)
+                .append("objectSize", objectSize)
+                .append("additionalObjects", additionalObjects)
+                .append("range", range)
+                .append("buildGzipIndex", buildGzipIndex)
+                .append("lineDelimited", lineDelimited)
                 .toString();
     }
 }
@@ -18,7 +18,9 @@ import com.facebook.presto.spi.predicate.TupleDomain;
 import com.facebook.presto.spi.type.VarcharType;
 import com.joyent.manta.client.MantaClient;
 import com.joyent.manta.client.MantaObject;
+import com.joyent.manta.presto.column.MantaColumn;
 import com.joyent.manta.presto.column.MantaPartitionColumn;
+import com.joyent.manta.presto.compression.GzipIndex;
 import com.joyent.manta.presto.exceptions.MantaPrestoIllegalArgumentException;
 import com.joyent.manta.presto.exceptions.MantaPrestoUnexpectedClass;
 import com.joyent.manta.presto.tables.MantaLogicalTable;
@@ -27,6 +29,7 @@ import com.joyent.manta.presto.tables.MantaSchemaTableName;
 import io.airlift.slice.Slice;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -46,18 +49,47 @@ import static java.util.Objects.requireNonNull;
 public class MantaSplitManager implements ConnectorSplitManager {
     private final String connectorId;
     private final MantaClient mantaClient;
+    private final MantaRetryPolicy retryPolicy;
+    private final MantaConcurrencyLimiter limiter;
+    private final int maxObjectsPerSplit;
+    private final long maxBytesPerSplit;
+    private final MantaGzipIndexer gzipIndexer;
+    private final MantaBlockSplitter blockSplitter;
+    private final MantaCompressionEstimator estimator;
 
     /**
      * Creates a new instance.
      *
      * @param connectorId connector id used for debugging
      * @param mantaClient manta client allowing for direct operation on Manta
+     * @param retryPolicy policy used to retry transient failures while listing
+     * @param limiter limit on the number of concurrent requests sent to Manta
+     * @param maxObjectsPerSplit maximum number of small objects grouped into a single split
+     * @param maxBytesPerSplit maximum total estimated decompressed size of the objects grouped into a single split
+     * @param gzipIndexer settings used to divide indexed gzip objects into several splits
+     * @param blockSplitter settings used to divide bzip2 and XZ objects into several splits
+     * @param estimator estimates of the decompressed size of compressed objects
      */
     @Inject
+    @SuppressWarnings("ParameterNumber")
     public MantaSplitManager(final MantaConnectorId connectorId,
-                             final MantaClient mantaClient) {
+                             final MantaClient mantaClient,
+                             final MantaRetryPolicy retryPolicy,
+                             final MantaConcurrencyLimiter limiter,
+                             @Named("SplitMaxObjects") final int maxObjectsPerSplit,
+                             @Named("SplitMaxBytes") final long maxBytesPerSplit,
+                             final MantaGzipIndexer gzipIndexer,
+                             final MantaBlockSplitter blockSplitter,
+                             final MantaCompressionEstimator estimator) {
         this.connectorId = requireNonNull(connectorId, "connectorId is null").toString();
         this.mantaClient = requireNonNull(mantaClient, "Manta client is null");
+        this.retryPolicy = requireNonNull(retryPolicy, "Retry policy is null");
+        this.limiter = requireNonNull(limiter, "Limiter is null");
+        this.maxObjectsPerSplit = maxObjectsPerSplit;
+        this.maxBytesPerSplit = maxBytesPerSplit;
+        this.gzipIndexer = requireNonNull(gzipIndexer, "Gzip indexer is null");
+        this.blockSplitter = requireNonNull(blockSplitter, "Block splitter is null");
+        this.estimator = requireNonNull(estimator, "Compression estimator is null");
     }
 
     @Override
@@ -102,10 +134,17 @@ public class MantaSplitManager implements ConnectorSplitManager {
         final Predicate<MantaObject> directoryPredicate =
                 dirPartitionPredicate.and(table.directoryFilter());
 
-        Stream<MantaObject> objectStream = mantaClient.find(table.getRootPath(), directoryPredicate)
+        /* The listing is restarted after transient failures and resumed
+         * after the path of the last object that was turned into a split. */
+        final Stream<MantaObject> listing = MantaResumableListing.stream(
+                () -> mantaClient.find(table.getRootPath(), directoryPredicate),
+                MantaObject::getPath, retryPolicy, limiter, table.getRootPath());
+
+        Stream<MantaObject> objectStream = listing
                 .filter(table.filter())
                 .filter(obj -> !obj.isDirectory())
                 .filter(obj -> !obj.getPath().endsWith(TABLE_DEFINITION_FILENAME))
+                .filter(obj -> !obj.getPath().endsWith(GzipIndex.SIDECAR_EXTENSION))
                 .filter(filePartitionPredicate);
 
         return new MantaStreamingSplitSource(
@@ -115,7 +154,36 @@ public class MantaSplitManager implements ConnectorSplitManager {
                 table.getDataFileType(),
                 objectStream,
                 filePartitionPredicate,
-                dirPartitionPredicate);
+                dirPartitionPredicate,
+                createRowPredicate(predicate),
+                table.isLineDelimited(),
+                maxObjectsPerSplit,
+                maxBytesPerSplit,
+                gzipIndexer,
+                blockSplitter,
+                estimator);
+    }
+
+    /**
+     * Creates a predicate containing only the domains of the columns that
+     * are read from the contents of each object. Partition columns are
+     * excluded because they are already applied when listing objects.
+     *
+     * @param predicate Presto object containing WHERE clause values
+     * @return predicate to be evaluated against each row read
+     */
+    static TupleDomain<MantaColumn> createRowPredicate(final TupleDomain<ColumnHandle> predicate) {
+        if (predicate == null) {
+            return TupleDomain.all();
+        }
+
+        return predicate.transform(column -> {
+            if (column instanceof MantaColumn && !(column instanceof MantaPartitionColumn)) {
+                return (MantaColumn)column;
+            }
+
+            return null;
+        });
     }
 
     /**
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.Objects;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Path and listed size of a single object read by a {@link MantaSplit}.
+ *
+ * @since 1.0.0
+ */
+public class MantaSplitObject {
+    private final String path;
+    private final Long size;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param path path to object in Manta
+     * @param size size in bytes of the object as reported by the directory listing or null if unknown
+     */
+    @JsonCreator
+    public MantaSplitObject(@JsonProperty("path") final String path,
+                            @JsonProperty("size") final Long size) {
+        this.path = requireNonNull(path, "object path is null");
+        this.size = size;
+    }
+
+    @JsonProperty
+    public String getPath() {
+        return path;
+    }
+
+    @JsonProperty
+    public Long getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final MantaSplitObject that = (MantaSplitObject) o;
+
+        return Objects.equals(path, that.path)
+                && Objects.equals(size, that.size);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path, size);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("path", path)
+                .append("size", size)
+                .toString();
+    }
+}
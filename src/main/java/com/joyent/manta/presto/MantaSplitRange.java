@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.joyent.manta.presto.compression.GzipIndex;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.Objects;
+
+/**
+ * Part of a compressed object read by a {@link MantaSplit}. The range covers
+ * the lines that follow a newline within its decompressed bytes, and the
+ * first line of the object when it starts at the beginning of the object.
+ *
+ * <p>A range of an indexed gzip object covers the decompressed bytes from
+ * the start position up to the end position, and decompression begins at the
+ * {@link GzipIndex.Checkpoint} found at the start position. The range that
+ * begins at the start of the object has no checkpoint.</p>
+ *
+ * <p>A range of a bzip2 or XZ object covers the decompressed bytes of the
+ * compressed blocks that start between its compressed offset and compressed
+ * end. The decompressed positions of bzip2 blocks aren't known without
+ * decompressing the object, so bzip2 ranges have a start and end of -1.</p>
+ *
+ * @since 1.0.0
+ */
+public class MantaSplitRange {
+    private final long start;
+    private final long end;
+    private final long compressedOffset;
+    private final long compressedEnd;
+    private final int bits;
+    private final long windowOffset;
+    private final int windowLength;
+    private final String etag;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param start position within the decompressed data at which the range starts or -1 if unknown
+     * @param end position within the decompressed data at which the range ends or -1 if unknown
+     * @param compressedOffset position within the object of the byte containing the checkpoint or first block
+     * @param compressedEnd position within the object after which no block of the range starts or -1 if unknown
+     * @param bits number of bits of the byte containing the checkpoint that precede it
+     * @param windowOffset position within the index of the checkpoint's compressed window or -1 if none
+     * @param windowLength length in bytes of the checkpoint's compressed window
+     * @param etag etag of the object that the index was built from or null if unknown
+     */
+    @JsonCreator
+    @SuppressWarnings("ParameterNumber")
+    public MantaSplitRange(@JsonProperty("start") final long start,
+                           @JsonProperty("end") final long end,
+                           @JsonProperty("compressedOffset") final long compressedOffset,
+                           @JsonProperty("compressedEnd") final long compressedEnd,
+                           @JsonProperty("bits") final int bits,
+                           @JsonProperty("windowOffset") final long windowOffset,
+                           @JsonProperty("windowLength") final int windowLength,
+                           @JsonProperty("etag") final String etag) {
+        if (start < -1L || end < start || compressedOffset < 0L
+                || (compressedEnd >= 0L && compressedEnd < compressedOffset)) {
+            throw new IllegalArgumentException("Split range must not end before it starts");
+        }
+
+        this.start = start;
+        this.end = end;
+        this.compressedOffset = compressedOffset;
+        this.compressedEnd = compressedEnd;
+        this.bits = bits;
+        this.windowOffset = windowOffset;
+        this.windowLength = windowLength;
+        this.etag = etag;
+    }
+
+    /**
+     * Creates a new range that decompresses from the specified checkpoint.
+     *
+     * @param checkpoint checkpoint read from the object's index or null to start at the beginning
+     * @param end position within the decompressed data at which the range ends
+     * @param etag etag of the object that the index was built from or null if unknown
+     * @return new range
+     */
+    public static MantaSplitRange of(final GzipIndex.Checkpoint checkpoint,
+                                     final long end,
+                                     final String etag) {
+        if (checkpoint == null) {
+            return new MantaSplitRange(0L, end, 0L, -1L, 0, -1L, 0, etag);
+        }
+
+        return new MantaSplitRange(checkpoint.getUncompressedOffset(), end,
+                checkpoint.getCompressedOffset(), -1L, checkpoint.getBits(),
+                checkpoint.getWindowOffset(), checkpoint.getWindowLength(), etag);
+    }
+
+    /**
+     * Creates a new range of the blocks that start within a range of
+     * compressed bytes whose decompressed positions aren't known.
+     *
+     * @param compressedOffset position within the object of the first byte of the range
+     * @param compressedEnd position within the object of the first byte after the range
+     * @param etag etag of the object when it was listed or null if unknown
+     * @return new range
+     */
+    public static MantaSplitRange ofCompressed(final long compressedOffset,
+                                               final long compressedEnd,
+                                               final String etag) {
+        return new MantaSplitRange(-1L, -1L, compressedOffset, compressedEnd, 0, -1L, 0, etag);
+    }
+
+    /**
+     * Creates a new range of blocks whose decompressed positions are known.
+     *
+     * @param start position within the decompressed data of the first block
+     * @param end position within the decompressed data after the last block
+     * @param compressedOffset position within the object of the first block
+     * @param compressedEnd position within the object after the last block
+     * @param etag etag of the object when it was listed or null if unknown
+     * @return new range
+     */
+    public static MantaSplitRange ofBlocks(final long start,
+                                           final long end,
+                                           final long compressedOffset,
+                                           final long compressedEnd,
+                                           final String etag) {
+        return new MantaSplitRange(start, end, compressedOffset, compressedEnd, 0, -1L, 0, etag);
+    }
+
+    @JsonProperty
+    public long getStart() {
+        return start;
+    }
+
+    @JsonProperty
+    public long getEnd() {
+        return end;
+    }
+
+    @JsonProperty
+    public long getCompressedOffset() {
+        return compressedOffset;
+    }
+
+    @JsonProperty
+    public long getCompressedEnd() {
+        return compressedEnd;
+    }
+
+    @JsonProperty
+    public int getBits() {
+        return bits;
+    }
+
+    @JsonProperty
+    public long getWindowOffset() {
+        return windowOffset;
+    }
+
+    @JsonProperty
+    public int getWindowLength() {
+        return windowLength;
+    }
+
+    @JsonProperty
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return true if decompression starts at a checkpoint rather than the start of the object
+     */
+    @JsonIgnore
+    public boolean hasCheckpoint() {
+        return windowOffset >= 0L;
+    }
+
+    /**
+     * @return true if the positions of the range within the decompressed data are known
+     */
+    @JsonIgnore
+    public boolean hasDecompressedBounds() {
+        return start >= 0L;
+    }
+
+    /**
+     * @return true if the range starts at the beginning of the object and so owns its first line
+     */
+    @JsonIgnore
+    public boolean isStartOfObject() {
+        if (hasDecompressedBounds()) {
+            return start == 0L;
+        }
+
+        return compressedOffset == 0L;
+    }
+
+    /**
+     * @return number of decompressed bytes in the range or null if unknown
+     */
+    @JsonIgnore
+    public Long getLength() {
+        if (hasDecompressedBounds()) {
+            return end - start;
+        }
+
+        return null;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final MantaSplitRange that = (MantaSplitRange) o;
+
+        return start == that.start
+                && end == that.end
+                && compressedOffset == that.compressedOffset
+                && compressedEnd == that.compressedEnd
+                && bits == that.bits
+                && windowOffset == that.windowOffset
+                && windowLength == that.windowLength
+                && Objects.equals(etag, that.etag);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(start, end, compressedOffset, compressedEnd, bits,
+                windowOffset, windowLength, etag);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("start", start)
+                .append("end", end)
+                .append("compressedOffset", compressedOffset)
+                .append("compressedEnd", compressedEnd)
+                .append("bits", bits)
+                .append("windowOffset", windowOffset)
+                .append("windowLength", windowLength)
+                .append("etag", etag)
+                .toString();
+    }
+}
@@ -10,25 +10,53 @@ package com.joyent.manta.presto;
 import com.facebook.presto.spi.ConnectorSplit;
 import com.facebook.presto.spi.ConnectorSplitSource;
 import com.facebook.presto.spi.connector.ConnectorPartitionHandle;
+import com.facebook.presto.spi.predicate.TupleDomain;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 import com.joyent.manta.client.MantaObject;
+import com.joyent.manta.presto.column.MantaColumn;
+import com.joyent.manta.presto.compression.GzipIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 /**
  * {@link ConnectorSplitSource} implementation that takes a stream of Manta
  * objects and turns them into asynchronous splittable units and returns them.
+ * Consecutive small objects are grouped into a single split so that the
+ * worker reading them can open each object while the previous one is parsed.
+ * Large gzip objects with an index are divided into a split per range of
+ * checkpoints, and large bzip2 and XZ objects into a split per range of
+ * compressed blocks, so that they can be read by several workers at once.
+ * Compressed objects are grouped by their estimated decompressed size,
+ * since that is the amount of data the worker parses.
  *
  * @since 1.0.0
  */
 public class MantaStreamingSplitSource implements ConnectorSplitSource {
     private static final Logger LOG = LoggerFactory.getLogger(MantaStreamingSplitSource.class);
 
+    /**
+     * Default maximum number of objects grouped into a single split.
+     */
+    public static final int DEFAULT_MAX_OBJECTS_PER_SPLIT = 16;
+
+    /**
+     * Default maximum total estimated decompressed size of the objects grouped
+     * into a single split.
+     */
+    public static final long DEFAULT_MAX_BYTES_PER_SPLIT = 67_108_864L;
+
     private final Iterator<MantaSplit> iterator;
     private final Stream<MantaObject> backingStream;
     private final LongAdder count = new LongAdder();
@@ -44,20 +72,134 @@ public class MantaStreamingSplitSource implements ConnectorSplitSource {
      * @param backingStream stream of objects that will be processed into splits
      * @param filePartitionPredicate partitioning scheme used to partition by filename
      * @param dirPartitionPredicate partitioning scheme used to partition by directory
+     * @param rowPredicate predicate on non-partition columns used to skip rows while reading
+     * @param lineDelimited true if the table declares one JSON object per line,
+     *                      which is required to divide an object into several splits
+     * @param maxObjectsPerSplit maximum number of objects grouped into a single split
+     * @param maxBytesPerSplit maximum total estimated decompressed size of the objects grouped into a single split
+     * @param gzipIndexer settings used to divide indexed gzip objects into several splits
+     * @param blockSplitter settings used to divide bzip2 and XZ objects into several splits
+     * @param estimator estimates of the decompressed size of compressed objects
      */
+    @SuppressWarnings("ParameterNumber")
     public MantaStreamingSplitSource(final String connectorId,
                                      final String schemaName,
                                      final String tableName,
                                      final MantaDataFileType dataFileType,
                                      final Stream<MantaObject> backingStream,
                                      final MantaSplitPartitionPredicate filePartitionPredicate,
-                                     final MantaSplitPartitionPredicate dirPartitionPredicate) {
+                                     final MantaSplitPartitionPredicate dirPartitionPredicate,
+                                     final TupleDomain<MantaColumn> rowPredicate,
+                                     final boolean lineDelimited,
+                                     final int maxObjectsPerSplit,
+                                     final long maxBytesPerSplit,
+                                     final MantaGzipIndexer gzipIndexer,
+                                     final MantaBlockSplitter blockSplitter,
+                                     final MantaCompressionEstimator estimator) {
         this.connectorId = connectorId;
         this.backingStream = backingStream;
-        this.iterator = backingStream
-                .map(obj -> new MantaSplit(connectorId, schemaName, tableName,
-                        obj.getPath(), dataFileType, filePartitionPredicate, dirPartitionPredicate))
-                .iterator();
+
+        final PeekingIterator<MantaObject> objects = Iterators.peekingIterator(backingStream.iterator());
+        final Queue<MantaSplit> rangeSplits = new ArrayDeque<>();
+        final Function<MantaObject, Long> sizeEstimate =
+                object -> estimator.estimate(schemaName, tableName, object);
+
+        this.iterator = new AbstractIterator<MantaSplit>() {
+            @Override
+            protected MantaSplit computeNext() {
+                if (!rangeSplits.isEmpty()) {
+                    return rangeSplits.remove();
+                }
+
+                if (!objects.hasNext()) {
+                    return endOfData();
+                }
+
+                final MantaObject first = objects.next();
+
+                // Range splits start and end at newlines, so they need one object per line
+                if (lineDelimited && gzipIndexer.isCandidate(first)) {
+                    final GzipIndex index = gzipIndexer.lookup(first);
+
+                    if (index == null) {
+                        return new MantaSplit(connectorId, schemaName, tableName,
+                                first.getPath(), dataFileType, filePartitionPredicate, dirPartitionPredicate,
+                                rowPredicate, first.getContentLength(), null, null,
+                                gzipIndexer.isBuildOnScan(), lineDelimited);
+                    }
+
+                    for (MantaSplitRange range : gzipIndexer.ranges(index)) {
+                        rangeSplits.add(new MantaSplit(connectorId, schemaName, tableName,
+                                first.getPath(), dataFileType, filePartitionPredicate, dirPartitionPredicate,
+                                rowPredicate, first.getContentLength(), null, range, false, lineDelimited));
+                    }
+
+                    return rangeSplits.remove();
+                }
+
+                if (lineDelimited && blockSplitter.isCandidate(first)) {
+                    for (MantaSplitRange range : blockSplitter.ranges(first)) {
+                        rangeSplits.add(new MantaSplit(connectorId, schemaName, tableName,
+                                first.getPath(), dataFileType, filePartitionPredicate, dirPartitionPredicate,
+                                rowPredicate, first.getContentLength(), null, range, false, lineDelimited));
+                    }
+
+                    if (!rangeSplits.isEmpty()) {
+                        return rangeSplits.remove();
+                    }
+                }
+
+                final List<MantaSplitObject> additional = groupFollowingObjects(
+                        objects, first, maxObjectsPerSplit, maxBytesPerSplit, sizeEstimate);
+
+                return new MantaSplit(connectorId, schemaName, tableName,
+                        first.getPath(), dataFileType, filePartitionPredicate, dirPartitionPredicate,
+                        rowPredicate, first.getContentLength(), additional, null, false, lineDelimited);
+            }
+        };
+    }
+
+    /**
+     * Takes the objects that follow the first object of a split from the
+     * listing for as long as they fit within the split's limits. Objects
+     * with an unknown size are never grouped.
+     *
+     * @param objects listing positioned after the first object
+     * @param first first object of the split
+     * @param maxObjects maximum number of objects in the split
+     * @param maxBytes maximum total estimated size of the objects in the split
+     * @param sizeEstimate estimated size of an object or null if it isn't known
+     * @return objects to read after the first object
+     */
+    static List<MantaSplitObject> groupFollowingObjects(final PeekingIterator<MantaObject> objects,
+                                                        final MantaObject first,
+                                                        final int maxObjects,
+                                                        final long maxBytes,
+                                                        final Function<MantaObject, Long> sizeEstimate) {
+        final Long firstEstimate = sizeEstimate.apply(first);
+
+        if (firstEstimate == null) {
+            return ImmutableList.of();
+        }
+
+        final ImmutableList.Builder<MantaSplitObject> additional = ImmutableList.builder();
+        long totalBytes = firstEstimate;
+        int count = 1;
+
+        while (count < maxObjects && objects.hasNext()) {
+            final MantaObject next = objects.peek();
+            final Long estimate = sizeEstimate.apply(next);
+
+            if (estimate == null || next.getContentLength() == null || totalBytes + estimate > maxBytes) {
+                break;
+            }
+
+            additional.add(new MantaSplitObject(objects.next().getPath(), next.getContentLength()));
+            totalBytes += estimate;
+            count++;
+        }
+
+        return additional.build();
     }
 
     @Override
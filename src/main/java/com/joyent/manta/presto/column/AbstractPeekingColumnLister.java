@@ -13,6 +13,7 @@ import com.joyent.manta.client.MantaClient;
 import com.joyent.manta.client.MantaObject;
 import com.joyent.manta.client.MantaObjectInputStream;
 import com.joyent.manta.http.MantaHttpHeaders;
+import com.joyent.manta.presto.compression.GzipIndex;
 import com.joyent.manta.presto.compression.MantaCompressionType;
 import com.joyent.manta.presto.MantaConnectorId;
 import com.joyent.manta.presto.exceptions.MantaPrestoExceptionUtils;
@@ -85,6 +86,7 @@ public abstract class AbstractPeekingColumnLister implements ColumnLister  {
                 .filter(table.filter())
                 .filter(obj -> !obj.isDirectory())
                 .filter(obj -> !obj.getPath().endsWith(TABLE_DEFINITION_FILENAME))
+                .filter(obj -> !obj.getPath().endsWith(GzipIndex.SIDECAR_EXTENSION))
                 .sorted(Comparator.comparingLong(MantaObject::getContentLength))) {
             first = find.findFirst();
         }
@@ -11,16 +11,27 @@ import com.facebook.presto.spi.ColumnHandle;
 import com.facebook.presto.spi.ColumnMetadata;
 import com.facebook.presto.spi.type.Type;
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonPointer;
 import com.joyent.manta.presto.types.TypeUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import java.util.Objects;
+
 /**
  * Class representing a single column within a logical table.
  *
  * @since 1.0.0
  */
 public class MantaColumn extends ColumnMetadata implements ColumnHandle {
+    /**
+     * Path within each JSON object to the value of the column or null when the
+     * value is stored in the top-level property with the same name as the column.
+     */
+    private final String path;
+
     /**
      * Creates a new instance based on the specified parameters.
      *  @param name name of column
@@ -34,7 +45,42 @@ public class MantaColumn extends ColumnMetadata implements ColumnHandle {
                        final String comment,
                        final String extraInfo,
                        final boolean hidden) {
+        this(name, type, comment, extraInfo, hidden, null);
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *  @param name name of column
+     * @param type Presto type of column
+     * @param comment comment about column
+     * @param extraInfo additional information about column (eg JSON data type)
+     * @param hidden flag indicating that column is hidden
+     * @param path dotted path or JSON pointer to a nested value (eg req.headers.host)
+     */
+    public MantaColumn(final String name,
+                       final Type type,
+                       final String comment,
+                       final String extraInfo,
+                       final boolean hidden,
+                       final String path) {
         super(name, type, comment, extraInfo, hidden);
+        this.path = StringUtils.trimToNull(path);
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *  @param name name of column
+     * @param typeString Presto type of column
+     * @param comment comment about column
+     * @param extraInfo additional information about column (eg JSON data type)
+     * @param hidden flag indicating that column is hidden
+     */
+    public MantaColumn(final String name,
+                       final String typeString,
+                       final String comment,
+                       final String extraInfo,
+                       final boolean hidden) {
+        this(name, typeString, comment, extraInfo, hidden, null);
     }
 
     /**
@@ -44,15 +90,17 @@ public class MantaColumn extends ColumnMetadata implements ColumnHandle {
      * @param comment comment about column
      * @param extraInfo additional information about column (eg JSON data type)
      * @param hidden flag indicating that column is hidden
+     * @param path dotted path or JSON pointer to a nested value (eg req.headers.host)
      */
     @JsonCreator
     public MantaColumn(@JsonProperty("name") final String name,
                        @JsonProperty("type") final String typeString,
                        @JsonProperty("comment") final String comment,
                        @JsonProperty("format") final String extraInfo,
-                       @JsonProperty("hidden") final boolean hidden) {
-        super(name, TypeUtils.parseAndValidateTypeFromString(typeString),
-                comment, extraInfo, hidden);
+                       @JsonProperty("hidden") final boolean hidden,
+                       @JsonProperty("path") final String path) {
+        this(name, TypeUtils.parseAndValidateTypeFromString(typeString),
+                comment, extraInfo, hidden, path);
     }
 
     /**
@@ -102,6 +150,87 @@ public class MantaColumn extends ColumnMetadata implements ColumnHandle {
         return super.isHidden();
     }
 
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * The location of the column's value within each JSON object. When no
+     * path was specified, this is the top-level property matching the
+     * column name.
+     *
+     * @return JSON pointer to the column's value
+     */
+    public JsonPointer toJsonPointer() {
+        if (path == null) {
+            return JsonPointer.compile(toPointerSegment(getName()));
+        }
+
+        return parsePath(path);
+    }
+
+    /**
+     * Converts a column path into a {@link JsonPointer}. Paths beginning with
+     * a slash are interpreted as JSON pointers (RFC 6901) and all other paths
+     * are interpreted as property names separated by periods.
+     *
+     * @param path dotted path or JSON pointer
+     * @return JSON pointer equivalent of the path
+     * @throws IllegalArgumentException thrown when the path is invalid
+     */
+    public static JsonPointer parsePath(final String path) {
+        if (StringUtils.isBlank(path)) {
+            throw new IllegalArgumentException("Column path must not be blank");
+        }
+
+        if (path.startsWith("/")) {
+            return JsonPointer.compile(path);
+        }
+
+        final StringBuilder pointer = new StringBuilder(path.length() + 1);
+
+        for (String segment : StringUtils.splitPreserveAllTokens(path, '.')) {
+            if (segment.isEmpty()) {
+                String msg = String.format("Column path contains an empty "
+                        + "property name: %s", path);
+                throw new IllegalArgumentException(msg);
+            }
+
+            pointer.append(toPointerSegment(segment));
+        }
+
+        return JsonPointer.compile(pointer.toString());
+    }
+
+    /**
+     * Escapes a property name so that it can be used as a single segment of
+     * a JSON pointer.
+     *
+     * @param propertyName property name to escape
+     * @return pointer segment with leading slash
+     */
+    private static String toPointerSegment(final String propertyName) {
+        return "/" + propertyName.replace("~", "~0").replace("/", "~1");
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (!super.equals(o)) {
+            return false;
+        }
+
+        final MantaColumn that = (MantaColumn) o;
+
+        return Objects.equals(path, that.path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), path);
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder(this)
@@ -110,6 +239,7 @@ public class MantaColumn extends ColumnMetadata implements ColumnHandle {
                 .append("comment", super.getComment())
                 .append("extraInfo", super.getExtraInfo())
                 .append("hidden", super.isHidden())
+                .append("path", path)
                 .toString();
     }
 }
@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.zstd.ZstdDecompressor;
+import io.airlift.slice.Slices;
+import io.airlift.slice.XxHash64;
+import org.apache.commons.compress.compressors.CompressorInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Apache Compress compatible {@link CompressorInputStream} that decompresses
+ * Zstandard data using the pure Java aircompressor library, so that no
+ * native libraries are needed on the workers.
+ *
+ * <p>The aircompressor decoder only works on whole frames, so each frame is
+ * read into memory by walking its block headers and then decompressed in one
+ * pass. Zstandard compressors write bounded frames when streaming, so a frame
+ * rarely exceeds a few megabytes. Skippable frames are skipped.</p>
+ *
+ * <p>The aircompressor decoder can't be primed with a trained dictionary,
+ * so frames that depend on one are decompressed with the matching
+ * dictionary from {@link ZstdDictionaries} instead, and are rejected when no
+ * dictionary with their ID is configured.</p>
+ *
+ * <p>Content checksums are verified by this class rather than by the
+ * decoder, because the decoder hashes its whole output buffer instead of
+ * only the decompressed bytes.</p>
+ *
+ * @since 1.0.0
+ */
+public class AirliftZstdCompressorInputStream extends CompressorInputStream {
+    /**
+     * Magic number that starts every Zstandard frame.
+     */
+    static final int FRAME_MAGIC = 0xFD2FB528;
+
+    /**
+     * Magic number of skippable frames with the lowest four bits cleared.
+     */
+    static final int SKIPPABLE_FRAME_MAGIC = 0x184D2A50;
+
+    /**
+     * Largest frame that will be decompressed into memory.
+     */
+    static final int MAX_FRAME_SIZE = 1 << 30;
+
+    /**
+     * Largest size of the content of a single block.
+     */
+    private static final int MAX_BLOCK_SIZE = 128 * 1024;
+
+    private static final int SKIPPABLE_FRAME_MAGIC_MASK = 0xFFFFFFF0;
+    private static final int INITIAL_FRAME_BUFFER_SIZE = 64 * 1024;
+    private static final int MAGIC_SIZE = 4;
+    private static final int BLOCK_HEADER_SIZE = 3;
+    private static final int CHECKSUM_SIZE = 4;
+    private static final int TWO_BYTE_CONTENT_SIZE_OFFSET = 256;
+    private static final int[] DICTIONARY_ID_SIZES = {0, 1, 2, 4};
+    private static final int[] CONTENT_SIZE_SIZES = {0, 2, 4, 8};
+
+    private static final int CONTENT_SIZE_FLAG_SHIFT = 6;
+    private static final int SINGLE_SEGMENT_FLAG = 0x20;
+    private static final int RESERVED_FLAG = 0x08;
+    private static final int CHECKSUM_FLAG = 0x04;
+    private static final int DICTIONARY_ID_FLAG_MASK = 0x03;
+
+    private static final int BLOCK_TYPE_RAW = 0;
+    private static final int BLOCK_TYPE_RLE = 1;
+    private static final int BLOCK_TYPE_COMPRESSED = 2;
+    private static final int BLOCK_TYPE_MASK = 0x03;
+    private static final int BLOCK_SIZE_SHIFT = 3;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private final InputStream in;
+    private final MantaBufferPool bufferPool;
+    private final ZstdDictionaries dictionaries;
+    private final ZstdDecompressor decompressor = new ZstdDecompressor();
+
+    /**
+     * Compressed bytes of the frame being read.
+     */
+    private byte[] frame;
+    private int frameLength;
+
+    /**
+     * Decompressed bytes of the last frame read.
+     */
+    private byte[] output;
+    private int outputLength = 0;
+    private int position = 0;
+
+    private boolean eof = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance that decompresses the supplied stream.
+     *
+     * @param in stream to decompress
+     */
+    public AirliftZstdCompressorInputStream(final InputStream in) {
+        this(in, MantaBufferPool.disabled());
+    }
+
+    /**
+     * Creates a new instance that decompresses the supplied stream using
+     * buffers borrowed from the supplied pool. The buffers are returned
+     * when this stream is closed.
+     *
+     * @param in stream to decompress
+     * @param bufferPool pool that buffers are borrowed from
+     */
+    public AirliftZstdCompressorInputStream(final InputStream in,
+                                            final MantaBufferPool bufferPool) {
+        this(in, bufferPool, ZstdDictionaries.none());
+    }
+
+    /**
+     * Creates a new instance that decompresses the supplied stream using
+     * buffers borrowed from the supplied pool, and the supplied dictionaries
+     * for frames compressed with a dictionary. The buffers are returned
+     * when this stream is closed.
+     *
+     * @param in stream to decompress
+     * @param bufferPool pool that buffers are borrowed from
+     * @param dictionaries dictionaries that frames may be compressed with
+     */
+    public AirliftZstdCompressorInputStream(final InputStream in,
+                                            final MantaBufferPool bufferPool,
+                                            final ZstdDictionaries dictionaries) {
+        this.in = requireNonNull(in, "Input stream is null");
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+        this.dictionaries = requireNonNull(dictionaries, "Zstandard dictionaries are null");
+        this.frame = bufferPool.borrowArray(INITIAL_FRAME_BUFFER_SIZE);
+        this.output = bufferPool.borrowArray(INITIAL_FRAME_BUFFER_SIZE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+
+        count(1);
+        return output[position++] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        final int read = Math.min(len, outputLength - position);
+        System.arraycopy(output, position, b, off, read);
+        position += read;
+        count(read);
+
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return outputLength - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            in.close();
+        } finally {
+            bufferPool.returnArray(frame);
+            bufferPool.returnArray(output);
+            frame = null;
+            output = null;
+        }
+    }
+
+    /**
+     * Decompresses frames until there are bytes to serve.
+     *
+     * @return false when the end of the stream was reached
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private boolean fill() throws IOException {
+        ensureOpen();
+
+        while (position == outputLength) {
+            if (eof || !readFrame()) {
+                eof = true;
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads and decompresses the next frame.
+     *
+     * @return false when the end of the stream was reached before a frame
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private boolean readFrame() throws IOException {
+        position = 0;
+        outputLength = 0;
+        frameLength = 0;
+
+        final int magicRead = ByteStreams.read(in, ensureFrameCapacity(MAGIC_SIZE), 0, MAGIC_SIZE);
+
+        if (magicRead == 0) {
+            return false;
+        }
+
+        if (magicRead < MAGIC_SIZE) {
+            throw new EOFException("Zstandard stream ended within a frame header");
+        }
+
+        final int magic = (int) littleEndian(frame, 0, MAGIC_SIZE);
+
+        if ((magic & SKIPPABLE_FRAME_MAGIC_MASK) == SKIPPABLE_FRAME_MAGIC) {
+            ByteStreams.readFully(in, frame, 0, MAGIC_SIZE);
+            final long skippableSize = littleEndian(frame, 0, MAGIC_SIZE);
+            ByteStreams.skipFully(in, skippableSize);
+            return true;
+        }
+
+        if (magic != FRAME_MAGIC) {
+            throw new IOException(String.format("Not a Zstandard frame [magic=0x%08X]", magic));
+        }
+
+        frameLength = MAGIC_SIZE;
+
+        final int descriptor = (int) append(1);
+        final boolean singleSegment = (descriptor & SINGLE_SEGMENT_FLAG) != 0;
+
+        if ((descriptor & RESERVED_FLAG) != 0) {
+            throw new IOException("Zstandard frame header has reserved bit set");
+        }
+
+        if (!singleSegment) {
+            append(1); // window descriptor
+        }
+
+        final long dictionaryId = append(DICTIONARY_ID_SIZES[descriptor & DICTIONARY_ID_FLAG_MASK]);
+
+        if (dictionaryId != 0L && !dictionaries.contains(dictionaryId)) {
+            String msg = String.format("No Zstandard dictionary is configured with the frame's "
+                    + "dictionary ID, add it to manta.zstd.dictionary_paths [dictionaryId=%d]",
+                    dictionaryId);
+            throw new IOException(msg);
+        }
+
+        final int contentSizeFlag = descriptor >>> CONTENT_SIZE_FLAG_SHIFT;
+        long contentSize = -1L;
+
+        if (contentSizeFlag == 0 && singleSegment) {
+            contentSize = append(1);
+        } else if (contentSizeFlag > 0) {
+            contentSize = append(CONTENT_SIZE_SIZES[contentSizeFlag]);
+
+            if (CONTENT_SIZE_SIZES[contentSizeFlag] == 2) {
+                contentSize += TWO_BYTE_CONTENT_SIZE_OFFSET;
+            }
+        }
+
+        final boolean checksum = (descriptor & CHECKSUM_FLAG) != 0;
+        final long outputBound = readBlocks();
+        int expectedChecksum = 0;
+
+        if (checksum) {
+            expectedChecksum = (int) append(CHECKSUM_SIZE);
+            // Hand the decoder a frame without checksum and verify it here
+            frame[MAGIC_SIZE] = (byte) (descriptor & ~CHECKSUM_FLAG);
+            frameLength -= CHECKSUM_SIZE;
+        }
+        final long outputSize;
+
+        if (contentSize >= 0L) {
+            outputSize = contentSize;
+        } else {
+            outputSize = outputBound;
+        }
+
+        if (outputSize < 0L || outputSize > MAX_FRAME_SIZE) {
+            throw new IOException(String.format("Zstandard frame is too large to decompress "
+                    + "[size=%d,maxSize=%d]", outputSize, MAX_FRAME_SIZE));
+        }
+
+        ensureOutputCapacity((int) outputSize);
+
+        try {
+            if (dictionaryId != 0L) {
+                outputLength = dictionaries.decompress(dictionaryId, frame, frameLength, output);
+            } else {
+                outputLength = decompressor.decompress(frame, 0, frameLength, output, 0, output.length);
+            }
+        } catch (MalformedInputException | IllegalArgumentException e) {
+            throw new IOException("Corrupt Zstandard frame", e);
+        }
+
+        if (checksum) {
+            final int actualChecksum = (int) XxHash64.hash(Slices.wrappedBuffer(output, 0, outputLength));
+
+            if (actualChecksum != expectedChecksum) {
+                throw new IOException(String.format("Zstandard frame checksum mismatch "
+                        + "[expected=0x%08X,actual=0x%08X]", expectedChecksum, actualChecksum));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the blocks of the current frame into the frame buffer.
+     *
+     * @return upper bound of the decompressed size of the frame
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private long readBlocks() throws IOException {
+        long outputBound = 0L;
+        boolean last = false;
+
+        while (!last) {
+            final int header = (int) append(BLOCK_HEADER_SIZE);
+            final int type = (header >>> 1) & BLOCK_TYPE_MASK;
+            final int size = header >>> BLOCK_SIZE_SHIFT;
+            last = (header & 1) != 0;
+
+            switch (type) {
+                case BLOCK_TYPE_RAW:
+                    appendBytes(size);
+                    outputBound += size;
+                    break;
+                case BLOCK_TYPE_RLE:
+                    appendBytes(1);
+                    outputBound += size;
+                    break;
+                case BLOCK_TYPE_COMPRESSED:
+                    appendBytes(size);
+                    outputBound += MAX_BLOCK_SIZE;
+                    break;
+                default:
+                    throw new IOException("Zstandard block has reserved type");
+            }
+
+            if (frameLength > MAX_FRAME_SIZE) {
+                throw new IOException(String.format("Compressed Zstandard frame is too large "
+                        + "[maxSize=%d]", MAX_FRAME_SIZE));
+            }
+        }
+
+        return outputBound;
+    }
+
+    /**
+     * Reads a little endian value from the stream into the frame buffer.
+     *
+     * @param size number of bytes in the value
+     * @return value read
+     * @throws IOException thrown when the stream ends early
+     */
+    private long append(final int size) throws IOException {
+        final int start = frameLength;
+        appendBytes(size);
+        return littleEndian(frame, start, size);
+    }
+
+    private void appendBytes(final int size) throws IOException {
+        ensureFrameCapacity(frameLength + size);
+
+        try {
+            ByteStreams.readFully(in, frame, frameLength, size);
+        } catch (EOFException e) {
+            throw new EOFException("Zstandard stream ended within a frame");
+        }
+
+        frameLength += size;
+    }
+
+    private byte[] ensureFrameCapacity(final int size) {
+        if (frame.length < size) {
+            final byte[] larger = bufferPool.borrowArray(Math.max(size, frame.length * 2));
+            System.arraycopy(frame, 0, larger, 0, frameLength);
+            bufferPool.returnArray(frame);
+            frame = larger;
+        }
+
+        return frame;
+    }
+
+    private void ensureOutputCapacity(final int size) {
+        if (output.length < size) {
+            bufferPool.returnArray(output);
+            output = bufferPool.borrowArray(size);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private static long littleEndian(final byte[] bytes, final int offset, final int size) {
+        long value = 0L;
+
+        for (int i = size - 1; i >= 0; i--) {
+            value = (value << Byte.SIZE) | (bytes[offset + i] & BYTE_MASK);
+        }
+
+        return value;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.joyent.manta.presto.MantaBufferPool;
+import org.tukaani.xz.ArrayCache;
+
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * XZ for Java {@link ArrayCache} that borrows its byte arrays from a
+ * {@link MantaBufferPool}, so the dictionary buffers of XZ and LZMA2
+ * decoders are reused across streams. Int arrays are only used by encoders
+ * and are allocated as usual.
+ *
+ * @since 1.0.0
+ */
+class BufferPoolArrayCache extends ArrayCache {
+    private final MantaBufferPool bufferPool;
+
+    /**
+     * Creates a new instance backed by the supplied pool.
+     *
+     * @param bufferPool pool that arrays are borrowed from
+     */
+    BufferPoolArrayCache(final MantaBufferPool bufferPool) {
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+    }
+
+    @Override
+    public byte[] getByteArray(final int size, final boolean fillWithZeros) {
+        final byte[] array = bufferPool.borrowArray(size);
+
+        if (fillWithZeros) {
+            Arrays.fill(array, 0, size, (byte) 0);
+        }
+
+        return array;
+    }
+
+    @Override
+    public void putArray(final byte[] array) {
+        bufferPool.returnArray(array);
+    }
+}
@@ -0,0 +1,471 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.joyent.manta.presto.MantaBufferPool;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link InputStream} that turns the compressed blocks of a bzip2 object
+ * found within a range of bytes into a complete bzip2 stream, so that a
+ * range of a large object can be decompressed without reading the data
+ * before it.
+ *
+ * <p>Bzip2 blocks aren't byte aligned, but each one starts with a 48-bit
+ * magic number and carries the CRC of its data. The compressed bits are
+ * scanned for the magic number and the blocks that start within the range
+ * are copied, with their bits realigned, after a stream header. The range
+ * ends with the last block that starts before its end, which is read to its
+ * end. A stream footer holding the CRC combined from the copied blocks is
+ * then written so that the decoder verifies every block it reads. End of
+ * stream markers and the headers of concatenated streams are skipped.</p>
+ *
+ * <p>A magic number can occur by chance within compressed data, in which
+ * case the block's CRC check fails and the range can't be read. The chance
+ * of this is about one in 2<sup>48</sup> for each bit of compressed data.</p>
+ *
+ * <p>A line may continue into the block after the range, so once the range
+ * has been read {@link #following()} continues with the blocks that follow
+ * it from the same connection.</p>
+ *
+ * @since 1.0.0
+ */
+public class Bzip2BlockInputStream extends InputStream {
+    private static final long BLOCK_MAGIC = 0x314159265359L;
+    private static final long END_MAGIC = 0x177245385090L;
+    private static final int MAGIC_BITS = 48;
+    private static final long MAGIC_MASK = (1L << MAGIC_BITS) - 1L;
+    private static final int CRC_BITS = 32;
+    private static final long CRC_MASK = 0xFFFFFFFFL;
+    private static final int BYTE_MASK = 0xFF;
+
+    /**
+     * Number of bits held back so that a magic number ending in the next
+     * byte can still be found.
+     */
+    private static final int LOOKBEHIND_BITS = MAGIC_BITS - 1;
+
+    /**
+     * Stream header using the largest block size, so that blocks of any
+     * size can be decoded.
+     */
+    private static final byte[] HEADER = {'B', 'Z', 'h', '9'};
+
+    private static final int BUFFER_SIZE = 65_536;
+
+    /**
+     * Space kept free in the output buffer for the bytes written while
+     * scanning a single input byte.
+     */
+    private static final int OUTPUT_RESERVE = 32;
+
+    /**
+     * What is done with the compressed bits as they are scanned.
+     */
+    private enum Mode {
+        /**
+         * Bits are dropped until the first block of the range.
+         */
+        SEARCH,
+        /**
+         * Bits of a block are copied.
+         */
+        BLOCK,
+        /**
+         * Bits following an end of stream marker are dropped until the
+         * next block.
+         */
+        SKIP,
+        /**
+         * The footer has been written.
+         */
+        DONE
+    }
+
+    private final Source source;
+    private final long endBit;
+    private final MantaBufferPool bufferPool;
+
+    private byte[] output;
+    private int outputPosition = 0;
+    private int outputLength = 0;
+
+    /**
+     * Bits written that don't yet make up a whole byte.
+     */
+    private long accumulator = 0L;
+    private int accumulatorBits = 0;
+
+    private Mode mode = Mode.SEARCH;
+    private long blockCrc = 0L;
+    private int crcBitsRemaining = 0;
+    private int combinedCrc = 0;
+
+    private boolean followingCreated = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance reading the blocks that start within a range.
+     *
+     * @param in stream positioned at the first byte of the range
+     * @param start position within the object of the first byte of the range
+     * @param end position within the object of the first byte after the range
+     * @param bufferPool pool that buffers are borrowed from
+     */
+    public Bzip2BlockInputStream(final InputStream in,
+                                 final long start,
+                                 final long end,
+                                 final MantaBufferPool bufferPool) {
+        this(new Source(in, start, bufferPool), end, bufferPool);
+
+        if (start < 0L || end < start) {
+            throw new IllegalArgumentException("Bzip2 range must not end before it starts");
+        }
+    }
+
+    private Bzip2BlockInputStream(final Source source,
+                                  final long end,
+                                  final MantaBufferPool bufferPool) {
+        this.source = source;
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+        this.output = bufferPool.borrowArray(BUFFER_SIZE);
+
+        if (end >= Long.MAX_VALUE / Byte.SIZE) {
+            this.endBit = Long.MAX_VALUE;
+        } else {
+            this.endBit = end * Byte.SIZE;
+        }
+
+        for (byte b : HEADER) {
+            write(b, Byte.SIZE);
+        }
+
+        if (source.magicPending) {
+            source.magicPending = false;
+            beginBlock();
+        }
+    }
+
+    /**
+     * Creates a stream of the blocks that follow the range, continuing from
+     * where this stream stopped. Closing the returned stream closes the
+     * underlying stream.
+     *
+     * @return stream of the blocks after the range up to the end of the object
+     */
+    public Bzip2BlockInputStream following() {
+        return following(Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a stream of the blocks that follow the range and start before
+     * the specified position, continuing from where this stream stopped.
+     * Closing the returned stream closes the underlying stream unless it has
+     * a following stream of its own.
+     *
+     * @param end position within the object of the first byte after the next range
+     * @return stream of the blocks of the next range
+     */
+    public Bzip2BlockInputStream following(final long end) {
+        if (closed) {
+            throw new IllegalStateException("Stream closed");
+        }
+
+        if (mode != Mode.DONE) {
+            throw new IllegalStateException("The blocks of the range must be read first");
+        }
+
+        if (followingCreated) {
+            throw new IllegalStateException("The following blocks have already been opened");
+        }
+
+        followingCreated = true;
+
+        return new Bzip2BlockInputStream(source, end, bufferPool);
+    }
+
+    /**
+     * @return true if the range has been read and no blocks follow it
+     */
+    public boolean isAtEnd() {
+        return mode == Mode.DONE && !source.magicPending;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+
+        if (read(single, 0, 1) < 0) {
+            return -1;
+        }
+
+        return single[0] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        while (outputPosition == outputLength) {
+            if (mode == Mode.DONE) {
+                return -1;
+            }
+
+            produce();
+        }
+
+        final int count = Math.min(len, outputLength - outputPosition);
+        System.arraycopy(output, outputPosition, b, off, count);
+        outputPosition += count;
+
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            if (!followingCreated) {
+                source.close();
+            }
+        } finally {
+            bufferPool.returnArray(output);
+            output = null;
+        }
+    }
+
+    /**
+     * Scans compressed bytes until the output buffer is nearly full or the
+     * footer has been written.
+     *
+     * @throws IOException thrown when the underlying stream can't be read
+     */
+    private void produce() throws IOException {
+        outputPosition = 0;
+        outputLength = 0;
+
+        while (mode != Mode.DONE && outputLength < output.length - OUTPUT_RESERVE) {
+            final int b = source.nextByte();
+
+            if (b >= 0) {
+                scan(b);
+            } else if (mode == Mode.BLOCK) {
+                throw new EOFException("Unexpected end of bzip2 stream");
+            } else {
+                finish();
+            }
+        }
+    }
+
+    /**
+     * Adds a compressed byte to the bits being scanned and looks for a
+     * magic number ending within it.
+     *
+     * @param b compressed byte
+     */
+    private void scan(final int b) {
+        source.window = (source.window << Byte.SIZE) | b;
+        source.pending += Byte.SIZE;
+        source.bitPosition += Byte.SIZE;
+
+        for (int shift = Byte.SIZE - 1; shift >= 0; shift--) {
+            if (source.pending - shift >= MAGIC_BITS) {
+                final long candidate = (source.window >>> shift) & MAGIC_MASK;
+
+                if (candidate == BLOCK_MAGIC || candidate == END_MAGIC) {
+                    pass(source.pending - shift - MAGIC_BITS);
+                    source.pending = shift;
+                    magic(candidate, source.bitPosition - shift - MAGIC_BITS);
+                    return;
+                }
+            }
+        }
+
+        if (source.pending > LOOKBEHIND_BITS) {
+            pass(source.pending - LOOKBEHIND_BITS);
+        }
+    }
+
+    /**
+     * Copies or drops the oldest scanned bits, depending on the mode.
+     *
+     * @param count number of bits
+     */
+    private void pass(final int count) {
+        if (count <= 0) {
+            return;
+        }
+
+        final long value = (source.window >>> (source.pending - count)) & ((1L << count) - 1L);
+        source.pending -= count;
+
+        if (mode == Mode.BLOCK) {
+            write(value, count);
+        }
+    }
+
+    /**
+     * Handles a magic number found in the scanned bits.
+     *
+     * @param magic block or end of stream magic number
+     * @param startBit position within the object of the magic number's first bit
+     */
+    private void magic(final long magic, final long startBit) {
+        if (magic == END_MAGIC) {
+            if (mode == Mode.BLOCK) {
+                mode = Mode.SKIP;
+            }
+
+            return;
+        }
+
+        if (startBit >= endBit) {
+            // The block belongs to the following stream
+            source.magicPending = true;
+            finish();
+            return;
+        }
+
+        beginBlock();
+    }
+
+    private void beginBlock() {
+        mode = Mode.BLOCK;
+        write(BLOCK_MAGIC, MAGIC_BITS);
+        blockCrc = 0L;
+        crcBitsRemaining = CRC_BITS;
+    }
+
+    /**
+     * Writes the end of stream marker, the combined CRC of the copied
+     * blocks and the padding of the last byte.
+     */
+    private void finish() {
+        write(END_MAGIC, MAGIC_BITS);
+        write(combinedCrc & CRC_MASK, CRC_BITS);
+
+        if (accumulatorBits > 0) {
+            write(0L, Byte.SIZE - accumulatorBits);
+        }
+
+        mode = Mode.DONE;
+    }
+
+    /**
+     * Appends bits to the output, capturing the CRC that follows a block's
+     * magic number.
+     *
+     * @param value bits to write in the low bits
+     * @param count number of bits to write
+     */
+    private void write(final long value, final int count) {
+        if (crcBitsRemaining > 0) {
+            final int bits = Math.min(count, crcBitsRemaining);
+            blockCrc = (blockCrc << bits) | ((value >>> (count - bits)) & ((1L << bits) - 1L));
+            crcBitsRemaining -= bits;
+
+            if (crcBitsRemaining == 0) {
+                combinedCrc = Integer.rotateLeft(combinedCrc, 1) ^ (int) blockCrc;
+            }
+        }
+
+        accumulator = (accumulator << count) | value;
+        accumulatorBits += count;
+
+        while (accumulatorBits >= Byte.SIZE) {
+            accumulatorBits -= Byte.SIZE;
+            output[outputLength++] = (byte) (accumulator >>> accumulatorBits);
+        }
+    }
+
+    /**
+     * Compressed bits shared by the stream of a range and the stream of the
+     * blocks that follow it.
+     */
+    private static final class Source {
+        private final InputStream in;
+        private final MantaBufferPool bufferPool;
+        private byte[] buffer;
+        private int position = 0;
+        private int length = 0;
+        private boolean eof = false;
+
+        /**
+         * Most recently read bits, of which the lowest pending bits haven't
+         * been copied or dropped yet.
+         */
+        private long window = 0L;
+        private int pending = 0;
+
+        /**
+         * Position within the object of the next bit to be read.
+         */
+        private long bitPosition;
+
+        /**
+         * True when the magic number of the block after a range has been
+         * consumed but not yet written.
+         */
+        private boolean magicPending = false;
+
+        private Source(final InputStream in, final long start, final MantaBufferPool bufferPool) {
+            this.in = requireNonNull(in, "Input stream is null");
+            this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+            this.bitPosition = start * Byte.SIZE;
+            this.buffer = bufferPool.borrowArray(BUFFER_SIZE);
+        }
+
+        private int nextByte() throws IOException {
+            while (position == length) {
+                if (eof) {
+                    return -1;
+                }
+
+                final int read = in.read(buffer, 0, buffer.length);
+
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    position = 0;
+                    length = read;
+                }
+            }
+
+            return buffer[position++] & BYTE_MASK;
+        }
+
+        private void close() throws IOException {
+            if (buffer == null) {
+                return;
+            }
+
+            try {
+                in.close();
+            } finally {
+                bufferPool.returnArray(buffer);
+                buffer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.joyent.manta.presto.MantaBufferPool;
+import org.apache.commons.compress.compressors.CompressorInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Apache Compress compatible {@link CompressorInputStream} that decompresses
+ * gzip data starting from a {@link GzipIndex.Checkpoint} part way through
+ * a gzip member, using the JDK inflater.
+ *
+ * <p>Checkpoints rarely fall on a byte boundary, and the JDK inflater can't
+ * be told to skip the bits of the first byte that belong to the previous
+ * deflate block. Until the end of the member, the compressed bytes are
+ * therefore shifted by the checkpoint's bit offset before they are inflated.
+ * The checkpoint's window is set as the inflater's dictionary so that back
+ * references into the data preceding the checkpoint resolve. Members that
+ * follow are byte aligned and are decompressed as usual. The checksum of the
+ * first member can't be verified because its start isn't read.</p>
+ *
+ * @since 1.0.0
+ */
+public class GzipCheckpointInputStream extends CompressorInputStream {
+    private static final int BUFFER_SIZE = 65_536;
+    private static final int BYTE_MASK = 0xFF;
+
+    private static final int GZIP_ID1 = 0x1F;
+    private static final int GZIP_ID2 = 0x8B;
+    private static final int GZIP_DEFLATE = 8;
+    private static final int FLAG_HCRC = 0x02;
+    private static final int FLAG_EXTRA = 0x04;
+    private static final int FLAG_NAME = 0x08;
+    private static final int FLAG_COMMENT = 0x10;
+    private static final int HEADER_FIXED_BYTES = 6;
+    private static final int TRAILER_SIZE = 8;
+    private static final int HEADER_PEEK_BYTES = 3;
+
+    private final InputStream in;
+    private final MantaBufferPool bufferPool;
+    private final Inflater inflater;
+
+    /**
+     * Compressed bytes read from the underlying stream.
+     */
+    private byte[] input;
+    private int inputPosition = 0;
+    private int inputLength = 0;
+    private boolean inputEof = false;
+
+    /**
+     * Shifted copy of the compressed bytes handed to the inflater.
+     */
+    private byte[] shifted;
+
+    /**
+     * Number of bits of the first byte that precede the data being inflated,
+     * zero once the first member has ended.
+     */
+    private int shift;
+
+    /**
+     * Position within the input buffer of the bytes last handed to the inflater.
+     */
+    private int fedPosition = 0;
+    private int fedLength = 0;
+
+    private boolean done = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance that decompresses from a checkpoint.
+     *
+     * @param in stream positioned at the byte containing the first bit of the checkpoint
+     * @param bits number of bits of the first byte that precede the checkpoint
+     * @param window decompressed data preceding the checkpoint
+     * @param bufferPool pool that buffers are borrowed from
+     */
+    public GzipCheckpointInputStream(final InputStream in,
+                                     final int bits,
+                                     final byte[] window,
+                                     final MantaBufferPool bufferPool) {
+        if (bits < 0 || bits >= Byte.SIZE) {
+            throw new IllegalArgumentException("Bit offset must be between 0 and 7");
+        }
+
+        this.in = requireNonNull(in, "Input stream is null");
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+        requireNonNull(window, "Window is null");
+
+        this.shift = bits;
+        this.inflater = bufferPool.borrowInflater();
+        this.input = bufferPool.borrowArray(BUFFER_SIZE);
+
+        if (bits > 0) {
+            this.shifted = bufferPool.borrowArray(BUFFER_SIZE);
+        }
+
+        if (window.length > 0) {
+            inflater.setDictionary(window);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+
+        if (read(single, 0, 1) < 0) {
+            return -1;
+        }
+
+        return single[0] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        ensureOpen();
+
+        if (len == 0) {
+            return 0;
+        }
+
+        while (!done) {
+            if (inflater.needsInput()) {
+                feed();
+            }
+
+            final int inflated;
+
+            try {
+                inflated = inflater.inflate(b, off, len);
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt gzip data after checkpoint", e);
+            }
+
+            if (inflated > 0) {
+                count(inflated);
+                return inflated;
+            }
+
+            if (inflater.finished()) {
+                endMember();
+            } else if (inflater.needsDictionary()) {
+                throw new IOException("Gzip data requires an unexpected dictionary");
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            in.close();
+        } finally {
+            bufferPool.returnInflater(inflater);
+            bufferPool.returnArray(input);
+            input = null;
+
+            if (shifted != null) {
+                bufferPool.returnArray(shifted);
+                shifted = null;
+            }
+        }
+    }
+
+    /**
+     * Hands the next compressed bytes to the inflater.
+     *
+     * @throws IOException thrown when the stream can't be read or ends early
+     */
+    private void feed() throws IOException {
+        if (shift == 0) {
+            if (inputPosition == inputLength && !refill(1)) {
+                throw new EOFException("Unexpected end of gzip stream");
+            }
+
+            fedPosition = inputPosition;
+            fedLength = inputLength - inputPosition;
+            inflater.setInput(input, fedPosition, fedLength);
+            inputPosition = inputLength;
+            return;
+        }
+
+        // Each shifted byte takes its high bits from the following byte
+        if (inputLength - inputPosition < 2) {
+            refill(2);
+        }
+
+        int length = inputLength - inputPosition - 1;
+
+        if (inputEof) {
+            length = inputLength - inputPosition;
+        }
+
+        if (length <= 0) {
+            throw new EOFException("Unexpected end of gzip stream");
+        }
+
+        for (int i = 0; i < length; i++) {
+            final int position = inputPosition + i;
+            int next = 0;
+
+            if (position + 1 < inputLength) {
+                next = input[position + 1] & BYTE_MASK;
+            }
+
+            shifted[i] = (byte) (((input[position] & BYTE_MASK) >>> shift) | (next << (Byte.SIZE - shift)));
+        }
+
+        fedPosition = inputPosition;
+        fedLength = length;
+        inflater.setInput(shifted, 0, length);
+        inputPosition += length;
+    }
+
+    /**
+     * Skips the trailer of the member that the inflater just finished and
+     * prepares the inflater for the following member, if any.
+     *
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private void endMember() throws IOException {
+        inputPosition = fedPosition + fedLength - inflater.getRemaining();
+
+        if (shift > 0) {
+            /* The inflater consumed the shifted byte holding the last bit of
+             * the member, so the trailer starts either in place of the byte
+             * after it or one byte later. The following gzip header or the end
+             * of the stream tells them apart. */
+            refill(TRAILER_SIZE + HEADER_PEEK_BYTES);
+            final int available = inputLength - inputPosition;
+
+            if (!startsMember(inputPosition + TRAILER_SIZE) && available != TRAILER_SIZE) {
+                if (startsMember(inputPosition + TRAILER_SIZE + 1) || available == TRAILER_SIZE + 1) {
+                    inputPosition++;
+                } else {
+                    throw new IOException("Unable to locate end of gzip member after checkpoint");
+                }
+            }
+
+            shift = 0;
+        }
+
+        if (!refill(TRAILER_SIZE)) {
+            throw new EOFException("Gzip member trailer is truncated");
+        }
+
+        inputPosition += TRAILER_SIZE;
+
+        if (!refill(1)) {
+            done = true;
+            return;
+        }
+
+        readMemberHeader();
+        inflater.reset();
+    }
+
+    private boolean startsMember(final int position) {
+        return position + 1 < inputLength
+                && (input[position] & BYTE_MASK) == GZIP_ID1
+                && (input[position + 1] & BYTE_MASK) == GZIP_ID2;
+    }
+
+    private void readMemberHeader() throws IOException {
+        if (nextByte() != GZIP_ID1 || nextByte() != GZIP_ID2 || nextByte() != GZIP_DEFLATE) {
+            throw new IOException("Not in gzip format");
+        }
+
+        final int flags = nextByte();
+
+        for (int i = 0; i < HEADER_FIXED_BYTES; i++) {
+            nextByte();
+        }
+
+        if ((flags & FLAG_EXTRA) != 0) {
+            final int length = nextByte() | (nextByte() << Byte.SIZE);
+
+            for (int i = 0; i < length; i++) {
+                nextByte();
+            }
+        }
+
+        if ((flags & FLAG_NAME) != 0) {
+            skipZeroTerminated();
+        }
+
+        if ((flags & FLAG_COMMENT) != 0) {
+            skipZeroTerminated();
+        }
+
+        if ((flags & FLAG_HCRC) != 0) {
+            nextByte();
+            nextByte();
+        }
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        int value = nextByte();
+
+        while (value != 0) {
+            value = nextByte();
+        }
+    }
+
+    private int nextByte() throws IOException {
+        if (!refill(1)) {
+            throw new EOFException("Gzip member header is truncated");
+        }
+
+        return input[inputPosition++] & BYTE_MASK;
+    }
+
+    /**
+     * Reads from the underlying stream until the input buffer holds the
+     * requested number of unconsumed bytes or the stream ends.
+     *
+     * @param minimum number of unconsumed bytes wanted
+     * @return true if the requested number of bytes are available
+     * @throws IOException thrown when the stream can't be read
+     */
+    private boolean refill(final int minimum) throws IOException {
+        if (inputLength - inputPosition >= minimum) {
+            return true;
+        }
+
+        System.arraycopy(input, inputPosition, input, 0, inputLength - inputPosition);
+        inputLength -= inputPosition;
+        inputPosition = 0;
+
+        while (!inputEof && inputLength < minimum) {
+            final int read = in.read(input, inputLength, input.length - inputLength);
+
+            if (read < 0) {
+                inputEof = true;
+            } else {
+                inputLength += read;
+            }
+        }
+
+        return inputLength - inputPosition >= minimum;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
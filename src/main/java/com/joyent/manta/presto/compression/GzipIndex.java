@@ -0,0 +1,427 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.collect.ImmutableList;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Seek point index of a gzip object that allows decompression to start at
+ * points part way through the object, in the manner of zlib's
+ * <code>zran</code> example. Each checkpoint records the position of a
+ * deflate block boundary in the compressed and decompressed data, along
+ * with the 32KiB of decompressed data that preceded it so that back
+ * references made by the following blocks can be resolved.
+ *
+ * <p>The index is stored as a sidecar object next to the gzip object. The
+ * sidecar starts with a header and a table of checkpoints, followed by the
+ * deflate compressed window of each checkpoint, so that the table can be
+ * read without downloading the windows and each window can be downloaded
+ * with a single range request.</p>
+ *
+ * @since 1.0.0
+ */
+public final class GzipIndex {
+    /**
+     * Extension (value {@value}) appended to the path of a gzip object to
+     * derive the path of its index.
+     */
+    public static final String SIDECAR_EXTENSION = ".gzidx";
+
+    /**
+     * Number of bytes of decompressed data that back references may reach.
+     */
+    public static final int WINDOW_SIZE = 32_768;
+
+    private static final byte[] MAGIC = "MGZIDX\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 1;
+    private static final int MAX_ETAG_LENGTH = 1024;
+    private static final int MAX_BITS = 7;
+
+    /**
+     * Number of bytes in each entry of the checkpoint table.
+     */
+    private static final int ENTRY_SIZE = Long.BYTES + Long.BYTES + Byte.BYTES + Integer.BYTES;
+
+    private final String etag;
+    private final long compressedSize;
+    private final long uncompressedSize;
+    private final List<Checkpoint> checkpoints;
+
+    /**
+     * Point at which decompression can start part way through a gzip object.
+     */
+    public static final class Checkpoint {
+        private final long uncompressedOffset;
+        private final long compressedOffset;
+        private final int bits;
+        private final long windowOffset;
+        private final int windowLength;
+        private final byte[] compressedWindow;
+
+        /**
+         * Creates a new checkpoint whose window is held in memory.
+         *
+         * @param uncompressedOffset position within the decompressed data
+         * @param compressedOffset position within the compressed data of the byte
+         *                         containing the first bit of the deflate block
+         * @param bits number of bits of that byte belonging to the previous block
+         * @param window decompressed data preceding the checkpoint, at most {@link #WINDOW_SIZE} bytes
+         */
+        public Checkpoint(final long uncompressedOffset,
+                          final long compressedOffset,
+                          final int bits,
+                          final byte[] window) {
+            this(uncompressedOffset, compressedOffset, bits, -1L, deflate(window));
+        }
+
+        private Checkpoint(final long uncompressedOffset,
+                           final long compressedOffset,
+                           final int bits,
+                           final long windowOffset,
+                           final byte[] compressedWindow) {
+            if (bits < 0 || bits > MAX_BITS) {
+                throw new IllegalArgumentException("Bit offset must be between 0 and 7");
+            }
+
+            this.uncompressedOffset = uncompressedOffset;
+            this.compressedOffset = compressedOffset;
+            this.bits = bits;
+            this.windowOffset = windowOffset;
+            this.compressedWindow = compressedWindow;
+            this.windowLength = compressedWindow.length;
+        }
+
+        private Checkpoint(final long uncompressedOffset,
+                           final long compressedOffset,
+                           final int bits,
+                           final long windowOffset,
+                           final int windowLength) {
+            this.uncompressedOffset = uncompressedOffset;
+            this.compressedOffset = compressedOffset;
+            this.bits = bits;
+            this.windowOffset = windowOffset;
+            this.windowLength = windowLength;
+            this.compressedWindow = null;
+        }
+
+        public long getUncompressedOffset() {
+            return uncompressedOffset;
+        }
+
+        public long getCompressedOffset() {
+            return compressedOffset;
+        }
+
+        public int getBits() {
+            return bits;
+        }
+
+        /**
+         * @return position within the index of the compressed window or -1
+         *         if the checkpoint wasn't read from an index
+         */
+        public long getWindowOffset() {
+            return windowOffset;
+        }
+
+        /**
+         * @return length in bytes of the compressed window
+         */
+        public int getWindowLength() {
+            return windowLength;
+        }
+
+        /**
+         * @return decompressed data preceding the checkpoint
+         * @throws IOException thrown when the window wasn't read with the checkpoint
+         */
+        public byte[] getWindow() throws IOException {
+            if (compressedWindow == null) {
+                throw new IOException("Window of checkpoint wasn't read from index");
+            }
+
+            return inflateWindow(compressedWindow);
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder(this)
+                    .append("uncompressedOffset", uncompressedOffset)
+                    .append("compressedOffset", compressedOffset)
+                    .append("bits", bits)
+                    .append("windowOffset", windowOffset)
+                    .append("windowLength", windowLength)
+                    .toString();
+        }
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param etag etag of the gzip object that was indexed or null if unknown
+     * @param compressedSize size in bytes of the gzip object
+     * @param uncompressedSize size in bytes of the decompressed data
+     * @param checkpoints checkpoints in order of position
+     */
+    public GzipIndex(final String etag,
+                     final long compressedSize,
+                     final long uncompressedSize,
+                     final List<Checkpoint> checkpoints) {
+        this.etag = etag;
+        this.compressedSize = compressedSize;
+        this.uncompressedSize = uncompressedSize;
+        this.checkpoints = ImmutableList.copyOf(requireNonNull(checkpoints, "Checkpoints are null"));
+    }
+
+    /**
+     * @param objectPath path of the gzip object
+     * @return path of the index of the gzip object
+     */
+    public static String sidecarPath(final String objectPath) {
+        return objectPath + SIDECAR_EXTENSION;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    public long getUncompressedSize() {
+        return uncompressedSize;
+    }
+
+    public List<Checkpoint> getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Writes the index in its sidecar format. Every checkpoint must hold its
+     * window in memory.
+     *
+     * @param out stream to write to
+     * @throws IOException thrown when the stream can't be written to
+     */
+    public void writeTo(final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        final byte[] etagBytes = etagBytes();
+
+        data.write(MAGIC);
+        data.writeInt(VERSION);
+        data.writeShort(etagBytes.length);
+        data.write(etagBytes);
+        data.writeLong(compressedSize);
+        data.writeLong(uncompressedSize);
+        data.writeInt(checkpoints.size());
+
+        for (Checkpoint checkpoint : checkpoints) {
+            if (checkpoint.compressedWindow == null) {
+                throw new IOException("Window of checkpoint wasn't read from index");
+            }
+
+            data.writeLong(checkpoint.uncompressedOffset);
+            data.writeLong(checkpoint.compressedOffset);
+            data.writeByte(checkpoint.bits);
+            data.writeInt(checkpoint.windowLength);
+        }
+
+        for (Checkpoint checkpoint : checkpoints) {
+            data.write(checkpoint.compressedWindow);
+        }
+
+        data.flush();
+    }
+
+    /**
+     * @return the index in its sidecar format
+     */
+    public byte[] toByteArray() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to serialize gzip index", e);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads the header and checkpoint table of an index in its sidecar
+     * format, leaving the stream positioned at the first window. The windows
+     * of the returned checkpoints must be read separately using their
+     * offsets and {@link #inflateWindow(byte[])}.
+     *
+     * @param in stream positioned at the start of the index
+     * @return index without windows
+     * @throws IOException thrown when the stream can't be read or isn't an index
+     */
+    public static GzipIndex readTable(final InputStream in) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        final byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Object isn't a gzip index");
+        }
+
+        final int version = data.readInt();
+
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported gzip index version [version=%d]", version));
+        }
+
+        final int etagLength = data.readUnsignedShort();
+
+        if (etagLength > MAX_ETAG_LENGTH) {
+            throw new IOException("Gzip index etag is too long");
+        }
+
+        final byte[] etagBytes = new byte[etagLength];
+        data.readFully(etagBytes);
+
+        final long compressedSize = data.readLong();
+        final long uncompressedSize = data.readLong();
+        final int count = data.readInt();
+
+        if (count < 0) {
+            throw new IOException("Gzip index has negative number of checkpoints");
+        }
+
+        final long[][] entries = new long[count][];
+        final int[] windowLengths = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            entries[i] = new long[] {data.readLong(), data.readLong(), data.readUnsignedByte()};
+            windowLengths[i] = data.readInt();
+        }
+
+        long windowOffset = headerSize(etagLength) + (long) count * ENTRY_SIZE;
+        final ImmutableList.Builder<Checkpoint> checkpoints = ImmutableList.builder();
+
+        for (int i = 0; i < count; i++) {
+            checkpoints.add(new Checkpoint(entries[i][0], entries[i][1], (int) entries[i][2],
+                    windowOffset, windowLengths[i]));
+            windowOffset += windowLengths[i];
+        }
+
+        final String etag;
+
+        if (etagLength == 0) {
+            etag = null;
+        } else {
+            etag = new String(etagBytes, StandardCharsets.UTF_8);
+        }
+
+        return new GzipIndex(etag, compressedSize, uncompressedSize, checkpoints.build());
+    }
+
+    private static long headerSize(final int etagLength) {
+        return MAGIC.length + Integer.BYTES + Short.BYTES + etagLength
+                + Long.BYTES + Long.BYTES + Integer.BYTES;
+    }
+
+    private byte[] etagBytes() {
+        if (etag == null) {
+            return new byte[0];
+        }
+
+        return etag.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] deflate(final byte[] window) {
+        requireNonNull(window, "Window is null");
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+
+        try {
+            deflater.setInput(window);
+            deflater.finish();
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(window.length / 2 + 1);
+            final byte[] buffer = new byte[WINDOW_SIZE];
+
+            while (!deflater.finished()) {
+                final int written = deflater.deflate(buffer);
+                out.write(buffer, 0, written);
+            }
+
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses a window read from an index.
+     *
+     * @param compressedWindow compressed window
+     * @return decompressed data preceding the checkpoint
+     * @throws IOException thrown when the window is corrupt
+     */
+    public static byte[] inflateWindow(final byte[] compressedWindow) throws IOException {
+        final Inflater inflater = new Inflater(true);
+
+        try {
+            inflater.setInput(compressedWindow);
+
+            // One spare byte detects windows that are too large
+            final byte[] window = new byte[WINDOW_SIZE + 1];
+            int length = 0;
+
+            while (!inflater.finished() && length < window.length) {
+                final int inflated = inflater.inflate(window, length, window.length - length);
+
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Gzip index window is truncated");
+                }
+
+                length += inflated;
+            }
+
+            if (!inflater.finished() || length > WINDOW_SIZE) {
+                throw new IOException("Gzip index window is too large");
+            }
+
+            return Arrays.copyOf(window, length);
+        } catch (DataFormatException e) {
+            throw new IOException("Gzip index window is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("etag", etag)
+                .append("compressedSize", compressedSize)
+                .append("uncompressedSize", uncompressedSize)
+                .append("checkpoints", checkpoints.size())
+                .toString();
+    }
+}
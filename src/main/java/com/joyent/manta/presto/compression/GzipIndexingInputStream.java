@@ -0,0 +1,808 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.joyent.manta.presto.MantaBufferPool;
+import org.apache.commons.compress.compressors.CompressorInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Apache Compress compatible {@link CompressorInputStream} that decompresses
+ * gzip data and builds a {@link GzipIndex} of it at the same time. The JDK
+ * inflater doesn't report where deflate blocks start, so this stream
+ * contains its own inflater that records a checkpoint at the first block
+ * boundary after every checkpoint spacing's worth of decompressed data.
+ *
+ * <p>Concatenated gzip members are decompressed one after another. Once
+ * the whole stream has been decompressed and every member's checksum and
+ * size verified, the completed index is passed to the listener. Streams
+ * that are closed before reaching their end never produce an index.</p>
+ *
+ * <p>When the stream is only used to resume decompression after a lost
+ * connection, each checkpoint is instead passed to a listener as soon as it
+ * is recorded and isn't kept, so memory use doesn't grow with the size of
+ * the object.</p>
+ *
+ * @since 1.0.0
+ */
+public class GzipIndexingInputStream extends CompressorInputStream {
+    private static final int INPUT_BUFFER_SIZE = 65_536;
+
+    /**
+     * Decompressed data is written after the window of history and slid
+     * back once the buffer is full and has been read.
+     */
+    private static final int OUTPUT_LIMIT = 2 * GzipIndex.WINDOW_SIZE;
+
+    private static final int MAX_MATCH = 258;
+    private static final int BYTE_MASK = 0xFF;
+
+    private static final int GZIP_ID1 = 0x1F;
+    private static final int GZIP_ID2 = 0x8B;
+    private static final int GZIP_DEFLATE = 8;
+    private static final int FLAG_HCRC = 0x02;
+    private static final int FLAG_EXTRA = 0x04;
+    private static final int FLAG_NAME = 0x08;
+    private static final int FLAG_COMMENT = 0x10;
+    private static final int HEADER_FIXED_BYTES = 6;
+    private static final int STORED_LENGTH_MASK = 0xFFFF;
+    private static final long UNSIGNED_INT_MASK = 0xFFFFFFFFL;
+
+    private static final int BLOCK_STORED = 0;
+    private static final int BLOCK_FIXED = 1;
+    private static final int BLOCK_DYNAMIC = 2;
+    private static final int BLOCK_TYPE_BITS = 2;
+
+    private static final int END_OF_BLOCK = 256;
+    private static final int FIRST_LENGTH_CODE = 257;
+    private static final int LITERAL_LENGTH_CODES = 288;
+    private static final int DISTANCE_CODES = 32;
+    private static final int CODE_LENGTH_CODES = 19;
+    private static final int MAX_CODE_LENGTH = 15;
+    private static final int ENTRY_LENGTH_BITS = 4;
+    private static final int ENTRY_LENGTH_MASK = 0x0F;
+
+    private static final int HLIT_BITS = 5;
+    private static final int HDIST_BITS = 5;
+    private static final int HCLEN_BITS = 4;
+    private static final int HCLEN_BASE = 4;
+    private static final int CODE_LENGTH_BITS = 3;
+    private static final int REPEAT_PREVIOUS = 16;
+    private static final int[] REPEAT_EXTRA_BITS = {2, 3, 7};
+    private static final int[] REPEAT_BASE = {3, 3, 11};
+
+    private static final int[] CODE_LENGTH_ORDER = {
+            16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15
+    };
+
+    private static final int[] LENGTH_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+            35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258
+    };
+
+    private static final int[] LENGTH_EXTRA = {
+            0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+            3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0
+    };
+
+    private static final int[] DISTANCE_BASE = {
+            1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+            257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+            8193, 12289, 16385, 24577
+    };
+
+    private static final int[] DISTANCE_EXTRA = {
+            0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+            7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13
+    };
+
+    private static final int[] FIXED_LENGTH_RANGES = {143, 255, 279, 287};
+    private static final int[] FIXED_LENGTH_BITS = {8, 9, 7, 8};
+    private static final int FIXED_DISTANCE_BITS = 5;
+
+    private static final HuffmanTable FIXED_LITERAL_LENGTHS;
+    private static final HuffmanTable FIXED_DISTANCES;
+
+    static {
+        final byte[] lengths = new byte[LITERAL_LENGTH_CODES];
+        int symbol = 0;
+
+        for (int i = 0; i < FIXED_LENGTH_RANGES.length; i++) {
+            for (; symbol <= FIXED_LENGTH_RANGES[i]; symbol++) {
+                lengths[symbol] = (byte) FIXED_LENGTH_BITS[i];
+            }
+        }
+
+        final byte[] distances = new byte[DISTANCE_CODES];
+        Arrays.fill(distances, (byte) FIXED_DISTANCE_BITS);
+
+        try {
+            FIXED_LITERAL_LENGTHS = new HuffmanTable(lengths, 0, lengths.length);
+            FIXED_DISTANCES = new HuffmanTable(distances, 0, distances.length);
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Position within the stream that the decoder has reached.
+     */
+    private enum State {
+        MEMBER_HEADER, BLOCK_HEADER, STORED, HUFFMAN, MEMBER_TRAILER, DONE
+    }
+
+    private final InputStream in;
+    private final MantaBufferPool bufferPool;
+    private final long checkpointSpacing;
+    private final String etag;
+    private final Consumer<GzipIndex> listener;
+    private final Consumer<GzipIndex.Checkpoint> checkpointListener;
+    private final List<GzipIndex.Checkpoint> checkpoints = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+
+    private byte[] input;
+    private int inputPosition = 0;
+    private int inputLength = 0;
+
+    /**
+     * Number of bytes of the compressed stream before the input buffer.
+     */
+    private long inputBase = 0L;
+    private long bitBuffer = 0L;
+    private int bitCount = 0;
+
+    private byte[] output;
+    private int outputLength = 0;
+    private int readPosition = 0;
+
+    /**
+     * Number of bytes of decompressed data before the output buffer.
+     */
+    private long outputBase = 0L;
+    private long nextCheckpoint;
+    private long memberSize = 0L;
+
+    private State state = State.MEMBER_HEADER;
+    private boolean lastBlock;
+    private int storedRemaining;
+    private HuffmanTable literalLengths;
+    private HuffmanTable distances;
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance that decompresses and indexes the supplied stream.
+     *
+     * @param in gzip stream to decompress
+     * @param checkpointSpacing minimum number of decompressed bytes between checkpoints
+     * @param etag etag of the object being indexed or null if unknown
+     * @param bufferPool pool that buffers are borrowed from
+     * @param listener receives the index once the whole stream has been decompressed
+     */
+    public GzipIndexingInputStream(final InputStream in,
+                                   final long checkpointSpacing,
+                                   final String etag,
+                                   final MantaBufferPool bufferPool,
+                                   final Consumer<GzipIndex> listener) {
+        this(in, checkpointSpacing, etag, bufferPool, requireNonNull(listener, "Listener is null"), null);
+    }
+
+    /**
+     * Creates a new instance that decompresses the supplied stream and passes
+     * each checkpoint to a listener once it is recorded, without building
+     * an index.
+     *
+     * @param in gzip stream to decompress
+     * @param checkpointSpacing minimum number of decompressed bytes between checkpoints
+     * @param bufferPool pool that buffers are borrowed from
+     * @param checkpointListener receives each checkpoint once it is recorded
+     */
+    public GzipIndexingInputStream(final InputStream in,
+                                   final long checkpointSpacing,
+                                   final MantaBufferPool bufferPool,
+                                   final Consumer<GzipIndex.Checkpoint> checkpointListener) {
+        this(in, checkpointSpacing, null, bufferPool, null,
+                requireNonNull(checkpointListener, "Checkpoint listener is null"));
+    }
+
+    private GzipIndexingInputStream(final InputStream in,
+                                    final long checkpointSpacing,
+                                    final String etag,
+                                    final MantaBufferPool bufferPool,
+                                    final Consumer<GzipIndex> listener,
+                                    final Consumer<GzipIndex.Checkpoint> checkpointListener) {
+        if (checkpointSpacing < 1L) {
+            throw new IllegalArgumentException("Checkpoint spacing must be greater than zero");
+        }
+
+        this.in = requireNonNull(in, "Input stream is null");
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+        this.listener = listener;
+        this.checkpointListener = checkpointListener;
+        this.checkpointSpacing = checkpointSpacing;
+        this.nextCheckpoint = checkpointSpacing;
+        this.etag = etag;
+        this.input = bufferPool.borrowArray(INPUT_BUFFER_SIZE);
+        this.output = bufferPool.borrowArray(OUTPUT_LIMIT + MAX_MATCH);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+
+        count(1);
+        return output[readPosition++] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        final int read = Math.min(len, outputLength - readPosition);
+        System.arraycopy(output, readPosition, b, off, read);
+        readPosition += read;
+        count(read);
+
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return outputLength - readPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            in.close();
+        } finally {
+            bufferPool.returnArray(input);
+            bufferPool.returnArray(output);
+            input = null;
+            output = null;
+        }
+    }
+
+    /**
+     * Decompresses until there are bytes to serve.
+     *
+     * @return false when the end of the stream was reached
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private boolean fill() throws IOException {
+        ensureOpen();
+
+        while (readPosition == outputLength) {
+            if (state == State.DONE) {
+                return false;
+            }
+
+            if (outputLength >= OUTPUT_LIMIT) {
+                final int discard = outputLength - GzipIndex.WINDOW_SIZE;
+                System.arraycopy(output, discard, output, 0, GzipIndex.WINDOW_SIZE);
+                outputBase += discard;
+                outputLength = GzipIndex.WINDOW_SIZE;
+                readPosition = outputLength;
+            }
+
+            final int start = outputLength;
+            decode();
+            crc.update(output, start, outputLength - start);
+            memberSize += outputLength - start;
+
+            // The checksum covers all of the member's output by now
+            if (state == State.MEMBER_TRAILER) {
+                readMemberTrailer();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Decodes until the output buffer is full or a member ends.
+     *
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private void decode() throws IOException {
+        while (outputLength < OUTPUT_LIMIT) {
+            switch (state) {
+                case MEMBER_HEADER:
+                    if (!readMemberHeader()) {
+                        state = State.DONE;
+
+                        if (listener != null) {
+                            listener.accept(new GzipIndex(etag, compressedPosition() / Byte.SIZE,
+                                    outputBase + outputLength, checkpoints));
+                        }
+
+                        return;
+                    }
+
+                    crc.reset();
+                    memberSize = 0L;
+                    state = State.BLOCK_HEADER;
+                    break;
+                case BLOCK_HEADER:
+                    if (lastBlock) {
+                        state = State.MEMBER_TRAILER;
+                        break;
+                    }
+
+                    recordCheckpointIfDue();
+                    readBlockHeader();
+                    break;
+                case STORED:
+                    copyStored();
+                    break;
+                case HUFFMAN:
+                    decodeHuffman();
+                    break;
+                default:
+                    return;
+            }
+
+            if (state == State.MEMBER_TRAILER) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the header of the next gzip member.
+     *
+     * @return false when the stream ended before another member
+     * @throws IOException thrown when the stream can't be read or isn't gzip
+     */
+    private boolean readMemberHeader() throws IOException {
+        final int id1 = nextByte();
+
+        if (id1 < 0) {
+            return false;
+        }
+
+        if (id1 != GZIP_ID1 || alignedByte() != GZIP_ID2 || alignedByte() != GZIP_DEFLATE) {
+            throw new IOException("Not in gzip format");
+        }
+
+        final int flags = alignedByte();
+
+        for (int i = 0; i < HEADER_FIXED_BYTES; i++) {
+            alignedByte();
+        }
+
+        if ((flags & FLAG_EXTRA) != 0) {
+            final int length = alignedByte() | (alignedByte() << Byte.SIZE);
+
+            for (int i = 0; i < length; i++) {
+                alignedByte();
+            }
+        }
+
+        if ((flags & FLAG_NAME) != 0) {
+            skipZeroTerminated();
+        }
+
+        if ((flags & FLAG_COMMENT) != 0) {
+            skipZeroTerminated();
+        }
+
+        if ((flags & FLAG_HCRC) != 0) {
+            alignedByte();
+            alignedByte();
+        }
+
+        lastBlock = false;
+        return true;
+    }
+
+    /**
+     * Records a checkpoint at the current block boundary if enough
+     * decompressed data has been produced since the last one.
+     */
+    private void recordCheckpointIfDue() {
+        final long position = outputBase + outputLength;
+
+        if (position < nextCheckpoint) {
+            return;
+        }
+
+        final int windowLength = (int) Math.min(GzipIndex.WINDOW_SIZE, position);
+        final byte[] window = Arrays.copyOfRange(output, outputLength - windowLength, outputLength);
+        final long bitPosition = compressedPosition();
+
+        final GzipIndex.Checkpoint checkpoint = new GzipIndex.Checkpoint(position,
+                bitPosition / Byte.SIZE, (int) (bitPosition % Byte.SIZE), window);
+
+        if (checkpointListener == null) {
+            checkpoints.add(checkpoint);
+        } else {
+            checkpointListener.accept(checkpoint);
+        }
+
+        nextCheckpoint = position + checkpointSpacing;
+    }
+
+    private void readBlockHeader() throws IOException {
+        lastBlock = bits(1) == 1;
+        final int type = bits(BLOCK_TYPE_BITS);
+
+        switch (type) {
+            case BLOCK_STORED:
+                alignToByte();
+                final int length = alignedByte() | (alignedByte() << Byte.SIZE);
+                final int complement = alignedByte() | (alignedByte() << Byte.SIZE);
+
+                if ((length ^ complement) != STORED_LENGTH_MASK) {
+                    throw new IOException("Invalid stored block lengths");
+                }
+
+                storedRemaining = length;
+                state = State.STORED;
+                break;
+            case BLOCK_FIXED:
+                literalLengths = FIXED_LITERAL_LENGTHS;
+                distances = FIXED_DISTANCES;
+                state = State.HUFFMAN;
+                break;
+            case BLOCK_DYNAMIC:
+                readDynamicTables();
+                state = State.HUFFMAN;
+                break;
+            default:
+                throw new IOException("Invalid block type");
+        }
+    }
+
+    private void readDynamicTables() throws IOException {
+        final int literalCount = bits(HLIT_BITS) + FIRST_LENGTH_CODE;
+        final int distanceCount = bits(HDIST_BITS) + 1;
+        final int codeLengthCount = bits(HCLEN_BITS) + HCLEN_BASE;
+
+        final byte[] codeLengths = new byte[CODE_LENGTH_CODES];
+
+        for (int i = 0; i < codeLengthCount; i++) {
+            codeLengths[CODE_LENGTH_ORDER[i]] = (byte) bits(CODE_LENGTH_BITS);
+        }
+
+        final HuffmanTable codeLengthTable = new HuffmanTable(codeLengths, 0, codeLengths.length);
+        final byte[] lengths = new byte[literalCount + distanceCount];
+        int index = 0;
+
+        while (index < lengths.length) {
+            final int symbol = decodeSymbol(codeLengthTable);
+
+            if (symbol < REPEAT_PREVIOUS) {
+                lengths[index++] = (byte) symbol;
+                continue;
+            }
+
+            final int repeatType = symbol - REPEAT_PREVIOUS;
+            final int repeat = REPEAT_BASE[repeatType] + bits(REPEAT_EXTRA_BITS[repeatType]);
+            byte value = 0;
+
+            if (symbol == REPEAT_PREVIOUS) {
+                if (index == 0) {
+                    throw new IOException("Invalid repeat of missing code length");
+                }
+
+                value = lengths[index - 1];
+            }
+
+            if (index + repeat > lengths.length) {
+                throw new IOException("Invalid code length repeat");
+            }
+
+            Arrays.fill(lengths, index, index + repeat, value);
+            index += repeat;
+        }
+
+        if (lengths[END_OF_BLOCK] == 0) {
+            throw new IOException("Missing end of block code");
+        }
+
+        literalLengths = new HuffmanTable(lengths, 0, literalCount);
+        distances = new HuffmanTable(lengths, literalCount, distanceCount);
+    }
+
+    private void copyStored() throws IOException {
+        while (storedRemaining > 0 && outputLength < OUTPUT_LIMIT) {
+            // Whole bytes left in the bit buffer come first
+            if (bitCount >= Byte.SIZE) {
+                output[outputLength++] = (byte) bits(Byte.SIZE);
+                storedRemaining--;
+                continue;
+            }
+
+            if (inputPosition == inputLength && !refill()) {
+                throw new EOFException("Unexpected end of gzip stream");
+            }
+
+            final int length = Math.min(Math.min(storedRemaining, OUTPUT_LIMIT - outputLength),
+                    inputLength - inputPosition);
+            System.arraycopy(input, inputPosition, output, outputLength, length);
+            inputPosition += length;
+            outputLength += length;
+            storedRemaining -= length;
+        }
+
+        if (storedRemaining == 0) {
+            state = State.BLOCK_HEADER;
+        }
+    }
+
+    private void decodeHuffman() throws IOException {
+        while (outputLength < OUTPUT_LIMIT) {
+            final int symbol = decodeSymbol(literalLengths);
+
+            if (symbol < END_OF_BLOCK) {
+                output[outputLength++] = (byte) symbol;
+                continue;
+            }
+
+            if (symbol == END_OF_BLOCK) {
+                state = State.BLOCK_HEADER;
+                return;
+            }
+
+            final int lengthCode = symbol - FIRST_LENGTH_CODE;
+
+            if (lengthCode >= LENGTH_BASE.length) {
+                throw new IOException("Invalid literal/length code");
+            }
+
+            final int length = LENGTH_BASE[lengthCode] + bits(LENGTH_EXTRA[lengthCode]);
+            final int distanceCode = decodeSymbol(distances);
+
+            if (distanceCode >= DISTANCE_BASE.length) {
+                throw new IOException("Invalid distance code");
+            }
+
+            final int distance = DISTANCE_BASE[distanceCode] + bits(DISTANCE_EXTRA[distanceCode]);
+
+            if (distance > outputLength) {
+                throw new IOException("Invalid distance too far back");
+            }
+
+            int from = outputLength - distance;
+
+            for (int i = 0; i < length; i++) {
+                output[outputLength++] = output[from++];
+            }
+        }
+    }
+
+    /**
+     * Verifies the checksum and size of the member that just ended.
+     *
+     * @throws IOException thrown when the member is corrupt
+     */
+    private void readMemberTrailer() throws IOException {
+        alignToByte();
+
+        final long expectedCrc = alignedInt();
+        final long expectedSize = alignedInt();
+
+        if (expectedCrc != crc.getValue()) {
+            throw new IOException("Gzip member checksum mismatch");
+        }
+
+        if (expectedSize != (memberSize & UNSIGNED_INT_MASK)) {
+            throw new IOException("Gzip member size mismatch");
+        }
+
+        state = State.MEMBER_HEADER;
+    }
+
+    private long alignedInt() throws IOException {
+        long value = 0L;
+
+        for (int i = 0; i < Integer.BYTES; i++) {
+            value |= (long) alignedByte() << (Byte.SIZE * i);
+        }
+
+        return value;
+    }
+
+    /**
+     * Decodes a Huffman coded symbol.
+     *
+     * @param table table for the code
+     * @return symbol
+     * @throws IOException thrown when the stream ends or the code is invalid
+     */
+    private int decodeSymbol(final HuffmanTable table) throws IOException {
+        while (bitCount < table.bits) {
+            final int b = nextByte();
+
+            if (b < 0) {
+                break;
+            }
+
+            bitBuffer |= (long) b << bitCount;
+            bitCount += Byte.SIZE;
+        }
+
+        final int entry = table.entries[(int) (bitBuffer & ((1L << table.bits) - 1))];
+        final int length = entry & ENTRY_LENGTH_MASK;
+
+        if (length == 0) {
+            throw new IOException("Invalid Huffman code");
+        }
+
+        if (length > bitCount) {
+            throw new EOFException("Unexpected end of gzip stream");
+        }
+
+        bitBuffer >>>= length;
+        bitCount -= length;
+
+        return entry >>> ENTRY_LENGTH_BITS;
+    }
+
+    private int bits(final int count) throws IOException {
+        while (bitCount < count) {
+            final int b = nextByte();
+
+            if (b < 0) {
+                throw new EOFException("Unexpected end of gzip stream");
+            }
+
+            bitBuffer |= (long) b << bitCount;
+            bitCount += Byte.SIZE;
+        }
+
+        final int value = (int) (bitBuffer & ((1L << count) - 1));
+        bitBuffer >>>= count;
+        bitCount -= count;
+
+        return value;
+    }
+
+    private void alignToByte() {
+        final int discard = bitCount % Byte.SIZE;
+        bitBuffer >>>= discard;
+        bitCount -= discard;
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        int value = alignedByte();
+
+        while (value != 0) {
+            value = alignedByte();
+        }
+    }
+
+    private int alignedByte() throws IOException {
+        if (bitCount >= Byte.SIZE) {
+            return bits(Byte.SIZE);
+        }
+
+        final int b = nextByte();
+
+        if (b < 0) {
+            throw new EOFException("Unexpected end of gzip stream");
+        }
+
+        return b;
+    }
+
+    private int nextByte() throws IOException {
+        if (inputPosition == inputLength && !refill()) {
+            return -1;
+        }
+
+        return input[inputPosition++] & BYTE_MASK;
+    }
+
+    private boolean refill() throws IOException {
+        inputBase += inputLength;
+        inputPosition = 0;
+        inputLength = 0;
+
+        final int read = in.read(input, 0, input.length);
+
+        if (read <= 0) {
+            return false;
+        }
+
+        inputLength = read;
+        return true;
+    }
+
+    /**
+     * @return number of bits of the compressed stream consumed by the decoder
+     */
+    private long compressedPosition() {
+        return (inputBase + inputPosition) * Byte.SIZE - bitCount;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    /**
+     * Lookup table for a canonical Huffman code indexed by the next bits of
+     * the stream, in the order that they are read.
+     */
+    private static final class HuffmanTable {
+        private final int bits;
+        private final int[] entries;
+
+        private HuffmanTable(final byte[] lengths, final int offset, final int count) throws IOException {
+            final int[] lengthCounts = new int[MAX_CODE_LENGTH + 1];
+            int maxLength = 0;
+
+            for (int i = 0; i < count; i++) {
+                lengthCounts[lengths[offset + i]]++;
+                maxLength = Math.max(maxLength, lengths[offset + i]);
+            }
+
+            lengthCounts[0] = 0;
+            // A table is needed even for codes without symbols
+            this.bits = Math.max(maxLength, 1);
+            this.entries = new int[1 << bits];
+
+            final int[] nextCode = new int[MAX_CODE_LENGTH + 2];
+            int code = 0;
+            int available = 1;
+
+            for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+                available = (available << 1) - lengthCounts[length];
+
+                if (available < 0) {
+                    throw new IOException("Over-subscribed Huffman code");
+                }
+
+                code = (code + lengthCounts[length - 1]) << 1;
+                nextCode[length] = code;
+            }
+
+            for (int symbol = 0; symbol < count; symbol++) {
+                final int length = lengths[offset + symbol];
+
+                if (length == 0) {
+                    continue;
+                }
+
+                final int reversed = Integer.reverse(nextCode[length]++) >>> (Integer.SIZE - length);
+                final int entry = (symbol << ENTRY_LENGTH_BITS) | length;
+
+                for (int i = reversed; i < entries.length; i += 1 << length) {
+                    entries[i] = entry;
+                }
+            }
+        }
+    }
+}
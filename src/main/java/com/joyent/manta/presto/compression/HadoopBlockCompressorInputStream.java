@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import io.airlift.compress.lzo.LzoDecompressor;
+import io.airlift.compress.snappy.SnappyDecompressor;
+import org.apache.commons.compress.compressors.CompressorInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Apache Compress compatible {@link CompressorInputStream} that decompresses
+ * data written by Hadoop's <code>BlockCompressorStream</code>, which is the
+ * framing used by the Hadoop Snappy, LZ4 and LZO codecs, using the pure Java
+ * decoders of the aircompressor library.
+ *
+ * <p>Each block starts with its decompressed length followed by one or more
+ * chunks, each made of its compressed length and the compressed bytes. The
+ * chunks are decompressed one after another directly from a heap array
+ * into the block's output array, so no native libraries, direct buffers or
+ * locks are involved. The decoders are stateless and shared by all
+ * streams.</p>
+ *
+ * @since 1.0.0
+ */
+public class HadoopBlockCompressorInputStream extends CompressorInputStream {
+    /**
+     * Largest decompressed block that will be held in memory.
+     */
+    static final int MAX_BLOCK_SIZE = 1 << 30;
+
+    private static final Decompressor SNAPPY = new SnappyDecompressor();
+    private static final Decompressor LZ4 = new Lz4Decompressor();
+    private static final Decompressor LZO = new LzoDecompressor();
+
+    private static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+    private static final int LENGTH_SIZE = 4;
+    private static final int BYTE_MASK = 0xFF;
+
+    private final InputStream in;
+    private final Decompressor decompressor;
+    private final String codecName;
+    private final MantaBufferPool bufferPool;
+    private final byte[] lengthBuffer = new byte[LENGTH_SIZE];
+
+    /**
+     * Compressed bytes of the chunk being decompressed.
+     */
+    private byte[] chunk;
+
+    /**
+     * Decompressed bytes of the last block read.
+     */
+    private byte[] output;
+    private int outputLength = 0;
+    private int position = 0;
+
+    private boolean eof = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance that decompresses the supplied stream using
+     * buffers borrowed from the supplied pool. The buffers are returned
+     * when this stream is closed.
+     *
+     * @param in stream to decompress
+     * @param decompressor decoder of a single chunk
+     * @param codecName name of the codec used in error messages
+     * @param bufferPool pool that buffers are borrowed from
+     */
+    public HadoopBlockCompressorInputStream(final InputStream in,
+                                            final Decompressor decompressor,
+                                            final String codecName,
+                                            final MantaBufferPool bufferPool) {
+        this.in = requireNonNull(in, "Input stream is null");
+        this.decompressor = requireNonNull(decompressor, "Decompressor is null");
+        this.codecName = requireNonNull(codecName, "Codec name is null");
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+        this.chunk = bufferPool.borrowArray(INITIAL_BUFFER_SIZE);
+        this.output = bufferPool.borrowArray(INITIAL_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a stream decompressing data written by Hadoop's
+     * <code>SnappyCodec</code>.
+     *
+     * @param in stream to decompress
+     * @param bufferPool pool that buffers are borrowed from
+     * @return decompressing stream
+     */
+    public static HadoopBlockCompressorInputStream snappy(final InputStream in,
+                                                          final MantaBufferPool bufferPool) {
+        return new HadoopBlockCompressorInputStream(in, SNAPPY, "Snappy", bufferPool);
+    }
+
+    /**
+     * Creates a stream decompressing data written by Hadoop's
+     * <code>Lz4Codec</code>.
+     *
+     * @param in stream to decompress
+     * @param bufferPool pool that buffers are borrowed from
+     * @return decompressing stream
+     */
+    public static HadoopBlockCompressorInputStream lz4(final InputStream in,
+                                                       final MantaBufferPool bufferPool) {
+        return new HadoopBlockCompressorInputStream(in, LZ4, "LZ4", bufferPool);
+    }
+
+    /**
+     * Creates a stream decompressing data written by the <code>LzoCodec</code>
+     * of the hadoop-lzo project.
+     *
+     * @param in stream to decompress
+     * @param bufferPool pool that buffers are borrowed from
+     * @return decompressing stream
+     */
+    public static HadoopBlockCompressorInputStream lzo(final InputStream in,
+                                                       final MantaBufferPool bufferPool) {
+        return new HadoopBlockCompressorInputStream(in, LZO, "LZO", bufferPool);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+
+        count(1);
+        return output[position++] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        final int read = Math.min(len, outputLength - position);
+        System.arraycopy(output, position, b, off, read);
+        position += read;
+        count(read);
+
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return outputLength - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            in.close();
+        } finally {
+            bufferPool.returnArray(chunk);
+            bufferPool.returnArray(output);
+            chunk = null;
+            output = null;
+        }
+    }
+
+    /**
+     * Decompresses blocks until there are bytes to serve.
+     *
+     * @return false when the end of the stream was reached
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private boolean fill() throws IOException {
+        ensureOpen();
+
+        while (position == outputLength) {
+            if (eof || !readBlock()) {
+                eof = true;
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads and decompresses all of the chunks of the next block.
+     *
+     * @return false when the end of the stream was reached before a block
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private boolean readBlock() throws IOException {
+        position = 0;
+        outputLength = 0;
+
+        final int lengthRead = ByteStreams.read(in, lengthBuffer, 0, LENGTH_SIZE);
+
+        if (lengthRead == 0) {
+            return false;
+        }
+
+        if (lengthRead < LENGTH_SIZE) {
+            throw new EOFException(String.format("Hadoop %s stream ended within a block header", codecName));
+        }
+
+        final int blockLength = bigEndianInt(lengthBuffer);
+
+        if (blockLength < 0 || blockLength > MAX_BLOCK_SIZE) {
+            throw new IOException(String.format("Hadoop %s block is too large to decompress "
+                    + "[size=%d,maxSize=%d]", codecName, Integer.toUnsignedLong(blockLength), MAX_BLOCK_SIZE));
+        }
+
+        if (output.length < blockLength) {
+            bufferPool.returnArray(output);
+            output = bufferPool.borrowArray(blockLength);
+        }
+
+        while (outputLength < blockLength) {
+            final int chunkLength = readLength();
+
+            if (chunkLength < 0 || chunkLength > MAX_BLOCK_SIZE) {
+                throw new IOException(String.format("Hadoop %s chunk has an invalid length [length=%d]",
+                        codecName, Integer.toUnsignedLong(chunkLength)));
+            }
+
+            if (chunk.length < chunkLength) {
+                bufferPool.returnArray(chunk);
+                chunk = bufferPool.borrowArray(chunkLength);
+            }
+
+            readFully(chunk, chunkLength);
+
+            try {
+                outputLength += decompressor.decompress(chunk, 0, chunkLength,
+                        output, outputLength, blockLength - outputLength);
+            } catch (MalformedInputException | IllegalArgumentException e) {
+                throw new IOException(String.format("Corrupt Hadoop %s chunk", codecName), e);
+            }
+        }
+
+        return true;
+    }
+
+    private int readLength() throws IOException {
+        readFully(lengthBuffer, LENGTH_SIZE);
+        return bigEndianInt(lengthBuffer);
+    }
+
+    private void readFully(final byte[] buffer, final int length) throws IOException {
+        try {
+            ByteStreams.readFully(in, buffer, 0, length);
+        } catch (EOFException e) {
+            throw new EOFException(String.format("Hadoop %s stream ended within a block", codecName));
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private static int bigEndianInt(final byte[] bytes) {
+        int value = 0;
+
+        for (int i = 0; i < LENGTH_SIZE; i++) {
+            value = (value << Byte.SIZE) | (bytes[i] & BYTE_MASK);
+        }
+
+        return value;
+    }
+}
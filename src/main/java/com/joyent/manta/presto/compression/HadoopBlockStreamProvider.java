@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.collect.ImmutableSet;
+import com.joyent.manta.presto.MantaBufferPool;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorInputStream;
+import org.apache.commons.compress.compressors.CompressorOutputStream;
+import org.apache.commons.compress.compressors.CompressorStreamProvider;
+import org.apache.commons.lang3.NotImplementedException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Apache Compress compatible provider class that provides pure Java
+ * implementations of the LZ4 and LZO codecs in the block framing written by
+ * Hadoop. The LZ4 provider built into Apache Compress only reads the raw
+ * LZ4 block format and Apache Compress has no LZO support.
+ *
+ * @since 1.0.0
+ */
+public class HadoopBlockStreamProvider implements CompressorStreamProvider {
+    /**
+     * Constant (value {@value}) used to identify the Hadoop LZ4 compression
+     * algorithm.
+     *
+     * @since 1.0.0
+     */
+    public static final String HADOOP_LZ4_RAW = "LZ4_HADOOP_RAW";
+
+    /**
+     * Constant (value {@value}) used to identify the Hadoop LZO compression
+     * algorithm.
+     *
+     * @since 1.0.0
+     */
+    public static final String HADOOP_LZO_RAW = "LZO_HADOOP_RAW";
+
+    private static final Set<String> COMPRESSOR_NAMES = ImmutableSet.of(HADOOP_LZ4_RAW, HADOOP_LZO_RAW);
+
+    @Override
+    public CompressorInputStream createCompressorInputStream(final String name,
+                                                             final InputStream in,
+                                                             final boolean decompressUntilEOF)
+            throws CompressorException {
+        if (name == null) {
+            throw new IllegalArgumentException("Compressor name is null");
+        }
+        if (in == null) {
+            throw new IllegalArgumentException("Input stream to wrap is null");
+        }
+
+        switch (name) {
+            case HADOOP_LZ4_RAW:
+                return HadoopBlockCompressorInputStream.lz4(in, MantaBufferPool.disabled());
+            case HADOOP_LZO_RAW:
+                return HadoopBlockCompressorInputStream.lzo(in, MantaBufferPool.disabled());
+            default:
+                throw new CompressorException("Unknown compressor type: " + name);
+        }
+    }
+
+    @Override
+    public CompressorOutputStream createCompressorOutputStream(final String name,
+                                                               final OutputStream out)
+            throws CompressorException {
+        throw new NotImplementedException("Compression has not been implemented");
+    }
+
+    @Override
+    public Set<String> getInputStreamCompressorNames() {
+        return COMPRESSOR_NAMES;
+    }
+
+    @Override
+    public Set<String> getOutputStreamCompressorNames() {
+        return Collections.emptySet();
+    }
+}
@@ -0,0 +1,523 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import org.apache.commons.compress.compressors.CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.XXHash32;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Apache Compress compatible {@link CompressorInputStream} that decompresses
+ * the LZ4 frame format written by the <code>lz4</code> command line tool
+ * and the LZ4 frame libraries.
+ *
+ * <p>Frames are decompressed one block at a time, so at most one block of
+ * compressed and decompressed data is held in memory. Independent blocks,
+ * which the <code>lz4</code> tool writes by default, are decoded by the
+ * pure Java aircompressor decoder. Linked blocks may copy data from the
+ * 64KiB that precede them, so they are decoded by this class into a window
+ * that keeps the end of the previous block. Concatenated frames are read
+ * one after another and skippable frames are skipped. Header, block and
+ * content checksums are verified when present.</p>
+ *
+ * @since 1.0.0
+ */
+public class Lz4FrameCompressorInputStream extends CompressorInputStream {
+    /**
+     * Magic number that starts every LZ4 frame.
+     */
+    static final int FRAME_MAGIC = 0x184D2204;
+
+    /**
+     * Magic number of skippable frames with the lowest four bits cleared.
+     */
+    static final int SKIPPABLE_FRAME_MAGIC = 0x184D2A50;
+
+    /**
+     * Number of bytes that a linked block may reach back into.
+     */
+    static final int WINDOW_SIZE = 64 * 1024;
+
+    private static final Lz4Decompressor DECOMPRESSOR = new Lz4Decompressor();
+
+    private static final int SKIPPABLE_FRAME_MAGIC_MASK = 0xFFFFFFF0;
+    private static final int INT_SIZE = 4;
+    private static final int MAX_DESCRIPTOR_SIZE = 2 + 8 + 4;
+    private static final int CONTENT_SIZE_SIZE = 8;
+
+    private static final int VERSION_SHIFT = 6;
+    private static final int VERSION = 1;
+    private static final int BLOCK_INDEPENDENCE_FLAG = 0x20;
+    private static final int BLOCK_CHECKSUM_FLAG = 0x10;
+    private static final int CONTENT_SIZE_FLAG = 0x08;
+    private static final int CONTENT_CHECKSUM_FLAG = 0x04;
+    private static final int DICTIONARY_ID_FLAG = 0x01;
+    private static final int RESERVED_FLAG = 0x02;
+    private static final int BLOCK_SIZE_SHIFT = 4;
+    private static final int BLOCK_SIZE_MASK = 0x07;
+    private static final int MIN_BLOCK_SIZE_ID = 4;
+    private static final int HEADER_CHECKSUM_SHIFT = 8;
+
+    private static final int UNCOMPRESSED_FLAG = 0x80000000;
+    private static final int BLOCK_LENGTH_MASK = 0x7FFFFFFF;
+
+    private static final int LITERAL_LENGTH_SHIFT = 4;
+    private static final int RUN_MASK = 0x0F;
+    private static final int LENGTH_EXTENSION = 0xFF;
+    private static final int MIN_MATCH = 4;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private final InputStream in;
+    private final MantaBufferPool bufferPool;
+    private final byte[] header = new byte[MAX_DESCRIPTOR_SIZE];
+    private final XXHash32 blockChecksum = new XXHash32();
+    private final XXHash32 contentChecksum = new XXHash32();
+
+    /**
+     * Compressed bytes of the block being decompressed.
+     */
+    private byte[] block;
+
+    /**
+     * Decompressed bytes, preceded by the end of the previous block when
+     * blocks are linked.
+     */
+    private byte[] window;
+    private int position = 0;
+    private int limit = 0;
+
+    private boolean inFrame = false;
+    private boolean independentBlocks;
+    private boolean hasBlockChecksum;
+    private boolean hasContentChecksum;
+    private int maxBlockSize;
+
+    private boolean eof = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance that decompresses the supplied stream.
+     *
+     * @param in stream to decompress
+     */
+    public Lz4FrameCompressorInputStream(final InputStream in) {
+        this(in, MantaBufferPool.disabled());
+    }
+
+    /**
+     * Creates a new instance that decompresses the supplied stream using
+     * buffers borrowed from the supplied pool. The buffers are returned
+     * when this stream is closed.
+     *
+     * @param in stream to decompress
+     * @param bufferPool pool that buffers are borrowed from
+     */
+    public Lz4FrameCompressorInputStream(final InputStream in,
+                                         final MantaBufferPool bufferPool) {
+        this.in = requireNonNull(in, "Input stream is null");
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+
+        count(1);
+        return window[position++] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        final int read = Math.min(len, limit - position);
+        System.arraycopy(window, position, b, off, read);
+        position += read;
+        count(read);
+
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            in.close();
+        } finally {
+            bufferPool.returnArray(block);
+            bufferPool.returnArray(window);
+            block = null;
+            window = null;
+        }
+    }
+
+    /**
+     * Decompresses blocks until there are bytes to serve.
+     *
+     * @return false when the end of the stream was reached
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private boolean fill() throws IOException {
+        ensureOpen();
+
+        while (position == limit) {
+            if (eof) {
+                return false;
+            }
+
+            if (!inFrame && !readFrameHeader()) {
+                eof = true;
+                return false;
+            }
+
+            if (inFrame) {
+                readBlock();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the header of the next frame, skipping skippable frames.
+     *
+     * @return false when the end of the stream was reached before a frame
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private boolean readFrameHeader() throws IOException {
+        final int magicRead = ByteStreams.read(in, header, 0, INT_SIZE);
+
+        if (magicRead == 0) {
+            return false;
+        }
+
+        if (magicRead < INT_SIZE) {
+            throw new EOFException("LZ4 stream ended within a frame header");
+        }
+
+        final int magic = littleEndianInt(header, 0);
+
+        if ((magic & SKIPPABLE_FRAME_MAGIC_MASK) == SKIPPABLE_FRAME_MAGIC) {
+            ByteStreams.skipFully(in, Integer.toUnsignedLong(readInt()));
+            return true;
+        }
+
+        if (magic != FRAME_MAGIC) {
+            throw new IOException(String.format("Not an LZ4 frame [magic=0x%08X]", magic));
+        }
+
+        readFully(header, 0, 2);
+        final int flags = header[0] & BYTE_MASK;
+        final int blockDescriptor = header[1] & BYTE_MASK;
+
+        if (flags >>> VERSION_SHIFT != VERSION) {
+            throw new IOException("Unsupported LZ4 frame version: " + (flags >>> VERSION_SHIFT));
+        }
+
+        if ((flags & RESERVED_FLAG) != 0) {
+            throw new IOException("LZ4 frame header has reserved bit set");
+        }
+
+        if ((flags & DICTIONARY_ID_FLAG) != 0) {
+            throw new IOException("LZ4 frames compressed with a dictionary aren't supported");
+        }
+
+        int descriptorLength = 2;
+
+        if ((flags & CONTENT_SIZE_FLAG) != 0) {
+            readFully(header, descriptorLength, CONTENT_SIZE_SIZE);
+            descriptorLength += CONTENT_SIZE_SIZE;
+        }
+
+        final XXHash32 headerChecksum = new XXHash32();
+        headerChecksum.update(header, 0, descriptorLength);
+        final int expected = readByte();
+        final int actual = (int) (headerChecksum.getValue() >>> HEADER_CHECKSUM_SHIFT) & BYTE_MASK;
+
+        if (expected != actual) {
+            throw new IOException(String.format("LZ4 frame header checksum mismatch "
+                    + "[expected=0x%02X,actual=0x%02X]", expected, actual));
+        }
+
+        final int blockSizeId = (blockDescriptor >>> BLOCK_SIZE_SHIFT) & BLOCK_SIZE_MASK;
+
+        if (blockSizeId < MIN_BLOCK_SIZE_ID) {
+            throw new IOException("LZ4 frame has invalid maximum block size: " + blockSizeId);
+        }
+
+        independentBlocks = (flags & BLOCK_INDEPENDENCE_FLAG) != 0;
+        hasBlockChecksum = (flags & BLOCK_CHECKSUM_FLAG) != 0;
+        hasContentChecksum = (flags & CONTENT_CHECKSUM_FLAG) != 0;
+        maxBlockSize = WINDOW_SIZE << (2 * (blockSizeId - MIN_BLOCK_SIZE_ID));
+        contentChecksum.reset();
+
+        final int windowSize = maxBlockSize + WINDOW_SIZE;
+
+        if (window == null || window.length < windowSize) {
+            bufferPool.returnArray(window);
+            window = bufferPool.borrowArray(windowSize);
+        }
+
+        if (block == null || block.length < maxBlockSize) {
+            bufferPool.returnArray(block);
+            block = bufferPool.borrowArray(maxBlockSize);
+        }
+
+        position = 0;
+        limit = 0;
+        inFrame = true;
+
+        return true;
+    }
+
+    /**
+     * Reads the next block of the current frame and decompresses it after
+     * the bytes already in the window. Reading the end mark of the frame
+     * verifies the content checksum and leaves the frame.
+     *
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private void readBlock() throws IOException {
+        final int blockHeader = readInt();
+
+        if (blockHeader == 0) {
+            if (hasContentChecksum) {
+                verify("content", readInt(), contentChecksum);
+            }
+
+            inFrame = false;
+            position = 0;
+            limit = 0;
+            return;
+        }
+
+        final int length = blockHeader & BLOCK_LENGTH_MASK;
+
+        if (length > maxBlockSize) {
+            throw new IOException(String.format("LZ4 block is larger than the frame's maximum "
+                    + "block size [size=%d,maxSize=%d]", length, maxBlockSize));
+        }
+
+        readFully(block, 0, length);
+
+        if (hasBlockChecksum) {
+            blockChecksum.reset();
+            blockChecksum.update(block, 0, length);
+            verify("block", readInt(), blockChecksum);
+        }
+
+        int start = limit;
+
+        if (independentBlocks) {
+            start = 0;
+        } else if (start + maxBlockSize > window.length) {
+            // Keep the bytes that the next block may copy from
+            System.arraycopy(window, start - WINDOW_SIZE, window, 0, WINDOW_SIZE);
+            start = WINDOW_SIZE;
+        }
+
+        final int end;
+
+        if ((blockHeader & UNCOMPRESSED_FLAG) != 0) {
+            System.arraycopy(block, 0, window, start, length);
+            end = start + length;
+        } else if (independentBlocks) {
+            try {
+                end = start + DECOMPRESSOR.decompress(block, 0, length, window, start, maxBlockSize);
+            } catch (MalformedInputException | IllegalArgumentException e) {
+                throw new IOException("Corrupt LZ4 block", e);
+            }
+        } else {
+            end = decompressLinkedBlock(block, length, window, start, start + maxBlockSize);
+        }
+
+        if (hasContentChecksum) {
+            contentChecksum.update(window, start, end - start);
+        }
+
+        position = start;
+        limit = end;
+    }
+
+    /**
+     * Decompresses a block whose matches may reach back into the bytes that
+     * precede it in the destination.
+     *
+     * @param src compressed block
+     * @param srcLength number of bytes in the compressed block
+     * @param dst destination holding up to {@link #WINDOW_SIZE} bytes of history before <code>dstStart</code>
+     * @param dstStart position at which the decompressed block is written
+     * @param dstLimit position that the decompressed block can't extend past
+     * @return position after the last byte written
+     * @throws IOException thrown when the block is corrupt
+     */
+    static int decompressLinkedBlock(final byte[] src, final int srcLength,
+                                     final byte[] dst, final int dstStart,
+                                     final int dstLimit) throws IOException {
+        final int historyStart = Math.max(0, dstStart - WINDOW_SIZE);
+        int srcPos = 0;
+        int dstPos = dstStart;
+
+        while (true) {
+            if (srcPos >= srcLength) {
+                throw new IOException("Corrupt LZ4 block: missing sequence");
+            }
+
+            final int token = src[srcPos++] & BYTE_MASK;
+            int literalLength = token >>> LITERAL_LENGTH_SHIFT;
+
+            if (literalLength == RUN_MASK) {
+                int next;
+
+                do {
+                    if (srcPos >= srcLength) {
+                        throw new IOException("Corrupt LZ4 block: truncated literal length");
+                    }
+
+                    next = src[srcPos++] & BYTE_MASK;
+                    literalLength += next;
+                } while (next == LENGTH_EXTENSION);
+            }
+
+            if (literalLength > srcLength - srcPos || literalLength > dstLimit - dstPos) {
+                throw new IOException("Corrupt LZ4 block: literals exceed block");
+            }
+
+            System.arraycopy(src, srcPos, dst, dstPos, literalLength);
+            srcPos += literalLength;
+            dstPos += literalLength;
+
+            // The last sequence of a block only has literals
+            if (srcPos == srcLength) {
+                return dstPos;
+            }
+
+            if (srcPos + 2 > srcLength) {
+                throw new IOException("Corrupt LZ4 block: truncated match offset");
+            }
+
+            final int offset = (src[srcPos] & BYTE_MASK) | ((src[srcPos + 1] & BYTE_MASK) << Byte.SIZE);
+            srcPos += 2;
+
+            if (offset == 0 || dstPos - offset < historyStart) {
+                throw new IOException("Corrupt LZ4 block: match offset out of range");
+            }
+
+            int matchLength = token & RUN_MASK;
+
+            if (matchLength == RUN_MASK) {
+                int next;
+
+                do {
+                    if (srcPos >= srcLength) {
+                        throw new IOException("Corrupt LZ4 block: truncated match length");
+                    }
+
+                    next = src[srcPos++] & BYTE_MASK;
+                    matchLength += next;
+                } while (next == LENGTH_EXTENSION);
+            }
+
+            matchLength += MIN_MATCH;
+
+            if (matchLength > dstLimit - dstPos) {
+                throw new IOException("Corrupt LZ4 block: match exceeds block");
+            }
+
+            int from = dstPos - offset;
+
+            if (offset >= matchLength) {
+                System.arraycopy(dst, from, dst, dstPos, matchLength);
+                dstPos += matchLength;
+            } else {
+                // Overlapping matches repeat the bytes being written
+                for (int i = 0; i < matchLength; i++) {
+                    dst[dstPos++] = dst[from++];
+                }
+            }
+        }
+    }
+
+    private static void verify(final String name, final int expected, final XXHash32 checksum)
+            throws IOException {
+        final int actual = (int) checksum.getValue();
+
+        if (expected != actual) {
+            throw new IOException(String.format("LZ4 %s checksum mismatch "
+                    + "[expected=0x%08X,actual=0x%08X]", name, expected, actual));
+        }
+    }
+
+    private int readInt() throws IOException {
+        readFully(header, 0, INT_SIZE);
+        return littleEndianInt(header, 0);
+    }
+
+    private int readByte() throws IOException {
+        final int read = in.read();
+
+        if (read < 0) {
+            throw new EOFException("LZ4 stream ended within a frame");
+        }
+
+        return read;
+    }
+
+    private void readFully(final byte[] buffer, final int offset, final int length) throws IOException {
+        try {
+            ByteStreams.readFully(in, buffer, offset, length);
+        } catch (EOFException e) {
+            throw new EOFException("LZ4 stream ended within a frame");
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private static int littleEndianInt(final byte[] bytes, final int offset) {
+        int value = 0;
+
+        for (int i = INT_SIZE - 1; i >= 0; i--) {
+            value = (value << Byte.SIZE) | (bytes[offset + i] & BYTE_MASK);
+        }
+
+        return value;
+    }
+}
@@ -9,19 +9,31 @@ package com.joyent.manta.presto.compression;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import com.joyent.manta.client.MantaObject;
 import com.joyent.manta.client.MantaObjectInputStream;
+import com.joyent.manta.http.MantaHttpHeaders;
+import com.joyent.manta.presto.MantaBufferPool;
+import com.joyent.manta.presto.MantaPrestoUtils;
 import com.joyent.manta.presto.exceptions.MantaPrestoRuntimeException;
+import com.joyent.manta.presto.exceptions.MantaPrestoUncheckedIOException;
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorInputStream;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.apache.commons.compress.compressors.CompressorStreamProvider;
+import org.apache.commons.lang3.StringUtils;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 
 import static java.util.Objects.requireNonNull;
@@ -37,37 +49,108 @@ public enum MantaCompressionType {
      * Bzip2 algorithm.
      */
     @JsonProperty("BZIP2")
-    BZIP2("bz2", CompressorStreamFactory.BZIP2),
+    BZIP2("bz2", CompressorStreamFactory.BZIP2, "425a68"),
     /**
      * Gzip/deflate algorithm.
      */
     @JsonProperty("GZIP")
-    GZIP("gz", CompressorStreamFactory.GZIP),
+    GZIP("gz", CompressorStreamFactory.GZIP, "1f8b"),
     /**
      * LZ4 raw algorithm.
      */
     LZ4("lz4", CompressorStreamFactory.LZ4_BLOCK),
+    /**
+     * LZ4 frame format as written by the <code>lz4</code> command line tool.
+     * It shares the <code>.lz4</code> extension with raw LZ4 and is told
+     * apart by its magic number.
+     */
+    @JsonProperty("LZ4_FRAMED")
+    LZ4_FRAMED("lz4", CompressorStreamFactory.LZ4_FRAMED, "04224d18"),
     /**
      * Snappy raw algorithm implemented by the Xerial native library.
      */
     @JsonProperty("XERIAL_SNAPPY")
     XERIAL_SNAPPY("xsnappy", SnappyStreamProvider.XERIAL_SNAPPY_RAW),
     /**
-     * Snappy raw algorithm implemented by the Hadoop native library.
+     * Snappy algorithm in the block framing written by Hadoop's
+     * <code>SnappyCodec</code>, decompressed in pure Java.
      */
     @JsonProperty("HADOOP_SNAPPY")
     HADOOP_SNAPPY("snappy", SnappyStreamProvider.HADOOP_SNAPPY_RAW),
+    /**
+     * LZ4 algorithm in the block framing written by Hadoop's
+     * <code>Lz4Codec</code>, decompressed in pure Java.
+     */
+    @JsonProperty("HADOOP_LZ4")
+    HADOOP_LZ4("hlz4", HadoopBlockStreamProvider.HADOOP_LZ4_RAW),
+    /**
+     * LZO algorithm in the block framing written by the hadoop-lzo
+     * <code>LzoCodec</code>, decompressed in pure Java.
+     */
+    @JsonProperty("HADOOP_LZO")
+    HADOOP_LZO("lzo_deflate", HadoopBlockStreamProvider.HADOOP_LZO_RAW),
     /**
      * XZ algorithm.
      */
     @JsonProperty("XZ")
-    XZ("xz", CompressorStreamFactory.XZ);
+    XZ("xz", CompressorStreamFactory.XZ, "fd377a585a00"),
+    /**
+     * Zstandard algorithm implemented by the pure Java aircompressor library.
+     */
+    @JsonProperty("ZSTD")
+    ZSTD("zst", ZstdStreamProvider.ZSTD_AIRCOMPRESSOR, "28b52ffd"),
+    /**
+     * Snappy framing format as written by the <code>snzip</code> and
+     * <code>snappy-java</code> framed streams, decompressed in pure Java.
+     */
+    @JsonProperty("FRAMED_SNAPPY")
+    FRAMED_SNAPPY("sz", CompressorStreamFactory.SNAPPY_FRAMED, "ff060000734e61507059");
+
+    /**
+     * Number of bytes at the start of an object that are needed to recognize
+     * every algorithm by its magic number.
+     */
+    public static final int MAGIC_PREFIX_LENGTH = 10;
 
     /**
      * Look up table for mapping file extension to compression algorithm.
+     * When several algorithms share an extension, the first one declared is
+     * used unless the data starts with the magic number of another.
      */
     private static final Map<String, MantaCompressionType> EXTENSION_LOOKUP;
 
+    /**
+     * File extensions that are shared by several algorithms.
+     */
+    private static final Set<String> SHARED_EXTENSIONS;
+
+    /**
+     * Look up table for mapping <code>Content-Encoding</code> header values
+     * to compression algorithm.
+     */
+    private static final Map<String, MantaCompressionType> CONTENT_ENCODING_LOOKUP =
+            ImmutableMap.<String, MantaCompressionType>builder()
+                    .put("gzip", GZIP)
+                    .put("x-gzip", GZIP)
+                    .put("bzip2", BZIP2)
+                    .put("x-bzip2", BZIP2)
+                    .put("xz", XZ)
+                    .put("zstd", ZSTD)
+                    .build();
+
+    /**
+     * Look up table for mapping media types to compression algorithm.
+     */
+    private static final Map<String, MantaCompressionType> MEDIA_TYPE_LOOKUP =
+            ImmutableMap.<String, MantaCompressionType>builder()
+                    .put("application/gzip", GZIP)
+                    .put("application/x-gzip", GZIP)
+                    .put("application/x-bzip2", BZIP2)
+                    .put("application/x-xz", XZ)
+                    .put("application/zstd", ZSTD)
+                    .put("application/x-snappy-framed", FRAMED_SNAPPY)
+                    .build();
+
     /**
      * Singleton static instance of compressor stream providers that can be
      * safely reused.
@@ -75,13 +158,16 @@ public enum MantaCompressionType {
     public static final SortedMap<String, CompressorStreamProvider> COMPRESSOR_STREAM_PROVIDERS;
 
     static {
-        ImmutableMap.Builder<String, MantaCompressionType> extensionMapBuilder =
-                new ImmutableMap.Builder<>();
+        Map<String, MantaCompressionType> extensionMap = new LinkedHashMap<>();
+        ImmutableSet.Builder<String> sharedExtensions = ImmutableSet.builder();
 
         for (MantaCompressionType type : values()) {
-            extensionMapBuilder.put(type.fileExtension, type);
+            if (extensionMap.putIfAbsent(type.fileExtension, type) != null) {
+                sharedExtensions.add(type.fileExtension);
+            }
         }
-        EXTENSION_LOOKUP = extensionMapBuilder.build();
+        EXTENSION_LOOKUP = ImmutableMap.copyOf(extensionMap);
+        SHARED_EXTENSIONS = sharedExtensions.build();
 
         /* We manually build a provider lookup because the SPI service loader
          * has problems working properly when running within Presto. */
@@ -104,6 +190,18 @@ public enum MantaCompressionType {
             builder.put(SnappyStreamProvider.HADOOP_SNAPPY_RAW, snappyStreamProvider);
         }
 
+        HadoopBlockStreamProvider hadoopBlockStreamProvider = new HadoopBlockStreamProvider();
+
+        for (String name : hadoopBlockStreamProvider.getInputStreamCompressorNames()) {
+            if (!defaultProviders.containsKey(name)) {
+                builder.put(name, hadoopBlockStreamProvider);
+            }
+        }
+
+        if (!defaultProviders.containsKey(ZstdStreamProvider.ZSTD_AIRCOMPRESSOR)) {
+            builder.put(ZstdStreamProvider.ZSTD_AIRCOMPRESSOR, new ZstdStreamProvider());
+        }
+
         COMPRESSOR_STREAM_PROVIDERS = builder.build();
     }
 
@@ -118,14 +216,33 @@ public enum MantaCompressionType {
     private final String compressorName;
 
     /**
-     * Creates a new enum instance based on the passed parameters.
+     * Bytes that every stream compressed with the algorithm starts with or
+     * an empty array if the algorithm's streams have no magic number.
+     */
+    private final byte[] magic;
+
+    /**
+     * Creates a new enum instance for an algorithm without a magic number.
      *
      * @param fileExtension file extension associated with the compression algorithm
      * @param compressorName compressor name used to identify the algorithm with Commons Compress
      */
     MantaCompressionType(final String fileExtension, final String compressorName) {
+        this(fileExtension, compressorName, "");
+    }
+
+    /**
+     * Creates a new enum instance based on the passed parameters.
+     *
+     * @param fileExtension file extension associated with the compression algorithm
+     * @param compressorName compressor name used to identify the algorithm with Commons Compress
+     * @param magicHex magic number of the algorithm's streams as lower case hex
+     */
+    MantaCompressionType(final String fileExtension, final String compressorName,
+                         final String magicHex) {
         this.fileExtension = fileExtension;
         this.compressorName = compressorName;
+        this.magic = BaseEncoding.base16().lowerCase().decode(magicHex);
     }
 
     /**
@@ -152,8 +269,8 @@ public enum MantaCompressionType {
 
     /**
      * Helper method that wraps a passed Manta object input stream object with
-     * a decompressing input stream if the source object has an extension
-     * associated with a supported compression algorithm.
+     * a decompressing input stream if the source object is compressed with a
+     * supported algorithm.
      *
      * @param mantaObjectInputStream input stream to wrap
      * @return wrapped stream or passed stream
@@ -165,8 +282,8 @@ public enum MantaCompressionType {
 
     /**
      * Helper method that wraps a passed Manta object input stream object with
-     * a decompressing input stream if the source object has an extension
-     * associated with a supported compression algorithm.
+     * a decompressing input stream if the source object is compressed with a
+     * supported algorithm.
      *
      * @param object Manta object to derive path information from
      * @param inputStream input stream to wrap
@@ -174,16 +291,173 @@ public enum MantaCompressionType {
      */
     public static InputStream wrapMantaStreamIfCompressed(final MantaObject object,
                                                           final InputStream inputStream) {
+        return wrapMantaStreamIfCompressed(object, inputStream, MantaBufferPool.disabled());
+    }
+
+    /**
+     * Looks up and returns a {@link MantaCompressionType} based on the
+     * <code>Content-Encoding</code> and <code>Content-Type</code> headers of
+     * an object.
+     *
+     * @param object Manta object to read headers from
+     * @return {@link MantaCompressionType} instance if matched otherwise null
+     */
+    public static MantaCompressionType valueOfHeaders(final MantaObject object) {
+        requireNonNull(object, "Manta object is null");
+
+        final MantaHttpHeaders headers = object.getHttpHeaders();
+
+        if (headers != null && StringUtils.isNotBlank(headers.getContentEncoding())) {
+            // The last encoding listed is the outermost one applied
+            final String encoding = StringUtils.substringAfterLast(
+                    "," + headers.getContentEncoding(), ",");
+            final MantaCompressionType type = CONTENT_ENCODING_LOOKUP.get(
+                    encoding.trim().toLowerCase(Locale.ENGLISH));
+
+            if (type != null) {
+                return type;
+            }
+        }
+
+        final String contentType = object.getContentType();
+
+        if (StringUtils.isBlank(contentType)) {
+            return null;
+        }
+
+        try {
+            final String mediaType = MantaPrestoUtils.extractMediaTypeFromContentType(contentType);
+            return MEDIA_TYPE_LOOKUP.get(mediaType.toLowerCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Looks up and returns a {@link MantaCompressionType} based on the magic
+     * number at the start of a stream.
+     *
+     * @param prefix first bytes of the stream
+     * @param length number of bytes of the prefix that were read
+     * @return {@link MantaCompressionType} instance if matched otherwise null
+     */
+    public static MantaCompressionType valueOfMagic(final byte[] prefix, final int length) {
+        for (MantaCompressionType type : values()) {
+            if (type.magic.length > 0 && type.matchesMagic(prefix, length)) {
+                return type;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Determines the algorithm an object is compressed with from its
+     * extension, then from its headers and then from the magic number at
+     * the start of its data. Headers are only trusted when the data starts
+     * with the algorithm's magic number because the HTTP client
+     * transparently decodes some content encodings. When several algorithms
+     * share the object's extension, the magic number chooses between them.
+     *
+     * @param object Manta object to derive path and header information from
+     * @param prefix first bytes of the object
+     * @param length number of bytes of the prefix that were read
+     * @return {@link MantaCompressionType} instance if matched otherwise null
+     */
+    public static MantaCompressionType detect(final MantaObject object,
+                                              final byte[] prefix,
+                                              final int length) {
+        final MantaCompressionType byExtension = valueOfExtension(
+                Files.getFileExtension(object.getPath()));
+
+        if (byExtension != null) {
+            final MantaCompressionType byMagic = valueOfMagic(prefix, length);
+
+            if (byMagic != null && byMagic.fileExtension.equals(byExtension.fileExtension)) {
+                return byMagic;
+            }
+
+            return byExtension;
+        }
+
+        final MantaCompressionType byHeaders = valueOfHeaders(object);
+
+        if (byHeaders != null && byHeaders.matchesMagic(prefix, length)) {
+            return byHeaders;
+        }
+
+        return valueOfMagic(prefix, length);
+    }
+
+    /**
+     * Determines the algorithm an object is compressed with, peeking at the
+     * first bytes of the passed stream when the object's extension doesn't
+     * identify a single algorithm. The peeked bytes are pushed back onto the
+     * stream, so the stream must be able to push back at least
+     * {@link #MAGIC_PREFIX_LENGTH} bytes.
+     *
+     * @param object Manta object to derive path and header information from
+     * @param in stream positioned at the start of the object
+     * @return {@link MantaCompressionType} instance if matched otherwise null
+     * @throws IOException thrown when the first bytes of the object can't be read
+     */
+    public static MantaCompressionType detect(final MantaObject object,
+                                              final PushbackInputStream in) throws IOException {
+        requireNonNull(object, "Manta object is null");
+
+        final MantaCompressionType byExtension = valueOfExtension(
+                Files.getFileExtension(object.getPath()));
+
+        if (byExtension != null && !SHARED_EXTENSIONS.contains(byExtension.fileExtension)) {
+            return byExtension;
+        }
+
+        final byte[] prefix = new byte[MAGIC_PREFIX_LENGTH];
+        final int read = ByteStreams.read(in, prefix, 0, prefix.length);
+        in.unread(prefix, 0, read);
+
+        return detect(object, prefix, read);
+    }
+
+    /**
+     * Helper method that wraps a passed Manta object input stream object with
+     * a decompressing input stream if the source object is compressed with a
+     * supported algorithm, as determined by {@link #detect(MantaObject, PushbackInputStream)}.
+     *
+     * @param object Manta object to derive path information from
+     * @param inputStream input stream positioned at the start of the object
+     * @param bufferPool pool that decompression buffers are borrowed from
+     * @return wrapped stream, passed stream or a stream of the passed stream's data
+     */
+    public static InputStream wrapMantaStreamIfCompressed(final MantaObject object,
+                                                          final InputStream inputStream,
+                                                          final MantaBufferPool bufferPool) {
         requireNonNull(inputStream, "Manta input stream is null");
 
         String fileExtension = Files.getFileExtension(object.getPath());
+        MantaCompressionType byExtension = valueOfExtension(fileExtension);
 
-        if (isExtensionSupported(fileExtension)) {
-            MantaCompressionType compressionType = valueOfExtension(fileExtension);
-            return compressionType.createStream(inputStream);
-        } else {
-            return inputStream;
+        if (byExtension != null && !SHARED_EXTENSIONS.contains(byExtension.fileExtension)) {
+            return byExtension.createStream(inputStream, bufferPool);
         }
+
+        final PushbackInputStream peekable = new PushbackInputStream(inputStream, MAGIC_PREFIX_LENGTH);
+        final MantaCompressionType compressionType;
+
+        try {
+            compressionType = detect(object, peekable);
+        } catch (IOException e) {
+            String msg = "Unable to read the first bytes of the object";
+            MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
+            me.addContextValue("objectPath", object.getPath());
+            throw me;
+        }
+
+        if (compressionType == null) {
+            return peekable;
+        }
+
+        return compressionType.createStream(peekable, bufferPool);
     }
 
     public String getFileExtension() {
@@ -194,6 +468,29 @@ public enum MantaCompressionType {
         return compressorName;
     }
 
+    /**
+     * Checks to see if a stream starts with the magic number of the algorithm
+     * associated with the current instance. Algorithms without a magic
+     * number match every stream.
+     *
+     * @param prefix first bytes of the stream
+     * @param length number of bytes of the prefix that were read
+     * @return true if the stream may be compressed with this algorithm
+     */
+    public boolean matchesMagic(final byte[] prefix, final int length) {
+        if (length < magic.length) {
+            return false;
+        }
+
+        for (int i = 0; i < magic.length; i++) {
+            if (prefix[i] != magic[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Creates a new decompression stream that wraps the passed stream using
      * the algorithm associated with the current instance.
@@ -202,7 +499,17 @@ public enum MantaCompressionType {
      * @return decompression stream associated with this instance
      */
     public CompressorInputStream createStream(final InputStream in) {
-        requireNonNull(in, "InputStream to decompress is null");
+        return createStream(in, MantaBufferPool.disabled());
+    }
+
+    /**
+     * Creates a new decompression stream using the Commons Compress
+     * compatible provider registered for the algorithm's compressor name.
+     *
+     * @param in input stream
+     * @return decompression stream associated with this instance
+     */
+    private CompressorInputStream createProviderStream(final InputStream in) {
         final String algorithm = compressorName;
 
         final CompressorStreamProvider provider = COMPRESSOR_STREAM_PROVIDERS.get(
@@ -224,4 +531,60 @@ public enum MantaCompressionType {
             throw me;
         }
     }
+
+    /**
+     * Creates a new decompression stream that wraps the passed stream using
+     * the algorithm associated with the current instance. Algorithms
+     * implemented within this connector borrow their buffers and decoder
+     * state, such as gzip inflaters and XZ dictionaries, from the passed
+     * pool and return them when the stream is closed.
+     *
+     * @param in input stream
+     * @param bufferPool pool that decompression buffers are borrowed from
+     * @return decompression stream associated with this instance
+     */
+    public CompressorInputStream createStream(final InputStream in,
+                                              final MantaBufferPool bufferPool) {
+        return createStream(in, bufferPool, ZstdDictionaries.none());
+    }
+
+    /**
+     * Creates a new decompression stream that wraps the passed stream using
+     * the algorithm associated with the current instance, borrowing buffers
+     * and decoder state from the passed pool. Zstandard frames compressed
+     * with a trained dictionary are decompressed with the passed dictionaries.
+     *
+     * @param in input stream
+     * @param bufferPool pool that decompression buffers are borrowed from
+     * @param zstdDictionaries dictionaries that Zstandard frames may be compressed with
+     * @return decompression stream associated with this instance
+     */
+    public CompressorInputStream createStream(final InputStream in,
+                                              final MantaBufferPool bufferPool,
+                                              final ZstdDictionaries zstdDictionaries) {
+        requireNonNull(in, "InputStream to decompress is null");
+        requireNonNull(bufferPool, "Buffer pool is null");
+        requireNonNull(zstdDictionaries, "Zstandard dictionaries are null");
+
+        switch (this) {
+            case GZIP:
+                return new PooledGzipCompressorInputStream(in, bufferPool);
+            case XZ:
+                return new PooledXzCompressorInputStream(in, bufferPool);
+            case HADOOP_SNAPPY:
+                return HadoopBlockCompressorInputStream.snappy(in, bufferPool);
+            case HADOOP_LZ4:
+                return HadoopBlockCompressorInputStream.lz4(in, bufferPool);
+            case HADOOP_LZO:
+                return HadoopBlockCompressorInputStream.lzo(in, bufferPool);
+            case ZSTD:
+                return new AirliftZstdCompressorInputStream(in, bufferPool, zstdDictionaries);
+            case LZ4_FRAMED:
+                return new Lz4FrameCompressorInputStream(in, bufferPool);
+            case FRAMED_SNAPPY:
+                return new SnappyFramedCompressorInputStream(in, bufferPool);
+            default:
+                return createProviderStream(in);
+        }
+    }
 }
@@ -0,0 +1,492 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link InputStream} that decompresses a stream made of independently
+ * compressed units on a pool of threads, in the style of
+ * <code>pbzip2</code>, and returns the decompressed units in order.
+ *
+ * <p>The compressed stream is cut into units on the reading thread, and
+ * each unit is decompressed by the pool. At most a fixed number of units
+ * are read ahead of the unit being returned, which bounds the memory used
+ * by a stream and the number of threads it occupies.</p>
+ *
+ * <p>Bzip2 streams are cut at block boundaries found by their magic
+ * numbers, using {@link Bzip2BlockInputStream}. Gzip streams can only be
+ * cut when they are in the blocked gzip format (BGZF) written by
+ * <code>bgzip</code>, whose members each record their own compressed size.
+ * The members of other gzip streams can't be found without decompressing
+ * the stream, so they are decompressed on a single thread.</p>
+ *
+ * <p>Since every unit can be decompressed on its own, the position of each
+ * unit in the compressed and decompressed data can be passed to a
+ * {@link UnitListener} as the unit is reached, so that reading can later
+ * be resumed from the start of the unit.</p>
+ *
+ * @since 1.0.0
+ */
+public class ParallelDecompressingInputStream extends InputStream {
+    /**
+     * Number of compressed bytes after which a unit is cut.
+     */
+    public static final long UNIT_SIZE = 1_048_576L;
+
+    /**
+     * Number of bytes of a BGZF member header up to the end of its block
+     * size field.
+     */
+    public static final int BGZF_HEADER_SIZE = 18;
+
+    private static final int BYTE_MASK = 0xFF;
+    private static final int GZIP_ID1 = 0x1F;
+    private static final int GZIP_ID2 = 0x8B;
+    private static final int GZIP_DEFLATE = 8;
+    private static final int FLAG_EXTRA = 0x04;
+    private static final int FLAG_OFFSET = 3;
+    private static final int XLEN_OFFSET = 10;
+    private static final int SUBFIELD_OFFSET = 12;
+    private static final int BGZF_XLEN = 6;
+    private static final int BGZF_SLEN = 2;
+    private static final int BSIZE_OFFSET = 16;
+
+    private final UnitReader reader;
+    private final UnitDecoder decoder;
+    private final ExecutorService executor;
+    private final int maxPendingUnits;
+    private final Queue<PendingUnit> pending = new ArrayDeque<>();
+    private UnitListener listener;
+
+    private byte[] current;
+    private int currentPosition = 0;
+
+    /**
+     * Number of decompressed bytes returned before the current unit.
+     */
+    private long currentOffset = 0L;
+    private boolean readerDone = false;
+    private boolean closed = false;
+
+    /**
+     * Reads the next compressed unit of a stream.
+     */
+    @FunctionalInterface
+    public interface UnitReader extends Closeable {
+        /**
+         * Reads the next unit.
+         *
+         * @return compressed unit or null if the stream has ended
+         * @throws IOException thrown when the stream can't be read
+         */
+        byte[] next() throws IOException;
+
+        /**
+         * @return position within the compressed stream from which the unit
+         *         last returned by {@link #next()} can be found, or -1 if
+         *         units can't be read from the middle of the stream
+         */
+        default long position() {
+            return -1L;
+        }
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    /**
+     * Receives the position of each unit as the reader reaches it.
+     */
+    @FunctionalInterface
+    public interface UnitListener {
+        /**
+         * Called before the first byte of a unit is returned.
+         *
+         * @param uncompressedOffset number of decompressed bytes returned before the unit
+         * @param compressedOffset position within the compressed stream from which the unit can be found
+         */
+        void unitReached(long uncompressedOffset, long compressedOffset);
+    }
+
+    /**
+     * Decompresses a single compressed unit.
+     */
+    @FunctionalInterface
+    public interface UnitDecoder {
+        /**
+         * Decompresses the unit.
+         *
+         * @param unit compressed unit
+         * @return decompressed data
+         * @throws IOException thrown when the unit is corrupt
+         */
+        byte[] decode(byte[] unit) throws IOException;
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param reader reads the compressed units of the stream
+     * @param decoder decompresses a single unit
+     * @param executor threads that units are decompressed on
+     * @param maxPendingUnits maximum number of units read ahead of the unit being returned
+     */
+    public ParallelDecompressingInputStream(final UnitReader reader,
+                                            final UnitDecoder decoder,
+                                            final ExecutorService executor,
+                                            final int maxPendingUnits) {
+        if (maxPendingUnits < 1) {
+            throw new IllegalArgumentException("Maximum pending units must be greater than zero");
+        }
+
+        this.reader = requireNonNull(reader, "Unit reader is null");
+        this.decoder = requireNonNull(decoder, "Unit decoder is null");
+        this.executor = requireNonNull(executor, "Executor is null");
+        this.maxPendingUnits = maxPendingUnits;
+    }
+
+    /**
+     * Creates a stream decompressing the blocks of a bzip2 stream in parallel.
+     *
+     * @param in bzip2 stream positioned at its start
+     * @param executor threads that blocks are decompressed on
+     * @param maxPendingUnits maximum number of units read ahead of the unit being returned
+     * @param bufferPool pool that buffers are borrowed from
+     * @return decompressing stream
+     */
+    public static ParallelDecompressingInputStream bzip2(final InputStream in,
+                                                         final ExecutorService executor,
+                                                         final int maxPendingUnits,
+                                                         final MantaBufferPool bufferPool) {
+        return new ParallelDecompressingInputStream(new Bzip2UnitReader(in, bufferPool),
+                unit -> decodeFully(new BZip2CompressorInputStream(new ByteArrayInputStream(unit), false)),
+                executor, maxPendingUnits);
+    }
+
+    /**
+     * Creates a stream decompressing the members of a BGZF stream in parallel.
+     *
+     * @param in BGZF stream positioned at its start
+     * @param executor threads that members are decompressed on
+     * @param maxPendingUnits maximum number of units read ahead of the unit being returned
+     * @param bufferPool pool that inflaters are borrowed from
+     * @return decompressing stream
+     */
+    public static ParallelDecompressingInputStream bgzf(final InputStream in,
+                                                        final ExecutorService executor,
+                                                        final int maxPendingUnits,
+                                                        final MantaBufferPool bufferPool) {
+        return new ParallelDecompressingInputStream(new BgzfUnitReader(in),
+                unit -> decodeFully(new PooledGzipCompressorInputStream(new ByteArrayInputStream(unit), bufferPool)),
+                executor, maxPendingUnits);
+    }
+
+    /**
+     * Determines if a gzip member header belongs to a BGZF block, whose
+     * first extra subfield holds the block's compressed size.
+     *
+     * @param header first bytes of the member
+     * @param length number of bytes of the header that were read
+     * @return true if the member is a BGZF block
+     */
+    public static boolean isBgzfHeader(final byte[] header, final int length) {
+        return length >= BGZF_HEADER_SIZE
+                && (header[0] & BYTE_MASK) == GZIP_ID1
+                && (header[1] & BYTE_MASK) == GZIP_ID2
+                && header[2] == GZIP_DEFLATE
+                && (header[FLAG_OFFSET] & FLAG_EXTRA) != 0
+                && littleEndianShort(header, XLEN_OFFSET) >= BGZF_XLEN
+                && header[SUBFIELD_OFFSET] == 'B'
+                && header[SUBFIELD_OFFSET + 1] == 'C'
+                && littleEndianShort(header, SUBFIELD_OFFSET + 2) == BGZF_SLEN;
+    }
+
+    private static int littleEndianShort(final byte[] bytes, final int offset) {
+        return (bytes[offset] & BYTE_MASK) | ((bytes[offset + 1] & BYTE_MASK) << Byte.SIZE);
+    }
+
+    /**
+     * Sets the listener that receives the position of each unit. Must be
+     * called before the stream is read.
+     *
+     * @param unitListener listener or null to stop reporting units
+     */
+    public void setUnitListener(final UnitListener unitListener) {
+        this.listener = unitListener;
+    }
+
+    private static byte[] decodeFully(final InputStream in) throws IOException {
+        try (InputStream decompressing = in) {
+            return ByteStreams.toByteArray(decompressing);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+
+        if (read(single, 0, 1) < 0) {
+            return -1;
+        }
+
+        return single[0] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        if (len == 0) {
+            return 0;
+        }
+
+        while (current == null || currentPosition == current.length) {
+            submitUnits();
+
+            if (pending.isEmpty()) {
+                return -1;
+            }
+
+            if (current != null) {
+                currentOffset += current.length;
+            }
+
+            final PendingUnit unit = pending.remove();
+            current = await(unit.decoded);
+            currentPosition = 0;
+
+            if (listener != null && unit.compressedOffset >= 0L && current.length > 0) {
+                listener.unitReached(currentOffset, unit.compressedOffset);
+            }
+        }
+
+        final int count = Math.min(len, current.length - currentPosition);
+        System.arraycopy(current, currentPosition, b, off, count);
+        currentPosition += count;
+
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (current == null) {
+            return 0;
+        }
+
+        return current.length - currentPosition;
+    }
+
+    /**
+     * Reads units and hands them to the pool until the maximum number of
+     * units are pending or the stream has ended.
+     *
+     * @throws IOException thrown when the compressed stream can't be read
+     */
+    private void submitUnits() throws IOException {
+        while (!readerDone && pending.size() < maxPendingUnits) {
+            final byte[] unit = reader.next();
+
+            if (unit == null) {
+                readerDone = true;
+            } else {
+                pending.add(new PendingUnit(executor.submit(() -> decoder.decode(unit)), reader.position()));
+            }
+        }
+    }
+
+    private static byte[] await(final Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            final InterruptedIOException ie = new InterruptedIOException(
+                    "Interrupted while waiting for decompression");
+            ie.initCause(e);
+            throw ie;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IOException("Unable to decompress unit", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        current = null;
+
+        for (PendingUnit unit : pending) {
+            unit.decoded.cancel(false);
+        }
+
+        pending.clear();
+        reader.close();
+    }
+
+    /**
+     * Unit handed to the pool along with its position in the compressed stream.
+     */
+    private static final class PendingUnit {
+        private final Future<byte[]> decoded;
+        private final long compressedOffset;
+
+        private PendingUnit(final Future<byte[]> decoded, final long compressedOffset) {
+            this.decoded = decoded;
+            this.compressedOffset = compressedOffset;
+        }
+    }
+
+    /**
+     * Cuts a bzip2 stream into standalone streams of the blocks that start
+     * within each unit of compressed bytes. A stream opened at the start of
+     * a unit finds the same blocks, since the bits of a block that started
+     * earlier are skipped until the next block's magic number.
+     */
+    private static final class Bzip2UnitReader implements UnitReader {
+        private Bzip2BlockInputStream blocks;
+        private long end = UNIT_SIZE;
+        private long position = -1L;
+
+        private Bzip2UnitReader(final InputStream in, final MantaBufferPool bufferPool) {
+            this.blocks = new Bzip2BlockInputStream(in, 0L, UNIT_SIZE, bufferPool);
+        }
+
+        @Override
+        public byte[] next() throws IOException {
+            if (blocks == null) {
+                return null;
+            }
+
+            position = end - UNIT_SIZE;
+            final byte[] unit = ByteStreams.toByteArray(blocks);
+            final Bzip2BlockInputStream previous = blocks;
+
+            if (previous.isAtEnd()) {
+                blocks = null;
+            } else {
+                end += UNIT_SIZE;
+                blocks = previous.following(end);
+            }
+
+            previous.close();
+
+            return unit;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (blocks != null) {
+                blocks.close();
+                blocks = null;
+            }
+        }
+    }
+
+    /**
+     * Cuts a BGZF stream into units of whole members using the compressed
+     * size recorded in each member's header.
+     */
+    private static final class BgzfUnitReader implements UnitReader {
+        private final InputStream in;
+
+        /**
+         * Number of compressed bytes read before the next unit.
+         */
+        private long offset = 0L;
+        private long position = -1L;
+
+        private BgzfUnitReader(final InputStream in) {
+            this.in = requireNonNull(in, "Input stream is null");
+        }
+
+        @Override
+        public byte[] next() throws IOException {
+            final ByteArrayOutputStream unit = new ByteArrayOutputStream();
+            final byte[] header = new byte[BGZF_HEADER_SIZE];
+            position = offset;
+
+            while (unit.size() < UNIT_SIZE) {
+                final int read = ByteStreams.read(in, header, 0, header.length);
+
+                if (read == 0) {
+                    break;
+                }
+
+                if (!isBgzfHeader(header, read)) {
+                    throw new IOException("Gzip member isn't a BGZF block");
+                }
+
+                final int memberSize = littleEndianShort(header, BSIZE_OFFSET) + 1;
+
+                if (memberSize < BGZF_HEADER_SIZE) {
+                    throw new IOException("BGZF block size is too small: " + memberSize);
+                }
+
+                final byte[] member = new byte[memberSize];
+                System.arraycopy(header, 0, member, 0, BGZF_HEADER_SIZE);
+
+                if (ByteStreams.read(in, member, BGZF_HEADER_SIZE, memberSize - BGZF_HEADER_SIZE)
+                        < memberSize - BGZF_HEADER_SIZE) {
+                    throw new EOFException("BGZF block is truncated");
+                }
+
+                unit.write(member, 0, memberSize);
+            }
+
+            if (unit.size() == 0) {
+                return null;
+            }
+
+            offset += unit.size();
+
+            return unit.toByteArray();
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.joyent.manta.presto.MantaBufferPool;
+import org.apache.commons.compress.compressors.CompressorInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Apache Compress compatible {@link CompressorInputStream} that decompresses
+ * gzip data, including concatenated members, with an {@link Inflater} and
+ * an input buffer borrowed from a {@link MantaBufferPool}.
+ *
+ * <p>The JDK and Apache Compress gzip streams create a new inflater for
+ * every stream, whose native state is only freed when the stream is closed
+ * or finalized. Borrowing the inflater from the pool lets the many short
+ * lived streams of a worker reuse the same native state. The inflater and
+ * buffer are returned when the stream is closed. The CRC-32 and size in the
+ * trailer of every member are verified.</p>
+ *
+ * @since 1.0.0
+ */
+public class PooledGzipCompressorInputStream extends CompressorInputStream {
+    private static final int BUFFER_SIZE = 65_536;
+    private static final int BYTE_MASK = 0xFF;
+    private static final long INT_MASK = 0xFFFFFFFFL;
+
+    private static final int GZIP_ID1 = 0x1F;
+    private static final int GZIP_ID2 = 0x8B;
+    private static final int GZIP_DEFLATE = 8;
+    private static final int FLAG_HCRC = 0x02;
+    private static final int FLAG_EXTRA = 0x04;
+    private static final int FLAG_NAME = 0x08;
+    private static final int FLAG_COMMENT = 0x10;
+    private static final int HEADER_FIXED_BYTES = 6;
+    private static final int INT_SIZE = 4;
+
+    private final InputStream in;
+    private final MantaBufferPool bufferPool;
+    private final Inflater inflater;
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Compressed bytes read from the underlying stream.
+     */
+    private byte[] input;
+    private int inputPosition = 0;
+    private int inputLength = 0;
+    private boolean inputEof = false;
+
+    /**
+     * Position within the input buffer of the bytes last handed to the inflater.
+     */
+    private int fedPosition = 0;
+    private int fedLength = 0;
+
+    private boolean inMember = false;
+    private boolean firstMember = true;
+    private boolean done = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance that decompresses the supplied stream using an
+     * inflater and buffer borrowed from the supplied pool.
+     *
+     * @param in stream positioned at the start of a gzip member
+     * @param bufferPool pool that the inflater and buffer are borrowed from
+     */
+    public PooledGzipCompressorInputStream(final InputStream in,
+                                           final MantaBufferPool bufferPool) {
+        this.in = requireNonNull(in, "Input stream is null");
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+        this.inflater = bufferPool.borrowInflater();
+        this.input = bufferPool.borrowArray(BUFFER_SIZE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] single = new byte[1];
+
+        if (read(single, 0, 1) < 0) {
+            return -1;
+        }
+
+        return single[0] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        ensureOpen();
+
+        if (len == 0) {
+            return 0;
+        }
+
+        while (!done) {
+            if (!inMember) {
+                startMember();
+                continue;
+            }
+
+            if (inflater.needsInput()) {
+                feed();
+            }
+
+            final int inflated;
+
+            try {
+                inflated = inflater.inflate(b, off, len);
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt gzip data", e);
+            }
+
+            if (inflated > 0) {
+                crc.update(b, off, inflated);
+                count(inflated);
+                return inflated;
+            }
+
+            if (inflater.finished()) {
+                endMember();
+            } else if (inflater.needsDictionary()) {
+                throw new IOException("Gzip data requires an unexpected dictionary");
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            in.close();
+        } finally {
+            bufferPool.returnInflater(inflater);
+            bufferPool.returnArray(input);
+            input = null;
+        }
+    }
+
+    /**
+     * Reads the header of the next member, or detects the end of the
+     * stream when it ends after a member.
+     *
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private void startMember() throws IOException {
+        if (!firstMember && !refill(1)) {
+            done = true;
+            return;
+        }
+
+        if (nextByte() != GZIP_ID1 || nextByte() != GZIP_ID2 || nextByte() != GZIP_DEFLATE) {
+            throw new IOException("Not in gzip format");
+        }
+
+        final int flags = nextByte();
+
+        for (int i = 0; i < HEADER_FIXED_BYTES; i++) {
+            nextByte();
+        }
+
+        if ((flags & FLAG_EXTRA) != 0) {
+            final int length = nextByte() | (nextByte() << Byte.SIZE);
+
+            for (int i = 0; i < length; i++) {
+                nextByte();
+            }
+        }
+
+        if ((flags & FLAG_NAME) != 0) {
+            skipZeroTerminated();
+        }
+
+        if ((flags & FLAG_COMMENT) != 0) {
+            skipZeroTerminated();
+        }
+
+        if ((flags & FLAG_HCRC) != 0) {
+            nextByte();
+            nextByte();
+        }
+
+        inflater.reset();
+        crc.reset();
+        firstMember = false;
+        inMember = true;
+    }
+
+    /**
+     * Hands the next compressed bytes to the inflater.
+     *
+     * @throws IOException thrown when the stream can't be read or ends early
+     */
+    private void feed() throws IOException {
+        if (inputPosition == inputLength && !refill(1)) {
+            throw new EOFException("Unexpected end of gzip stream");
+        }
+
+        fedPosition = inputPosition;
+        fedLength = inputLength - inputPosition;
+        inflater.setInput(input, fedPosition, fedLength);
+        inputPosition = inputLength;
+    }
+
+    /**
+     * Verifies the trailer of the member that the inflater just finished.
+     *
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private void endMember() throws IOException {
+        inputPosition = fedPosition + fedLength - inflater.getRemaining();
+        fedPosition = inputPosition;
+        fedLength = 0;
+
+        final long expectedCrc = readTrailerInt();
+        final long expectedSize = readTrailerInt();
+
+        if (expectedCrc != crc.getValue()) {
+            throw new IOException(String.format("Gzip member CRC mismatch [expected=0x%08X,actual=0x%08X]",
+                    expectedCrc, crc.getValue()));
+        }
+
+        if (expectedSize != (inflater.getBytesWritten() & INT_MASK)) {
+            throw new IOException(String.format("Gzip member size mismatch [expected=%d,actual=%d]",
+                    expectedSize, inflater.getBytesWritten() & INT_MASK));
+        }
+
+        inMember = false;
+    }
+
+    private long readTrailerInt() throws IOException {
+        if (!refill(INT_SIZE)) {
+            throw new EOFException("Gzip member trailer is truncated");
+        }
+
+        long value = 0L;
+
+        for (int i = INT_SIZE - 1; i >= 0; i--) {
+            value = (value << Byte.SIZE) | (input[inputPosition + i] & BYTE_MASK);
+        }
+
+        inputPosition += INT_SIZE;
+
+        return value;
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        int value = nextByte();
+
+        while (value != 0) {
+            value = nextByte();
+        }
+    }
+
+    private int nextByte() throws IOException {
+        if (!refill(1)) {
+            throw new EOFException("Gzip member header is truncated");
+        }
+
+        return input[inputPosition++] & BYTE_MASK;
+    }
+
+    /**
+     * Reads from the underlying stream until the input buffer holds the
+     * requested number of unconsumed bytes or the stream ends.
+     *
+     * @param minimum number of unconsumed bytes wanted
+     * @return true if the requested number of bytes are available
+     * @throws IOException thrown when the stream can't be read
+     */
+    private boolean refill(final int minimum) throws IOException {
+        if (inputLength - inputPosition >= minimum) {
+            return true;
+        }
+
+        System.arraycopy(input, inputPosition, input, 0, inputLength - inputPosition);
+        inputLength -= inputPosition;
+        inputPosition = 0;
+
+        while (!inputEof && inputLength < minimum) {
+            final int read = in.read(input, inputLength, input.length - inputLength);
+
+            if (read < 0) {
+                inputEof = true;
+            } else {
+                inputLength += read;
+            }
+        }
+
+        return inputLength - inputPosition >= minimum;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.joyent.manta.presto.MantaBufferPool;
+import org.apache.commons.compress.compressors.CompressorInputStream;
+import org.tukaani.xz.XZInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Apache Compress compatible {@link CompressorInputStream} that decompresses
+ * XZ data, including concatenated streams, with XZ for Java while borrowing
+ * the decoder's dictionary buffers from a {@link MantaBufferPool}.
+ *
+ * <p>Depending on the compression preset, an XZ decoder allocates a
+ * dictionary of up to 64MiB. Dictionaries of up to 8MiB, as written by the
+ * default preset and all lower ones, fit the pool's size classes, so the
+ * many short lived streams of a worker reuse the same arrays instead of
+ * allocating new ones for every split. The buffers are returned when a
+ * block ends and when the stream is closed. The stream header is only read
+ * on the first read, so creating the stream never blocks.</p>
+ *
+ * @since 1.0.0
+ */
+public class PooledXzCompressorInputStream extends CompressorInputStream {
+    private static final int NO_MEMORY_LIMIT = -1;
+
+    private final InputStream in;
+    private final BufferPoolArrayCache arrayCache;
+
+    private XZInputStream xz;
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance that decompresses the supplied stream using
+     * buffers borrowed from the supplied pool.
+     *
+     * @param in stream to decompress
+     * @param bufferPool pool that buffers are borrowed from
+     */
+    public PooledXzCompressorInputStream(final InputStream in,
+                                         final MantaBufferPool bufferPool) {
+        this.in = requireNonNull(in, "Input stream is null");
+        this.arrayCache = new BufferPoolArrayCache(bufferPool);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int value = decoder().read();
+
+        if (value >= 0) {
+            count(1);
+        }
+
+        return value;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        final int read = decoder().read(b, off, len);
+        count(read);
+
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (xz == null) {
+            ensureOpen();
+            return 0;
+        }
+
+        return xz.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        if (xz == null) {
+            in.close();
+        } else {
+            xz.close();
+        }
+    }
+
+    private XZInputStream decoder() throws IOException {
+        ensureOpen();
+
+        if (xz == null) {
+            xz = new XZInputStream(in, NO_MEMORY_LIMIT, arrayCache);
+        }
+
+        return xz;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Point part way through a compressed object from which decompression can
+ * be resumed with a range request, recorded while the object is read so
+ * that a lost connection doesn't require the object to be read again from
+ * its start.
+ *
+ * <p>Points within a deflate stream carry a {@link GzipIndex.Checkpoint},
+ * which holds the window of data that the following blocks may refer back
+ * to. Points at the start of an independently compressed unit, such as the
+ * bzip2 blocks or BGZF members found by a
+ * {@link ParallelDecompressingInputStream}, only need the offsets.</p>
+ *
+ * @since 1.0.0
+ */
+public final class ResumePoint {
+    private final MantaCompressionType type;
+    private final long uncompressedOffset;
+    private final long compressedOffset;
+    private final GzipIndex.Checkpoint checkpoint;
+
+    private ResumePoint(final MantaCompressionType type,
+                        final long uncompressedOffset,
+                        final long compressedOffset,
+                        final GzipIndex.Checkpoint checkpoint) {
+        if (uncompressedOffset < 0L || compressedOffset < 0L) {
+            throw new IllegalArgumentException("Resume point offsets must not be negative");
+        }
+
+        this.type = requireNonNull(type, "Compression type is null");
+        this.uncompressedOffset = uncompressedOffset;
+        this.compressedOffset = compressedOffset;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Creates a point at a deflate block boundary of a gzip object.
+     *
+     * @param checkpoint checkpoint recorded at the block boundary
+     * @return point resuming from the checkpoint
+     */
+    public static ResumePoint ofDeflate(final GzipIndex.Checkpoint checkpoint) {
+        requireNonNull(checkpoint, "Checkpoint is null");
+
+        return new ResumePoint(MantaCompressionType.GZIP, checkpoint.getUncompressedOffset(),
+                checkpoint.getCompressedOffset(), checkpoint);
+    }
+
+    /**
+     * Creates a point at the start of an independently compressed unit.
+     *
+     * @param type algorithm the object is compressed with
+     * @param uncompressedOffset position within the decompressed data at which the unit starts
+     * @param compressedOffset position within the object from which the unit can be found
+     * @return point resuming from the start of the unit
+     */
+    public static ResumePoint ofUnit(final MantaCompressionType type,
+                                     final long uncompressedOffset,
+                                     final long compressedOffset) {
+        return new ResumePoint(type, uncompressedOffset, compressedOffset, null);
+    }
+
+    /**
+     * Creates a copy of a point recorded by a stream that was itself
+     * resumed part way through the object.
+     *
+     * @param base point the recording stream was resumed from
+     * @return point with offsets relative to the start of the object
+     */
+    public ResumePoint after(final ResumePoint base) {
+        if (checkpoint != null) {
+            throw new IllegalStateException("Deflate checkpoints are always relative to the start of the object");
+        }
+
+        return new ResumePoint(type, base.uncompressedOffset + uncompressedOffset,
+                base.compressedOffset + compressedOffset, null);
+    }
+
+    public MantaCompressionType getType() {
+        return type;
+    }
+
+    public long getUncompressedOffset() {
+        return uncompressedOffset;
+    }
+
+    public long getCompressedOffset() {
+        return compressedOffset;
+    }
+
+    /**
+     * @return checkpoint within a deflate stream or null if the point is at the start of a unit
+     */
+    public GzipIndex.Checkpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("type", type)
+                .append("uncompressedOffset", uncompressedOffset)
+                .append("compressedOffset", compressedOffset)
+                .append("deflate", checkpoint != null)
+                .toString();
+    }
+}
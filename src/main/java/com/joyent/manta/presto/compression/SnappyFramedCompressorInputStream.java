@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import io.airlift.compress.MalformedInputException;
+import io.airlift.compress.snappy.SnappyDecompressor;
+import org.apache.commons.compress.compressors.CompressorInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Apache Compress compatible {@link CompressorInputStream} that decompresses
+ * the Snappy framing format (<code>.sz</code>) using the pure Java
+ * aircompressor Snappy decoder.
+ *
+ * <p>The format is a sequence of chunks that each hold at most 64KiB of
+ * data, so a single chunk is held in memory at a time. The masked CRC-32C
+ * checksum of every data chunk is verified. Concatenated streams are read
+ * one after another, and padding and reserved skippable chunks are
+ * skipped.</p>
+ *
+ * @since 1.0.0
+ */
+public class SnappyFramedCompressorInputStream extends CompressorInputStream {
+    /**
+     * Largest amount of data held by a single chunk.
+     */
+    static final int MAX_CHUNK_DATA_SIZE = 64 * 1024;
+
+    private static final SnappyDecompressor DECOMPRESSOR = new SnappyDecompressor();
+
+    private static final int COMPRESSED_DATA = 0x00;
+    private static final int UNCOMPRESSED_DATA = 0x01;
+    private static final int MIN_SKIPPABLE = 0x80;
+    private static final int STREAM_IDENTIFIER = 0xFF;
+
+    private static final byte[] STREAM_IDENTIFIER_DATA = {'s', 'N', 'a', 'P', 'p', 'Y'};
+
+    private static final int CHUNK_HEADER_SIZE = 4;
+    private static final int CHECKSUM_SIZE = 4;
+    private static final int MAX_COMPRESSED_CHUNK_SIZE = 1 << 24;
+
+    private static final int BYTE_MASK = 0xFF;
+
+    private static final int CRC32C_POLYNOMIAL = 0x82F63B78;
+    private static final int CRC_MASK_ROTATION = 15;
+    private static final int CRC_MASK_DELTA = 0xA282EAD8;
+    private static final int[] CRC32C_TABLE = new int[BYTE_MASK + 1];
+
+    static {
+        for (int i = 0; i < CRC32C_TABLE.length; i++) {
+            int crc = i;
+
+            for (int bit = 0; bit < Byte.SIZE; bit++) {
+                if ((crc & 1) != 0) {
+                    crc = (crc >>> 1) ^ CRC32C_POLYNOMIAL;
+                } else {
+                    crc >>>= 1;
+                }
+            }
+
+            CRC32C_TABLE[i] = crc;
+        }
+    }
+
+    private final InputStream in;
+    private final MantaBufferPool bufferPool;
+    private final byte[] header = new byte[CHUNK_HEADER_SIZE];
+
+    /**
+     * Bytes of the chunk being read.
+     */
+    private byte[] chunk;
+
+    /**
+     * Decompressed bytes of the last chunk read.
+     */
+    private byte[] output;
+    private byte[] served;
+    private int position = 0;
+    private int limit = 0;
+
+    private boolean identified = false;
+    private boolean eof = false;
+    private boolean closed = false;
+
+    /**
+     * Creates a new instance that decompresses the supplied stream.
+     *
+     * @param in stream to decompress
+     */
+    public SnappyFramedCompressorInputStream(final InputStream in) {
+        this(in, MantaBufferPool.disabled());
+    }
+
+    /**
+     * Creates a new instance that decompresses the supplied stream using
+     * buffers borrowed from the supplied pool. The buffers are returned
+     * when this stream is closed.
+     *
+     * @param in stream to decompress
+     * @param bufferPool pool that buffers are borrowed from
+     */
+    public SnappyFramedCompressorInputStream(final InputStream in,
+                                             final MantaBufferPool bufferPool) {
+        this.in = requireNonNull(in, "Input stream is null");
+        this.bufferPool = requireNonNull(bufferPool, "Buffer pool is null");
+        this.chunk = bufferPool.borrowArray(MAX_CHUNK_DATA_SIZE + CHECKSUM_SIZE);
+        this.output = bufferPool.borrowArray(MAX_CHUNK_DATA_SIZE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+
+        count(1);
+        return served[position++] & BYTE_MASK;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!fill()) {
+            return -1;
+        }
+
+        final int read = Math.min(len, limit - position);
+        System.arraycopy(served, position, b, off, read);
+        position += read;
+        count(read);
+
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        ensureOpen();
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            in.close();
+        } finally {
+            bufferPool.returnArray(chunk);
+            bufferPool.returnArray(output);
+            chunk = null;
+            output = null;
+            served = null;
+        }
+    }
+
+    /**
+     * Reads chunks until there are bytes to serve.
+     *
+     * @return false when the end of the stream was reached
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private boolean fill() throws IOException {
+        ensureOpen();
+
+        while (position == limit) {
+            if (eof || !readChunk()) {
+                eof = true;
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the next chunk of the stream.
+     *
+     * @return false when the end of the stream was reached before a chunk
+     * @throws IOException thrown when the stream can't be read or is corrupt
+     */
+    private boolean readChunk() throws IOException {
+        position = 0;
+        limit = 0;
+
+        final int headerRead = ByteStreams.read(in, header, 0, CHUNK_HEADER_SIZE);
+
+        if (headerRead == 0) {
+            return false;
+        }
+
+        if (headerRead < CHUNK_HEADER_SIZE) {
+            throw new EOFException("Snappy framed stream ended within a chunk header");
+        }
+
+        final int type = header[0] & BYTE_MASK;
+        int length = 0;
+
+        for (int i = CHUNK_HEADER_SIZE - 1; i > 0; i--) {
+            length = (length << Byte.SIZE) | (header[i] & BYTE_MASK);
+        }
+
+        if (type == STREAM_IDENTIFIER) {
+            readStreamIdentifier(length);
+            return true;
+        }
+
+        if (!identified) {
+            throw new IOException("Snappy framed stream doesn't start with a stream identifier");
+        }
+
+        switch (type) {
+            case COMPRESSED_DATA:
+                readCompressed(length);
+                return true;
+            case UNCOMPRESSED_DATA:
+                readUncompressed(length);
+                return true;
+            default:
+                if (type < MIN_SKIPPABLE) {
+                    throw new IOException(String.format("Snappy framed stream has reserved "
+                            + "unskippable chunk [type=0x%02X]", type));
+                }
+
+                ByteStreams.skipFully(in, length);
+                return true;
+        }
+    }
+
+    private void readStreamIdentifier(final int length) throws IOException {
+        if (length != STREAM_IDENTIFIER_DATA.length) {
+            throw new IOException("Snappy framed stream identifier has invalid length: " + length);
+        }
+
+        readFully(chunk, length);
+
+        for (int i = 0; i < length; i++) {
+            if (chunk[i] != STREAM_IDENTIFIER_DATA[i]) {
+                throw new IOException("Snappy framed stream identifier doesn't match");
+            }
+        }
+
+        identified = true;
+    }
+
+    private void readCompressed(final int length) throws IOException {
+        if (length < CHECKSUM_SIZE || length > MAX_COMPRESSED_CHUNK_SIZE) {
+            throw new IOException("Snappy compressed chunk has invalid length: " + length);
+        }
+
+        if (chunk.length < length) {
+            bufferPool.returnArray(chunk);
+            chunk = bufferPool.borrowArray(length);
+        }
+
+        readFully(chunk, length);
+
+        final int decompressed;
+
+        try {
+            final int uncompressedLength = SnappyDecompressor.getUncompressedLength(chunk, CHECKSUM_SIZE);
+
+            if (uncompressedLength < 0 || uncompressedLength > MAX_CHUNK_DATA_SIZE) {
+                throw new IOException("Snappy compressed chunk is too large: " + uncompressedLength);
+            }
+
+            decompressed = DECOMPRESSOR.decompress(chunk, CHECKSUM_SIZE, length - CHECKSUM_SIZE,
+                    output, 0, MAX_CHUNK_DATA_SIZE);
+        } catch (MalformedInputException | IllegalArgumentException e) {
+            throw new IOException("Corrupt Snappy compressed chunk", e);
+        }
+
+        verify(littleEndianInt(chunk), output, 0, decompressed);
+        served = output;
+        limit = decompressed;
+    }
+
+    private void readUncompressed(final int length) throws IOException {
+        if (length < CHECKSUM_SIZE || length > MAX_CHUNK_DATA_SIZE + CHECKSUM_SIZE) {
+            throw new IOException("Snappy uncompressed chunk has invalid length: " + length);
+        }
+
+        readFully(chunk, length);
+        verify(littleEndianInt(chunk), chunk, CHECKSUM_SIZE, length - CHECKSUM_SIZE);
+        served = chunk;
+        position = CHECKSUM_SIZE;
+        limit = length;
+    }
+
+    /**
+     * Verifies the masked CRC-32C checksum of the data of a chunk.
+     *
+     * @param expected masked checksum stored in the chunk
+     * @param data array holding the data
+     * @param offset offset of the data within the array
+     * @param length number of bytes of data
+     * @throws IOException thrown when the checksum doesn't match
+     */
+    static void verify(final int expected, final byte[] data, final int offset, final int length)
+            throws IOException {
+        int crc = ~0;
+
+        for (int i = offset; i < offset + length; i++) {
+            crc = (crc >>> Byte.SIZE) ^ CRC32C_TABLE[(crc ^ data[i]) & BYTE_MASK];
+        }
+
+        crc = ~crc;
+        final int actual = ((crc >>> CRC_MASK_ROTATION) | (crc << (Integer.SIZE - CRC_MASK_ROTATION)))
+                + CRC_MASK_DELTA;
+
+        if (actual != expected) {
+            throw new IOException(String.format("Snappy chunk checksum mismatch "
+                    + "[expected=0x%08X,actual=0x%08X]", expected, actual));
+        }
+    }
+
+    private void readFully(final byte[] buffer, final int length) throws IOException {
+        try {
+            ByteStreams.readFully(in, buffer, 0, length);
+        } catch (EOFException e) {
+            throw new EOFException("Snappy framed stream ended within a chunk");
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private static int littleEndianInt(final byte[] bytes) {
+        int value = 0;
+
+        for (int i = CHECKSUM_SIZE - 1; i >= 0; i--) {
+            value = (value << Byte.SIZE) | (bytes[i] & BYTE_MASK);
+        }
+
+        return value;
+    }
+}
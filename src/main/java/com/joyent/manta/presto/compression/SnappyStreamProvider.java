@@ -7,12 +7,12 @@
  */
 package com.joyent.manta.presto.compression;
 
+import com.joyent.manta.presto.MantaBufferPool;
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorInputStream;
 import org.apache.commons.compress.compressors.CompressorOutputStream;
 import org.apache.commons.compress.compressors.CompressorStreamProvider;
 import org.apache.commons.lang3.NotImplementedException;
-import org.apache.hadoop.io.compress.snappy.LoadSnappy;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -38,7 +38,7 @@ public class SnappyStreamProvider implements CompressorStreamProvider {
 
     /**
      * Constant (value {@value}) used to identify the Hadoop Snappy compression
-     * algorithm.
+     * algorithm, which is decompressed in pure Java.
      *
      * @since 1.0.0
      */
@@ -76,14 +76,7 @@ public class SnappyStreamProvider implements CompressorStreamProvider {
                     throw new CompressorException(msg, e);
                 }
             case HADOOP_SNAPPY_RAW:
-                if (!LoadSnappy.isLoaded()) {
-                    String msg = String.format("Hadoop Snappy native libraries weren't loaded. "
-                                    + "Make sure they are installed in the java.library.path [%s].",
-                            System.getProperty("java.library.path"));
-                    throw new UnsupportedOperationException(msg);
-                }
-
-                return new HadoopSnappyCompressorInputStream(in);
+                return HadoopBlockCompressorInputStream.snappy(in, MantaBufferPool.disabled());
             default:
                 throw new CompressorException("Unknown compressor type: " + name);
         }
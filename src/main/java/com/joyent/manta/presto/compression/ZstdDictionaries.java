@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.collect.ImmutableMap;
+import com.joyent.manta.presto.exceptions.MantaPrestoIllegalArgumentException;
+import com.joyent.manta.presto.exceptions.MantaPrestoUncheckedIOException;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Trained Zstandard dictionaries, read from local files on each worker, that
+ * frames compressed with a dictionary are decompressed with. Each dictionary
+ * is identified by the ID recorded in its header, which is the ID written in
+ * the header of the frames compressed with it.
+ *
+ * <p>The pure Java decoder used for other frames can't be primed with a
+ * dictionary, so these frames are decompressed by the zstd-jni native
+ * library. The library is an optional dependency that is only loaded when
+ * at least one dictionary is configured, and configuring a dictionary
+ * without it on the classpath fails when the connector starts.</p>
+ *
+ * @since 1.0.0
+ */
+public class ZstdDictionaries {
+    private static final Logger LOG = LoggerFactory.getLogger(ZstdDictionaries.class);
+
+    /**
+     * Magic number that starts every trained dictionary.
+     */
+    static final int DICTIONARY_MAGIC = 0xEC30A437;
+
+    /**
+     * Class of the native library that decompresses with a dictionary.
+     */
+    private static final String ZSTD_JNI_CLASS = "com.github.luben.zstd.Zstd";
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final ZstdDictionaries NONE = new ZstdDictionaries(Collections.emptyMap());
+
+    private final Map<Long, ZstdJniDictionary> dictionaries;
+
+    /**
+     * Creates a new instance that reads dictionaries from the passed files.
+     *
+     * @param paths local paths of trained dictionary files
+     */
+    @Inject
+    public ZstdDictionaries(@Named("ZstdDictionaryPaths") final List<String> paths) {
+        this(load(requireNonNull(paths, "Dictionary paths are null")));
+    }
+
+    private ZstdDictionaries(final Map<Long, ZstdJniDictionary> dictionaries) {
+        this.dictionaries = ImmutableMap.copyOf(dictionaries);
+    }
+
+    /**
+     * @return an instance without any dictionaries
+     */
+    public static ZstdDictionaries none() {
+        return NONE;
+    }
+
+    /**
+     * Reads and digests each dictionary file.
+     *
+     * @param paths local paths of trained dictionary files
+     * @return dictionaries by their ID
+     */
+    private static Map<Long, ZstdJniDictionary> load(final List<String> paths) {
+        if (paths.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        requireZstdJni();
+
+        final Map<Long, ZstdJniDictionary> loaded = new HashMap<>(paths.size());
+
+        for (String path : paths) {
+            final byte[] dictionary;
+
+            try {
+                dictionary = Files.readAllBytes(Paths.get(path));
+            } catch (IOException e) {
+                String msg = "Unable to read Zstandard dictionary";
+                MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
+                me.setContextValue("path", path);
+                throw me;
+            }
+
+            final long id = dictionaryId(dictionary, path);
+
+            if (loaded.containsKey(id)) {
+                String msg = "Several Zstandard dictionaries have the same ID";
+                MantaPrestoIllegalArgumentException me = new MantaPrestoIllegalArgumentException(msg);
+                me.setContextValue("path", path);
+                me.setContextValue("dictionaryId", id);
+                throw me;
+            }
+
+            loaded.put(id, new ZstdJniDictionary(dictionary));
+            LOG.debug("Loaded Zstandard dictionary [path={},dictionaryId={}]", path, id);
+        }
+
+        return loaded;
+    }
+
+    private static void requireZstdJni() {
+        try {
+            Class.forName(ZSTD_JNI_CLASS, false, ZstdDictionaries.class.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            String msg = "Zstandard dictionaries require the zstd-jni library on the classpath";
+            MantaPrestoIllegalArgumentException me = new MantaPrestoIllegalArgumentException(msg, e);
+            me.setContextValue("missingClass", ZSTD_JNI_CLASS);
+            throw me;
+        }
+    }
+
+    /**
+     * Reads the ID from the header of a trained dictionary.
+     *
+     * @param dictionary contents of the dictionary file
+     * @param path path of the dictionary file
+     * @return ID of the dictionary
+     */
+    static long dictionaryId(final byte[] dictionary, final String path) {
+        long id = 0L;
+
+        if (dictionary.length >= HEADER_SIZE && (int) littleEndian(dictionary, 0) == DICTIONARY_MAGIC) {
+            id = littleEndian(dictionary, Integer.BYTES);
+        }
+
+        if (id == 0L) {
+            String msg = "Zstandard dictionary isn't a trained dictionary with an ID";
+            MantaPrestoIllegalArgumentException me = new MantaPrestoIllegalArgumentException(msg);
+            me.setContextValue("path", path);
+            throw me;
+        }
+
+        return id;
+    }
+
+    private static long littleEndian(final byte[] bytes, final int offset) {
+        long value = 0L;
+
+        for (int i = Integer.BYTES - 1; i >= 0; i--) {
+            value = (value << Byte.SIZE) | Byte.toUnsignedInt(bytes[offset + i]);
+        }
+
+        return value;
+    }
+
+    /**
+     * @param dictionaryId ID recorded in a frame header
+     * @return true if a dictionary with the ID was configured
+     */
+    public boolean contains(final long dictionaryId) {
+        return dictionaries.containsKey(dictionaryId);
+    }
+
+    /**
+     * Decompresses a whole frame that was compressed with a dictionary.
+     *
+     * @param dictionaryId ID recorded in the frame header
+     * @param frame buffer holding the frame
+     * @param frameLength number of bytes in the frame
+     * @param output buffer to decompress into
+     * @return number of decompressed bytes
+     * @throws IOException thrown when the dictionary isn't configured or the frame is corrupt
+     */
+    int decompress(final long dictionaryId, final byte[] frame, final int frameLength,
+                   final byte[] output) throws IOException {
+        final ZstdJniDictionary dictionary = dictionaries.get(dictionaryId);
+
+        if (dictionary == null) {
+            throw new IOException(String.format("No Zstandard dictionary is configured with "
+                    + "the frame's dictionary ID [dictionaryId=%d]", dictionaryId));
+        }
+
+        return dictionary.decompress(frame, frameLength, output);
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("dictionaryIds", dictionaries.keySet())
+                .toString();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.joyent.manta.presto.exceptions.MantaPrestoIllegalArgumentException;
+
+import java.io.IOException;
+
+/**
+ * Trained Zstandard dictionary digested by the zstd-jni native library. This
+ * is the only class that refers to zstd-jni, so the library is only loaded
+ * when a dictionary is configured. The digested dictionary is read only and
+ * is shared by every stream decompressing with it.
+ *
+ * @since 1.0.0
+ */
+final class ZstdJniDictionary {
+    private final ZstdDictDecompress dictionary;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param dictionary contents of the dictionary file
+     */
+    ZstdJniDictionary(final byte[] dictionary) {
+        try {
+            this.dictionary = new ZstdDictDecompress(dictionary);
+        } catch (LinkageError e) {
+            String msg = "Unable to load the zstd-jni native library for Zstandard dictionaries";
+            throw new MantaPrestoIllegalArgumentException(msg, e);
+        }
+    }
+
+    /**
+     * Decompresses a whole frame that was compressed with this dictionary.
+     *
+     * @param frame buffer holding the frame
+     * @param frameLength number of bytes in the frame
+     * @param output buffer to decompress into
+     * @return number of decompressed bytes
+     * @throws IOException thrown when the frame is corrupt or doesn't fit the output buffer
+     */
+    int decompress(final byte[] frame, final int frameLength, final byte[] output) throws IOException {
+        final long result = Zstd.decompressFastDict(output, 0, frame, 0, frameLength, dictionary);
+
+        if (Zstd.isError(result)) {
+            throw new IOException(String.format("Corrupt Zstandard frame compressed with a "
+                    + "dictionary [error=%s]", Zstd.getErrorName(result)));
+        }
+
+        return (int) result;
+    }
+}
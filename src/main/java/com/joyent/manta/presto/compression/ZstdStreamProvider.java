@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorInputStream;
+import org.apache.commons.compress.compressors.CompressorOutputStream;
+import org.apache.commons.compress.compressors.CompressorStreamProvider;
+import org.apache.commons.lang3.NotImplementedException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Apache Compress compatible provider class that provides a pure Java
+ * Zstandard implementation. The Zstandard provider built into Apache
+ * Compress requires the zstd-jni native library.
+ *
+ * @since 1.0.0
+ */
+public class ZstdStreamProvider implements CompressorStreamProvider {
+    /**
+     * Constant (value {@value}) used to identify the pure Java Zstandard
+     * compression algorithm.
+     *
+     * @since 1.0.0
+     */
+    public static final String ZSTD_AIRCOMPRESSOR = "ZSTD_AIRCOMPRESSOR";
+
+    private static final Set<String> COMPRESSOR_NAMES =
+            Collections.singleton(ZSTD_AIRCOMPRESSOR);
+
+    @Override
+    public CompressorInputStream createCompressorInputStream(final String name,
+                                                             final InputStream in,
+                                                             final boolean decompressUntilEOF)
+            throws CompressorException {
+        if (name == null) {
+            throw new IllegalArgumentException("Compressor name is null");
+        }
+        if (in == null) {
+            throw new IllegalArgumentException("Input stream to wrap is null");
+        }
+
+        if (ZSTD_AIRCOMPRESSOR.equals(name)) {
+            return new AirliftZstdCompressorInputStream(in);
+        }
+
+        throw new CompressorException("Unknown compressor type: " + name);
+    }
+
+    @Override
+    public CompressorOutputStream createCompressorOutputStream(final String name,
+                                                               final OutputStream out)
+            throws CompressorException {
+        throw new NotImplementedException("Compression has not been implemented");
+    }
+
+    @Override
+    public Set<String> getInputStreamCompressorNames() {
+        return COMPRESSOR_NAMES;
+    }
+
+    @Override
+    public Set<String> getOutputStreamCompressorNames() {
+        return Collections.emptySet();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.record.json;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Searches byte arrays for a fixed sequence of bytes using the
+ * Boyer-Moore-Horspool algorithm. Instances are immutable and can be reused
+ * across any number of searches.
+ *
+ * @since 1.0.0
+ */
+public final class ByteSubstringMatcher {
+    /**
+     * Number of distinct values a byte can have.
+     */
+    private static final int ALPHABET_SIZE = 256;
+
+    /**
+     * Bytes being searched for.
+     */
+    private final byte[] needle;
+
+    /**
+     * Distance to shift the search window by, indexed by the unsigned value
+     * of the last byte in the window.
+     */
+    private final int[] shifts = new int[ALPHABET_SIZE];
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param needle non-empty sequence of bytes to search for
+     */
+    public ByteSubstringMatcher(final byte[] needle) {
+        Objects.requireNonNull(needle, "Needle is null");
+
+        if (needle.length == 0) {
+            throw new IllegalArgumentException("Needle must not be empty");
+        }
+
+        this.needle = needle.clone();
+
+        final int last = needle.length - 1;
+        Arrays.fill(shifts, needle.length);
+
+        for (int i = 0; i < last; i++) {
+            shifts[Byte.toUnsignedInt(needle[i])] = last - i;
+        }
+    }
+
+    /**
+     * Determines if the needle appears within a region of a byte array.
+     *
+     * @param haystack bytes to search
+     * @param offset offset of the first byte to search
+     * @param length number of bytes to search
+     * @return true if the needle was found
+     */
+    public boolean isContainedIn(final byte[] haystack, final int offset, final int length) {
+        final int last = needle.length - 1;
+        final int end = offset + length - needle.length;
+        int position = offset;
+
+        while (position <= end) {
+            int i = last;
+
+            while (haystack[position + i] == needle[i]) {
+                if (i == 0) {
+                    return true;
+                }
+
+                i--;
+            }
+
+            position += shifts[Byte.toUnsignedInt(haystack[position + last])];
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of bytes in the needle
+     */
+    public int length() {
+        return needle.length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(needle, StandardCharsets.UTF_8);
+    }
+}
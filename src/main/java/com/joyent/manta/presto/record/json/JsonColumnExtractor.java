@@ -0,0 +1,461 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.record.json;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.google.common.base.Joiner;
+import com.joyent.manta.presto.column.MantaColumn;
+import com.joyent.manta.presto.exceptions.MantaPrestoIllegalArgumentException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Extracts the values for a fixed list of columns from a stream of JSON
+ * objects by walking the tokens of a {@link JsonParser}. Only the values
+ * that a column references are materialized as {@link JsonNode} instances.
+ * Every other value is skipped without being decoded, so nested values
+ * (eg <code>req.headers.host</code>) can be read without building the
+ * parent object.
+ *
+ * <p>Columns without a path read the top-level property with the same name
+ * as the column and are required to be present in every object. Columns
+ * with a path read the value the path points to and are null when the path
+ * is missing.</p>
+ *
+ * <p>When a {@link ValueFilter} is specified, each filtered column is tested
+ * as soon as its value is read. Once a value is rejected, the rest of the
+ * object is skipped without materializing any further values.</p>
+ *
+ * @since 1.0.0
+ */
+public class JsonColumnExtractor {
+    /**
+     * Reader used to materialize the values of columns.
+     */
+    private final ObjectReader reader;
+
+    /**
+     * Columns that values are extracted for.
+     */
+    private final List<MantaColumn> columns;
+
+    /**
+     * Values that are the same for every row (eg partition values) indexed
+     * by column ordinal, or null when the column is read from the data.
+     */
+    private final JsonNode[] constants;
+
+    /**
+     * Flags indicating if a column must be present in every object.
+     */
+    private final boolean[] required;
+
+    /**
+     * Root of the tree of property names referenced by the columns.
+     */
+    private final PathNode root = new PathNode();
+
+    /**
+     * Filter that rows are tested against or null when all rows are accepted.
+     */
+    private final ValueFilter filter;
+
+    /**
+     * Flags indicating if a column's values are tested by {@link #filter}.
+     */
+    private final boolean[] filtered;
+
+    /**
+     * Top-level property names seen in the last object read, used only for
+     * error reporting.
+     */
+    private final List<String> fieldNames = new ArrayList<>();
+
+    /**
+     * Flag indicating that the last object read was rejected by the filter.
+     */
+    private boolean rejected = false;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param reader reader used to materialize column values
+     * @param columns list of columns in table
+     * @param constantValues map of column name to a value that is used for every row
+     */
+    public JsonColumnExtractor(final ObjectReader reader,
+                               final List<MantaColumn> columns,
+                               final Map<String, String> constantValues) {
+        this(reader, columns, constantValues, null);
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param reader reader used to materialize column values
+     * @param columns list of columns in table
+     * @param constantValues map of column name to a value that is used for every row
+     * @param filter filter that column values are tested against or null to accept all rows
+     */
+    public JsonColumnExtractor(final ObjectReader reader,
+                               final List<MantaColumn> columns,
+                               final Map<String, String> constantValues,
+                               final ValueFilter filter) {
+        this.reader = Objects.requireNonNull(reader, "Reader is null");
+        this.columns = Objects.requireNonNull(columns, "Columns are null");
+        this.constants = new JsonNode[columns.size()];
+        this.required = new boolean[columns.size()];
+        this.filter = filter;
+        this.filtered = new boolean[columns.size()];
+
+        for (int i = 0; i < columns.size(); i++) {
+            final MantaColumn column = columns.get(i);
+            final String columnName = Objects.requireNonNull(column.getName(),
+                    "Column name is null");
+            final String constant = constantValues.get(columnName);
+
+            if (constant != null) {
+                constants[i] = new TextNode(constant);
+                continue;
+            }
+
+            required[i] = column.getPath() == null;
+            filtered[i] = filter != null && filter.isFiltered(i);
+
+            PathNode node = root;
+            JsonPointer pointer = column.toJsonPointer();
+
+            while (!pointer.matches()) {
+                node = node.child(pointer.getMatchingProperty(), pointer.getMatchingIndex());
+                pointer = pointer.tail();
+            }
+
+            node.ordinals = Arrays.copyOf(node.ordinals, node.ordinals.length + 1);
+            node.ordinals[node.ordinals.length - 1] = i;
+        }
+    }
+
+    /**
+     * Reads the next JSON object from the parser and populates the passed
+     * row with the values of each column. When the object is rejected by the
+     * filter, the row is only partially populated and {@link #isRejected()}
+     * returns true.
+     *
+     * @param parser parser to read from
+     * @param row array with one element per column to populate
+     * @return true if a row was read, false if the end of the stream was reached
+     * @throws IOException thrown when the underlying stream can't be read or parsed
+     */
+    public boolean readRow(final JsonParser parser, final JsonNode[] row) throws IOException {
+        final JsonToken token = nextRootValue(parser);
+
+        if (token == null) {
+            return false;
+        }
+
+        if (token != JsonToken.START_OBJECT) {
+            String msg = String.format("Expected a JSON object but found %s", token);
+            throw new JsonParseException(parser, msg);
+        }
+
+        System.arraycopy(constants, 0, row, 0, row.length);
+        fieldNames.clear();
+        rejected = false;
+        readObject(parser, root, row, true);
+
+        for (int i = 0; i < row.length && !rejected; i++) {
+            if (row[i] != null) {
+                continue;
+            }
+
+            if (required[i]) {
+                String msg = "No column found with the specified name";
+                MantaPrestoIllegalArgumentException e = new MantaPrestoIllegalArgumentException(msg);
+                e.setContextValue("columnName", columns.get(i).getName());
+                e.setContextValue("fields", Joiner.on(',').join(fieldNames));
+
+                throw e;
+            }
+
+            row[i] = NullNode.getInstance();
+
+            if (filtered[i] && !filter.test(i, row[i])) {
+                rejected = true;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the last row read was rejected by the filter
+     */
+    public boolean isRejected() {
+        return rejected;
+    }
+
+    /**
+     * Skips over the next JSON value without decoding it.
+     *
+     * @param parser parser to read from
+     * @return true if a value was skipped, false if the end of the stream was reached
+     * @throws IOException thrown when the underlying stream can't be read or parsed
+     */
+    public boolean skipRow(final JsonParser parser) throws IOException {
+        if (nextRootValue(parser) == null) {
+            return false;
+        }
+
+        parser.skipChildren();
+        return true;
+    }
+
+    /**
+     * Advances to the start of the next row. Like Jackson's
+     * {@link com.fasterxml.jackson.databind.MappingIterator}, a top-level
+     * array wrapping the rows (eg <code>[{...}, {...}]</code>) is unwrapped
+     * so that each element is a row, and the end of that array is the end
+     * of the rows.
+     *
+     * @param parser parser to read from
+     * @return first token of the next row or null if there are no more rows
+     * @throws IOException thrown when the underlying stream can't be read or parsed
+     */
+    private static JsonToken nextRootValue(final JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+
+        if (token == JsonToken.START_ARRAY && parser.getParsingContext().getParent().inRoot()) {
+            token = parser.nextToken();
+        }
+
+        if (token == JsonToken.END_ARRAY && parser.getParsingContext().inRoot()) {
+            return null;
+        }
+
+        return token;
+    }
+
+    /**
+     * @param parser parser that the last row was read from
+     * @return true if the last row was an element of a top-level array
+     */
+    public static boolean isInRootArray(final JsonParser parser) {
+        return parser.getParsingContext().inArray() && parser.getParsingContext().getParent().inRoot();
+    }
+
+    /**
+     * Reads the properties of the object the parser is positioned at.
+     *
+     * @param parser parser positioned at the start of an object
+     * @param node path node corresponding to the object
+     * @param row row to populate
+     * @param topLevel flag indicating that this is the root object of the row
+     * @throws IOException thrown when the underlying stream can't be read or parsed
+     */
+    private void readObject(final JsonParser parser, final PathNode node,
+                            final JsonNode[] row, final boolean topLevel) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+
+            if (topLevel) {
+                fieldNames.add(name);
+            }
+
+            final JsonToken valueToken = parser.nextToken();
+
+            if (rejected) {
+                parser.skipChildren();
+                continue;
+            }
+
+            final PathNode child = node.properties.get(name);
+
+            if (child == null) {
+                parser.skipChildren();
+            } else {
+                readValue(parser, valueToken, child, row);
+            }
+        }
+    }
+
+    /**
+     * Reads the elements of the array the parser is positioned at.
+     *
+     * @param parser parser positioned at the start of an array
+     * @param node path node corresponding to the array
+     * @param row row to populate
+     * @throws IOException thrown when the underlying stream can't be read or parsed
+     */
+    private void readArray(final JsonParser parser, final PathNode node,
+                           final JsonNode[] row) throws IOException {
+        JsonToken token = parser.nextToken();
+        int index = 0;
+
+        while (token != JsonToken.END_ARRAY && token != null) {
+            final PathNode child = node.element(index++);
+
+            if (child == null || rejected) {
+                parser.skipChildren();
+            } else {
+                readValue(parser, token, child, row);
+            }
+
+            token = parser.nextToken();
+        }
+    }
+
+    /**
+     * Reads the value the parser is positioned at, materializing it only
+     * if a column references it directly.
+     *
+     * @param parser parser positioned at the start of a value
+     * @param token current token of the parser
+     * @param node path node corresponding to the value
+     * @param row row to populate
+     * @throws IOException thrown when the underlying stream can't be read or parsed
+     */
+    private void readValue(final JsonParser parser, final JsonToken token,
+                           final PathNode node, final JsonNode[] row) throws IOException {
+        if (node.ordinals.length > 0) {
+            JsonNode value = reader.readTree(parser);
+
+            if (value == null) {
+                value = NullNode.getInstance();
+            }
+
+            assign(node, value, row);
+        } else if (token == JsonToken.START_OBJECT && !node.properties.isEmpty()) {
+            readObject(parser, node, row, false);
+        } else if (token == JsonToken.START_ARRAY && node.elements.length > 0) {
+            readArray(parser, node, row);
+        } else {
+            parser.skipChildren();
+        }
+    }
+
+    /**
+     * Assigns an already materialized value to the columns of a node and to
+     * the columns of any nodes below it.
+     *
+     * @param node path node corresponding to the value
+     * @param value value located at the node
+     * @param row row to populate
+     */
+    private void assign(final PathNode node, final JsonNode value, final JsonNode[] row) {
+        for (int ordinal : node.ordinals) {
+            row[ordinal] = value;
+
+            if (filtered[ordinal] && !filter.test(ordinal, value)) {
+                rejected = true;
+            }
+        }
+
+        if (value.isObject()) {
+            for (Map.Entry<String, PathNode> entry : node.properties.entrySet()) {
+                final JsonNode childValue = value.get(entry.getKey());
+
+                if (childValue != null) {
+                    assign(entry.getValue(), childValue, row);
+                }
+            }
+        } else if (value.isArray()) {
+            for (int i = 0; i < node.elements.length && i < value.size(); i++) {
+                if (node.elements[i] != null) {
+                    assign(node.elements[i], value.get(i), row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Filter applied to the values of columns as they are read.
+     */
+    public interface ValueFilter {
+        /**
+         * @param field ordinal of column
+         * @return true if the values of the column are tested by this filter
+         */
+        boolean isFiltered(int field);
+
+        /**
+         * Tests a single column value.
+         *
+         * @param field ordinal of column
+         * @param value value of the column, a {@link NullNode} when missing
+         * @return true if the row containing the value may match
+         */
+        boolean test(int field, JsonNode value);
+    }
+
+    /**
+     * Tree of the property names and array indexes referenced by columns.
+     */
+    private static final class PathNode {
+        private static final int[] NO_ORDINALS = new int[0];
+        private static final PathNode[] NO_ELEMENTS = new PathNode[0];
+
+        /**
+         * Ordinals of the columns whose value is located at this node.
+         */
+        private int[] ordinals = NO_ORDINALS;
+
+        /**
+         * Child nodes by property name.
+         */
+        private final Map<String, PathNode> properties = new HashMap<>();
+
+        /**
+         * Child nodes by array index, with null for unreferenced indexes.
+         */
+        private PathNode[] elements = NO_ELEMENTS;
+
+        /**
+         * Finds or creates the child node for a pointer segment. Numeric
+         * segments can match both a property name and an array index, so
+         * they are registered as both.
+         *
+         * @param property property name of the segment
+         * @param index array index of the segment or -1 if not numeric
+         * @return child node
+         */
+        private PathNode child(final String property, final int index) {
+            final PathNode child = properties.computeIfAbsent(property, p -> new PathNode());
+
+            if (index >= 0) {
+                if (index >= elements.length) {
+                    elements = Arrays.copyOf(elements, index + 1);
+                }
+
+                elements[index] = child;
+            }
+
+            return child;
+        }
+
+        private PathNode element(final int index) {
+            if (index < elements.length) {
+                return elements[index];
+            }
+
+            return null;
+        }
+    }
+}
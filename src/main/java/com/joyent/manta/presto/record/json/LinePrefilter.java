@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.record.json;
+
+import com.facebook.presto.spi.predicate.Domain;
+import com.facebook.presto.spi.predicate.Marker;
+import com.facebook.presto.spi.predicate.Range;
+import com.facebook.presto.spi.predicate.SortedRangeSet;
+import com.facebook.presto.spi.type.VarcharType;
+import io.airlift.slice.Slice;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests raw NDJSON lines for literal bytes that must be present in order for
+ * a line to match a row predicate. Lines that don't contain the required
+ * bytes are rejected before any JSON parsing is done.
+ *
+ * <p>Required bytes are derived from the domains of varchar columns. Each
+ * range within a domain contributes the common prefix of its bounds, so a
+ * single value contributes the whole value. A line passes when, for every
+ * filtered column, at least one of the column's needles is present. Only
+ * printable ASCII values without quotes, backslashes and forward slashes
+ * are used as needles.</p>
+ *
+ * <p>JSON allows any character within a string to be written as an escape
+ * sequence, and common encoders do so for more than the characters JSON
+ * requires. For example, Go's <code>encoding/json</code> and Jackson with
+ * HTML escaping write <code>&lt;</code>, <code>&gt;</code> and
+ * <code>&amp;</code> as <code>&#92;u003c</code>, <code>&#92;u003e</code> and
+ * <code>&#92;u0026</code>. The raw bytes of a line are therefore only identical
+ * to its decoded values when the line contains no backslash, so lines that
+ * contain one are never rejected and are left to the JSON parser.</p>
+ *
+ * @since 1.0.0
+ */
+public final class LinePrefilter {
+    /**
+     * Needles indexed by filtered column. A line must contain at least one
+     * needle from every column.
+     */
+    private final ByteSubstringMatcher[][] columnNeedles;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param columnNeedles alternative needles for each filtered column
+     */
+    private LinePrefilter(final ByteSubstringMatcher[][] columnNeedles) {
+        this.columnNeedles = columnNeedles;
+    }
+
+    /**
+     * Creates a new instance for the domains of a row predicate.
+     *
+     * @param domains domains indexed by column ordinal, with null elements for
+     *                columns that are not filtered
+     * @return a new prefilter or null if no literal bytes could be derived
+     */
+    public static LinePrefilter create(final Domain[] domains) {
+        final List<ByteSubstringMatcher[]> needles = new ArrayList<>();
+
+        for (Domain domain : domains) {
+            final ByteSubstringMatcher[] alternatives = needlesForDomain(domain);
+
+            if (alternatives != null) {
+                needles.add(alternatives);
+            }
+        }
+
+        if (needles.isEmpty()) {
+            return null;
+        }
+
+        return new LinePrefilter(needles.toArray(new ByteSubstringMatcher[needles.size()][]));
+    }
+
+    /**
+     * Determines if a line may match the row predicate.
+     *
+     * @param line buffer containing the line
+     * @param offset offset of the line within the buffer
+     * @param length number of bytes in the line
+     * @return false if the line definitely doesn't match, otherwise true
+     */
+    public boolean mayMatch(final byte[] line, final int offset, final int length) {
+        for (ByteSubstringMatcher[] alternatives : columnNeedles) {
+            if (!containsAny(alternatives, line, offset, length)) {
+                return containsEscape(line, offset, length);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Determines if a line contains an escape sequence, in which case its
+     * decoded values may contain bytes that aren't present in the raw line.
+     *
+     * @param line buffer containing the line
+     * @param offset offset of the line within the buffer
+     * @param length number of bytes in the line
+     * @return true if the line contains a backslash
+     */
+    private static boolean containsEscape(final byte[] line, final int offset, final int length) {
+        final int end = offset + length;
+
+        for (int i = offset; i < end; i++) {
+            if (line[i] == '\\') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean containsAny(final ByteSubstringMatcher[] alternatives,
+                                       final byte[] line, final int offset, final int length) {
+        for (ByteSubstringMatcher needle : alternatives) {
+            if (needle.isContainedIn(line, offset, length)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Derives the needles for a single domain.
+     *
+     * @param domain domain to derive needles for
+     * @return alternative needles or null if any value in the domain can't be
+     *         represented by a needle
+     */
+    private static ByteSubstringMatcher[] needlesForDomain(final Domain domain) {
+        if (domain == null || domain.isNullAllowed()
+                || !(domain.getType() instanceof VarcharType)
+                || !(domain.getValues() instanceof SortedRangeSet)) {
+            return null;
+        }
+
+        final List<Range> ranges = domain.getValues().getRanges().getOrderedRanges();
+
+        if (ranges.isEmpty()) {
+            return null;
+        }
+
+        final ByteSubstringMatcher[] alternatives = new ByteSubstringMatcher[ranges.size()];
+
+        for (int i = 0; i < alternatives.length; i++) {
+            final byte[] needle = requiredPrefix(ranges.get(i));
+
+            if (needle == null) {
+                return null;
+            }
+
+            alternatives[i] = new ByteSubstringMatcher(needle);
+        }
+
+        return alternatives;
+    }
+
+    /**
+     * Finds the bytes that every value within a range starts with.
+     *
+     * @param range range of varchar values
+     * @return common prefix of the bounds or null if there is no usable prefix
+     */
+    private static byte[] requiredPrefix(final Range range) {
+        final Marker low = range.getLow();
+        final Marker high = range.getHigh();
+
+        if (low.isLowerUnbounded() || high.isUpperUnbounded()) {
+            return null;
+        }
+
+        final byte[] lowBytes = ((Slice) low.getValue()).getBytes();
+        final byte[] highBytes = ((Slice) high.getValue()).getBytes();
+        final int max = Math.min(lowBytes.length, highBytes.length);
+        int length = 0;
+
+        while (length < max && lowBytes[length] == highBytes[length]) {
+            length++;
+        }
+
+        final byte[] prefix = Arrays.copyOf(lowBytes, length);
+
+        if (!isLiteralInJson(prefix)) {
+            return null;
+        }
+
+        return prefix;
+    }
+
+    /**
+     * Determines if a value will appear unchanged in its JSON encoded form
+     * when the encoder only escapes what JSON requires, and can't be
+     * confused with the rendering of a JSON number.
+     *
+     * @param value bytes of value
+     * @return true if the value can be used as a needle
+     */
+    private static boolean isLiteralInJson(final byte[] value) {
+        if (value.length == 0) {
+            return false;
+        }
+
+        boolean numeric = true;
+
+        for (byte b : value) {
+            if (b < ' ' || b > '~' || b == '"' || b == '\\' || b == '/') {
+                return false;
+            }
+
+            if ((b < '0' || b > '9') && b != '-' && b != '+' && b != '.' && b != 'e' && b != 'E') {
+                numeric = false;
+            }
+        }
+
+        return !numeric;
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("columnNeedles", Arrays.deepToString(columnNeedles))
+                .toString();
+    }
+}
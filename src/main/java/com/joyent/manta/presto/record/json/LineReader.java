@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.record.json;
+
+import com.joyent.manta.presto.MantaBufferPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+
+/**
+ * Reads newline delimited lines from a stream into a reusable byte buffer
+ * without decoding them into characters. After each successful call to
+ * {@link #readLine()}, the line is available in {@link #getBuffer()} starting
+ * at {@link #getLineOffset()} for {@link #getLineLength()} bytes, excluding
+ * the line terminator. The line is only valid until the next call to
+ * {@link #readLine()}. When created with a {@link MantaBufferPool}, the
+ * buffer is borrowed from the pool and returned when the reader is closed.
+ *
+ * @since 1.0.0
+ */
+public class LineReader implements Closeable {
+    /**
+     * Default size of the read buffer. The buffer grows when a single line
+     * is longer than the buffer.
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 65_536;
+
+    private final InputStream in;
+    private final MantaBufferPool bufferPool;
+    private byte[] buffer;
+
+    /**
+     * Offset of the first byte that hasn't been returned as part of a line.
+     */
+    private int position = 0;
+
+    /**
+     * Offset after the last valid byte in the buffer.
+     */
+    private int limit = 0;
+
+    /**
+     * Offset up to which the buffer has already been searched for a newline.
+     */
+    private int scanned = 0;
+
+    private boolean endOfStream = false;
+    private int lineOffset = 0;
+    private int lineLength = 0;
+    private long bytesConsumed = 0L;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param in stream to read lines from
+     */
+    public LineReader(final InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param in stream to read lines from
+     * @param bufferSize initial size of the read buffer in bytes
+     */
+    public LineReader(final InputStream in, final int bufferSize) {
+        this.in = Objects.requireNonNull(in, "Input stream is null");
+
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be greater than zero");
+        }
+
+        this.bufferPool = MantaBufferPool.disabled();
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Creates a new instance that borrows its buffer from a pool.
+     *
+     * @param in stream to read lines from
+     * @param bufferPool pool that the read buffer is borrowed from
+     */
+    public LineReader(final InputStream in, final MantaBufferPool bufferPool) {
+        this.in = Objects.requireNonNull(in, "Input stream is null");
+        this.bufferPool = Objects.requireNonNull(bufferPool, "Buffer pool is null");
+        this.buffer = bufferPool.borrowArray(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Reads the next line from the stream.
+     *
+     * @return true if a line was read, false if the end of the stream was reached
+     * @throws IOException thrown when the underlying stream can't be read
+     */
+    public boolean readLine() throws IOException {
+        while (true) {
+            final int newline = indexOfNewline(scanned, limit);
+
+            if (newline >= 0) {
+                setLine(newline, newline + 1);
+                return true;
+            }
+
+            scanned = limit;
+
+            if (endOfStream) {
+                if (position < limit) {
+                    setLine(limit, limit);
+                    return true;
+                }
+
+                return false;
+            }
+
+            fill();
+        }
+    }
+
+    /**
+     * Determines if the current line contains only whitespace.
+     *
+     * @return true if the line is empty or contains only whitespace
+     */
+    public boolean isBlankLine() {
+        final int end = lineOffset + lineLength;
+
+        for (int i = lineOffset; i < end; i++) {
+            final byte b = buffer[i];
+
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return buffer containing the current line
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return offset of the current line within the buffer
+     */
+    public int getLineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * @return number of bytes in the current line excluding the line terminator
+     */
+    public int getLineLength() {
+        return lineLength;
+    }
+
+    /**
+     * @return number of bytes consumed from the stream by the lines read so far
+     */
+    public long getBytesConsumed() {
+        return bytesConsumed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            in.close();
+        } finally {
+            bufferPool.returnArray(buffer);
+            buffer = null;
+        }
+    }
+
+    private int indexOfNewline(final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Marks the bytes from the current position up to the specified end as
+     * the current line.
+     *
+     * @param end offset after the last byte of the line's content
+     * @param next offset of the first byte of the next line
+     */
+    private void setLine(final int end, final int next) {
+        lineOffset = position;
+        lineLength = end - position;
+
+        if (lineLength > 0 && buffer[end - 1] == '\r') {
+            lineLength--;
+        }
+
+        bytesConsumed += next - position;
+        position = next;
+        scanned = next;
+    }
+
+    /**
+     * Moves any unread bytes to the start of the buffer, growing it if it is
+     * full, and reads more bytes from the stream.
+     *
+     * @throws IOException thrown when the underlying stream can't be read
+     */
+    private void fill() throws IOException {
+        if (position > 0) {
+            final int remaining = limit - position;
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+            scanned -= position;
+            limit = remaining;
+            position = 0;
+        }
+
+        if (limit == buffer.length) {
+            final byte[] grown = bufferPool.borrowArray(buffer.length * 2);
+            System.arraycopy(buffer, 0, grown, 0, limit);
+            bufferPool.returnArray(buffer);
+            buffer = grown;
+        }
+
+        final int read = in.read(buffer, limit, buffer.length - limit);
+
+        if (read < 0) {
+            endOfStream = true;
+        } else {
+            limit += read;
+        }
+    }
+}
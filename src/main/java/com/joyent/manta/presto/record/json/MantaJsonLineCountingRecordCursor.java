@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.record.json;
+
+import com.facebook.presto.spi.RecordCursor;
+import com.facebook.presto.spi.type.Type;
+import com.google.common.io.Closeables;
+import com.joyent.manta.presto.MantaBufferPool;
+import com.joyent.manta.presto.MantaCountingInputStream;
+import com.joyent.manta.presto.MantaRetryPolicy;
+import com.joyent.manta.presto.column.MantaColumn;
+import com.joyent.manta.presto.exceptions.MantaPrestoExceptionUtils;
+import com.joyent.manta.presto.exceptions.MantaPrestoIllegalArgumentException;
+import com.joyent.manta.presto.exceptions.MantaPrestoUncheckedIOException;
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.LongFunction;
+
+/**
+ * {@link RecordCursor} implementation for queries that don't read any values
+ * from the contents of NDJSON data files, such as <code>count(*)</code> or
+ * queries that only reference partition columns with known values. Rows are
+ * counted by scanning the decompressed bytes for non-blank lines, so no JSON
+ * tokenization is done.
+ *
+ * @since 1.0.0
+ */
+public class MantaJsonLineCountingRecordCursor implements RecordCursor {
+    private static final Logger LOG = LoggerFactory.getLogger(MantaJsonLineCountingRecordCursor.class);
+
+    /**
+     * Size of the buffer used to scan for newlines. It is larger than the
+     * buffer within {@link MantaCountingInputStream}, so reads bypass that
+     * buffer and avoid an additional copy. The buffer is borrowed from the
+     * stream's buffer pool and returned when the cursor is closed.
+     */
+    private static final int SCAN_BUFFER_SIZE = 262_144;
+
+    private final LongFunction<MantaCountingInputStream> streamRecreator;
+    private final MantaRetryPolicy retryPolicy;
+    private final List<MantaColumn> columns;
+    private final String objectPath;
+    private final Slice[] values;
+    private final MantaBufferPool bufferPool;
+    private byte[] buffer;
+
+    private MantaCountingInputStream countingStream;
+    private Long totalBytes;
+    private Long readTimeStartNanos = null;
+    private int retries = 0;
+
+    /**
+     * Number of consecutive failed reads.
+     */
+    private int failedAttempts = 0;
+
+    /**
+     * Number of bytes of the stream that have been scanned.
+     */
+    private long bytesScanned = 0L;
+
+    /**
+     * Number of rows found by scanning that haven't been returned yet.
+     */
+    private long pendingRows = 0L;
+
+    /**
+     * Flag indicating that the line currently being scanned has content.
+     */
+    private boolean lineHasContent = false;
+    private boolean endOfStream = false;
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param streamRecreator function used to reopen the underlying stream at a byte position
+     * @param columns list of columns in table, all of which must have a constant value
+     * @param objectPath path to object in Manta
+     * @param totalBytes total number of bytes in source object
+     * @param countingStream input stream that counts the number of bytes processed
+     * @param constantValues map of column to user specified partition value
+     * @param retryPolicy policy deciding which read failures are retried
+     */
+    public MantaJsonLineCountingRecordCursor(final LongFunction<MantaCountingInputStream> streamRecreator,
+                                             final List<MantaColumn> columns,
+                                             final String objectPath,
+                                             final Long totalBytes,
+                                             final MantaCountingInputStream countingStream,
+                                             final Map<String, String> constantValues,
+                                             final MantaRetryPolicy retryPolicy) {
+        this.streamRecreator = streamRecreator;
+        this.retryPolicy = Objects.requireNonNull(retryPolicy, "Retry policy is null");
+        this.columns = Objects.requireNonNull(columns, "Columns are null");
+        this.objectPath = objectPath;
+        this.totalBytes = totalBytes;
+        this.countingStream = Objects.requireNonNull(countingStream, "Stream is null");
+        this.bufferPool = countingStream.getBufferPool();
+        this.buffer = bufferPool.borrowArray(SCAN_BUFFER_SIZE);
+        this.values = new Slice[columns.size()];
+
+        for (int i = 0; i < columns.size(); i++) {
+            final String value = constantValues.get(columns.get(i).getName());
+
+            if (value == null) {
+                String msg = "Line counting cursor requires a constant value for every column";
+                MantaPrestoIllegalArgumentException me = new MantaPrestoIllegalArgumentException(msg);
+                me.setContextValue("objectPath", objectPath);
+                me.setContextValue("column", columns.get(i));
+                throw me;
+            }
+
+            values[i] = Slices.utf8Slice(value);
+        }
+    }
+
+    @Override
+    public long getCompletedBytes() {
+        return countingStream.getCount();
+    }
+
+    @Override
+    public long getReadTimeNanos() {
+        if (readTimeStartNanos == null) {
+            return 0L;
+        }
+
+        return Math.abs(readTimeStartNanos - System.nanoTime());
+    }
+
+    @Override
+    public Type getType(final int field) {
+        return getColumn(field).getType();
+    }
+
+    @Override
+    public boolean advanceNextPosition() {
+        if (readTimeStartNanos == null) {
+            readTimeStartNanos = System.nanoTime();
+        }
+
+        while (pendingRows == 0L && !endOfStream) {
+            scanNextChunk();
+        }
+
+        if (pendingRows == 0L) {
+            if (totalBytes == null) {
+                totalBytes = countingStream.getCount();
+            }
+
+            return false;
+        }
+
+        pendingRows--;
+        return true;
+    }
+
+    /**
+     * Reads the next chunk of the stream and counts the non-blank lines
+     * that end within it.
+     */
+    private void scanNextChunk() {
+        final int read;
+
+        try {
+            read = countingStream.read(buffer, 0, buffer.length);
+            failedAttempts = 0;
+        } catch (IOException e) {
+            failedAttempts++;
+
+            if (streamRecreator != null && awaitReadRetry(e)) {
+                reopenAtScannedPosition();
+                return;
+            }
+
+            String msg = "Unable to read line from JSON data stream";
+            MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
+            MantaPrestoExceptionUtils.annotateMantaObjectDetails(countingStream, me);
+            me.setContextValue("objectPath", objectPath);
+            me.setContextValue("bytesScanned", bytesScanned);
+            me.setContextValue("retries", retries);
+            throw me;
+        }
+
+        if (read < 0) {
+            endOfStream = true;
+
+            if (lineHasContent) {
+                lineHasContent = false;
+                pendingRows++;
+            }
+
+            return;
+        }
+
+        bytesScanned += read;
+
+        long rows = 0L;
+        boolean content = lineHasContent;
+
+        for (int i = 0; i < read; i++) {
+            final byte b = buffer[i];
+
+            if (b == '\n') {
+                if (content) {
+                    rows++;
+                    content = false;
+                }
+            } else if (b != ' ' && b != '\t' && b != '\r') {
+                content = true;
+            }
+        }
+
+        lineHasContent = content;
+        pendingRows += rows;
+    }
+
+    private boolean awaitReadRetry(final IOException e) {
+        try {
+            return retryPolicy.awaitRetry(MantaRetryPolicy.Operation.READ, objectPath,
+                    e, failedAttempts);
+        } catch (InterruptedIOException ie) {
+            String msg = "Interrupted while waiting to retry reading JSON data stream";
+            MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, ie);
+            me.setContextValue("objectPath", objectPath);
+            me.setContextValue("bytesScanned", bytesScanned);
+            throw me;
+        }
+    }
+
+    /**
+     * Opens a new connection to the object positioned after the bytes that
+     * have already been scanned.
+     */
+    private void reopenAtScannedPosition() {
+        LOG.debug("Reopening object after read failure [objectPath={},position={}]",
+                objectPath, bytesScanned);
+        retries++;
+        Closeables.closeQuietly(countingStream);
+        countingStream = streamRecreator.apply(bytesScanned);
+    }
+
+    @Override
+    public boolean getBoolean(final int field) {
+        throw unsupported("getBoolean", field);
+    }
+
+    @Override
+    public long getLong(final int field) {
+        throw unsupported("getLong", field);
+    }
+
+    @Override
+    public double getDouble(final int field) {
+        throw unsupported("getDouble", field);
+    }
+
+    @Override
+    public Slice getSlice(final int field) {
+        getColumn(field);
+        return values[field];
+    }
+
+    @Override
+    public Object getObject(final int field) {
+        throw unsupported("getObject", field);
+    }
+
+    @Override
+    public boolean isNull(final int field) {
+        getColumn(field);
+        return false;
+    }
+
+    @Override
+    public void close() {
+        Closeables.closeQuietly(countingStream);
+
+        if (buffer != null) {
+            bufferPool.returnArray(buffer);
+            buffer = null;
+        }
+    }
+
+    private UnsupportedOperationException unsupported(final String method, final int field) {
+        String column = getColumn(field).getName();
+        String template = "%s not supported for type [column=%s,field=%d,type=%s]";
+        String msg = String.format(template, method, column, field, getType(field));
+        return new UnsupportedOperationException(msg);
+    }
+
+    /**
+     * Gets the column corresponding to specified field number.
+     *
+     * @param field field to query for column information
+     * @return column corresponding to field
+     */
+    private MantaColumn getColumn(final int field) {
+        try {
+            return columns.get(field);
+        } catch (IndexOutOfBoundsException e) {
+            String msg = String.format("No column maps to field [field=%d]", field);
+            throw new IllegalArgumentException(msg, e);
+        }
+    }
+}
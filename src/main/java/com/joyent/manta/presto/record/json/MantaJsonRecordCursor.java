@@ -13,28 +13,35 @@ import com.facebook.presto.spi.block.BlockBuilder;
 import com.facebook.presto.spi.block.BlockBuilderStatus;
 import com.facebook.presto.spi.block.MapBlock;
 import com.facebook.presto.spi.block.SingleMapBlock;
+import com.facebook.presto.spi.predicate.Domain;
+import com.facebook.presto.spi.predicate.TupleDomain;
+import com.facebook.presto.spi.type.BigintType;
+import com.facebook.presto.spi.type.BooleanType;
 import com.facebook.presto.spi.type.DateType;
+import com.facebook.presto.spi.type.DoubleType;
+import com.facebook.presto.spi.type.IntegerType;
 import com.facebook.presto.spi.type.MapType;
+import com.facebook.presto.spi.type.SmallintType;
 import com.facebook.presto.spi.type.TimestampType;
+import com.facebook.presto.spi.type.TinyintType;
 import com.facebook.presto.spi.type.Type;
+import com.facebook.presto.spi.type.VarcharType;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.node.TextNode;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.base.Joiner;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Closeables;
 import com.joyent.manta.presto.MantaCountingInputStream;
+import com.joyent.manta.presto.MantaRetryPolicy;
 import com.joyent.manta.presto.column.MantaColumn;
 import com.joyent.manta.presto.exceptions.MantaPrestoExceptionUtils;
 import com.joyent.manta.presto.exceptions.MantaPrestoFileFormatException;
 import com.joyent.manta.presto.exceptions.MantaPrestoIllegalArgumentException;
 import com.joyent.manta.presto.exceptions.MantaPrestoRuntimeException;
 import com.joyent.manta.presto.exceptions.MantaPrestoUncheckedIOException;
+import com.joyent.manta.presto.types.FastDateTimeParser;
 import com.joyent.manta.presto.types.MapStringType;
 import io.airlift.slice.Slice;
 import io.airlift.slice.Slices;
@@ -43,8 +50,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Array;
-import java.net.SocketTimeoutException;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
@@ -59,7 +67,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
-import java.util.function.Supplier;
+import java.util.function.LongFunction;
 
 import static com.facebook.presto.spi.type.DoubleType.DOUBLE;
 import static com.facebook.presto.spi.type.VarcharType.VARCHAR;
@@ -95,34 +103,86 @@ public class MantaJsonRecordCursor implements RecordCursor {
     private long lines = 0L;
     private int retries = 0;
     private Long readTimeStartNanos = null;
-    private Map<Integer, JsonNode> row;
+    private final JsonNode[] row;
     private MantaCountingInputStream countingStream;
-    private MappingIterator<ObjectNode> lineItr;
+    private JsonParser parser;
+    private LineReader lineReader;
 
-    private final Supplier<MantaCountingInputStream> streamRecreator;
+    /**
+     * Position within the decompressed data at which the current
+     * {@link #parser} or {@link #lineReader} started reading.
+     */
+    private long readerStartPosition = 0L;
+
+    /**
+     * Position within the decompressed data just after the last row that was
+     * fully consumed. Reading is resumed from this position after a socket
+     * timeout.
+     */
+    private long resumePosition = 0L;
+
+    /**
+     * Flag indicating that reading can be resumed from {@link #resumePosition}.
+     * Rows that are elements of a top-level array can't be resumed from,
+     * because the data following them isn't valid JSON on its own.
+     */
+    private boolean resumable = true;
+
+    private final LongFunction<MantaCountingInputStream> streamRecreator;
+    private final MantaRetryPolicy retryPolicy;
     private final String objectPath;
     private final ObjectReader streamingReader;
-    private final Map<String, String> partitionToMatchValue;
+    private final JsonColumnExtractor columnExtractor;
+
+    /**
+     * Prefilter used to reject raw lines before they are parsed, or null
+     * when the table isn't declared as line delimited or no literal bytes
+     * could be derived from the row predicate. When
+     * present, the stream is read line by line using {@link #lineReader}
+     * instead of being parsed as a continuous stream by {@link #parser}.
+     */
+    private final LinePrefilter linePrefilter;
+
+    /**
+     * Domains that the values of each column must fall within, indexed by
+     * column ordinal, or null for columns that are not filtered.
+     */
+    private final Domain[] rowDomains;
+
+    /**
+     * Flag indicating that no row can ever match the predicate.
+     */
+    private final boolean matchesNone;
+    private long rowsFiltered = 0L;
 
     private final Map<String, DateTimeFormatter> parseFormats = new HashMap<>();
 
+    /**
+     * Allocation-free parsers that are tried before falling back to the
+     * {@link DateTimeFormatter} instances in {@link #parseFormats}. They are
+     * memoizing, so they are created per cursor instance.
+     */
+    private final Map<String, FastDateTimeParser> fastParseFormats = new HashMap<>();
+
     {
         parseFormats.put("[timestamp] iso-8601", DateTimeFormatter.ISO_INSTANT);
         parseFormats.put("[date] iso-8601", DateTimeFormatter.ISO_INSTANT);
+        fastParseFormats.put("[timestamp] iso-8601", FastDateTimeParser.iso8601());
+        fastParseFormats.put("[date] iso-8601", FastDateTimeParser.iso8601());
     }
 
 
     /**
      * Creates a new instance based on the specified parameters.
      *
-     * @param streamRecreator function used to recreate the underlying stream providing the JSON data
+     * @param streamRecreator function used to reopen the underlying stream at a byte position
      * @param columns list of columns in table
      * @param objectPath path to object in Manta
      * @param totalBytes total number of bytes in source object
      * @param countingStream input stream that counts the number of bytes processed
      * @param streamingReader streaming json deserialization reader
      */
-    public MantaJsonRecordCursor(final Supplier<MantaCountingInputStream> streamRecreator,
+    public MantaJsonRecordCursor(final LongFunction<MantaCountingInputStream> streamRecreator,
                                  final List<MantaColumn> columns,
                                  final String objectPath,
                                  final Long totalBytes,
@@ -135,7 +195,7 @@ public class MantaJsonRecordCursor implements RecordCursor {
     /**
      * Creates a new instance based on the specified parameters.
      *
-     * @param streamRecreator function used to recreate the underlying stream providing the JSON data
+     * @param streamRecreator function used to reopen the underlying stream at a byte position
      * @param columns list of columns in table
      * @param objectPath path to object in Manta
      * @param totalBytes total number of bytes in source object
@@ -143,14 +203,70 @@ public class MantaJsonRecordCursor implements RecordCursor {
      * @param streamingReader streaming json deserialization reader
      * @param partitionToMatchValue map of column to user specified partition value
      */
-    public MantaJsonRecordCursor(final Supplier<MantaCountingInputStream> streamRecreator,
+    public MantaJsonRecordCursor(final LongFunction<MantaCountingInputStream> streamRecreator,
                                  final List<MantaColumn> columns,
                                  final String objectPath,
                                  final Long totalBytes,
                                  final MantaCountingInputStream countingStream,
                                  final ObjectReader streamingReader,
                                  final Map<String, String> partitionToMatchValue) {
+        this(streamRecreator, columns, objectPath, totalBytes, countingStream, streamingReader,
+                partitionToMatchValue, TupleDomain.all());
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param streamRecreator function used to reopen the underlying stream at a byte position
+     * @param columns list of columns in table
+     * @param objectPath path to object in Manta
+     * @param totalBytes total number of bytes in source object
+     * @param countingStream input stream that counts the number of bytes processed
+     * @param streamingReader streaming json deserialization reader
+     * @param partitionToMatchValue map of column to user specified partition value
+     * @param rowPredicate predicate used to skip rows that can't match the query
+     */
+    @SuppressWarnings("ParameterNumber")
+    public MantaJsonRecordCursor(final LongFunction<MantaCountingInputStream> streamRecreator,
+                                 final List<MantaColumn> columns,
+                                 final String objectPath,
+                                 final Long totalBytes,
+                                 final MantaCountingInputStream countingStream,
+                                 final ObjectReader streamingReader,
+                                 final Map<String, String> partitionToMatchValue,
+                                 final TupleDomain<MantaColumn> rowPredicate) {
+        this(streamRecreator, columns, objectPath, totalBytes, countingStream, streamingReader,
+                partitionToMatchValue, rowPredicate, false, new MantaRetryPolicy());
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param streamRecreator function used to reopen the underlying stream at a byte position
+     * @param columns list of columns in table
+     * @param objectPath path to object in Manta
+     * @param totalBytes total number of bytes in source object
+     * @param countingStream input stream that counts the number of bytes processed
+     * @param streamingReader streaming json deserialization reader
+     * @param partitionToMatchValue map of column to user specified partition value
+     * @param rowPredicate predicate used to skip rows that can't match the query
+     * @param lineDelimited true if the table declares one JSON object per line,
+     *                      which allows raw lines to be prefiltered
+     * @param retryPolicy policy deciding which read failures are retried
+     */
+    @SuppressWarnings("ParameterNumber")
+    public MantaJsonRecordCursor(final LongFunction<MantaCountingInputStream> streamRecreator,
+                                 final List<MantaColumn> columns,
+                                 final String objectPath,
+                                 final Long totalBytes,
+                                 final MantaCountingInputStream countingStream,
+                                 final ObjectReader streamingReader,
+                                 final Map<String, String> partitionToMatchValue,
+                                 final TupleDomain<MantaColumn> rowPredicate,
+                                 final boolean lineDelimited,
+                                 final MantaRetryPolicy retryPolicy) {
         this.streamRecreator = streamRecreator;
+        this.retryPolicy = Objects.requireNonNull(retryPolicy, "Retry policy is null");
         this.columns = columns;
         populateColumnDateTimeFormats();
 
@@ -158,31 +274,58 @@ public class MantaJsonRecordCursor implements RecordCursor {
         this.totalBytes = totalBytes;
         this.streamingReader = streamingReader;
         this.countingStream = countingStream;
-        this.partitionToMatchValue = partitionToMatchValue;
-        this.lineItr = buildLineIteratorFromStream(countingStream);
+        this.matchesNone = rowPredicate.isNone();
+        this.rowDomains = buildRowDomains(columns, rowPredicate);
+
+        final JsonColumnExtractor.ValueFilter filter;
+
+        if (Arrays.stream(rowDomains).anyMatch(Objects::nonNull)) {
+            filter = new DomainValueFilter();
+        } else {
+            filter = null;
+        }
+
+        this.columnExtractor = new JsonColumnExtractor(streamingReader, columns,
+                partitionToMatchValue, filter);
+        this.row = new JsonNode[columns.size()];
+
+        // Objects that aren't declared as one object per line may be pretty printed
+        if (lineDelimited) {
+            this.linePrefilter = LinePrefilter.create(rowDomains);
+        } else {
+            this.linePrefilter = null;
+        }
+
+        openReaders(countingStream);
     }
 
-    private MappingIterator<ObjectNode> buildLineIteratorFromStream(final MantaCountingInputStream in) {
-        try {
-            return streamingReader.readValues(in);
-        } catch (JsonParseException e) {
-            String msg = "Can't parse input data as valid JSON";
-            MantaPrestoFileFormatException me = new MantaPrestoFileFormatException(msg, e);
-            me.setContextValue("objectPath", objectPath);
-            me.setContextValue("jsonPayload", e.getRequestPayloadAsString());
-            me.setContextValue("bytePosition", in.getCount());
+    /**
+     * Creates the reader that rows are read from, choosing between reading
+     * raw lines when there is a prefilter or streaming JSON otherwise.
+     *
+     * @param in stream to read from
+     */
+    private void openReaders(final MantaCountingInputStream in) {
+        this.readerStartPosition = in.getCount();
+        this.resumePosition = readerStartPosition;
+        this.resumable = true;
 
-            if (e.getProcessor() != null) {
-                final JsonParser parser = e.getProcessor();
-                me.setContextValue("parser", parser.getClass());
-                if (parser.getInputSource() != null) {
-                    me.setContextValue("inputSource", parser.getInputSource().getClass());
-                }
-            }
+        closeLineReader();
 
-            throw me;
+        if (linePrefilter != null) {
+            this.lineReader = new LineReader(in, in.getBufferPool());
+            this.parser = null;
+        } else {
+            this.lineReader = null;
+            this.parser = buildParserFromStream(in);
+        }
+    }
+
+    private JsonParser buildParserFromStream(final MantaCountingInputStream in) {
+        try {
+            return streamingReader.getFactory().createParser(in);
         } catch (IOException e) {
-            String msg = "Unable to create a line iterator JSON parser";
+            String msg = "Unable to create a streaming JSON parser";
             MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
             me.setContextValue("objectPath", objectPath);
             me.setContextValue("bytePosition", in.getCount());
@@ -190,6 +333,48 @@ public class MantaJsonRecordCursor implements RecordCursor {
         }
     }
 
+    /**
+     * Relates the domains within a predicate to the ordinal of each column.
+     * Only the domains of columns with a type that can be converted directly
+     * from the JSON value are used.
+     *
+     * @param columns list of columns in table
+     * @param rowPredicate predicate containing the domains of each column
+     * @return array of domains indexed by column ordinal
+     */
+    private static Domain[] buildRowDomains(final List<MantaColumn> columns,
+                                            final TupleDomain<MantaColumn> rowPredicate) {
+        final Domain[] domains = new Domain[columns.size()];
+
+        if (!rowPredicate.getDomains().isPresent()) {
+            return domains;
+        }
+
+        final Map<MantaColumn, Domain> columnDomains = rowPredicate.getDomains().get();
+
+        for (int i = 0; i < columns.size(); i++) {
+            final Domain domain = columnDomains.get(columns.get(i));
+
+            if (domain != null && !domain.isAll() && isFilterableType(columns.get(i).getType())) {
+                domains[i] = domain;
+            }
+        }
+
+        return domains;
+    }
+
+    private static boolean isFilterableType(final Type type) {
+        return type instanceof VarcharType
+                || BigintType.BIGINT.equals(type)
+                || IntegerType.INTEGER.equals(type)
+                || SmallintType.SMALLINT.equals(type)
+                || TinyintType.TINYINT.equals(type)
+                || DoubleType.DOUBLE.equals(type)
+                || BooleanType.BOOLEAN.equals(type)
+                || DateType.DATE.equals(type)
+                || TimestampType.TIMESTAMP.equals(type);
+    }
+
     private void populateColumnDateTimeFormats() {
         for (MantaColumn c : this.columns) {
             final Type type = c.getType();
@@ -221,6 +406,13 @@ public class MantaJsonRecordCursor implements RecordCursor {
 
                 try {
                     parseFormats.computeIfAbsent(extraInfo, s -> DateTimeFormatter.ofPattern(pattern));
+
+                    final FastDateTimeParser fastParser = FastDateTimeParser.ofPattern(
+                            pattern, TimestampType.TIMESTAMP.equals(type));
+
+                    if (fastParser != null) {
+                        fastParseFormats.putIfAbsent(extraInfo, fastParser);
+                    }
                 } catch (IllegalArgumentException e) {
                     String msg = "There was a problem parsing a date time value";
                     MantaPrestoFileFormatException me = new MantaPrestoFileFormatException(msg, e);
@@ -255,102 +447,199 @@ public class MantaJsonRecordCursor implements RecordCursor {
 
     @Override
     public boolean advanceNextPosition() {
-        return advanceNextPosition(-1L);
-    }
-
-    /**
-     * Advances the cursor to the next position.
-     *
-     * @param lineToAdvanceTo if -1 or less, it advances to the next available line
-     *                        otherwise, it advances to the line specified
-     * @return true if a line is available, otherwise false if not available
-     */
-    private boolean advanceNextPosition(final long lineToAdvanceTo) {
         if (readTimeStartNanos == null) {
             readTimeStartNanos = System.nanoTime();
         }
 
-        if (!lineItr.hasNext()) {
+        if (matchesNone) {
+            return false;
+        }
+
+        lines++;
+
+        final boolean hasRow = readRowWithRetries();
+
+        if (!hasRow) {
+            lines--;
+
             if (totalBytes == null) {
                 totalBytes = countingStream.getCount();
             }
-            return false;
         }
 
-        // Only increment the line count if we aren't skipping lines
-        if (lineToAdvanceTo < 0) {
-            lines++;
+        return hasRow;
+    }
+
+    /**
+     * Reads the next row, reopening the object at the byte position after
+     * the last consumed row when reading fails with a transient failure.
+     *
+     * @return true if a row was read, otherwise false if the end of the stream was reached
+     */
+    private boolean readRowWithRetries() {
+        int failedAttempts = 0;
+
+        while (true) {
+            try {
+                return readRow();
+            } catch (RuntimeException e) {
+                MantaPrestoRuntimeException me = new MantaPrestoRuntimeException(e);
+                MantaPrestoExceptionUtils.annotateMantaObjectDetails(countingStream, me);
+
+                me.setContextValue("line", lines);
+                me.setContextValue("retries", retries);
+
+                if (parser != null && parser.getCurrentLocation() != null) {
+                    me.addContextValue("jsonIteratorByteOffset",
+                            parser.getCurrentLocation().getByteOffset());
+                }
+
+                me.addContextValue("streamBytePosition", countingStream.getCount());
+
+                failedAttempts++;
+
+                /* When we encounter a transient failure such as a socket read
+                 * time out, we attempt to open up a new connection at the byte
+                 * position of the current line that hasn't been successfully
+                 * read. We do this because there are spurious network
+                 * conditions in which we have no proper way of recovering
+                 * from without doing a retry. Parsing failures are never
+                 * retried.
+                 */
+                if (streamRecreator == null
+                        || !resumable
+                        || !(e instanceof UncheckedIOException)
+                        || !awaitReadRetry(e, failedAttempts)) {
+                    throw me;
+                }
+
+                final long position = resumePosition;
+                Closeables.closeQuietly(countingStream);
+                countingStream = streamRecreator.apply(position);
+                openReaders(countingStream);
+                retries++;
+            }
         }
+    }
 
+    private boolean awaitReadRetry(final RuntimeException e, final int failedAttempts) {
         try {
-            // Skip lines until we hit the specified line
-            for (int i = 0; i < lineToAdvanceTo; i++) {
-                lineItr.next();
+            return retryPolicy.awaitRetry(MantaRetryPolicy.Operation.READ, objectPath,
+                    e, failedAttempts);
+        } catch (InterruptedIOException ie) {
+            String msg = "Interrupted while waiting to retry reading JSON data stream";
+            MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, ie);
+            me.setContextValue("objectPath", objectPath);
+            me.setContextValue("line", lines);
+            throw me;
+        }
+    }
+
+    /**
+     * Reads the next row from the JSON stream into {@link #row}.
+     *
+     * @return true if a row was read, otherwise false if the end of the stream was reached
+     */
+    private boolean readRow() {
+        try {
+            if (lineReader != null) {
+                return readPrefilteredRow();
             }
 
-            ObjectNode node = lineItr.next();
-            row = mapOrdinalToNode(node);
-        } catch (RuntimeException e) {
-            MantaPrestoRuntimeException me = new MantaPrestoRuntimeException(e);
-            MantaPrestoExceptionUtils.annotateMantaObjectDetails(countingStream, me);
+            while (columnExtractor.readRow(parser, row)) {
+                if (JsonColumnExtractor.isInRootArray(parser)) {
+                    resumable = false;
+                } else {
+                    resumePosition = readerStartPosition + parser.getCurrentLocation().getByteOffset();
+                }
 
-            me.setContextValue("line", lines);
-            me.setContextValue("lineToAdvanceTo", lineToAdvanceTo);
-            me.setContextValue("retries", retries);
+                if (!columnExtractor.isRejected()) {
+                    return true;
+                }
 
-            if (lineItr.getCurrentLocation() != null) {
-                me.addContextValue("jsonIteratorByteOffset",
-                        lineItr.getCurrentLocation().getByteOffset());
+                // Rejected rows still count as lines
+                rowsFiltered++;
+                lines++;
             }
 
-            me.addContextValue("streamBytePosition", countingStream.getCount());
-
-            /* When we encounter a socket read time out, we attempt to open up
-             * a new connection at the position of the current line that
-             * hasn't been successfully read. We do this because there are
-             * spurious network conditions in which we have no proper way of
-             * recovering from without doing a retry.
-             */
-            if (e.getCause() != null
-                    && e.getCause().getClass().equals(SocketTimeoutException.class)
-                    && streamRecreator != null
-                    && lineToAdvanceTo < 0) {
-                LOG.info("Retrying download for object due to socket timeout", me);
-                Closeables.closeQuietly(countingStream);
-                countingStream = streamRecreator.get();
-                lineItr = buildLineIteratorFromStream(countingStream);
-
-                /* We don't allow more than a single retry because if you are
-                 * getting many socket timeouts it is indicative of a failure
-                 * in which we want to error on.
-                 */
-                retries++;
+            return false;
+        } catch (JsonParseException e) {
+            String msg = "Can't parse input data as valid JSON";
+            MantaPrestoFileFormatException me = new MantaPrestoFileFormatException(msg, e);
+            me.setContextValue("objectPath", objectPath);
+            me.setContextValue("jsonPayload", e.getRequestPayloadAsString());
+            me.setContextValue("bytePosition", countingStream.getCount());
 
-                /* We download the data file again and skip lines until we reach
-                 * the current line. We pass in the current line minus one because
-                 * lines was incremented before the cursor was advanced we did this
-                 * because it allowed us to return the correct position for errors.
-                 * However, it does make it a bit unclear when skipping lines
-                 * as we do below.
-                 */
-                return advanceNextPosition(lines - 1);
+            if (e.getProcessor() != null) {
+                final JsonParser processor = e.getProcessor();
+                me.setContextValue("parser", processor.getClass());
+                if (processor.getInputSource() != null) {
+                    me.setContextValue("inputSource", processor.getInputSource().getClass());
+                }
             }
 
             throw me;
+        } catch (IOException e) {
+            String msg = "Unable to read line from JSON data stream";
+            MantaPrestoUncheckedIOException me = new MantaPrestoUncheckedIOException(msg, e);
+            me.setContextValue("objectPath", objectPath);
+            me.setContextValue("bytePosition", countingStream.getCount());
+            throw me;
+        }
+    }
+
+    /**
+     * Reads the next row by reading raw lines and only parsing the lines
+     * that pass the {@link #linePrefilter}.
+     *
+     * @return true if a row was read, otherwise false if the end of the stream was reached
+     * @throws IOException thrown when the underlying stream can't be read or parsed
+     */
+    private boolean readPrefilteredRow() throws IOException {
+        while (readNonBlankLine()) {
+            resumePosition = readerStartPosition + lineReader.getBytesConsumed();
+
+            final byte[] buffer = lineReader.getBuffer();
+            final int offset = lineReader.getLineOffset();
+            final int length = lineReader.getLineLength();
+
+            if (linePrefilter.mayMatch(buffer, offset, length)) {
+                try (JsonParser lineParser = streamingReader.getFactory().createParser(buffer, offset, length)) {
+                    if (columnExtractor.readRow(lineParser, row) && !columnExtractor.isRejected()) {
+                        return true;
+                    }
+                }
+            }
+
+            // Rejected rows still count as lines
+            rowsFiltered++;
+            lines++;
         }
 
-        return true;
+        return false;
+    }
+
+    private boolean readNonBlankLine() throws IOException {
+        while (lineReader.readLine()) {
+            if (!lineReader.isBlankLine()) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     @Override
     public boolean getBoolean(final int field) {
-        return row.get(field).asBoolean();
+        return row[field].asBoolean();
     }
 
     @Override
     public long getLong(final int field) {
-        final MantaColumn column = getColumn(field);
-        final JsonNode value = row.get(field);
+        return getLong(row[field], getColumn(field));
+    }
+
+    private long getLong(final JsonNode value, final MantaColumn column) {
         final String type = column.getType().getTypeSignature().getBase();
 
         switch (type) {
@@ -392,10 +681,21 @@ public class MantaJsonRecordCursor implements RecordCursor {
                             .atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
                 default:
                     if (value.isTextual()) {
+                        final String text = value.asText();
+                        final FastDateTimeParser fastParser = fastParseFormats.get(extraInfo);
+
+                        if (fastParser != null) {
+                            final long epochMillis = fastParser.parseEpochMillis(text);
+
+                            if (epochMillis != FastDateTimeParser.UNPARSEABLE) {
+                                return epochMillis;
+                            }
+                        }
+
                         final DateTimeFormatter format = parseFormats.get(extraInfo);
                         Objects.requireNonNull(format);
 
-                        final TemporalAccessor temporal = format.parse(value.asText());
+                        final TemporalAccessor temporal = format.parse(text);
                         return Instant.from(temporal).toEpochMilli();
                     } else if (value.isNumber()) {
                         return value.longValue();
@@ -447,10 +747,21 @@ public class MantaJsonRecordCursor implements RecordCursor {
                     return value.longValue();
                 default:
                     if (value.isTextual()) {
+                        final String text = value.asText();
+                        final FastDateTimeParser fastParser = fastParseFormats.get(extraInfo);
+
+                        if (fastParser != null) {
+                            final long epochDay = fastParser.parseEpochDay(text);
+
+                            if (epochDay != FastDateTimeParser.UNPARSEABLE) {
+                                return epochDay;
+                            }
+                        }
+
                         final DateTimeFormatter format = parseFormats.get(extraInfo);
                         Objects.requireNonNull(format);
 
-                        TemporalAccessor temporal = format.parse(value.asText());
+                        TemporalAccessor temporal = format.parse(text);
 
                         if (temporal.isSupported(ChronoField.EPOCH_DAY)) {
                             return temporal.getLong(ChronoField.EPOCH_DAY);
@@ -480,13 +791,15 @@ public class MantaJsonRecordCursor implements RecordCursor {
 
     @Override
     public double getDouble(final int field) {
-        return row.get(field).asDouble();
+        return row[field].asDouble();
     }
 
     @Override
     public Slice getSlice(final int field) {
-        final JsonNode node = row.get(field);
+        return getSlice(field, getRowValue(field));
+    }
 
+    private Slice getSlice(final int field, final JsonNode node) {
         if (node.isNull()) {
             return null;
         }
@@ -513,7 +826,7 @@ public class MantaJsonRecordCursor implements RecordCursor {
             }
 
             me.setContextValue("fieldNumber", field);
-            me.setContextValue("fieldMappings", Joiner.on("->").join(row.entrySet()));
+            me.setContextValue("fieldMappings", Arrays.toString(row));
             me.setContextValue("node", node);
             throw me;
         }
@@ -527,7 +840,7 @@ public class MantaJsonRecordCursor implements RecordCursor {
 
         if (type instanceof MapType) {
             @SuppressWarnings("unchecked")
-            final ObjectNode keyVals = (ObjectNode) getRow().get(field);
+            final ObjectNode keyVals = (ObjectNode) getRow()[field];
             final MapType mapType = (MapType) getType(field);
 
             if (type.equals(MapStringType.MAP_STRING_STRING)) {
@@ -545,68 +858,71 @@ public class MantaJsonRecordCursor implements RecordCursor {
 
     @Override
     public boolean isNull(final int field) {
-        final JsonNode node = row.get(field);
-
-        if (node == null) {
-            String msg = "Invalid field number specified";
-            MantaPrestoIllegalArgumentException me = new MantaPrestoIllegalArgumentException(msg);
-            me.setContextValue("objectPath", objectPath);
-            me.setContextValue("fieldNumber", field);
-            me.setContextValue("fieldMappings", Joiner.on("->").join(row.entrySet()));
-            throw me;
-        }
-
-        return node.isNull();
+        return getRowValue(field).isNull();
     }
 
     @Override
     public void close() {
         try {
-            lineItr.close();
+            if (parser != null) {
+                parser.close();
+            }
         } catch (IOException e) {
             LOG.info("Error closing JSON line parser", e);
         }
 
+        closeLineReader();
+
         Closeables.closeQuietly(countingStream);
     }
 
-    private Map<Integer, JsonNode> mapOrdinalToNode(final ObjectNode object) {
-        ImmutableMap.Builder<Integer, JsonNode> map = new ImmutableMap.Builder<>();
-
-        int count = 0;
-        for (MantaColumn column : columns) {
-            final String columnName = Objects.requireNonNull(column.getName(),
-                    "Column name is null");
-
-            final JsonNode node;
+    /**
+     * Closes the line reader, if any, so that its buffer is returned to the pool.
+     */
+    private void closeLineReader() {
+        if (lineReader == null) {
+            return;
+        }
 
-            final String partitionMatchValue = partitionToMatchValue.get(column.getName());
-            if (partitionMatchValue != null) {
-                node = new TextNode(partitionMatchValue);
-            } else {
-                node = object.get(columnName);
-            }
+        try {
+            lineReader.close();
+        } catch (IOException e) {
+            LOG.info("Error closing JSON line reader", e);
+        }
+    }
 
-            if (node == null) {
-                String msg = "No column found with the specified name";
-                MantaPrestoIllegalArgumentException e = new MantaPrestoIllegalArgumentException(msg);
-                e.setContextValue("columnName", columnName);
-                String fields = Joiner.on(',').join(object.fieldNames());
-                e.setContextValue("fields", fields);
+    private JsonNode getRowValue(final int field) {
+        final JsonNode node;
 
-                throw e;
-            }
+        if (field >= 0 && field < row.length) {
+            node = row[field];
+        } else {
+            node = null;
+        }
 
-            map.put(count++, node);
+        if (node == null) {
+            String msg = "Invalid field number specified";
+            MantaPrestoIllegalArgumentException me = new MantaPrestoIllegalArgumentException(msg);
+            me.setContextValue("objectPath", objectPath);
+            me.setContextValue("fieldNumber", field);
+            me.setContextValue("fieldMappings", Arrays.toString(row));
+            throw me;
         }
 
-        return map.build();
+        return node;
     }
 
-    protected Map<Integer, JsonNode> getRow() {
+    protected JsonNode[] getRow() {
         return row;
     }
 
+    /**
+     * @return number of rows skipped because they could not match the row predicate
+     */
+    long getRowsFiltered() {
+        return rowsFiltered;
+    }
+
     /**
      * Gets the column corresponding to specified field number.
      *
@@ -727,4 +1043,47 @@ public class MantaJsonRecordCursor implements RecordCursor {
 
         return builder.build();
     }
+
+    /**
+     * {@link JsonColumnExtractor.ValueFilter} implementation that converts
+     * each JSON value to the same native value returned by the cursor's
+     * getters and tests it against the domain of its column. Values that
+     * can't be converted are accepted so that the getter reports the error.
+     */
+    private class DomainValueFilter implements JsonColumnExtractor.ValueFilter {
+        @Override
+        public boolean isFiltered(final int field) {
+            return rowDomains[field] != null;
+        }
+
+        @Override
+        public boolean test(final int field, final JsonNode value) {
+            final Domain domain = rowDomains[field];
+
+            try {
+                return domain.includesNullableValue(toNativeValue(field, value));
+            } catch (RuntimeException e) {
+                return true;
+            }
+        }
+
+        private Object toNativeValue(final int field, final JsonNode value) {
+            if (value.isNull()) {
+                return null;
+            }
+
+            final MantaColumn column = getColumn(field);
+            final Class<?> javaType = column.getType().getJavaType();
+
+            if (javaType == long.class) {
+                return getLong(value, column);
+            } else if (javaType == double.class) {
+                return value.asDouble();
+            } else if (javaType == boolean.class) {
+                return value.asBoolean();
+            } else {
+                return getSlice(field, value);
+            }
+        }
+    }
 }
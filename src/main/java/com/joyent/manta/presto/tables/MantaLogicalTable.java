@@ -54,6 +54,11 @@ public class MantaLogicalTable implements Comparable<MantaLogicalTable> {
      */
     private final List<MantaColumn> columns;
 
+    /**
+     * Flag indicating that every file holds exactly one JSON object per line.
+     */
+    private final boolean lineDelimited;
+
     /**
      * Creates a new instance based on the specified parameters.
      *
@@ -69,6 +74,7 @@ public class MantaLogicalTable implements Comparable<MantaLogicalTable> {
         this.dataFileType = dataFileType;
         this.partitionDefinition = null;
         this.columns = null;
+        this.lineDelimited = false;
     }
     /**
      * Creates a new instance based on the specified parameters.
@@ -87,6 +93,24 @@ public class MantaLogicalTable implements Comparable<MantaLogicalTable> {
         this.dataFileType = dataFileType;
         this.partitionDefinition = partitionDefinition;
         this.columns = null;
+        this.lineDelimited = false;
+    }
+
+    /**
+     * Creates a new instance based on the specified parameters.
+     *
+     * @param tableName table name and schema that maps to the logical table
+     * @param rootPath path in which all of the filters will be applied
+     * @param dataFileType data type of which all files will conform
+     * @param partitionDefinition object representing partitioning scheme for table
+     * @param columns JsonNode object representing json that defines columns
+     */
+    public MantaLogicalTable(final String tableName,
+                             final String rootPath,
+                             final MantaDataFileType dataFileType,
+                             final MantaLogicalTablePartitionDefinition partitionDefinition,
+                             final List<MantaColumn> columns) {
+        this(tableName, rootPath, dataFileType, partitionDefinition, columns, false);
     }
 
     /**
@@ -98,6 +122,7 @@ public class MantaLogicalTable implements Comparable<MantaLogicalTable> {
      * @param dataFileType data type of which all files will conform
      * @param partitionDefinition object representing partitioning scheme for table
      * @param columns JsonNode object representing json that defines columns
+     * @param lineDelimited true if every file holds exactly one JSON object per line
      */
     @JsonCreator
     @SuppressWarnings("AvoidInlineConditionals")
@@ -105,12 +130,14 @@ public class MantaLogicalTable implements Comparable<MantaLogicalTable> {
                              @JsonProperty("rootPath") final String rootPath,
                              @JsonProperty("dataFileType") final MantaDataFileType dataFileType,
                              @JsonProperty("partitioning") final MantaLogicalTablePartitionDefinition partitionDefinition,
-                             @JsonProperty("columns") final List<MantaColumn> columns) {
+                             @JsonProperty("columns") final List<MantaColumn> columns,
+                             @JsonProperty("lineDelimited") final boolean lineDelimited) {
         this.tableName = Validate.notBlank(tableName, "table name must not be blank");
         this.rootPath = Validate.notBlank(rootPath, "root path must not be blank");
         this.dataFileType = Objects.requireNonNull(dataFileType, "data file type is null");
         this.partitionDefinition = partitionDefinition;
         this.columns = columns;
+        this.lineDelimited = lineDelimited;
     }
 
     @JsonProperty("name")
@@ -138,6 +165,11 @@ public class MantaLogicalTable implements Comparable<MantaLogicalTable> {
         return partitionDefinition;
     }
 
+    @JsonProperty
+    public boolean isLineDelimited() {
+        return lineDelimited;
+    }
+
     /**
      * Predicate that applies the directory filter regex if it is not null.
      *
@@ -185,7 +217,8 @@ public class MantaLogicalTable implements Comparable<MantaLogicalTable> {
         ToStringBuilder builder = new ToStringBuilder(this)
                 .append("tableName", tableName)
                 .append("rootPath", rootPath)
-                .append("dataFileType", dataFileType);
+                .append("dataFileType", dataFileType)
+                .append("lineDelimited", lineDelimited);
 
         if (partitionDefinition != null) {
             builder.append("partitionDefinition", partitionDefinition);
@@ -210,12 +243,13 @@ public class MantaLogicalTable implements Comparable<MantaLogicalTable> {
         return Objects.equals(tableName, that.tableName)
                 && Objects.equals(rootPath, that.rootPath)
                 && Objects.equals(dataFileType, that.dataFileType)
-                && Objects.equals(partitionDefinition, that.partitionDefinition);
+                && Objects.equals(partitionDefinition, that.partitionDefinition)
+                && lineDelimited == that.lineDelimited;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(tableName, rootPath, dataFileType, partitionDefinition);
+        return Objects.hash(tableName, rootPath, dataFileType, partitionDefinition, lineDelimited);
     }
 
     @Override
@@ -114,16 +114,45 @@ public class MantaLogicalTableDeserializer extends JsonDeserializer<MantaLogical
                 readPartitionDefinition(objectNode, p);
 
         final List<MantaColumn> columnConfig = readColumnsArray(objectNode.get("columns"), p);
+        final boolean lineDelimited = readLineDelimited(objectNode, p);
 
         try {
             return new MantaLogicalTable(name, rootPath, dataFileType,
-                    partitionDefinition, columnConfig);
+                    partitionDefinition, columnConfig, lineDelimited);
         } catch (Exception e) {
             throw new JsonMappingException(p, "Unable to create new "
                     + "MantaLogicalTable instance", e);
         }
     }
 
+    /**
+     * Reads the optional flag indicating that every file of the table holds
+     * exactly one JSON object per line.
+     *
+     * @param objectNode table definition to read from
+     * @param p json parser to embed in error messages
+     *
+     * @return false if element is null/blank, otherwise, boolean representation
+     * @throws JsonMappingException thrown when the JSON file contains invalid values
+     */
+    private static boolean readLineDelimited(final ObjectNode objectNode, final JsonParser p)
+            throws JsonMappingException {
+        final JsonNode node = objectNode.get("lineDelimited");
+
+        if (node == null || node.isNull()) {
+            return false;
+        }
+
+        if (node.isBoolean()) {
+            return node.booleanValue();
+        } else if (node.isTextual()) {
+            return BooleanUtils.toBoolean(node.textValue());
+        } else {
+            String msg = "Expected JSON element [lineDelimited] to be a boolean or string";
+            throw new JsonMappingException(p, msg);
+        }
+    }
+
     /**
      * Reads the partition section of a table logical definition object.
      */
@@ -318,9 +347,10 @@ public class MantaLogicalTableDeserializer extends JsonDeserializer<MantaLogical
                 final String extraInfo = readFormat(objectNode, p, type);
                 final String comment = readComment(objectNode, p);
                 final boolean hidden = readHidden(objectNode, p);
+                final String path = readPath(objectNode, p);
 
                 final MantaColumn column = new MantaColumn(
-                        name, type, comment, extraInfo, hidden);
+                        name, type, comment, extraInfo, hidden, path);
                 columnBuilder.add(column);
             }
 
@@ -547,4 +577,46 @@ public class MantaLogicalTableDeserializer extends JsonDeserializer<MantaLogical
             throw new JsonMappingException(p, msg);
         }
     }
+
+    /**
+     * Reads the optional path to a nested value from a JSON element for use
+     * in a {@link MantaColumn}. Paths may be specified as dotted property
+     * names (eg req.headers.host) or as JSON pointers (eg /res/statusCode).
+     *
+     * @param element element to read from
+     * @param p json parser to embed in error messages
+     *
+     * @return null if element is null/blank, otherwise the path as a string
+     * @throws JsonMappingException thrown when the JSON file contains invalid values
+     */
+    @Nullable
+    private static String readPath(final ObjectNode element, final JsonParser p)
+            throws JsonMappingException {
+        final JsonNode node = element.get("path");
+
+        if (node == null || node.isNull()) {
+            return null;
+        }
+
+        if (!node.isTextual()) {
+            String msg = "Expected JSON element [path] to be a string";
+            throw new JsonMappingException(p, msg);
+        }
+
+        final String path = node.asText();
+
+        if (StringUtils.isBlank(path)) {
+            return null;
+        }
+
+        try {
+            MantaColumn.parsePath(path);
+        } catch (IllegalArgumentException e) {
+            String msg = String.format("The specified path was an invalid "
+                    + "JSON path: %s", path);
+            throw new JsonMappingException(p, msg, e);
+        }
+
+        return path;
+    }
 }
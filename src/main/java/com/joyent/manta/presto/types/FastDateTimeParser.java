@@ -0,0 +1,672 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.types;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Allocation-free parser for the fixed-width date time shapes that show up
+ * in log files. It handles ISO-8601 instants and a subset of the
+ * {@link java.time.format.DateTimeFormatter} pattern language
+ * (<code>yyyy MM dd HH mm ss S..S X XX XXX</code> plus literals).</p>
+ *
+ * <p>The parser never throws for input that doesn't fit its shape. Instead, it
+ * returns {@link #UNPARSEABLE} so that the caller can fall back to
+ * {@link java.time.format.DateTimeFormatter} which will produce the same
+ * result (or error) that it always has. Edge cases like leap seconds or
+ * out of range days are deliberately left to the fallback.</p>
+ *
+ * <p>Instances memoize the last date and time down to the second, so they are
+ * <strong>not</strong> thread-safe and are intended to be owned by a single
+ * record cursor (and thereby a single split).</p>
+ *
+ * @since 1.0.0
+ */
+public final class FastDateTimeParser {
+    /**
+     * Sentinel value (value {@value}) returned when input can't be parsed by
+     * the fast path.
+     */
+    public static final long UNPARSEABLE = Long.MIN_VALUE;
+
+    private static final int FIELD_LITERAL = 0;
+    private static final int FIELD_YEAR = 1;
+    private static final int FIELD_MONTH = 2;
+    private static final int FIELD_DAY = 3;
+    private static final int FIELD_HOUR = 4;
+    private static final int FIELD_MINUTE = 5;
+    private static final int FIELD_SECOND = 6;
+    private static final int FIELD_FRACTION = 7;
+    private static final int FIELD_OFFSET = 8;
+
+    /**
+     * Offset variants mirroring the X, XX and XXX pattern letters.
+     */
+    private static final int OFFSET_HOURS_OPTIONAL_MINUTES = 1;
+    private static final int OFFSET_HOURS_MINUTES = 2;
+    private static final int OFFSET_HOURS_COLON_MINUTES = 3;
+
+    private static final int YEAR_DIGITS = 4;
+    private static final int MAX_FRACTION_DIGITS = 9;
+    private static final int DECIMAL = 10;
+    private static final int MONTHS_PER_YEAR = 12;
+    private static final int HOURS_PER_DAY = 24;
+    private static final int MINUTES_PER_HOUR = 60;
+    private static final int SECONDS_PER_MINUTE = 60;
+    private static final int SECONDS_PER_HOUR = 3_600;
+    private static final long SECONDS_PER_DAY = 86_400L;
+    private static final long MILLIS_PER_SECOND = 1_000L;
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final int NANOS_PER_MILLI = 1_000_000;
+    private static final int MAX_OFFSET_HOURS = 18;
+
+    /**
+     * Position of the end of the seconds field in an ISO-8601 instant
+     * (yyyy-MM-ddTHH:mm:ss).
+     */
+    private static final int ISO_SECONDS_END = 19;
+
+    private static final int[] NANO_SCALE = new int[] {
+            100_000_000, 10_000_000, 1_000_000, 100_000, 10_000,
+            1_000, 100, 10, 1
+    };
+
+    private static final int[] DAYS_IN_MONTH = new int[] {
+            31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31
+    };
+
+    /**
+     * Field types in the order in which they appear. Null for ISO-8601.
+     */
+    private final int[] fieldTypes;
+
+    /**
+     * Field widths (digit count) or literal characters or offset variants.
+     */
+    private final int[] fieldArgs;
+
+    /**
+     * Flag indicating that the parsed value represents a point in time
+     * (it carries an offset) rather than a local date.
+     */
+    private final boolean instantBased;
+
+    /**
+     * Number of leading characters that contain everything up to and
+     * including the seconds field. Used as the memoization key.
+     */
+    private final int memoPrefixLength;
+
+    private final char[] memoPrefix;
+    private boolean memoValid = false;
+    private long memoLocalEpochSecond;
+
+    /* Scratch state for the current parse - kept in fields to avoid
+     * allocating a result object per value. */
+    private int year;
+    private int month;
+    private int day;
+    private int hour;
+    private int minute;
+    private int second;
+    private int nanos;
+    private int offsetSeconds;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param fieldTypes field types in the order in which they appear
+     * @param fieldArgs field arguments
+     * @param instantBased true if the value carries an offset
+     * @param memoPrefixLength number of characters that identify a second
+     */
+    private FastDateTimeParser(final int[] fieldTypes,
+                               final int[] fieldArgs,
+                               final boolean instantBased,
+                               final int memoPrefixLength) {
+        this.fieldTypes = fieldTypes;
+        this.fieldArgs = fieldArgs;
+        this.instantBased = instantBased;
+        this.memoPrefixLength = memoPrefixLength;
+        this.memoPrefix = new char[memoPrefixLength];
+    }
+
+    /**
+     * Creates a new parser for ISO-8601 instants in the form of
+     * <code>yyyy-MM-ddTHH:mm:ss[.S..S]Z</code>. Numeric offsets are left
+     * unparsed, like {@link java.time.format.DateTimeFormatter#ISO_INSTANT}
+     * does on Java 8, so that the fallback formatter decides how they are handled.
+     *
+     * @return new parser instance
+     */
+    public static FastDateTimeParser iso8601() {
+        return new FastDateTimeParser(null, null, true, ISO_SECONDS_END);
+    }
+
+    /**
+     * Compiles a {@link java.time.format.DateTimeFormatter} style pattern into
+     * a fast parser if every element of the pattern is supported.
+     *
+     * @param pattern date time pattern (eg yyyy-MM-dd'T'HH:mm:ssXXX)
+     * @param requireInstant true if the pattern must identify a point in time
+     *                       (eg for timestamp columns)
+     * @return new parser instance or null if the pattern can't be handled by
+     *         the fast path
+     */
+    public static FastDateTimeParser ofPattern(final String pattern,
+                                               final boolean requireInstant) {
+        if (pattern == null || pattern.isEmpty()) {
+            return null;
+        }
+
+        final List<int[]> fields = new ArrayList<>();
+        final boolean[] seen = new boolean[FIELD_OFFSET + 1];
+        int width = 0;
+        int memoPrefixLength = 0;
+        int i = 0;
+
+        while (i < pattern.length()) {
+            final char c = pattern.charAt(i);
+
+            if (c == '\'') {
+                final int close = pattern.indexOf('\'', i + 1);
+
+                // Unterminated or escaped quotes aren't worth the complexity
+                if (close <= i + 1) {
+                    return null;
+                }
+
+                for (int j = i + 1; j < close; j++) {
+                    fields.add(new int[] {FIELD_LITERAL, pattern.charAt(j)});
+                    width++;
+                }
+
+                i = close + 1;
+                continue;
+            }
+
+            // Optional sections and reserved characters are left to the JDK
+            if (c == '[' || c == ']' || c == '{' || c == '}' || c == '#') {
+                return null;
+            }
+
+            if (!Character.isLetter(c)) {
+                fields.add(new int[] {FIELD_LITERAL, c});
+                width++;
+                i++;
+                continue;
+            }
+
+            int run = 1;
+            while (i + run < pattern.length() && pattern.charAt(i + run) == c) {
+                run++;
+            }
+
+            final int type = fieldTypeForLetter(c, run);
+
+            if (type < 0 || seen[type]) {
+                return null;
+            }
+
+            seen[type] = true;
+
+            if (type == FIELD_OFFSET) {
+                fields.add(new int[] {FIELD_OFFSET, run});
+                // Offsets are variable width, so they must be last
+                if (i + run != pattern.length()) {
+                    return null;
+                }
+            } else {
+                fields.add(new int[] {type, run});
+                width += run;
+            }
+
+            /* Everything up to and including the last date or time field
+             * (other than the fraction) is used as the memoization key, so
+             * a fraction can't appear within it. */
+            if (type != FIELD_FRACTION && type != FIELD_OFFSET) {
+                if (seen[FIELD_FRACTION]) {
+                    return null;
+                }
+
+                memoPrefixLength = width;
+            }
+
+            i += run;
+        }
+
+        if (!seen[FIELD_YEAR] || !seen[FIELD_MONTH] || !seen[FIELD_DAY]) {
+            return null;
+        }
+
+        if (requireInstant && (!seen[FIELD_HOUR] || !seen[FIELD_OFFSET])) {
+            return null;
+        }
+
+        final int[] types = new int[fields.size()];
+        final int[] args = new int[fields.size()];
+
+        for (int f = 0; f < types.length; f++) {
+            types[f] = fields.get(f)[0];
+            args[f] = fields.get(f)[1];
+        }
+
+        return new FastDateTimeParser(types, args, requireInstant, memoPrefixLength);
+    }
+
+    private static int fieldTypeForLetter(final char letter, final int run) {
+        final int type;
+        final boolean validWidth;
+
+        switch (letter) {
+            case 'y':
+            case 'u':
+                type = FIELD_YEAR;
+                validWidth = run == YEAR_DIGITS;
+                break;
+            case 'M':
+                type = FIELD_MONTH;
+                validWidth = run == 2;
+                break;
+            case 'd':
+                type = FIELD_DAY;
+                validWidth = run == 2;
+                break;
+            case 'H':
+                type = FIELD_HOUR;
+                validWidth = run == 2;
+                break;
+            case 'm':
+                type = FIELD_MINUTE;
+                validWidth = run == 2;
+                break;
+            case 's':
+                type = FIELD_SECOND;
+                validWidth = run == 2;
+                break;
+            case 'S':
+                type = FIELD_FRACTION;
+                validWidth = run <= MAX_FRACTION_DIGITS;
+                break;
+            case 'X':
+                type = FIELD_OFFSET;
+                validWidth = run <= OFFSET_HOURS_COLON_MINUTES;
+                break;
+            default:
+                return -1;
+        }
+
+        if (!validWidth) {
+            return -1;
+        }
+
+        return type;
+    }
+
+    /**
+     * Parses the passed text as the number of milliseconds since the epoch.
+     *
+     * @param text text to parse
+     * @return epoch milliseconds or {@link #UNPARSEABLE}
+     */
+    public long parseEpochMillis(final CharSequence text) {
+        if (!parse(text)) {
+            return UNPARSEABLE;
+        }
+
+        final long epochSecond = memoLocalEpochSecond - offsetSeconds;
+
+        return epochSecond * MILLIS_PER_SECOND + nanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Parses the passed text as the number of days since the epoch. Instants
+     * are converted to a date in UTC, local dates are used as is.
+     *
+     * @param text text to parse
+     * @return epoch days or {@link #UNPARSEABLE}
+     */
+    public long parseEpochDay(final CharSequence text) {
+        if (!parse(text)) {
+            return UNPARSEABLE;
+        }
+
+        if (instantBased) {
+            final long millis = (memoLocalEpochSecond - offsetSeconds) * MILLIS_PER_SECOND
+                    + nanos / NANOS_PER_MILLI;
+            return Math.floorDiv(millis, MILLIS_PER_DAY);
+        }
+
+        return Math.floorDiv(memoLocalEpochSecond, SECONDS_PER_DAY);
+    }
+
+    private boolean parse(final CharSequence text) {
+        if (text == null || text.length() < memoPrefixLength) {
+            return false;
+        }
+
+        final boolean memoHit = memoValid && prefixMatchesMemo(text);
+
+        final boolean parsed;
+
+        if (fieldTypes == null) {
+            parsed = parseIso(text, memoHit);
+        } else {
+            parsed = parsePattern(text, memoHit);
+        }
+
+        if (!parsed) {
+            return false;
+        }
+
+        if (!memoHit) {
+            if (!isValidDate(year, month, day) || hour >= HOURS_PER_DAY
+                    || minute >= MINUTES_PER_HOUR || second >= SECONDS_PER_MINUTE) {
+                memoValid = false;
+                return false;
+            }
+
+            memoLocalEpochSecond = toEpochDay(year, month, day) * SECONDS_PER_DAY
+                    + hour * SECONDS_PER_HOUR + minute * SECONDS_PER_MINUTE + second;
+
+            for (int i = 0; i < memoPrefixLength; i++) {
+                memoPrefix[i] = text.charAt(i);
+            }
+            memoValid = true;
+        }
+
+        return true;
+    }
+
+    private boolean prefixMatchesMemo(final CharSequence text) {
+        for (int i = memoPrefixLength - 1; i >= 0; i--) {
+            if (memoPrefix[i] != text.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @SuppressWarnings("MagicNumber")
+    private boolean parseIso(final CharSequence text, final boolean memoHit) {
+        if (!memoHit) {
+            if (text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != 'T'
+                    || text.charAt(13) != ':' || text.charAt(16) != ':') {
+                return false;
+            }
+
+            year = digits(text, 0, 4);
+            month = digits(text, 5, 2);
+            day = digits(text, 8, 2);
+            hour = digits(text, 11, 2);
+            minute = digits(text, 14, 2);
+            second = digits(text, 17, 2);
+
+            if ((year | month | day | hour | minute | second) < 0) {
+                return false;
+            }
+        }
+
+        int pos = ISO_SECONDS_END;
+        nanos = 0;
+
+        if (pos < text.length() && text.charAt(pos) == '.') {
+            pos++;
+            final int start = pos;
+
+            while (pos < text.length() && pos - start < MAX_FRACTION_DIGITS && isDigit(text.charAt(pos))) {
+                nanos += (text.charAt(pos) - '0') * NANO_SCALE[pos - start];
+                pos++;
+            }
+
+            if (pos == start) {
+                return false;
+            }
+        }
+
+        offsetSeconds = 0;
+
+        return pos == text.length() - 1 && text.charAt(pos) == 'Z';
+    }
+
+    private boolean parsePattern(final CharSequence text, final boolean memoHit) {
+        year = 0;
+        month = 0;
+        day = 0;
+        hour = 0;
+        minute = 0;
+        second = 0;
+        nanos = 0;
+        offsetSeconds = 0;
+
+        int pos = 0;
+
+        for (int f = 0; f < fieldTypes.length; f++) {
+            final int type = fieldTypes[f];
+            final int arg = fieldArgs[f];
+
+            /* On a memo hit we still need to walk the prefix fields in order
+             * to find where the fraction and offset start, but we skip the
+             * digit conversion. */
+            if (memoHit && pos < memoPrefixLength && type != FIELD_OFFSET) {
+                pos += widthOf(type, arg);
+                continue;
+            }
+
+            if (type == FIELD_OFFSET) {
+                pos = parseOffset(text, pos, arg);
+                if (pos < 0) {
+                    return false;
+                }
+                continue;
+            }
+
+            if (type == FIELD_LITERAL) {
+                if (pos >= text.length() || text.charAt(pos) != (char) arg) {
+                    return false;
+                }
+                pos++;
+                continue;
+            }
+
+            if (pos + arg > text.length()) {
+                return false;
+            }
+
+            final int value = digits(text, pos, arg);
+
+            if (value < 0) {
+                return false;
+            }
+
+            switch (type) {
+                case FIELD_YEAR:
+                    year = value;
+                    break;
+                case FIELD_MONTH:
+                    month = value;
+                    break;
+                case FIELD_DAY:
+                    day = value;
+                    break;
+                case FIELD_HOUR:
+                    hour = value;
+                    break;
+                case FIELD_MINUTE:
+                    minute = value;
+                    break;
+                case FIELD_SECOND:
+                    second = value;
+                    break;
+                case FIELD_FRACTION:
+                    nanos = value * NANO_SCALE[arg - 1];
+                    break;
+                default:
+                    return false;
+            }
+
+            pos += arg;
+        }
+
+        return pos == text.length();
+    }
+
+    private static int widthOf(final int type, final int arg) {
+        if (type == FIELD_LITERAL) {
+            return 1;
+        }
+
+        return arg;
+    }
+
+    /**
+     * Parses a zone offset and stores the result in {@link #offsetSeconds}.
+     *
+     * @param text text to parse
+     * @param start position at which the offset starts
+     * @param variant one of the OFFSET_* constants
+     * @return the position after the offset or -1 if it couldn't be parsed
+     */
+    @SuppressWarnings("MagicNumber")
+    private int parseOffset(final CharSequence text, final int start, final int variant) {
+        offsetSeconds = 0;
+
+        if (start >= text.length()) {
+            return -1;
+        }
+
+        final char sign = text.charAt(start);
+
+        if (sign == 'Z') {
+            return start + 1;
+        }
+
+        if ((sign != '+' && sign != '-') || start + 3 > text.length()) {
+            return -1;
+        }
+
+        final int hours = digits(text, start + 1, 2);
+        int pos = start + 3;
+        int minutes = 0;
+
+        final boolean colon = pos < text.length() && text.charAt(pos) == ':';
+        final boolean colonAllowed = variant == OFFSET_HOURS_COLON_MINUTES;
+        final boolean bareAllowed = variant != OFFSET_HOURS_COLON_MINUTES;
+
+        if (colon && colonAllowed && pos + 3 <= text.length()) {
+            minutes = digits(text, pos + 1, 2);
+            pos += 3;
+        } else if (!colon && bareAllowed && pos + 2 <= text.length() && isDigit(text.charAt(pos))) {
+            minutes = digits(text, pos, 2);
+            pos += 2;
+        } else if (variant == OFFSET_HOURS_MINUTES || variant == OFFSET_HOURS_COLON_MINUTES) {
+            return -1;
+        }
+
+        if (hours < 0 || minutes < 0 || hours > MAX_OFFSET_HOURS || minutes >= MINUTES_PER_HOUR) {
+            return -1;
+        }
+
+        offsetSeconds = hours * SECONDS_PER_HOUR + minutes * SECONDS_PER_MINUTE;
+
+        if (sign == '-') {
+            offsetSeconds = -offsetSeconds;
+        }
+
+        return pos;
+    }
+
+    /**
+     * Converts a fixed number of ASCII digits into an int.
+     *
+     * @param text text to read from
+     * @param start position of first digit
+     * @param count number of digits
+     * @return parsed value or -1 if a non-digit was encountered
+     */
+    private static int digits(final CharSequence text, final int start, final int count) {
+        int value = 0;
+
+        for (int i = start; i < start + count; i++) {
+            final char c = text.charAt(i);
+
+            if (!isDigit(c)) {
+                return -1;
+            }
+
+            value = value * DECIMAL + (c - '0');
+        }
+
+        return value;
+    }
+
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    @SuppressWarnings("MagicNumber")
+    private static boolean isLeapYear(final long year) {
+        return ((year & 3) == 0) && ((year % 100) != 0 || (year % 400) == 0);
+    }
+
+    private static boolean isValidDate(final int year, final int month, final int day) {
+        if (month < 1 || month > MONTHS_PER_YEAR || day < 1) {
+            return false;
+        }
+
+        if (month == 2 && isLeapYear(year)) {
+            return day <= DAYS_IN_MONTH[1] + 1;
+        }
+
+        return day <= DAYS_IN_MONTH[month - 1];
+    }
+
+    /**
+     * Calculates the epoch day for a given date. This is the same algorithm
+     * used by {@link java.time.LocalDate#toEpochDay()}.
+     *
+     * @param year year
+     * @param month month of year (1-12)
+     * @param day day of month
+     * @return number of days since 1970-01-01
+     */
+    @SuppressWarnings("MagicNumber")
+    static long toEpochDay(final long year, final int month, final int day) {
+        long total = 365 * year;
+
+        if (year >= 0) {
+            total += (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        } else {
+            total -= year / -4 - year / -100 + year / -400;
+        }
+
+        total += (367 * month - 362) / 12;
+        total += day - 1;
+
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+
+        return total - 719_528L;
+    }
+
+    @Override
+    public String toString() {
+        if (fieldTypes == null) {
+            return "FastDateTimeParser[iso-8601]";
+        }
+
+        return "FastDateTimeParser" + Arrays.toString(fieldTypes);
+    }
+}
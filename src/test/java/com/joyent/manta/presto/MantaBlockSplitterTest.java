@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.SeekableXZInputStream;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Test
+public class MantaBlockSplitterTest {
+    private static byte[] lines(final int count, final long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            builder.append("{\"id\":").append(i).append(",\"value\":").append(random.nextLong()).append("}\n");
+        }
+
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bzip2(final byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(out, 1)) {
+            bzip2.write(data);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] xz(final byte[] data, final int blockSize) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (XZOutputStream xz = new XZOutputStream(out, new LZMA2Options())) {
+            for (int offset = 0; offset < data.length; offset += blockSize) {
+                xz.write(data, offset, Math.min(blockSize, data.length - offset));
+                xz.endBlock();
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(final byte[]... parts) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static MantaRangedInputStream.RangeOpener opener(final byte[] object, final AtomicInteger opens) {
+        return (start, endInclusive) -> {
+            opens.incrementAndGet();
+            return new ByteArrayInputStream(object, (int) start, (int) (endInclusive - start + 1));
+        };
+    }
+
+    private static byte[] readRanges(final String path, final byte[] compressed,
+                                     final List<MantaSplitRange> ranges) throws IOException {
+        final ByteArrayOutputStream lines = new ByteArrayOutputStream();
+
+        for (MantaSplitRange range : ranges) {
+            try (InputStream in = MantaBlockSplitter.openRange(path, compressed.length, range,
+                    opener(compressed, new AtomicInteger()), MantaBufferPool.disabled())) {
+                ByteStreams.copy(in, lines);
+            }
+        }
+
+        return lines.toByteArray();
+    }
+
+    public void recognizesBlockCompressedObjects() {
+        Assert.assertTrue(MantaBlockSplitter.isBlockCompressed("/user/stor/logs/file.json.bz2"));
+        Assert.assertTrue(MantaBlockSplitter.isBlockCompressed("/user/stor/logs/file.json.xz"));
+        Assert.assertFalse(MantaBlockSplitter.isBlockCompressed("/user/stor/logs/file.json.gz"));
+        Assert.assertFalse(MantaBlockSplitter.isBlockCompressed("/user/stor/logs/file.json"));
+    }
+
+    public void bzip2RangesCoverObject() {
+        Assert.assertEquals(MantaBlockSplitter.bzip2Ranges(250L, 100L, "etag"), ImmutableList.of(
+                MantaSplitRange.ofCompressed(0L, 100L, "etag"),
+                MantaSplitRange.ofCompressed(100L, 200L, "etag"),
+                MantaSplitRange.ofCompressed(200L, 250L, "etag")));
+    }
+
+    public void bzip2RangesReadEveryLineOnce() throws IOException {
+        final byte[] data = lines(40_000, 1L);
+        final byte[] compressed = bzip2(data);
+
+        for (long splitSize : new long[] {compressed.length / 6, 20_000L, 777L, compressed.length}) {
+            final List<MantaSplitRange> ranges = MantaBlockSplitter.bzip2Ranges(compressed.length, splitSize, null);
+
+            Assert.assertTrue(Arrays.equals(readRanges("/user/stor/file.json.bz2", compressed, ranges), data),
+                    "split size " + splitSize);
+        }
+    }
+
+    public void bzip2RangesReadConcatenatedStreams() throws IOException {
+        final byte[] first = lines(20_000, 2L);
+        final byte[] second = lines(25_000, 3L);
+        final byte[] data = concat(first, second);
+        final byte[] compressed = concat(bzip2(first), bzip2(second));
+        final List<MantaSplitRange> ranges = MantaBlockSplitter.bzip2Ranges(compressed.length,
+                compressed.length / 5, null);
+
+        Assert.assertTrue(Arrays.equals(readRanges("/user/stor/file.json.bz2", compressed, ranges), data));
+    }
+
+    public void xzRangesGroupBlocksAndReadEveryLineOnce() throws IOException {
+        final byte[] data = lines(40_000, 4L);
+        final byte[] compressed = xz(data, 100_000);
+        final AtomicInteger opens = new AtomicInteger();
+        final List<MantaSplitRange> ranges;
+
+        try (SeekableXZInputStream xz = new SeekableXZInputStream(
+                new MantaSeekableInputStream(compressed.length, opener(compressed, opens)))) {
+            Assert.assertTrue(xz.getBlockCount() > 10, "Expected several blocks");
+            ranges = MantaBlockSplitter.xzRanges(xz, compressed.length / 4, "etag");
+        }
+
+        Assert.assertTrue(opens.get() <= 3, "Reading the index took " + opens.get() + " requests");
+        Assert.assertTrue(ranges.size() >= 4 && ranges.size() <= 5, "Unexpected ranges: " + ranges);
+        Assert.assertEquals(ranges.get(0).getStart(), 0L);
+        Assert.assertEquals(ranges.get(ranges.size() - 1).getEnd(), (long) data.length);
+
+        for (int i = 1; i < ranges.size(); i++) {
+            Assert.assertEquals(ranges.get(i).getStart(), ranges.get(i - 1).getEnd());
+        }
+
+        Assert.assertTrue(Arrays.equals(readRanges("/user/stor/file.json.xz", compressed, ranges), data));
+    }
+
+    public void xzWithSingleBlockHasSingleRange() throws IOException {
+        final byte[] data = lines(5_000, 5L);
+        final byte[] compressed = xz(data, data.length);
+
+        try (SeekableXZInputStream xz = new SeekableXZInputStream(
+                new MantaSeekableInputStream(compressed.length, opener(compressed, new AtomicInteger())))) {
+            Assert.assertEquals(MantaBlockSplitter.xzRanges(xz, 1L, null).size(), 1);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.client.MantaObject;
+import com.joyent.manta.client.MantaObjectResponse;
+import com.joyent.manta.presto.record.json.LineReader;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+@Test
+public class MantaBufferPoolTest {
+    public void roundsRequestsUpToSizeClass() {
+        final MantaBufferPool pool = new MantaBufferPool(1_048_576L, 1_048_576L);
+
+        Assert.assertEquals(pool.borrowArray(1).length, MantaBufferPool.MIN_BUFFER_SIZE);
+        Assert.assertEquals(pool.borrowArray(4_096).length, 4_096);
+        Assert.assertEquals(pool.borrowArray(4_097).length, 8_192);
+        Assert.assertEquals(pool.borrowArray(65_536).length, 65_536);
+        Assert.assertEquals(pool.borrowDirect(100_000).capacity(), 131_072);
+    }
+
+    public void oversizedRequestsAreAllocatedExactly() {
+        final MantaBufferPool pool = new MantaBufferPool(1L << 30, 0L);
+        final byte[] array = pool.borrowArray(MantaBufferPool.MAX_BUFFER_SIZE + 1);
+
+        Assert.assertEquals(array.length, MantaBufferPool.MAX_BUFFER_SIZE + 1);
+        pool.returnArray(array);
+        Assert.assertEquals(pool.getHeapRetainedBytes(), 0L);
+        Assert.assertEquals(pool.getHeapDiscards(), 1L);
+    }
+
+    public void reusesReturnedArrays() {
+        final MantaBufferPool pool = new MantaBufferPool(1_048_576L, 0L);
+        final byte[] first = pool.borrowArray(10_000);
+
+        pool.returnArray(first);
+        Assert.assertEquals(pool.getHeapRetainedBytes(), 16_384L);
+        Assert.assertEquals(pool.getHeapRetainedBuffers(), 1L);
+
+        Assert.assertSame(pool.borrowArray(16_000), first);
+        Assert.assertEquals(pool.getHeapRetainedBytes(), 0L);
+        Assert.assertEquals(pool.getHeapHits(), 1L);
+        Assert.assertEquals(pool.getHeapMisses(), 1L);
+    }
+
+    public void reusesReturnedDirectBuffers() {
+        final MantaBufferPool pool = new MantaBufferPool(0L, 1_048_576L);
+        final ByteBuffer first = pool.borrowDirect(8_192);
+
+        Assert.assertTrue(first.isDirect());
+        first.position(100);
+        pool.returnDirect(first);
+        Assert.assertEquals(pool.getDirectRetainedBytes(), 8_192L);
+
+        final ByteBuffer second = pool.borrowDirect(8_000);
+        Assert.assertSame(second, first);
+        Assert.assertEquals(second.position(), 0);
+        Assert.assertEquals(second.limit(), 8_192);
+    }
+
+    public void retainedBytesAreBounded() {
+        final MantaBufferPool pool = new MantaBufferPool(8_192L, 0L);
+
+        pool.returnArray(new byte[4_096]);
+        pool.returnArray(new byte[4_096]);
+        pool.returnArray(new byte[4_096]);
+
+        Assert.assertEquals(pool.getHeapRetainedBytes(), 8_192L);
+        Assert.assertEquals(pool.getHeapRetainedBuffers(), 2L);
+        Assert.assertEquals(pool.getHeapDiscards(), 1L);
+    }
+
+    public void arraysNotMatchingSizeClassAreDiscarded() {
+        final MantaBufferPool pool = new MantaBufferPool(1_048_576L, 1_048_576L);
+
+        pool.returnArray(new byte[5_000]);
+        pool.returnArray(new byte[1_024]);
+        pool.returnDirect(ByteBuffer.allocate(4_096));
+
+        Assert.assertEquals(pool.getHeapRetainedBytes(), 0L);
+        Assert.assertEquals(pool.getDirectRetainedBytes(), 0L);
+    }
+
+    public void disabledPoolNeverRetains() {
+        final MantaBufferPool pool = MantaBufferPool.disabled();
+
+        pool.returnArray(pool.borrowArray(4_096));
+        Assert.assertEquals(pool.getHeapRetainedBytes(), 0L);
+    }
+
+    public void unexportReleasesRetainedBuffers() {
+        final MantaBufferPool pool = new MantaBufferPool(1_048_576L, 1_048_576L);
+
+        pool.returnArray(new byte[4_096]);
+        pool.returnDirect(ByteBuffer.allocateDirect(4_096));
+        pool.unexport();
+
+        Assert.assertEquals(pool.getHeapRetainedBytes(), 0L);
+        Assert.assertEquals(pool.getDirectRetainedBuffers(), 0L);
+    }
+
+    public void reusesReturnedInflaters() throws DataFormatException {
+        final MantaBufferPool pool = new MantaBufferPool(0L, 0L, 2);
+        final Inflater first = pool.borrowInflater();
+        final Inflater second = pool.borrowInflater();
+        final Inflater third = pool.borrowInflater();
+
+        // Leaves the inflater part way through a raw deflate stream
+        first.setInput(new byte[] {0x4b, 0x4c, 0x4a});
+        first.inflate(new byte[1]);
+
+        pool.returnInflater(first);
+        pool.returnInflater(second);
+        pool.returnInflater(third);
+        Assert.assertEquals(pool.getInflaterRetained(), 2L);
+        Assert.assertEquals(pool.getInflaterMisses(), 3L);
+
+        final Inflater reused = pool.borrowInflater();
+        Assert.assertSame(reused, first);
+        Assert.assertEquals(reused.getBytesRead(), 0L);
+        Assert.assertTrue(reused.needsInput());
+        Assert.assertEquals(pool.getInflaterHits(), 1L);
+
+        pool.unexport();
+        Assert.assertEquals(pool.getInflaterRetained(), 0L);
+    }
+
+    public void disabledPoolNeverRetainsInflaters() {
+        final MantaBufferPool pool = MantaBufferPool.disabled();
+
+        pool.returnInflater(pool.borrowInflater());
+        Assert.assertEquals(pool.getInflaterRetained(), 0L);
+    }
+
+    public void countingStreamReturnsBufferWhenClosed() throws IOException {
+        final MantaBufferPool pool = new MantaBufferPool(1_048_576L, 0L);
+        final MantaObject object = new MantaObjectResponse("/user/stor/file.json");
+        final byte[] data = "{\"a\": 1}\n".getBytes(StandardCharsets.UTF_8);
+
+        try (InputStream in = new MantaCountingInputStream(new ByteArrayInputStream(data), object,
+                0L, MantaReadAhead.disabled(), pool)) {
+            Assert.assertEquals(ByteStreams.toByteArray(in), data);
+            Assert.assertEquals(pool.getHeapRetainedBuffers(), 0L);
+        }
+
+        Assert.assertEquals(pool.getHeapRetainedBuffers(), 1L);
+        Assert.assertEquals(pool.getHeapRetainedBytes(), 65_536L);
+    }
+
+    public void lineReaderReturnsGrownBufferWhenClosed() throws IOException {
+        final MantaBufferPool pool = new MantaBufferPool(1_048_576L, 0L);
+        final byte[] line = new byte[100_000];
+        Arrays.fill(line, (byte) 'x');
+
+        try (LineReader reader = new LineReader(new ByteArrayInputStream(line), pool)) {
+            Assert.assertTrue(reader.readLine());
+            Assert.assertEquals(reader.getLineLength(), line.length);
+            Assert.assertEquals(pool.getHeapRetainedBytes(), 65_536L);
+        }
+
+        Assert.assertEquals(pool.getHeapRetainedBytes(), 65_536L + 131_072L);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.collect.ImmutableList;
+import com.joyent.manta.client.MantaClient;
+import com.joyent.manta.client.MantaObjectInputStream;
+import com.joyent.manta.config.ConfigContext;
+import com.joyent.manta.config.StandardConfigContext;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Test
+public class MantaClientPoolTest {
+    public void spreadsRequestsRoundRobin() throws IOException {
+        final List<MantaClient> clients = ImmutableList.of(
+                mock(MantaClient.class), mock(MantaClient.class), mock(MantaClient.class));
+        final MantaClientPool pool = new MantaClientPool(clients);
+        final List<MantaClient> used = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++) {
+            pool.execute(used::add);
+        }
+
+        Assert.assertEquals(used, ImmutableList.builder().addAll(clients).addAll(clients).build());
+    }
+
+    public void prefersClientWithFewestOutstandingRequests() throws IOException {
+        final List<MantaClient> clients = ImmutableList.of(mock(MantaClient.class), mock(MantaClient.class));
+        final MantaClientPool pool = new MantaClientPool(clients);
+
+        final List<MantaClient> nested = pool.execute(outer -> {
+            Assert.assertEquals(pool.getOutstanding(clients.indexOf(outer)), 1);
+            final List<MantaClient> used = new ArrayList<>();
+
+            for (int i = 0; i < 3; i++) {
+                used.add(pool.execute(inner -> inner));
+            }
+
+            Assert.assertFalse(used.contains(outer));
+            return used;
+        });
+
+        Assert.assertEquals(nested.size(), 3);
+        Assert.assertEquals(pool.getOutstanding(0), 0);
+        Assert.assertEquals(pool.getOutstanding(1), 0);
+    }
+
+    public void streamsStayOutstandingUntilClosed() throws IOException {
+        final List<MantaClient> clients = ImmutableList.of(mock(MantaClient.class), mock(MantaClient.class));
+        final MantaClientPool pool = new MantaClientPool(clients);
+        final MantaObjectInputStream object = mock(MantaObjectInputStream.class);
+        when(object.getPath()).thenReturn("/user/stor/object.json");
+        when(object.read()).thenReturn(42);
+
+        final MantaObjectInputStream in = pool.execute(client -> object);
+
+        Assert.assertEquals(pool.getOutstanding(0), 1);
+        Assert.assertEquals(in.getPath(), "/user/stor/object.json");
+        Assert.assertEquals(in.read(), 42);
+
+        final List<MantaClient> used = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            used.add(pool.execute(client -> client));
+        }
+
+        Assert.assertEquals(used, ImmutableList.of(clients.get(1), clients.get(1), clients.get(1)));
+
+        in.close();
+        in.close();
+
+        verify(object, times(2)).close();
+        Assert.assertEquals(pool.getOutstanding(0), 0);
+        Assert.assertEquals(pool.getOutstanding(1), 0);
+    }
+
+    public void primaryIsFirstClient() {
+        final List<MantaClient> clients = ImmutableList.of(mock(MantaClient.class), mock(MantaClient.class));
+        final MantaClientPool pool = new MantaClientPool(clients);
+
+        Assert.assertSame(pool.getPrimary(), clients.get(0));
+        Assert.assertEquals(pool.size(), 2);
+
+        pool.close();
+
+        for (MantaClient client : clients) {
+            verify(client).closeWithWarning();
+        }
+    }
+
+    public void clientsShareConfigurationWithoutUrls() {
+        final ConfigContext config = new StandardConfigContext().setMantaURL("https://us-east.manta.joyent.com");
+        final List<ConfigContext> configs = MantaClientPool.clientConfigs(config, 3, ImmutableList.of());
+
+        Assert.assertEquals(configs.size(), 3);
+
+        for (ConfigContext clientConfig : configs) {
+            Assert.assertSame(clientConfig, config);
+        }
+    }
+
+    public void clientsAreSpreadAcrossUrls() {
+        final ConfigContext config = new StandardConfigContext()
+                .setMantaURL("https://us-east.manta.joyent.com")
+                .setMantaUser("user");
+        final List<ConfigContext> configs = MantaClientPool.clientConfigs(config, 3,
+                ImmutableList.of("https://10.0.0.1", "https://10.0.0.2"));
+
+        Assert.assertEquals(configs.size(), 3);
+        Assert.assertEquals(configs.get(0).getMantaURL(), "https://10.0.0.1");
+        Assert.assertEquals(configs.get(1).getMantaURL(), "https://10.0.0.2");
+        Assert.assertEquals(configs.get(2).getMantaURL(), "https://10.0.0.1");
+        Assert.assertEquals(configs.get(2).getMantaUser(), "user");
+    }
+
+    public void atLeastOneClientPerUrl() {
+        final List<ConfigContext> configs = MantaClientPool.clientConfigs(new StandardConfigContext(), 1,
+                ImmutableList.of("https://10.0.0.1", "https://10.0.0.2"));
+
+        Assert.assertEquals(configs.size(), 2);
+    }
+}
@@ -76,4 +76,17 @@ public class MantaColumnTest {
         MantaColumn columnDeserialized = mapper.readValue(json, MantaColumn.class);
         Assert.assertEquals(column, columnDeserialized);
     }
+
+    public void canSerializeToAndFromJsonWithPath() throws IOException {
+        ObjectMapper mapper = injector.getInstance(ObjectMapper.class);
+        MantaColumn column = new MantaColumn("host",
+                VarcharType.VARCHAR, "nestedHost", null, false, "req.headers.host");
+        String json = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(column);
+
+        Assert.assertNotNull(json);
+
+        MantaColumn columnDeserialized = mapper.readValue(json, MantaColumn.class);
+        Assert.assertEquals(column, columnDeserialized);
+        Assert.assertEquals("req.headers.host", columnDeserialized.getPath());
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.joyent.manta.client.MantaObject;
+import com.joyent.manta.presto.compression.MantaCompressionType;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Test
+public class MantaCompressionEstimatorTest {
+    private static final long FOUR_GIB = 1L << 32;
+
+    private final MantaCompressionEstimator estimator = new MantaCompressionEstimator(1024L);
+
+    public void uncompressedObjectsKeepTheirSize() {
+        Assert.assertEquals(estimator.estimate("s", "t", null, 1000L), 1000L);
+        Assert.assertEquals(estimator.estimate("s", "t", object("/user/stor/a.json", 1000L)),
+                Long.valueOf(1000L));
+    }
+
+    public void unknownSizesAreNotEstimated() {
+        Assert.assertNull(estimator.estimate("s", "t", object("/user/stor/a.json.gz", null)));
+    }
+
+    public void usesPriorsUntilObjectsAreRead() {
+        final long gzip = estimator.estimate("s", "t", MantaCompressionType.GZIP, 1000L);
+        final long lz4 = estimator.estimate("s", "t", MantaCompressionType.LZ4_FRAMED, 1000L);
+
+        Assert.assertTrue(gzip > 1000L);
+        Assert.assertTrue(lz4 > 1000L);
+        Assert.assertTrue(gzip > lz4);
+        Assert.assertEquals(estimator.estimate("s", "t", object("/user/stor/a.json.gz", 1000L)),
+                Long.valueOf(gzip));
+    }
+
+    public void learnsRatioPerTableAndAlgorithm() {
+        final MantaCompressionEstimator learning = new MantaCompressionEstimator(1024L);
+
+        learning.record("s", "t", MantaCompressionType.GZIP, 100L, 1200L);
+        learning.record("s", "t", MantaCompressionType.GZIP, 300L, 3600L);
+
+        Assert.assertEquals(learning.ratio("s", "t", MantaCompressionType.GZIP), 12.0, 0.0001);
+        Assert.assertEquals(learning.estimate("s", "t", MantaCompressionType.GZIP, 10L), 120L);
+        Assert.assertEquals(learning.ratio("s", "other", MantaCompressionType.GZIP),
+                estimator.ratio("s", "t", MantaCompressionType.GZIP), 0.0001);
+        Assert.assertEquals(learning.ratio("s", "t", MantaCompressionType.BZIP2),
+                estimator.ratio("s", "t", MantaCompressionType.BZIP2), 0.0001);
+    }
+
+    public void olderObservationsDecay() {
+        final MantaCompressionEstimator learning = new MantaCompressionEstimator(1024L);
+        final long large = MantaCompressionEstimator.DECAY_THRESHOLD_BYTES;
+
+        learning.record("s", "t", MantaCompressionType.XZ, large, large * 2L);
+        learning.record("s", "t", MantaCompressionType.XZ, large, large * 10L);
+        learning.record("s", "t", MantaCompressionType.XZ, large, large * 10L);
+
+        final double ratio = learning.ratio("s", "t", MantaCompressionType.XZ);
+
+        // Without decay the three objects would average a ratio of 22 / 3
+        Assert.assertTrue(ratio > 7.5, "Ratio should lean towards recent objects: " + ratio);
+        Assert.assertTrue(ratio < 10.0, "Ratio should remember older objects: " + ratio);
+    }
+
+    public void ignoresInvalidObservations() {
+        final MantaCompressionEstimator learning = new MantaCompressionEstimator(1024L);
+
+        learning.record("s", "t", null, 100L, 1000L);
+        learning.record("s", "t", MantaCompressionType.GZIP, 0L, 1000L);
+
+        Assert.assertEquals(learning.ratio("s", "t", MantaCompressionType.GZIP),
+                estimator.ratio("s", "t", MantaCompressionType.GZIP), 0.0001);
+    }
+
+    public void onlyReadsTrailersOfLargeGzipObjects() {
+        Assert.assertTrue(estimator.readsTrailer(MantaCompressionType.GZIP, 1024L));
+        Assert.assertFalse(estimator.readsTrailer(MantaCompressionType.GZIP, 1023L));
+        Assert.assertFalse(estimator.readsTrailer(MantaCompressionType.BZIP2, 1L << 20));
+        Assert.assertFalse(estimator.readsTrailer(null, 1L << 20));
+        Assert.assertFalse(new MantaCompressionEstimator(0L).readsTrailer(MantaCompressionType.GZIP, 4L));
+    }
+
+    public void resolvesTrailerSizeBelowFourGiB() {
+        Assert.assertEquals(MantaCompressionEstimator.resolveTrailerSize(5000L, 1000L, 4000L), 5000L);
+    }
+
+    public void resolvesWrappedTrailerSizeClosestToEstimate() {
+        final long actual = 2L * FOUR_GIB + 123L;
+
+        Assert.assertEquals(MantaCompressionEstimator.resolveTrailerSize(
+                123L, FOUR_GIB / 4L, 2L * FOUR_GIB), actual);
+    }
+
+    public void wrapsAreLimitedByDeflateRatio() {
+        Assert.assertEquals(MantaCompressionEstimator.resolveTrailerSize(
+                2_000_000L, 1_000_000L, 50L * FOUR_GIB), 2_000_000L);
+    }
+
+    public void ignoresTrailerOfLastMemberOfSeveral() {
+        Assert.assertEquals(MantaCompressionEstimator.resolveTrailerSize(
+                65_280L, 10_000_000L, 50_000_000L), 50_000_000L);
+    }
+
+    private static MantaObject object(final String path, final Long size) {
+        final MantaObject obj = mock(MantaObject.class);
+
+        when(obj.getPath()).thenReturn(path);
+        when(obj.getContentLength()).thenReturn(size);
+
+        return obj;
+    }
+}
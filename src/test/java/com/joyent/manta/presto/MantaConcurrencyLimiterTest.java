@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Test
+public class MantaConcurrencyLimiterTest {
+    public void requestsWaitWhenLimitIsReached() throws Exception {
+        final MantaConcurrencyLimiter limiter = new MantaConcurrencyLimiter(true, 2, 1, 2, 60_000L);
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        try {
+            final Future<?>[] futures = new Future<?>[4];
+
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(() -> limiter.execute(() -> {
+                    maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                    try {
+                        release.await(5L, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    concurrent.decrementAndGet();
+                    return null;
+                }));
+            }
+
+            for (int i = 0; i < 250 && limiter.getWaiting() < 2; i++) {
+                Thread.sleep(20L);
+            }
+
+            Assert.assertEquals(limiter.getInFlight(), 2);
+            Assert.assertEquals(limiter.getWaiting(), 2);
+            release.countDown();
+
+            for (Future<?> future : futures) {
+                future.get(5L, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(maxConcurrent.get(), 2);
+        Assert.assertEquals(limiter.getInFlight(), 0);
+        Assert.assertEquals(limiter.getRequests(), 4L);
+        Assert.assertEquals(limiter.getQueuedRequests(), 2L);
+    }
+
+    public void limitGrowsWhenFullyUsed() throws Exception {
+        final MantaConcurrencyLimiter limiter = new MantaConcurrencyLimiter(true, 2, 1, 3, 60_000L);
+
+        for (int i = 0; i < 4; i++) {
+            final long first = limiter.acquire();
+            final long second = limiter.acquire();
+            limiter.release(first, 0L, false);
+            limiter.release(second, 0L, false);
+        }
+
+        Assert.assertEquals(limiter.getLimit(), 3);
+    }
+
+    public void limitDoesNotGrowWhenUnused() throws IOException {
+        final MantaConcurrencyLimiter limiter = new MantaConcurrencyLimiter(true, 4, 1, 8, 60_000L);
+
+        for (int i = 0; i < 100; i++) {
+            limiter.execute(() -> null);
+        }
+
+        Assert.assertEquals(limiter.getLimit(), 4);
+    }
+
+    public void limitShrinksOncePerBurstOfOverloads() throws Exception {
+        final MantaConcurrencyLimiter limiter = new MantaConcurrencyLimiter(true, 20, 1, 20, 60_000L);
+        final long first = limiter.acquire();
+        final long second = limiter.acquire();
+
+        Thread.sleep(1L);
+        limiter.release(first, 0L, true);
+        Assert.assertEquals(limiter.getLimit(), 18);
+
+        limiter.release(second, 0L, true);
+        Assert.assertEquals(limiter.getLimit(), 18);
+
+        final long third = limiter.acquire();
+        limiter.release(third, TimeUnit.MINUTES.toNanos(2L), false);
+        Assert.assertEquals(limiter.getLimit(), 16);
+        Assert.assertEquals(limiter.getOverloads(), 3L);
+    }
+
+    public void limitNeverDropsBelowMinimum() throws Exception {
+        final MantaConcurrencyLimiter limiter = new MantaConcurrencyLimiter(true, 2, 2, 4, 60_000L);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.release(limiter.acquire(), 0L, true);
+        }
+
+        Assert.assertEquals(limiter.getLimit(), 2);
+    }
+
+    public void classifiesOverloadFailures() {
+        Assert.assertTrue(MantaConcurrencyLimiter.isOverloaded(new SocketTimeoutException()));
+        Assert.assertTrue(MantaConcurrencyLimiter.isOverloaded(MantaRetryPolicyTest.httpFailure(503)));
+        Assert.assertTrue(MantaConcurrencyLimiter.isOverloaded(MantaRetryPolicyTest.httpFailure(429)));
+        Assert.assertFalse(MantaConcurrencyLimiter.isOverloaded(MantaRetryPolicyTest.httpFailure(404)));
+        Assert.assertFalse(MantaConcurrencyLimiter.isOverloaded(new IOException("other")));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void failuresAreThrown() throws IOException {
+        final MantaConcurrencyLimiter limiter = new MantaConcurrencyLimiter(true, 2, 1, 2, 60_000L);
+
+        try {
+            limiter.execute(() -> {
+                throw new SocketTimeoutException();
+            });
+        } finally {
+            Assert.assertEquals(limiter.getInFlight(), 0);
+        }
+    }
+}
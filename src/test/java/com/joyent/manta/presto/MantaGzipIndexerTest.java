@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.compression.GzipCheckpointInputStream;
+import com.joyent.manta.presto.compression.GzipIndex;
+import com.joyent.manta.presto.compression.GzipIndexingInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+@Test
+public class MantaGzipIndexerTest {
+    private static GzipIndex.Checkpoint checkpoint(final long uncompressedOffset) {
+        return new GzipIndex.Checkpoint(uncompressedOffset, uncompressedOffset / 4, 1, new byte[0]);
+    }
+
+    public void rangesCoverObjectWhenThereAreNoCheckpoints() {
+        final GzipIndex index = new GzipIndex("etag", 100L, 400L, ImmutableList.of());
+
+        Assert.assertEquals(MantaGzipIndexer.ranges(index, 100L),
+                ImmutableList.of(MantaSplitRange.of(null, 400L, "etag")));
+    }
+
+    public void rangesStartAtCheckpointsAtLeastSplitSizeApart() {
+        final GzipIndex.Checkpoint first = checkpoint(100L);
+        final GzipIndex.Checkpoint second = checkpoint(150L);
+        final GzipIndex.Checkpoint third = checkpoint(260L);
+        final GzipIndex index = new GzipIndex("etag", 100L, 300L, ImmutableList.of(first, second, third));
+
+        final List<MantaSplitRange> ranges = MantaGzipIndexer.ranges(index, 100L);
+
+        Assert.assertEquals(ranges, ImmutableList.of(
+                MantaSplitRange.of(null, 100L, "etag"),
+                MantaSplitRange.of(first, 260L, "etag"),
+                MantaSplitRange.of(third, 300L, "etag")));
+        Assert.assertFalse(ranges.get(0).hasCheckpoint());
+        Assert.assertEquals(ranges.get(1).getCompressedOffset(), 25L);
+    }
+
+    public void rangesReadEveryLineOnce() throws IOException {
+        final Random random = new Random(1L);
+        final StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < 50_000; i++) {
+            builder.append("{\"id\":").append(i).append(",\"value\":").append(random.nextLong()).append("}\n");
+        }
+
+        final byte[] data = builder.toString().getBytes(StandardCharsets.UTF_8);
+        final ByteArrayOutputStream compressedOut = new ByteArrayOutputStream();
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressedOut)) {
+            gzip.write(data);
+        }
+
+        final byte[] compressed = compressedOut.toByteArray();
+        final AtomicReference<GzipIndex> built = new AtomicReference<>();
+
+        try (InputStream in = new GzipIndexingInputStream(new ByteArrayInputStream(compressed),
+                100_000L, "etag", MantaBufferPool.disabled(), built::set)) {
+            ByteStreams.exhaust(in);
+        }
+
+        final byte[] sidecar = built.get().toByteArray();
+        final GzipIndex index = GzipIndex.readTable(new ByteArrayInputStream(sidecar));
+        final List<MantaSplitRange> ranges = MantaGzipIndexer.ranges(index, 300_000L);
+        Assert.assertTrue(ranges.size() > 2, "Expected several ranges: " + ranges);
+
+        final ByteArrayOutputStream lines = new ByteArrayOutputStream();
+
+        for (MantaSplitRange range : ranges) {
+            final InputStream source = new ByteArrayInputStream(compressed, (int) range.getCompressedOffset(),
+                    compressed.length - (int) range.getCompressedOffset());
+            final InputStream decompressed;
+
+            if (range.hasCheckpoint()) {
+                final int windowOffset = (int) range.getWindowOffset();
+                final byte[] window = GzipIndex.inflateWindow(Arrays.copyOfRange(sidecar, windowOffset,
+                        windowOffset + range.getWindowLength()));
+                decompressed = new GzipCheckpointInputStream(source, range.getBits(), window,
+                        MantaBufferPool.disabled());
+            } else {
+                decompressed = new GzipCompressorInputStream(source, true);
+            }
+
+            try (InputStream in = new MantaLineRangeInputStream(decompressed, range.getStart() == 0L,
+                    range.getEnd() - range.getStart(), MantaBufferPool.disabled())) {
+                ByteStreams.copy(in, lines);
+            }
+        }
+
+        Assert.assertTrue(Arrays.equals(lines.toByteArray(), data), "Ranges didn't read every line once");
+    }
+}
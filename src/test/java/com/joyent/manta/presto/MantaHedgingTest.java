@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.joyent.manta.client.MantaObjectInputStream;
+import com.joyent.manta.client.MantaObjectResponse;
+import com.joyent.manta.org.apache.http.client.methods.CloseableHttpResponse;
+import com.joyent.manta.org.apache.http.conn.EofSensorInputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+
+@Test
+public class MantaHedgingTest {
+    private static final String PATH = "/user/stor/file.json";
+
+    public void disabledOpensDirectly() throws IOException {
+        final MantaObjectInputStream expected = objectStream(new byte[10]);
+
+        Assert.assertSame(MantaHedging.disabled().open(PATH, () -> expected), expected);
+    }
+
+    public void fastRequestIsNotHedged() throws IOException {
+        final MantaHedging hedging = new MantaHedging(true, 95.0, 1_000L, 1_000L);
+        final byte[] data = randomBytes(10_000);
+
+        try (InputStream in = hedging.open(PATH, () -> objectStream(data))) {
+            Assert.assertEquals(ByteStreams.toByteArray(in), data);
+        } finally {
+            hedging.shutdown();
+        }
+
+        Assert.assertEquals(hedging.getOpens(), 1L);
+        Assert.assertEquals(hedging.getHedgedRequests(), 0L);
+        Assert.assertEquals(hedging.getWastedBytes(), 0L);
+    }
+
+    @Test(timeOut = 30_000L)
+    public void slowRequestIsHedged() throws Exception {
+        final MantaHedging hedging = new MantaHedging(true, 95.0, 10L, 10L);
+        final byte[] data = randomBytes(10_000);
+        final CountDownLatch slowRequest = new CountDownLatch(1);
+        final AtomicInteger requests = new AtomicInteger();
+
+        try {
+            try (InputStream in = hedging.open(PATH, () -> {
+                // Bounded so that a failing hedge can't leave the primary blocked forever
+                if (requests.getAndIncrement() == 0) {
+                    Uninterruptibles.awaitUninterruptibly(slowRequest, 5L, TimeUnit.SECONDS);
+                }
+
+                return objectStream(data);
+            })) {
+                Assert.assertEquals(ByteStreams.toByteArray(in), data);
+            } finally {
+                slowRequest.countDown();
+            }
+
+            for (int i = 0; i < 250 && hedging.getWastedBytes() == 0L; i++) {
+                Thread.sleep(20L);
+            }
+        } finally {
+            hedging.shutdown();
+        }
+
+        Assert.assertEquals(requests.get(), 2);
+        Assert.assertEquals(hedging.getHedgedRequests(), 1L);
+        Assert.assertEquals(hedging.getHedgeWins(), 1L);
+        Assert.assertEquals(hedging.getHedgeRate(), 1.0);
+        Assert.assertEquals(hedging.getWastedBytes(), (long) MantaHedging.FIRST_BYTES_SIZE);
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "failed")
+    public void failureIsThrown() throws IOException {
+        final MantaHedging hedging = new MantaHedging(true, 95.0, 1_000L, 1_000L);
+
+        try {
+            hedging.open(PATH, () -> {
+                throw new IOException("failed");
+            });
+        } finally {
+            hedging.shutdown();
+        }
+    }
+
+    public void hedgedRequestReplacesFailedRequest() throws IOException {
+        final MantaHedging hedging = new MantaHedging(true, 95.0, 10L, 10L);
+        final byte[] data = randomBytes(100);
+        final AtomicInteger requests = new AtomicInteger();
+
+        try (InputStream in = hedging.open(PATH, () -> {
+            if (requests.getAndIncrement() == 0) {
+                Uninterruptibles.sleepUninterruptibly(200L, TimeUnit.MILLISECONDS);
+                throw new IOException("failed");
+            }
+
+            return objectStream(data);
+        })) {
+            Assert.assertEquals(ByteStreams.toByteArray(in), data);
+        } finally {
+            hedging.shutdown();
+        }
+    }
+
+    public void delayIsPercentileOfObservedLatencies() {
+        final MantaHedging hedging = new MantaHedging(false, 95.0, 20L, 2_000L);
+
+        Assert.assertEquals(hedging.getHedgeDelayMillis(), 2_000L);
+
+        for (int i = 1; i <= 100; i++) {
+            hedging.recordLatency(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        Assert.assertEquals(hedging.getHedgeDelayMillis(), 95L);
+
+        for (int i = 0; i < MantaHedging.LATENCY_SAMPLES; i++) {
+            hedging.recordLatency(TimeUnit.MILLISECONDS.toNanos(1L));
+        }
+
+        Assert.assertEquals(hedging.getHedgeDelayMillis(), 20L);
+    }
+
+    private static MantaObjectInputStream objectStream(final byte[] data) {
+        final MantaObjectResponse response = new MantaObjectResponse(PATH);
+        final EofSensorInputStream backing = new EofSensorInputStream(new ByteArrayInputStream(data), null);
+
+        return new MantaObjectInputStream(response, mock(CloseableHttpResponse.class), backing);
+    }
+
+    private static byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) 'x');
+
+        for (int i = 0; i < length; i += 7) {
+            bytes[i] = (byte) i;
+        }
+
+        return bytes;
+    }
+}
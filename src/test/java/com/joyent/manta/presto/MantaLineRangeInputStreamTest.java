@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.io.ByteStreams;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+@Test
+public class MantaLineRangeInputStreamTest {
+    private static final byte[] DATA = "first\nsecond line\n\nfourth\nlast without newline"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static byte[] readRange(final byte[] data, final int start, final int end) throws IOException {
+        final InputStream in = new ByteArrayInputStream(data, start, data.length - start);
+
+        try (InputStream range = new MantaLineRangeInputStream(in, start == 0, end - start,
+                MantaBufferPool.disabled())) {
+            return ByteStreams.toByteArray(range);
+        }
+    }
+
+    private static byte[] readRangeWithFollowing(final byte[] data, final int start, final int end)
+            throws IOException {
+        final InputStream in = new ByteArrayInputStream(data, start, end - start);
+
+        try (InputStream range = new MantaLineRangeInputStream(in,
+                () -> new ByteArrayInputStream(data, end, data.length - end), start == 0,
+                MantaBufferPool.disabled())) {
+            return ByteStreams.toByteArray(range);
+        }
+    }
+
+    public void readsLinesFollowingNewlinesWithinRange() throws IOException {
+        Assert.assertEquals(new String(readRange(DATA, 0, 1), StandardCharsets.UTF_8), "first\n");
+        Assert.assertEquals(new String(readRange(DATA, 1, 6), StandardCharsets.UTF_8), "second line\n");
+        Assert.assertEquals(new String(readRange(DATA, 5, 6), StandardCharsets.UTF_8), "second line\n");
+        Assert.assertEquals(new String(readRange(DATA, 17, 19), StandardCharsets.UTF_8), "\nfourth\n");
+        Assert.assertEquals(new String(readRange(DATA, 20, DATA.length), StandardCharsets.UTF_8),
+                "last without newline");
+    }
+
+    public void readsNothingWhenNoNewlineIsWithinRange() throws IOException {
+        Assert.assertEquals(readRange(DATA, 6, 17).length, 0);
+        Assert.assertEquals(readRange(DATA, 26, DATA.length).length, 0);
+        Assert.assertEquals(readRange(DATA, 30, DATA.length).length, 0);
+    }
+
+    public void followingStreamReadsSameLinesAsKnownLength() throws IOException {
+        for (int start = 0; start < DATA.length; start++) {
+            for (int end = start; end <= DATA.length; end++) {
+                Assert.assertEquals(readRangeWithFollowing(DATA, start, end), readRange(DATA, start, end),
+                        "range " + start + "-" + end);
+            }
+        }
+    }
+
+    public void adjacentRangesReadEveryLineOnce() throws IOException {
+        for (int step = 1; step < DATA.length + 1; step++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            for (int start = 0; start < DATA.length; start += step) {
+                final byte[] range = readRange(DATA, start, Math.min(DATA.length, start + step));
+                out.write(range, 0, range.length);
+            }
+
+            Assert.assertEquals(out.toByteArray(), DATA, "step " + step);
+        }
+    }
+
+    public void canReadSingleBytes() throws IOException {
+        try (InputStream range = new MantaLineRangeInputStream(
+                new ByteArrayInputStream(DATA, 1, DATA.length - 1), false, 6, MantaBufferPool.disabled())) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            for (int b = range.read(); b >= 0; b = range.read()) {
+                out.write(b);
+            }
+
+            Assert.assertEquals(new String(out.toByteArray(), StandardCharsets.UTF_8), "second line\n");
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.facebook.presto.spi.RecordCursor;
+import com.facebook.presto.spi.type.BigintType;
+import com.facebook.presto.spi.type.Type;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.joyent.manta.client.MantaObjectResponse;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Test
+public class MantaMultiObjectRecordCursorTest {
+    private static final List<Type> TYPES = ImmutableList.of(BigintType.BIGINT);
+
+    public void readsObjectsInOrder() {
+        final List<RecordCursor> cursors = ImmutableList.of(
+                fakeCursor(1L, 2L), fakeCursor(), fakeCursor(3L));
+        final List<Integer> opened = new ArrayList<>();
+        final AtomicBoolean closed = new AtomicBoolean();
+        final List<Long> values = new ArrayList<>();
+
+        try (RecordCursor cursor = new MantaMultiObjectRecordCursor(TYPES, cursors.size(), i -> {
+            opened.add(i);
+            return cursors.get(i);
+        }, () -> closed.set(true))) {
+            while (cursor.advanceNextPosition()) {
+                values.add(cursor.getLong(0));
+            }
+
+            Assert.assertFalse(cursor.advanceNextPosition());
+            Assert.assertEquals(cursor.getCompletedBytes(), 30L);
+        }
+
+        Assert.assertEquals(values, ImmutableList.of(1L, 2L, 3L));
+        Assert.assertEquals(opened, ImmutableList.of(0, 1, 2));
+        Assert.assertTrue(closed.get());
+
+        for (RecordCursor c : cursors) {
+            verify(c).close();
+        }
+    }
+
+    public void opensCursorsLazily() {
+        final AtomicInteger opened = new AtomicInteger();
+
+        try (RecordCursor cursor = new MantaMultiObjectRecordCursor(TYPES, 3, i -> {
+            opened.incrementAndGet();
+            return fakeCursor(i);
+        }, () -> { })) {
+            Assert.assertEquals(opened.get(), 0);
+            Assert.assertTrue(cursor.advanceNextPosition());
+            Assert.assertEquals(opened.get(), 1);
+        }
+    }
+
+    public void prefetchedStreamIsPrimedWithoutConsumingBytes() throws IOException {
+        final MantaPrefetcher prefetcher = new MantaPrefetcher(true);
+        final byte[] data = "{\"a\": 1}\n".getBytes(StandardCharsets.UTF_8);
+
+        try {
+            final MantaPrefetcher.Prefetch prefetch = prefetcher.prefetch(() -> countingStream(data, null));
+
+            try (MantaCountingInputStream in = prefetch.get()) {
+                Assert.assertEquals(in.getCount(), 0L);
+                Assert.assertEquals(in.available(), data.length);
+                Assert.assertEquals(ByteStreams.toByteArray(in), data);
+            }
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    public void discardedPrefetchIsClosed() throws Exception {
+        final MantaPrefetcher prefetcher = new MantaPrefetcher(true);
+        final AtomicBoolean closed = new AtomicBoolean();
+        final CountDownLatch opening = new CountDownLatch(1);
+        final CountDownLatch discarded = new CountDownLatch(1);
+
+        try {
+            final MantaPrefetcher.Prefetch prefetch = prefetcher.prefetch(() -> {
+                opening.countDown();
+                Uninterruptibles.awaitUninterruptibly(discarded);
+                return countingStream(new byte[10], closed);
+            });
+
+            Assert.assertTrue(opening.await(5L, TimeUnit.SECONDS));
+            prefetch.close();
+            discarded.countDown();
+
+            for (int i = 0; i < 250 && !closed.get(); i++) {
+                Thread.sleep(20L);
+            }
+
+            Assert.assertTrue(closed.get());
+        } finally {
+            prefetcher.shutdown();
+        }
+    }
+
+    public void prefetchDiscardedWhileFinishingIsClosed() throws Exception {
+        final CountDownLatch opened = new CountDownLatch(1);
+        final CountDownLatch discarded = new CountDownLatch(1);
+
+        // Holds back the result of a finished open until the prefetch has been discarded
+        final ExecutorService executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>()) {
+            @Override
+            protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
+                return new FutureTask<T>(callable) {
+                    @Override
+                    protected void set(final T value) {
+                        opened.countDown();
+                        Uninterruptibles.awaitUninterruptibly(discarded, 5L, TimeUnit.SECONDS);
+                        super.set(value);
+                    }
+                };
+            }
+        };
+        final MantaPrefetcher prefetcher = new MantaPrefetcher(executor);
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        try {
+            final MantaPrefetcher.Prefetch prefetch = prefetcher.prefetch(
+                    () -> countingStream(new byte[10], closed));
+
+            Assert.assertTrue(opened.await(5L, TimeUnit.SECONDS));
+            prefetch.close();
+            discarded.countDown();
+
+            Assert.assertTrue(closed.get());
+        } finally {
+            discarded.countDown();
+            prefetcher.shutdown();
+        }
+    }
+
+    public void disabledPrefetcherOpensOnDemand() {
+        final AtomicInteger opened = new AtomicInteger();
+        final MantaPrefetcher.Prefetch prefetch = MantaPrefetcher.disabled().prefetch(() -> {
+            opened.incrementAndGet();
+            return countingStream(new byte[1], null);
+        });
+
+        Assert.assertEquals(opened.get(), 0);
+        prefetch.get();
+        Assert.assertEquals(opened.get(), 1);
+    }
+
+    private static MantaCountingInputStream countingStream(final byte[] data, final AtomicBoolean closed) {
+        final InputStream source = new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public void close() throws IOException {
+                if (closed != null) {
+                    closed.set(true);
+                }
+
+                super.close();
+            }
+        };
+
+        return new MantaCountingInputStream(source, new MantaObjectResponse("/user/stor/file.json"));
+    }
+
+    private static RecordCursor fakeCursor(final long... values) {
+        final RecordCursor cursor = mock(RecordCursor.class);
+        final AtomicInteger position = new AtomicInteger(-1);
+
+        when(cursor.advanceNextPosition()).thenAnswer(i -> position.incrementAndGet() < values.length);
+        when(cursor.getLong(0)).thenAnswer(i -> values[position.get()]);
+        when(cursor.getCompletedBytes()).thenReturn(10L);
+
+        return cursor;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.client.MantaObjectResponse;
+import com.joyent.manta.presto.compression.MantaCompressionType;
+import com.joyent.manta.presto.compression.ParallelDecompressingInputStream;
+import com.joyent.manta.presto.compression.ResumePoint;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+@Test
+public class MantaParallelDecompressionTest {
+    private static final byte[] DATA = "{\"a\":1}\n{\"a\":2}\n".getBytes(StandardCharsets.UTF_8);
+
+    private final MantaParallelDecompression parallel = new MantaParallelDecompression(true, 2, 2);
+
+    @AfterClass
+    public void shutdown() {
+        parallel.shutdown();
+    }
+
+    private static byte[] bzip2() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(out)) {
+            bzip2.write(DATA);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(DATA);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] lines(final int count) {
+        final Random random = new Random(count);
+        final StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            builder.append("{\"a\":").append(random.nextLong()).append(",\"b\":")
+                    .append(Long.toHexString(random.nextLong())).append("}\n");
+        }
+
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(final byte[] data, final boolean bzip2) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        if (bzip2) {
+            try (BZip2CompressorOutputStream compressing = new BZip2CompressorOutputStream(out, 1)) {
+                compressing.write(data);
+            }
+        } else {
+            try (GZIPOutputStream compressing = new GZIPOutputStream(out)) {
+                compressing.write(data);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private List<ResumePoint> readRecordingPoints(final MantaCompressionType type, final byte[] compressed,
+                                                  final byte[] expected) throws IOException {
+        final List<ResumePoint> points = new ArrayList<>();
+
+        try (InputStream in = parallel.wrap(type, MantaParallelDecompression.peekable(
+                new ByteArrayInputStream(compressed)), MantaBufferPool.disabled(), 100_000L, points::add)) {
+            Assert.assertTrue(Arrays.equals(ByteStreams.toByteArray(in), expected));
+        }
+
+        return points;
+    }
+
+    private InputStream wrap(final MantaParallelDecompression decompression, final String path,
+                             final byte[] bytes) {
+        return decompression.wrap(new MantaObjectResponse(path), new ByteArrayInputStream(bytes),
+                MantaBufferPool.disabled());
+    }
+
+    public void decompressesBzip2InParallel() throws IOException {
+        try (InputStream in = wrap(parallel, "/user/stor/file.json.bz2", bzip2())) {
+            Assert.assertTrue(in instanceof ParallelDecompressingInputStream);
+            Assert.assertEquals(ByteStreams.toByteArray(in), DATA);
+        }
+    }
+
+    public void decompressesPlainGzipOnReadingThread() throws IOException {
+        try (InputStream in = wrap(parallel, "/user/stor/file.json.gz", gzip())) {
+            Assert.assertFalse(in instanceof ParallelDecompressingInputStream);
+            Assert.assertEquals(ByteStreams.toByteArray(in), DATA);
+        }
+    }
+
+    public void disabledDecompressesOnReadingThread() throws IOException {
+        try (InputStream in = wrap(MantaParallelDecompression.disabled(), "/user/stor/file.json.bz2", bzip2())) {
+            Assert.assertFalse(in instanceof ParallelDecompressingInputStream);
+            Assert.assertEquals(ByteStreams.toByteArray(in), DATA);
+        }
+    }
+
+    public void detectsBzip2WithoutExtension() throws IOException {
+        try (InputStream in = wrap(parallel, "/user/stor/file.json", bzip2())) {
+            Assert.assertTrue(in instanceof ParallelDecompressingInputStream);
+            Assert.assertEquals(ByteStreams.toByteArray(in), DATA);
+        }
+    }
+
+    public void detectsGzipWithoutExtension() throws IOException {
+        try (InputStream in = wrap(parallel, "/user/stor/file.json", gzip())) {
+            Assert.assertEquals(ByteStreams.toByteArray(in), DATA);
+        }
+    }
+
+    public void resumesGzipFromDeflateCheckpoints() throws IOException {
+        final byte[] data = lines(20_000);
+        final byte[] compressed = compress(data, false);
+        final List<ResumePoint> points = readRecordingPoints(MantaCompressionType.GZIP, compressed, data);
+
+        Assert.assertTrue(points.size() > 1, "Expected several points");
+
+        for (ResumePoint point : points) {
+            Assert.assertNotNull(point.getCheckpoint());
+
+            try (InputStream in = parallel.resume(point, new ByteArrayInputStream(compressed,
+                    (int) point.getCompressedOffset(), compressed.length), MantaBufferPool.disabled(), null)) {
+                Assert.assertTrue(Arrays.equals(ByteStreams.toByteArray(in),
+                        Arrays.copyOfRange(data, (int) point.getUncompressedOffset(), data.length)));
+            }
+        }
+    }
+
+    public void resumedBzip2ReportsPointsRelativeToObject() throws IOException {
+        final byte[] data = lines(200_000);
+        final byte[] compressed = compress(data, true);
+        final List<ResumePoint> points = readRecordingPoints(MantaCompressionType.BZIP2, compressed, data);
+
+        Assert.assertTrue(points.size() > 2, "Expected several points");
+
+        final ResumePoint first = points.get(1);
+        final List<ResumePoint> resumedPoints = new ArrayList<>();
+
+        try (InputStream in = parallel.resume(first, new ByteArrayInputStream(compressed,
+                (int) first.getCompressedOffset(), compressed.length), MantaBufferPool.disabled(),
+                resumedPoints::add)) {
+            Assert.assertTrue(Arrays.equals(ByteStreams.toByteArray(in),
+                    Arrays.copyOfRange(data, (int) first.getUncompressedOffset(), data.length)));
+        }
+
+        Assert.assertEquals(resumedPoints.size(), points.size() - 1);
+
+        for (int i = 0; i < resumedPoints.size(); i++) {
+            Assert.assertEquals(resumedPoints.get(i).getUncompressedOffset(),
+                    points.get(i + 1).getUncompressedOffset());
+            Assert.assertEquals(resumedPoints.get(i).getCompressedOffset(),
+                    points.get(i + 1).getCompressedOffset());
+        }
+    }
+
+    public void noPointsWithoutListener() throws IOException {
+        try (InputStream in = parallel.wrap(MantaCompressionType.GZIP, MantaParallelDecompression.peekable(
+                new ByteArrayInputStream(gzip())), MantaBufferPool.disabled(), 1L, null)) {
+            Assert.assertEquals(ByteStreams.toByteArray(in), DATA);
+        }
+    }
+
+    public void leavesUncompressedObjectsAlone() throws IOException {
+        try (InputStream in = wrap(parallel, "/user/stor/file.json", DATA)) {
+            Assert.assertEquals(ByteStreams.toByteArray(in), DATA);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Test
+public class MantaRangedInputStreamTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final MantaRetryPolicy retryPolicy = new MantaRetryPolicy(3, 0L, 0L, new MantaRetryStats());
+
+    @AfterClass
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public void readsAllRangesInOrder() throws IOException {
+        final byte[] data = randomBytes(100_003);
+        final List<long[]> requested = new CopyOnWriteArrayList<>();
+
+        try (InputStream in = new MantaRangedInputStream("/user/stor/file", 0L, data.length,
+                4_096, 4, (start, end) -> {
+                    requested.add(new long[] {start, end});
+                    return slice(data, start, end);
+                }, retryPolicy, MantaBufferPool.disabled(), executor)) {
+            Assert.assertEquals(ByteStreams.toByteArray(in), data);
+            Assert.assertEquals(in.read(), -1);
+        }
+
+        Assert.assertEquals(requested.size(), 25);
+
+        for (long[] range : requested) {
+            Assert.assertEquals(range[0] % 4_096, 0L);
+            Assert.assertTrue(range[1] - range[0] < 4_096);
+        }
+    }
+
+    public void readsFromStartPosition() throws IOException {
+        final byte[] data = randomBytes(10_000);
+
+        try (InputStream in = new MantaRangedInputStream("/user/stor/file", 1_234L, data.length,
+                1_000, 3, (start, end) -> slice(data, start, end),
+                retryPolicy, MantaBufferPool.disabled(), executor)) {
+            Assert.assertEquals(ByteStreams.toByteArray(in),
+                    Arrays.copyOfRange(data, 1_234, data.length));
+        }
+    }
+
+    public void downloadsAreBoundedByConcurrency() throws Exception {
+        final byte[] data = randomBytes(100_000);
+        final AtomicInteger opened = new AtomicInteger();
+
+        try (InputStream in = new MantaRangedInputStream("/user/stor/file", 0L, data.length,
+                1_000, 3, (start, end) -> {
+                    opened.incrementAndGet();
+                    return slice(data, start, end);
+                }, retryPolicy, MantaBufferPool.disabled(), executor)) {
+            Thread.sleep(200L);
+            Assert.assertEquals(opened.get(), 3);
+
+            Assert.assertEquals(in.read(), Byte.toUnsignedInt(data[0]));
+            Thread.sleep(200L);
+            Assert.assertEquals(opened.get(), 4);
+        }
+    }
+
+    public void retriesTransientFailures() throws IOException {
+        final byte[] data = randomBytes(5_000);
+        final AtomicInteger failures = new AtomicInteger();
+
+        try (InputStream in = new MantaRangedInputStream("/user/stor/file", 0L, data.length,
+                1_000, 2, (start, end) -> {
+                    if (start == 2_000L && failures.getAndIncrement() == 0) {
+                        throw new SocketTimeoutException("timeout");
+                    }
+
+                    return slice(data, start, end);
+                }, retryPolicy, MantaBufferPool.disabled(), executor)) {
+            Assert.assertEquals(ByteStreams.toByteArray(in), data);
+        }
+
+        Assert.assertEquals(failures.get(), 2);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void failsWhenRangeIsShort() throws IOException {
+        final byte[] data = randomBytes(5_000);
+
+        try (InputStream in = new MantaRangedInputStream("/user/stor/file", 0L, data.length + 10,
+                1_000, 2, (start, end) -> slice(data, start, Math.min(end, data.length - 1)),
+                retryPolicy, MantaBufferPool.disabled(), executor)) {
+            ByteStreams.exhaust(in);
+        }
+    }
+
+    public void returnsBuffersToPool() throws IOException {
+        final byte[] data = randomBytes(20_000);
+        final MantaBufferPool pool = new MantaBufferPool(1_048_576L, 0L);
+
+        try (InputStream in = new MantaRangedInputStream("/user/stor/file", 0L, data.length,
+                MantaBufferPool.MIN_BUFFER_SIZE, 2, (start, end) -> slice(data, start, end),
+                retryPolicy, pool, executor)) {
+            ByteStreams.exhaust(in);
+        }
+
+        Assert.assertTrue(pool.getHeapRetainedBuffers() >= 1L);
+        Assert.assertTrue(pool.getHeapHits() >= 1L, "Chunk buffers weren't reused");
+    }
+
+    public void closingReturnsUnreadChunks() throws Exception {
+        final byte[] data = randomBytes(MantaBufferPool.MIN_BUFFER_SIZE * 4);
+        final MantaBufferPool pool = new MantaBufferPool(1_048_576L, 0L);
+        final CountDownLatch downloaded = new CountDownLatch(2);
+
+        final InputStream in = new MantaRangedInputStream("/user/stor/file", 0L, data.length,
+                MantaBufferPool.MIN_BUFFER_SIZE, 2, (start, end) -> {
+                    final InputStream chunk = slice(data, start, end);
+                    downloaded.countDown();
+                    return chunk;
+                }, retryPolicy, pool, executor);
+
+        Assert.assertTrue(downloaded.await(5L, TimeUnit.SECONDS));
+        Thread.sleep(100L);
+        in.close();
+
+        Assert.assertEquals(pool.getHeapRetainedBuffers(), 2L);
+    }
+
+    public void chunksFinishingAfterCloseAreReturned() throws Exception {
+        final byte[] data = randomBytes(MantaBufferPool.MIN_BUFFER_SIZE * 4);
+        final MantaBufferPool pool = new MantaBufferPool(1_048_576L, 0L);
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final InputStream in = new MantaRangedInputStream("/user/stor/file", 0L, data.length,
+                MantaBufferPool.MIN_BUFFER_SIZE, 2, (start, end) -> {
+                    started.countDown();
+                    Uninterruptibles.awaitUninterruptibly(release, 5L, TimeUnit.SECONDS);
+                    return slice(data, start, end);
+                }, retryPolicy, pool, executor);
+
+        Assert.assertTrue(started.await(5L, TimeUnit.SECONDS));
+        in.close();
+        release.countDown();
+
+        for (int i = 0; i < 50 && pool.getHeapRetainedBuffers() < 2L; i++) {
+            Thread.sleep(100L);
+        }
+
+        Assert.assertEquals(pool.getHeapRetainedBuffers(), 2L);
+    }
+
+    public void enabledOnlyForLargeListedObjects() {
+        final MantaParallelDownload download = new MantaParallelDownload(4, 1_024, 10_000L);
+
+        try {
+            Assert.assertFalse(download.isEnabledFor(null));
+            Assert.assertFalse(download.isEnabledFor(9_999L));
+            Assert.assertTrue(download.isEnabledFor(10_000L));
+        } finally {
+            download.shutdown();
+        }
+
+        Assert.assertFalse(new MantaParallelDownload(1, 1_024, 0L).isEnabledFor(10_000L));
+    }
+
+    private static InputStream slice(final byte[] data, final long start, final long endInclusive) {
+        return new ByteArrayInputStream(data, (int) start, (int) (endInclusive - start + 1));
+    }
+
+    private static byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
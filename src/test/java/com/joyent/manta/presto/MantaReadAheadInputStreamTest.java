@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Test
+public class MantaReadAheadInputStreamTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final MantaBufferPool pool = new MantaBufferPool(1_048_576L, 0L);
+
+    @AfterClass
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public void readsAllBytesInOrder() throws IOException {
+        final byte[] data = randomBytes(100_003);
+
+        try (InputStream in = new MantaReadAheadInputStream(
+                new ByteArrayInputStream(data), 3, 1_024, pool, executor)) {
+            Assert.assertEquals(ByteStreams.toByteArray(in), data);
+            Assert.assertEquals(in.read(), -1);
+        }
+    }
+
+    public void readsSingleBytes() throws IOException {
+        final byte[] data = randomBytes(5_000);
+
+        try (InputStream in = new MantaReadAheadInputStream(
+                new ByteArrayInputStream(data), 2, 64, pool, executor)) {
+            for (byte b : data) {
+                Assert.assertEquals(in.read(), Byte.toUnsignedInt(b));
+            }
+
+            Assert.assertEquals(in.read(), -1);
+        }
+    }
+
+    public void canSkipAcrossBuffers() throws IOException {
+        final byte[] data = randomBytes(10_000);
+
+        try (InputStream in = new MantaReadAheadInputStream(
+                new ByteArrayInputStream(data), 2, 100, pool, executor)) {
+            ByteStreams.skipFully(in, 4_321);
+            Assert.assertEquals(in.read(), Byte.toUnsignedInt(data[4_321]));
+        }
+    }
+
+    public void canReadEmptySource() throws IOException {
+        try (InputStream in = new MantaReadAheadInputStream(
+                new ByteArrayInputStream(new byte[0]), 2, 100, pool, executor)) {
+            Assert.assertEquals(in.read(new byte[10], 0, 10), -1);
+        }
+    }
+
+    public void failuresAreDeliveredAfterPrecedingBytes() throws IOException {
+        final byte[] data = randomBytes(1_000);
+        final InputStream failing = new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int read = super.read(b, off, len);
+
+                if (read < 0) {
+                    throw new SocketTimeoutException("timeout");
+                }
+
+                return read;
+            }
+        };
+
+        final byte[] actual = new byte[data.length];
+
+        try (InputStream in = new MantaReadAheadInputStream(failing, 2, 300, pool, executor)) {
+            ByteStreams.readFully(in, actual);
+            Assert.assertEquals(actual, data);
+
+            try {
+                in.read();
+                Assert.fail("Expected exception");
+            } catch (SocketTimeoutException e) {
+                // expected
+            }
+        }
+    }
+
+    public void readingAheadIsBoundedByBuffers() throws Exception {
+        final int bufferCount = 3;
+        final int bufferSize = MantaBufferPool.MIN_BUFFER_SIZE;
+        final CountingInputStream source = new CountingInputStream(
+                new ByteArrayInputStream(randomBytes(100_000)));
+
+        try (InputStream in = new MantaReadAheadInputStream(source, bufferCount, bufferSize, pool, executor)) {
+            in.read();
+            Thread.sleep(200L);
+            Assert.assertTrue(source.getCount() <= bufferCount * bufferSize,
+                    "Read ahead beyond buffer capacity: " + source.getCount());
+        }
+    }
+
+    public void closingClosesSource() throws IOException {
+        final AtomicBoolean closed = new AtomicBoolean();
+        final InputStream source = new FilterInputStream(new ByteArrayInputStream(randomBytes(10_000))) {
+            @Override
+            public void close() throws IOException {
+                closed.set(true);
+                super.close();
+            }
+        };
+
+        final InputStream in = new MantaReadAheadInputStream(source, 2, 100, pool, executor);
+        in.read();
+        in.close();
+
+        // A background task still reading closes the source when it stops
+        for (int i = 0; i < 50 && !closed.get(); i++) {
+            Uninterruptibles.sleepUninterruptibly(20L, TimeUnit.MILLISECONDS);
+        }
+
+        Assert.assertTrue(closed.get());
+    }
+
+    public void closingDuringReadWaitsForBackgroundTask() throws Exception {
+        final MantaBufferPool buffers = new MantaBufferPool(1_048_576L, 0L);
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch aborted = new CountDownLatch(1);
+        final AtomicBoolean closed = new AtomicBoolean();
+        final AtomicBoolean closedWhileReading = new AtomicBoolean();
+        final InputStream source = new InputStream() {
+            private final AtomicBoolean inRead = new AtomicBoolean();
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                inRead.set(true);
+                reading.countDown();
+
+                try {
+                    if (!aborted.await(5L, TimeUnit.SECONDS)) {
+                        throw new IOException("Not aborted");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                // Writing into the buffer after it was returned would corrupt another stream
+                b[off] = 1;
+                inRead.set(false);
+                throw new SocketTimeoutException("aborted");
+            }
+
+            @Override
+            public void close() {
+                closedWhileReading.compareAndSet(false, inRead.get());
+                closed.set(true);
+            }
+        };
+
+        final InputStream in = new MantaReadAheadInputStream(source, aborted::countDown,
+                2, 100, buffers, executor);
+
+        Assert.assertTrue(reading.await(5L, TimeUnit.SECONDS));
+        in.close();
+
+        for (int i = 0; i < 50 && !closed.get(); i++) {
+            Thread.sleep(20L);
+        }
+
+        Assert.assertEquals(aborted.getCount(), 0L);
+        Assert.assertTrue(closed.get());
+        Assert.assertFalse(closedWhileReading.get(), "Source closed during an in-flight read");
+        Assert.assertEquals(buffers.getHeapRetainedBuffers(), 2L);
+    }
+
+    public void buffersArentReturnedDuringInFlightRead() throws Exception {
+        final MantaBufferPool buffers = new MantaBufferPool(1_048_576L, 0L);
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final InputStream source = new InputStream() {
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                reading.countDown();
+                Uninterruptibles.awaitUninterruptibly(proceed, 5L, TimeUnit.SECONDS);
+                return -1;
+            }
+        };
+
+        // Aborting does nothing, so the read stays in flight after closing
+        final InputStream in = new MantaReadAheadInputStream(source, 2, 100, buffers, executor);
+
+        try {
+            Assert.assertTrue(reading.await(5L, TimeUnit.SECONDS));
+            in.close();
+
+            Assert.assertEquals(buffers.getHeapRetainedBuffers(), 0L);
+            buffers.borrowArray(100);
+            Assert.assertEquals(buffers.getHeapHits(), 0L);
+        } finally {
+            proceed.countDown();
+        }
+
+        for (int i = 0; i < 50 && buffers.getHeapRetainedBuffers() < 2L; i++) {
+            Thread.sleep(20L);
+        }
+
+        Assert.assertEquals(buffers.getHeapRetainedBuffers(), 2L);
+    }
+
+    public void returnsBuffersToPoolWhenClosed() throws Exception {
+        final MantaBufferPool buffers = new MantaBufferPool(1_048_576L, 0L);
+        final InputStream in = new MantaReadAheadInputStream(
+                new ByteArrayInputStream(randomBytes(10_000)), 3, 100, buffers, executor);
+
+        Assert.assertEquals(buffers.getHeapRetainedBuffers(), 0L);
+        ByteStreams.exhaust(in);
+        in.close();
+
+        for (int i = 0; i < 50 && buffers.getHeapRetainedBuffers() < 3L; i++) {
+            Thread.sleep(20L);
+        }
+
+        Assert.assertEquals(buffers.getHeapRetainedBuffers(), 3L);
+        Assert.assertEquals(buffers.getHeapRetainedBytes(), 3L * MantaBufferPool.MIN_BUFFER_SIZE);
+
+        try (InputStream reused = new MantaReadAheadInputStream(
+                new ByteArrayInputStream(new byte[0]), 3, 100, buffers, executor)) {
+            Assert.assertEquals(buffers.getHeapHits(), 3L);
+        }
+    }
+
+    public void returnsBuffersToPoolWhenClosedBeforeStarting() throws Exception {
+        final MantaBufferPool buffers = new MantaBufferPool(1_048_576L, 0L);
+        final ExecutorService stopped = Executors.newSingleThreadExecutor();
+        final CountDownLatch busy = new CountDownLatch(1);
+
+        try {
+            stopped.submit(() -> {
+                busy.await();
+                return null;
+            });
+            final InputStream in = new MantaReadAheadInputStream(
+                    new ByteArrayInputStream(randomBytes(10_000)), 2, 100, buffers, stopped);
+            in.close();
+
+            Assert.assertEquals(buffers.getHeapRetainedBuffers(), 2L);
+        } finally {
+            busy.countDown();
+            stopped.shutdownNow();
+        }
+    }
+
+    public void manyStreamsShareSingleThread() throws Exception {
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        final byte[][] data = new byte[8][];
+        final InputStream[] streams = new InputStream[data.length];
+
+        try {
+            for (int i = 0; i < data.length; i++) {
+                data[i] = randomBytes(50_000 + i);
+                streams[i] = new MantaReadAheadInputStream(
+                        new ByteArrayInputStream(data[i]), 2, 100, pool, single);
+            }
+
+            // Streams whose buffers are all full give the thread back, so reading in reverse can't stall
+            for (int i = data.length - 1; i >= 0; i--) {
+                Assert.assertEquals(ByteStreams.toByteArray(streams[i]), data[i]);
+            }
+        } finally {
+            for (InputStream in : streams) {
+                if (in != null) {
+                    in.close();
+                }
+            }
+
+            single.shutdownNow();
+        }
+    }
+
+    public void streamsTakeTurnsWhenReadersKeepPace() throws Exception {
+        final ExecutorService single = Executors.newSingleThreadExecutor();
+        final ExecutorService readers = Executors.newFixedThreadPool(2);
+        final CountDownLatch otherStreamRead = new CountDownLatch(1);
+
+        // Its reader keeps pace so the ring never fills, until the other stream has been read
+        final InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) {
+                if (Uninterruptibles.awaitUninterruptibly(otherStreamRead, 1L, TimeUnit.MILLISECONDS)) {
+                    return -1;
+                }
+
+                b[off] = 1;
+                return 1;
+            }
+        };
+
+        try (InputStream first = new MantaReadAheadInputStream(endless, 2, 100, pool, single);
+             InputStream second = new MantaReadAheadInputStream(
+                     new ByteArrayInputStream(randomBytes(1_000)), 2, 100, pool, single)) {
+            final Future<Long> firstRead = readers.submit(() -> ByteStreams.exhaust(first));
+            final Future<Integer> secondRead = readers.submit(() -> second.read());
+
+            try {
+                Assert.assertNotEquals(secondRead.get(5L, TimeUnit.SECONDS).intValue(), -1);
+            } finally {
+                otherStreamRead.countDown();
+            }
+
+            Assert.assertTrue(firstRead.get(5L, TimeUnit.SECONDS) > 0L);
+        } finally {
+            readers.shutdownNow();
+            single.shutdownNow();
+        }
+    }
+
+    public void rejectedTaskIsDeliveredAsFailure() throws IOException {
+        final ExecutorService rejecting = Executors.newSingleThreadExecutor();
+        rejecting.shutdown();
+
+        try (InputStream in = new MantaReadAheadInputStream(
+                new ByteArrayInputStream(randomBytes(100)), 2, 100, pool, rejecting)) {
+            in.read();
+            Assert.fail("Expected the rejected read ahead to fail");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("Unable to schedule"));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void settingsWontAcceptSingleBuffer() {
+        new MantaReadAhead(1, 100, 1, pool);
+    }
+
+    public void settingsWithZeroBuffersAreDisabled() {
+        final MantaReadAhead readAhead = new MantaReadAhead(0, 100, 1, pool);
+        final InputStream source = new ByteArrayInputStream(new byte[0]);
+
+        Assert.assertFalse(readAhead.isEnabled());
+        Assert.assertSame(readAhead.wrap(source), source);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void wontAcceptSingleBuffer() {
+        new MantaReadAheadInputStream(new ByteArrayInputStream(new byte[0]), 1, 100, pool, executor);
+    }
+
+    private static byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
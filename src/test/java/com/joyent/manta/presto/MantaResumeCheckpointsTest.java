@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+@Test
+public class MantaResumeCheckpointsTest {
+    public void onlyRecordsPointsForLargeObjects() {
+        final MantaResumeCheckpoints checkpoints = new MantaResumeCheckpoints(true, 1024L, 100L);
+
+        Assert.assertTrue(checkpoints.isEnabledFor(1024L));
+        Assert.assertFalse(checkpoints.isEnabledFor(1023L));
+        Assert.assertFalse(checkpoints.isEnabledFor(null));
+        Assert.assertEquals(checkpoints.getSpacing(), 100L);
+    }
+
+    public void disabledNeverRecordsPoints() {
+        Assert.assertFalse(MantaResumeCheckpoints.disabled().isEnabledFor(Long.MAX_VALUE));
+        Assert.assertFalse(new MantaResumeCheckpoints(false, 0L, 100L).isEnabledFor(1L));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsEmptySpacing() {
+        new MantaResumeCheckpoints(true, 0L, 0L);
+    }
+}
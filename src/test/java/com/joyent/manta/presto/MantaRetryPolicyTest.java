@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto;
+
+import com.google.common.collect.ImmutableList;
+import com.joyent.manta.exception.MantaClientHttpResponseException;
+import com.joyent.manta.org.apache.http.HttpVersion;
+import com.joyent.manta.org.apache.http.message.BasicStatusLine;
+import com.joyent.manta.presto.exceptions.MantaPrestoRuntimeException;
+import com.joyent.manta.presto.exceptions.MantaPrestoUncheckedIOException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Test
+public class MantaRetryPolicyTest {
+    private final MantaRetryPolicy noDelayPolicy = new MantaRetryPolicy(3, 0L, 0L, new MantaRetryStats());
+
+    public void socketFailuresAreRetryable() {
+        Assert.assertTrue(noDelayPolicy.isRetryable(new SocketTimeoutException()));
+        Assert.assertTrue(noDelayPolicy.isRetryable(new SocketException("Connection reset")));
+    }
+
+    public void wrappedFailuresAreRetryable() {
+        final Exception wrapped = new MantaPrestoUncheckedIOException("read failed",
+                new SocketTimeoutException());
+        Assert.assertTrue(noDelayPolicy.isRetryable(new RuntimeException(wrapped)));
+    }
+
+    public void serverErrorsAndThrottlingAreRetryable() {
+        Assert.assertTrue(noDelayPolicy.isRetryable(httpFailure(503)));
+        Assert.assertTrue(noDelayPolicy.isRetryable(httpFailure(429)));
+        Assert.assertTrue(noDelayPolicy.isRetryable(httpFailure(500)));
+    }
+
+    public void clientErrorsAreNotRetryable() {
+        Assert.assertFalse(noDelayPolicy.isRetryable(httpFailure(404)));
+        Assert.assertFalse(noDelayPolicy.isRetryable(httpFailure(412)));
+        Assert.assertFalse(noDelayPolicy.isRetryable(new FileNotFoundException()));
+        Assert.assertFalse(noDelayPolicy.isRetryable(null));
+    }
+
+    public void backoffCeilingGrowsExponentiallyUpToMaximum() {
+        final MantaRetryPolicy policy = new MantaRetryPolicy(10, 100L, 1_000L, new MantaRetryStats());
+
+        Assert.assertEquals(policy.backoffCeilingMillis(1), 100L);
+        Assert.assertEquals(policy.backoffCeilingMillis(2), 200L);
+        Assert.assertEquals(policy.backoffCeilingMillis(3), 400L);
+        Assert.assertEquals(policy.backoffCeilingMillis(5), 1_000L);
+        Assert.assertEquals(policy.backoffCeilingMillis(64), 1_000L);
+
+        for (int i = 1; i < 10; i++) {
+            final long delay = policy.backoffMillis(i);
+            Assert.assertTrue(delay >= 0L && delay <= policy.backoffCeilingMillis(i));
+        }
+    }
+
+    public void executeRetriesTransientFailures() throws IOException {
+        final MantaRetryStats stats = new MantaRetryStats();
+        final MantaRetryPolicy policy = new MantaRetryPolicy(3, 0L, 0L, stats);
+        final AtomicInteger calls = new AtomicInteger();
+
+        final String result = policy.execute(MantaRetryPolicy.Operation.OPEN, "/user/stor/file", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw httpFailure(503);
+            }
+
+            return "ok";
+        });
+
+        Assert.assertEquals(result, "ok");
+        Assert.assertEquals(calls.get(), 3);
+        Assert.assertEquals(stats.getOpenRetries(), 2L);
+        Assert.assertEquals(stats.getExhaustedRetries(), 0L);
+    }
+
+    public void executeGivesUpAfterMaxAttempts() {
+        final MantaRetryStats stats = new MantaRetryStats();
+        final MantaRetryPolicy policy = new MantaRetryPolicy(2, 0L, 0L, stats);
+        final AtomicInteger calls = new AtomicInteger();
+
+        try {
+            policy.execute(MantaRetryPolicy.Operation.OPEN, "/user/stor/file", () -> {
+                calls.incrementAndGet();
+                throw new SocketTimeoutException();
+            });
+            Assert.fail("Expected exception");
+        } catch (IOException e) {
+            Assert.assertTrue(e instanceof SocketTimeoutException);
+        }
+
+        Assert.assertEquals(calls.get(), 2);
+        Assert.assertEquals(stats.getOpenRetries(), 1L);
+        Assert.assertEquals(stats.getExhaustedRetries(), 1L);
+    }
+
+    public void executeDoesNotRetryPermanentFailures() {
+        final MantaRetryStats stats = new MantaRetryStats();
+        final MantaRetryPolicy policy = new MantaRetryPolicy(3, 0L, 0L, stats);
+        final AtomicInteger calls = new AtomicInteger();
+
+        try {
+            policy.execute(MantaRetryPolicy.Operation.OPEN, "/user/stor/file", () -> {
+                calls.incrementAndGet();
+                throw httpFailure(404);
+            });
+            Assert.fail("Expected exception");
+        } catch (IOException e) {
+            Assert.assertTrue(e instanceof MantaClientHttpResponseException);
+        }
+
+        Assert.assertEquals(calls.get(), 1);
+        Assert.assertEquals(stats.getNonRetryableFailures(), 1L);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void wontAcceptZeroAttempts() {
+        new MantaRetryPolicy(0, 0L, 0L, new MantaRetryStats());
+    }
+
+    // RESUMABLE LISTING
+
+    public void listingResumesAfterTransientFailureWithoutDuplicates() {
+        final MantaRetryStats stats = new MantaRetryStats();
+        final MantaRetryPolicy policy = new MantaRetryPolicy(3, 0L, 0L, stats);
+        final List<String> all = ImmutableList.of("a", "b", "c", "d", "e");
+        final AtomicInteger listings = new AtomicInteger();
+
+        final List<String> listed;
+
+        try (Stream<String> stream = MantaResumableListing.stream(() -> {
+            final boolean fail = listings.incrementAndGet() == 1;
+
+            return all.stream().peek(name -> {
+                if (fail && name.equals("c")) {
+                    throw new UncheckedIOException(new SocketException("Connection reset"));
+                }
+            });
+        }, Function.identity(), policy, "/user/stor")) {
+            listed = stream.collect(Collectors.toList());
+        }
+
+        Assert.assertEquals(listed, all);
+        Assert.assertEquals(listings.get(), 2);
+        Assert.assertEquals(stats.getListRetries(), 1L);
+    }
+
+    public void listingPropagatesPermanentFailures() {
+        final MantaRetryPolicy policy = new MantaRetryPolicy(3, 0L, 0L, new MantaRetryStats());
+        final List<String> listed = new ArrayList<>();
+
+        try (Stream<String> stream = MantaResumableListing.stream(
+                () -> Stream.of("a", "b").peek(name -> {
+                    if (name.equals("b")) {
+                        throw new IllegalStateException("not transient");
+                    }
+                }), Function.identity(), policy, "/user/stor")) {
+            stream.forEach(listed::add);
+            Assert.fail("Expected exception");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(listed, ImmutableList.of("a"));
+        }
+    }
+
+    public void listingResumesAfterLastElementWhenListingChanges() {
+        final MantaRetryPolicy policy = new MantaRetryPolicy(3, 0L, 0L, new MantaRetryStats());
+        final AtomicInteger listings = new AtomicInteger();
+        final List<String> listed;
+
+        try (Stream<String> stream = MantaResumableListing.stream(() -> {
+            if (listings.incrementAndGet() == 1) {
+                return Stream.of("b", "c", "d", "e").peek(name -> {
+                    if (name.equals("d")) {
+                        throw new UncheckedIOException(new SocketException("Connection reset"));
+                    }
+                });
+            }
+
+            // An object was added before and another removed after the failure
+            return Stream.of("a", "b", "c", "e");
+        }, Function.identity(), policy, "/user/stor")) {
+            listed = stream.collect(Collectors.toList());
+        }
+
+        Assert.assertEquals(listed, ImmutableList.of("b", "c", "e"));
+        Assert.assertEquals(listings.get(), 2);
+    }
+
+    public void listingFailsWhenLastElementIsRemoved() {
+        final MantaRetryPolicy policy = new MantaRetryPolicy(3, 0L, 0L, new MantaRetryStats());
+        final AtomicInteger listings = new AtomicInteger();
+        final List<String> listed = new ArrayList<>();
+
+        try (Stream<String> stream = MantaResumableListing.stream(() -> {
+            if (listings.incrementAndGet() == 1) {
+                return Stream.of("a", "b", "c").peek(name -> {
+                    if (name.equals("c")) {
+                        throw new UncheckedIOException(new SocketException("Connection reset"));
+                    }
+                });
+            }
+
+            return Stream.of("a", "c");
+        }, Function.identity(), policy, "/user/stor")) {
+            stream.forEach(listed::add);
+            Assert.fail("Expected exception");
+        } catch (MantaPrestoRuntimeException e) {
+            Assert.assertEquals(listed, ImmutableList.of("a", "b"));
+            Assert.assertEquals(listings.get(), 2);
+        }
+    }
+
+    static MantaClientHttpResponseException httpFailure(final int statusCode) {
+        final MantaClientHttpResponseException e = new MantaClientHttpResponseException("failure");
+        e.setStatusLine(new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, "failure"));
+        return e;
+    }
+}
@@ -9,13 +9,19 @@ package com.joyent.manta.presto;
 
 import com.facebook.presto.spi.ColumnHandle;
 import com.facebook.presto.spi.predicate.Domain;
+import com.facebook.presto.spi.predicate.TupleDomain;
+import com.facebook.presto.spi.type.BigintType;
 import com.facebook.presto.spi.type.VarcharType;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
 import com.joyent.manta.client.MantaObject;
+import com.joyent.manta.presto.column.MantaColumn;
 import com.joyent.manta.presto.column.MantaPartitionColumn;
+import com.joyent.manta.presto.compression.MantaCompressionType;
 import com.joyent.manta.presto.tables.MantaLogicalTablePartitionDefinition;
 import io.airlift.slice.Slices;
 import org.testng.Assert;
@@ -31,7 +37,10 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @Test
@@ -56,6 +65,26 @@ public class MantaSplitManagerTest {
             "/user/stor/dir/server-1012/analytics-1999-05-11.log.gz"
     );
 
+    public void rowPredicateExcludesPartitionColumns() {
+        final MantaPartitionColumn partitionColumn = new MantaPartitionColumn(1, "year",
+                VarcharType.VARCHAR, null, null, false);
+        final MantaColumn dataColumn = new MantaColumn("status", BigintType.BIGINT, null);
+        final Domain partitionDomain = Domain.singleValue(VarcharType.VARCHAR, Slices.utf8Slice("1998"));
+        final Domain dataDomain = Domain.singleValue(BigintType.BIGINT, 200L);
+
+        final TupleDomain<ColumnHandle> predicate = TupleDomain.withColumnDomains(
+                ImmutableMap.of(partitionColumn, partitionDomain, dataColumn, dataDomain));
+        final TupleDomain<MantaColumn> rowPredicate = MantaSplitManager.createRowPredicate(predicate);
+
+        Assert.assertTrue(rowPredicate.getDomains().isPresent());
+        Assert.assertEquals(rowPredicate.getDomains().get(), ImmutableMap.of(dataColumn, dataDomain));
+    }
+
+    public void rowPredicateIsNoneWhenQueryMatchesNothing() {
+        Assert.assertTrue(MantaSplitManager.createRowPredicate(TupleDomain.none()).isNone());
+        Assert.assertTrue(MantaSplitManager.createRowPredicate(TupleDomain.all()).isAll());
+    }
+
     public void filePartitionPredicateCorrectlyFilters() {
         final Pattern pattern = PARTITION_DEFINITION.getFilterRegex();
         final List<MantaPartitionColumn> partitionColumns =
@@ -136,6 +165,92 @@ public class MantaSplitManagerTest {
                        + "Error");
     }
 
+    public void groupsConsecutiveSmallObjects() {
+        final PeekingIterator<MantaObject> objects = Iterators.peekingIterator(ImmutableList.of(
+                sizedObject("/user/stor/b", 10L),
+                sizedObject("/user/stor/c", 10L),
+                sizedObject("/user/stor/d", 10L)).iterator());
+
+        final List<MantaSplitObject> grouped = MantaStreamingSplitSource.groupFollowingObjects(
+                objects, sizedObject("/user/stor/a", 10L), 3, 100L, MantaObject::getContentLength);
+
+        Assert.assertEquals(grouped, ImmutableList.of(
+                new MantaSplitObject("/user/stor/b", 10L),
+                new MantaSplitObject("/user/stor/c", 10L)));
+        Assert.assertEquals(objects.next().getPath(), "/user/stor/d");
+    }
+
+    public void groupingStopsAtByteLimitAndUnknownSizes() {
+        final PeekingIterator<MantaObject> objects = Iterators.peekingIterator(ImmutableList.of(
+                sizedObject("/user/stor/b", 50L),
+                sizedObject("/user/stor/c", 60L)).iterator());
+
+        Assert.assertEquals(MantaStreamingSplitSource.groupFollowingObjects(
+                objects, sizedObject("/user/stor/a", 40L), 16, 100L, MantaObject::getContentLength).size(), 1);
+        Assert.assertTrue(MantaStreamingSplitSource.groupFollowingObjects(
+                objects, sizedObject("/user/stor/x", null), 16, 100L, MantaObject::getContentLength).isEmpty());
+        Assert.assertTrue(MantaStreamingSplitSource.groupFollowingObjects(
+                objects, sizedObject("/user/stor/y", 1L), 1, 100L, MantaObject::getContentLength).isEmpty());
+    }
+
+    public void groupingComparesEstimatedDecompressedSizes() {
+        final MantaCompressionEstimator estimator = new MantaCompressionEstimator(
+                MantaCompressionEstimator.DEFAULT_TRAILER_MIN_OBJECT_SIZE);
+        final PeekingIterator<MantaObject> objects = Iterators.peekingIterator(ImmutableList.of(
+                sizedObject("/user/stor/b.json.gz", 10L),
+                sizedObject("/user/stor/c.json.gz", 10L)).iterator());
+
+        estimator.record("schema", "table", MantaCompressionType.GZIP, 100L, 400L);
+
+        final List<MantaSplitObject> grouped = MantaStreamingSplitSource.groupFollowingObjects(
+                objects, sizedObject("/user/stor/a.json", 10L), 16, 60L,
+                object -> estimator.estimate("schema", "table", object));
+
+        Assert.assertEquals(grouped, ImmutableList.of(new MantaSplitObject("/user/stor/b.json.gz", 10L)));
+        Assert.assertEquals(objects.next().getPath(), "/user/stor/c.json.gz");
+    }
+
+    public void objectsAreOnlyDividedWhenLineDelimited() {
+        final MantaObject object = sizedObject("/user/stor/a.json.gz", 1_000_000_000L);
+        final MantaSplitRange range = MantaSplitRange.of(null, 100L, null);
+        final MantaGzipIndexer gzipIndexer = mock(MantaGzipIndexer.class);
+        final MantaBlockSplitter blockSplitter = mock(MantaBlockSplitter.class);
+        when(gzipIndexer.isCandidate(any())).thenReturn(false);
+        when(blockSplitter.isCandidate(any())).thenReturn(true);
+        when(blockSplitter.ranges(any())).thenReturn(ImmutableList.of(range, range));
+
+        Assert.assertEquals(splits(object, false, gzipIndexer, blockSplitter).size(), 1);
+        verify(blockSplitter, never()).ranges(any());
+
+        final List<MantaSplit> divided = splits(object, true, gzipIndexer, blockSplitter);
+        Assert.assertEquals(divided.size(), 2);
+        Assert.assertEquals(divided.get(0).getRange(), range);
+    }
+
+    private static List<MantaSplit> splits(final MantaObject object,
+                                           final boolean lineDelimited,
+                                           final MantaGzipIndexer gzipIndexer,
+                                           final MantaBlockSplitter blockSplitter) {
+        final MantaStreamingSplitSource source = new MantaStreamingSplitSource("manta", "schema", "table",
+                MantaDataFileType.NDJSON, Stream.of(object),
+                MantaSplitPartitionPredicate.ALWAYS_TRUE, MantaSplitPartitionPredicate.ALWAYS_TRUE,
+                TupleDomain.all(), lineDelimited, 16, 100L, gzipIndexer, blockSplitter,
+                new MantaCompressionEstimator(MantaCompressionEstimator.DEFAULT_TRAILER_MIN_OBJECT_SIZE));
+
+        return source.getNextBatch(null, 100).join().getSplits().stream()
+                .map(MantaSplit.class::cast)
+                .collect(Collectors.toList());
+    }
+
+    private static MantaObject sizedObject(final String path, final Long size) {
+        final MantaObject obj = mock(MantaObject.class);
+
+        when(obj.getPath()).thenReturn(path);
+        when(obj.getContentLength()).thenReturn(size);
+
+        return obj;
+    }
+
     private static Function<String, MantaObject> fakeFileToObjectConverter = s -> {
         final MantaObject obj = mock(MantaObject.class);
 
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import com.joyent.manta.presto.exceptions.MantaPrestoIllegalArgumentException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+@Test
+public class AirliftZstdCompressorInputStreamTest {
+    private static final byte[] HELLO = "Hello World".getBytes(StandardCharsets.UTF_8);
+
+    public void canDecompressRawBlock() throws IOException {
+        final byte[] frame = frame(0x20, new byte[] {(byte) HELLO.length}, rawBlock(HELLO, true));
+
+        Assert.assertEquals(decompress(frame), HELLO);
+    }
+
+    public void canDecompressRleBlock() throws IOException {
+        final byte[] expected = new byte[300];
+        Arrays.fill(expected, (byte) 'z');
+        // Two byte content size is stored minus 256
+        final byte[] frame = frame(0x60, new byte[] {44, 0}, rleBlock((byte) 'z', 300, true));
+
+        Assert.assertEquals(decompress(frame), expected);
+    }
+
+    public void canDecompressCompressedBlock() throws IOException {
+        final byte[] frame = frame(0x20, new byte[] {(byte) HELLO.length}, literalsOnlyBlock(HELLO, true));
+
+        Assert.assertEquals(decompress(frame), HELLO);
+    }
+
+    public void canDecompressFrameWithoutContentSize() throws IOException {
+        final byte[] expected = concat(HELLO, new byte[] {'!', '!', '!'});
+        final byte[] frame = frame(0x00, new byte[] {0x00},
+                rawBlock(HELLO, false), rleBlock((byte) '!', 3, true));
+
+        Assert.assertEquals(decompress(frame), expected);
+    }
+
+    public void canDecompressConcatenatedAndSkippableFrames() throws IOException {
+        final byte[] first = frame(0x20, new byte[] {(byte) HELLO.length}, rawBlock(HELLO, true));
+        final byte[] skippable = {0x5A, 0x2A, 0x4D, 0x18, 3, 0, 0, 0, 1, 2, 3};
+        final byte[] second = frame(0x20, new byte[] {5}, rleBlock((byte) 'a', 5, true));
+
+        Assert.assertEquals(decompress(concat(first, skippable, second)),
+                concat(HELLO, "aaaaa".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void verifiesChecksumOfFrameWithoutContentSize() throws IOException {
+        // Checksum is the low 32 bits of the XXH64 hash of "Hello World"
+        final byte[] frame = frame(0x04, new byte[] {0x00},
+                rawBlock(HELLO, true), new byte[] {(byte) 0xC2, 0x5B, 0x24, 0x19});
+
+        Assert.assertEquals(decompress(frame), HELLO);
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = ".*checksum mismatch.*")
+    public void rejectsBadChecksum() throws IOException {
+        final byte[] frame = frame(0x24, new byte[] {(byte) HELLO.length},
+                rawBlock(HELLO, true), new byte[] {1, 2, 3, 4});
+
+        decompress(frame);
+    }
+
+    public void canDecompressEmptyStream() throws IOException {
+        Assert.assertEquals(decompress(new byte[0]), new byte[0]);
+    }
+
+    @Test(expectedExceptions = IOException.class,
+          expectedExceptionsMessageRegExp = ".*dictionary.*dictionaryId=7.*")
+    public void rejectsDictionaryFrames() throws IOException {
+        decompress(frame(0x21, new byte[] {7, (byte) HELLO.length}, rawBlock(HELLO, true)));
+    }
+
+    public void canDecompressDictionaryFramesWithConfiguredDictionary() throws IOException {
+        final byte[] dictionary = trainDictionary();
+        final byte[] row = row(12_345).getBytes(StandardCharsets.UTF_8);
+        final byte[] dictionaryFrame;
+
+        try (ZstdDictCompress compressDictionary = new ZstdDictCompress(dictionary, 3)) {
+            dictionaryFrame = Zstd.compress(row, compressDictionary);
+        }
+
+        final byte[] plainFrame = frame(0x20, new byte[] {(byte) HELLO.length}, rawBlock(HELLO, true));
+        final Path path = Files.createTempFile("zstd", ".dict");
+
+        try {
+            Files.write(path, dictionary);
+            final ZstdDictionaries dictionaries = new ZstdDictionaries(ImmutableList.of(path.toString()));
+
+            Assert.assertTrue(dictionaries.contains(ZstdDictionaries.dictionaryId(dictionary, path.toString())));
+
+            try (InputStream in = new AirliftZstdCompressorInputStream(
+                    new ByteArrayInputStream(concat(plainFrame, dictionaryFrame)),
+                    MantaBufferPool.disabled(), dictionaries)) {
+                Assert.assertEquals(ByteStreams.toByteArray(in), concat(HELLO, row));
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expectedExceptions = MantaPrestoIllegalArgumentException.class,
+          expectedExceptionsMessageRegExp = ".*isn't a trained dictionary.*")
+    public void rejectsDictionaryFilesWithoutId() throws IOException {
+        final Path path = Files.createTempFile("zstd", ".dict");
+
+        try {
+            Files.write(path, HELLO);
+            new ZstdDictionaries(ImmutableList.of(path.toString()));
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = "Not a Zstandard frame.*")
+    public void rejectsOtherData() throws IOException {
+        decompress(HELLO);
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void rejectsTruncatedFrames() throws IOException {
+        final byte[] frame = frame(0x20, new byte[] {(byte) HELLO.length}, rawBlock(HELLO, true));
+
+        decompress(Arrays.copyOf(frame, frame.length - 2));
+    }
+
+    public void returnsBuffersToPoolWhenClosed() throws IOException {
+        final MantaBufferPool pool = new MantaBufferPool(10L * 1024 * 1024, 0L);
+        final byte[] frame = frame(0x20, new byte[] {(byte) HELLO.length}, rawBlock(HELLO, true));
+
+        try (InputStream in = new AirliftZstdCompressorInputStream(new ByteArrayInputStream(frame), pool)) {
+            Assert.assertEquals(ByteStreams.toByteArray(in), HELLO);
+        }
+
+        Assert.assertEquals(pool.getHeapRetainedBuffers(), 2L);
+    }
+
+    private static byte[] trainDictionary() {
+        final byte[][] samples = new byte[2_000][];
+
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = row(i).getBytes(StandardCharsets.UTF_8);
+        }
+
+        final byte[] dictionary = new byte[16 * 1024];
+        final long size = Zstd.trainFromBuffer(samples, dictionary);
+        Assert.assertFalse(Zstd.isError(size), "Unable to train dictionary");
+
+        return Arrays.copyOf(dictionary, (int) size);
+    }
+
+    private static String row(final int i) {
+        return String.format("{\"id\":%d,\"host\":\"server-%d.example.com\",\"status\":%d,"
+                + "\"path\":\"/api/v1/objects/%d\"}\n", i, i % 17, 200 + (i % 5), i * 31);
+    }
+
+    private static byte[] decompress(final byte[] compressed) throws IOException {
+        try (InputStream in = new AirliftZstdCompressorInputStream(new ByteArrayInputStream(compressed))) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    private static byte[] frame(final int descriptor, final byte[] headerFields, final byte[]... blocks) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0x28);
+        out.write(0xB5);
+        out.write(0x2F);
+        out.write(0xFD);
+        out.write(descriptor);
+        out.write(headerFields, 0, headerFields.length);
+
+        for (byte[] block : blocks) {
+            out.write(block, 0, block.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] rawBlock(final byte[] content, final boolean last) {
+        return concat(blockHeader(0, content.length, last), content);
+    }
+
+    private static byte[] rleBlock(final byte value, final int size, final boolean last) {
+        return concat(blockHeader(1, size, last), new byte[] {value});
+    }
+
+    /**
+     * Compressed block made of raw literals and no sequences.
+     */
+    private static byte[] literalsOnlyBlock(final byte[] literals, final boolean last) {
+        final byte[] content = concat(new byte[] {(byte) (literals.length << 3)}, literals, new byte[] {0});
+
+        return concat(blockHeader(2, content.length, last), content);
+    }
+
+    private static byte[] blockHeader(final int type, final int size, final boolean last) {
+        int header = (size << 3) | (type << 1);
+
+        if (last) {
+            header |= 1;
+        }
+
+        return new byte[] {(byte) header, (byte) (header >>> 8), (byte) (header >>> 16)};
+    }
+
+    private static byte[] concat(final byte[]... arrays) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (byte[] array : arrays) {
+            out.write(array, 0, array.length);
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.concat;
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.lines;
+
+@Test
+public class Bzip2BlockInputStreamTest {
+    static byte[] bzip2(final byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // The smallest block size gives several blocks for little data
+        try (BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(out, 1)) {
+            bzip2.write(data);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static Bzip2BlockInputStream blocks(final byte[] compressed, final int start, final int end) {
+        return new Bzip2BlockInputStream(new ByteArrayInputStream(compressed, start, compressed.length - start),
+                start, end, MantaBufferPool.disabled());
+    }
+
+    private static byte[] decompress(final InputStream blocks) throws IOException {
+        try (InputStream in = new BZip2CompressorInputStream(blocks, false)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    private static void assertRangesReadEveryBlockOnce(final byte[] compressed, final byte[] data,
+                                                       final int rangeSize) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (int start = 0; start < compressed.length; start += rangeSize) {
+            final int end = Math.min(compressed.length, start + rangeSize);
+
+            try (InputStream in = blocks(compressed, start, end)) {
+                final byte[] decompressed = decompress(in);
+                out.write(decompressed, 0, decompressed.length);
+            }
+        }
+
+        Assert.assertTrue(Arrays.equals(out.toByteArray(), data), "range size " + rangeSize);
+    }
+
+    public void readsWholeObject() throws IOException {
+        final byte[] data = lines(20_000, 1L);
+        final byte[] compressed = bzip2(data);
+
+        try (InputStream in = blocks(compressed, 0, compressed.length)) {
+            Assert.assertTrue(Arrays.equals(decompress(in), data));
+        }
+    }
+
+    public void adjacentRangesReadEveryBlockOnce() throws IOException {
+        final byte[] data = lines(40_000, 2L);
+        final byte[] compressed = bzip2(data);
+
+        for (int rangeSize : new int[] {compressed.length / 7, compressed.length / 3, 10_000, 100_001}) {
+            assertRangesReadEveryBlockOnce(compressed, data, rangeSize);
+        }
+    }
+
+    public void adjacentRangesReadConcatenatedStreams() throws IOException {
+        final byte[] first = lines(25_000, 3L);
+        final byte[] second = lines(5, 4L);
+        final byte[] third = lines(30_000, 5L);
+        final byte[] compressed = concat(bzip2(first), bzip2(second), bzip2(third));
+        final byte[] data = concat(first, second, third);
+
+        for (int rangeSize : new int[] {compressed.length / 5, 20_000, compressed.length}) {
+            assertRangesReadEveryBlockOnce(compressed, data, rangeSize);
+        }
+    }
+
+    public void followingContinuesAfterRange() throws IOException {
+        final byte[] data = lines(30_000, 6L);
+        final byte[] compressed = bzip2(data);
+        final int end = compressed.length / 2;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (Bzip2BlockInputStream range = blocks(compressed, 0, end)) {
+            // Closing the decoder would close the range before the following blocks are read
+            final byte[] first = ByteStreams.toByteArray(new BZip2CompressorInputStream(range, false));
+            out.write(first, 0, first.length);
+            Assert.assertTrue(first.length < data.length, "Range read the whole object");
+
+            try (InputStream following = range.following()) {
+                final byte[] rest = decompress(following);
+                out.write(rest, 0, rest.length);
+            }
+        }
+
+        Assert.assertTrue(Arrays.equals(out.toByteArray(), data));
+    }
+
+    public void rangeWithoutBlockStartIsEmpty() throws IOException {
+        final byte[] compressed = bzip2(lines(20_000, 7L));
+
+        try (InputStream in = blocks(compressed, 10, 20)) {
+            Assert.assertEquals(decompress(in).length, 0);
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void truncatedBlockFails() throws IOException {
+        final byte[] compressed = bzip2(lines(20_000, 8L));
+        final byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        try (InputStream in = blocks(truncated, 0, truncated.length)) {
+            decompress(in);
+        }
+    }
+}
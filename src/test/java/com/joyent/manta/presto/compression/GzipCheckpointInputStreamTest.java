@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.concat;
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.gzip;
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.index;
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.lines;
+
+@Test
+public class GzipCheckpointInputStreamTest {
+    private static void assertResumesFromEveryCheckpoint(final byte[] compressed,
+                                                         final byte[] data,
+                                                         final long spacing) throws IOException {
+        final GzipIndex built = index(compressed, data, spacing);
+        final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        built.writeTo(serialized);
+        final byte[] sidecar = serialized.toByteArray();
+
+        final List<GzipIndex.Checkpoint> checkpoints =
+                GzipIndex.readTable(new ByteArrayInputStream(sidecar)).getCheckpoints();
+        Assert.assertEquals(checkpoints.size(), built.getCheckpoints().size());
+        Assert.assertFalse(checkpoints.isEmpty());
+
+        boolean unaligned = false;
+
+        for (GzipIndex.Checkpoint checkpoint : checkpoints) {
+            final int windowStart = (int) checkpoint.getWindowOffset();
+            final byte[] window = GzipIndex.inflateWindow(Arrays.copyOfRange(sidecar,
+                    windowStart, windowStart + checkpoint.getWindowLength()));
+            final int start = (int) checkpoint.getCompressedOffset();
+            final int uncompressedStart = (int) checkpoint.getUncompressedOffset();
+            unaligned |= checkpoint.getBits() != 0;
+
+            Assert.assertTrue(Arrays.equals(window, Arrays.copyOfRange(data,
+                    Math.max(0, uncompressedStart - GzipIndex.WINDOW_SIZE), uncompressedStart)));
+
+            try (InputStream in = new GzipCheckpointInputStream(
+                    new ByteArrayInputStream(compressed, start, compressed.length - start),
+                    checkpoint.getBits(), window, MantaBufferPool.disabled())) {
+                final byte[] suffix = ByteStreams.toByteArray(in);
+                Assert.assertTrue(Arrays.equals(suffix, Arrays.copyOfRange(data, uncompressedStart, data.length)),
+                        checkpoint.toString());
+            }
+        }
+
+        Assert.assertTrue(unaligned, "No checkpoint exercised a bit offset");
+    }
+
+    public void resumesWithinSingleMember() throws IOException {
+        final byte[] data = lines(60_000, 10L);
+
+        assertResumesFromEveryCheckpoint(gzip(data, Deflater.DEFAULT_COMPRESSION), data, 400_000L);
+    }
+
+    public void resumesAcrossConcatenatedMembers() throws IOException {
+        final byte[] first = lines(30_000, 11L);
+        final byte[] second = lines(30_000, 12L);
+        final byte[] third = lines(30_000, 13L);
+        final byte[] compressed = concat(gzip(first, Deflater.BEST_SPEED),
+                gzip(second, Deflater.DEFAULT_COMPRESSION), gzip(third, Deflater.BEST_COMPRESSION));
+
+        assertResumesFromEveryCheckpoint(compressed, concat(first, second, third), 500_000L);
+    }
+
+    public void resumesWithinStoredBlocks() throws IOException {
+        final byte[] first = lines(20_000, 14L);
+        final byte[] second = lines(20_000, 15L);
+        final byte[] compressed = concat(gzip(first, Deflater.DEFAULT_COMPRESSION),
+                gzip(second, Deflater.NO_COMPRESSION));
+
+        assertResumesFromEveryCheckpoint(compressed, concat(first, second), 300_000L);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsInvalidBitOffset() {
+        new GzipCheckpointInputStream(new ByteArrayInputStream(new byte[0]), 8, new byte[0], MantaBufferPool.disabled());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.collect.ImmutableList;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+@Test
+public class GzipIndexTest {
+    public void sidecarPathAppendsExtension() {
+        Assert.assertEquals(GzipIndex.sidecarPath("/user/stor/logs.gz"), "/user/stor/logs.gz.gzidx");
+    }
+
+    public void canRoundTripTable() throws IOException {
+        final byte[] window = new byte[GzipIndex.WINDOW_SIZE];
+        Arrays.fill(window, (byte) 'a');
+        final byte[] shortWindow = "short".getBytes(StandardCharsets.UTF_8);
+
+        final GzipIndex index = new GzipIndex("\"etag\"", 1000L, 5000L, ImmutableList.of(
+                new GzipIndex.Checkpoint(100L, 20L, 3, shortWindow),
+                new GzipIndex.Checkpoint(40000L, 500L, 0, window)));
+        final byte[] bytes = index.toByteArray();
+
+        final GzipIndex read = GzipIndex.readTable(new ByteArrayInputStream(bytes));
+        Assert.assertEquals(read.getEtag(), "\"etag\"");
+        Assert.assertEquals(read.getCompressedSize(), 1000L);
+        Assert.assertEquals(read.getUncompressedSize(), 5000L);
+        Assert.assertEquals(read.getCheckpoints().size(), 2);
+
+        final GzipIndex.Checkpoint first = read.getCheckpoints().get(0);
+        Assert.assertEquals(first.getUncompressedOffset(), 100L);
+        Assert.assertEquals(first.getCompressedOffset(), 20L);
+        Assert.assertEquals(first.getBits(), 3);
+
+        final GzipIndex.Checkpoint second = read.getCheckpoints().get(1);
+        Assert.assertEquals(second.getWindowOffset(), first.getWindowOffset() + first.getWindowLength());
+        Assert.assertEquals(second.getWindowOffset() + second.getWindowLength(), bytes.length);
+
+        Assert.assertEquals(window(bytes, first), shortWindow);
+        Assert.assertEquals(window(bytes, second), window);
+    }
+
+    public void canRoundTripIndexWithoutEtag() throws IOException {
+        final GzipIndex index = new GzipIndex(null, 10L, 20L, ImmutableList.of());
+        final GzipIndex read = GzipIndex.readTable(new ByteArrayInputStream(index.toByteArray()));
+
+        Assert.assertNull(read.getEtag());
+        Assert.assertTrue(read.getCheckpoints().isEmpty());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void rejectsObjectThatIsntIndex() throws IOException {
+        GzipIndex.readTable(new ByteArrayInputStream("not an index at all".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] window(final byte[] index, final GzipIndex.Checkpoint checkpoint) throws IOException {
+        final int start = (int) checkpoint.getWindowOffset();
+        return GzipIndex.inflateWindow(Arrays.copyOfRange(index, start, start + checkpoint.getWindowLength()));
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+@Test
+public class GzipIndexingInputStreamTest {
+    static byte[] lines(final int count, final long seed) {
+        final Random random = new Random(seed);
+        final StringBuilder builder = new StringBuilder();
+        final String[] words = {"manta", "presto", "object", "storage", "joyent", "triton", "split", "gzip"};
+
+        for (int i = 0; i < count; i++) {
+            builder.append(i).append(',');
+
+            for (int j = 0; j < random.nextInt(12); j++) {
+                builder.append(words[random.nextInt(words.length)]).append(' ');
+            }
+
+            builder.append(random.nextLong()).append('\n');
+        }
+
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] gzip(final byte[] data, final int level) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(data);
+        }
+
+        return out.toByteArray();
+    }
+
+    static byte[] concat(final byte[]... parts) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    static GzipIndex index(final byte[] compressed, final byte[] expected, final long spacing) throws IOException {
+        final AtomicReference<GzipIndex> index = new AtomicReference<>();
+
+        try (InputStream in = new GzipIndexingInputStream(new ByteArrayInputStream(compressed),
+                spacing, "etag", MantaBufferPool.disabled(), index::set)) {
+            Assert.assertTrue(Arrays.equals(ByteStreams.toByteArray(in), expected), "Decompressed data differs");
+        }
+
+        Assert.assertNotNull(index.get(), "Index wasn't built");
+
+        return index.get();
+    }
+
+    public void canDecompressDynamicHuffmanBlocks() throws IOException {
+        final byte[] data = lines(20_000, 1L);
+        final GzipIndex index = index(gzip(data, Deflater.DEFAULT_COMPRESSION), data, 100_000L);
+
+        Assert.assertEquals(index.getUncompressedSize(), data.length);
+        Assert.assertEquals(index.getEtag(), "etag");
+        Assert.assertFalse(index.getCheckpoints().isEmpty());
+    }
+
+    public void canDecompressStoredBlocks() throws IOException {
+        final byte[] data = lines(5_000, 2L);
+
+        index(gzip(data, Deflater.NO_COMPRESSION), data, 10_000L);
+    }
+
+    public void canDecompressFixedHuffmanBlocks() throws IOException {
+        final byte[] data = "Hello World".getBytes(StandardCharsets.UTF_8);
+        final GzipIndex index = index(gzip(data, Deflater.BEST_SPEED), data, 1L);
+
+        Assert.assertTrue(index.getCheckpoints().isEmpty());
+    }
+
+    public void canDecompressEmptyMember() throws IOException {
+        index(gzip(new byte[0], Deflater.DEFAULT_COMPRESSION), new byte[0], 1L);
+    }
+
+    public void canDecompressConcatenatedMembers() throws IOException {
+        final byte[] first = lines(10_000, 3L);
+        final byte[] second = lines(10_000, 4L);
+        final byte[] compressed = concat(gzip(first, Deflater.BEST_SPEED), gzip(second, Deflater.BEST_COMPRESSION));
+        final GzipIndex index = index(compressed, concat(first, second), 50_000L);
+
+        Assert.assertEquals(index.getCompressedSize(), compressed.length);
+    }
+
+    public void checkpointsAreSpacedAndOrdered() throws IOException {
+        final byte[] data = lines(50_000, 5L);
+        final GzipIndex index = index(gzip(data, Deflater.DEFAULT_COMPRESSION), data, 200_000L);
+        long previous = 0L;
+
+        for (GzipIndex.Checkpoint checkpoint : index.getCheckpoints()) {
+            Assert.assertTrue(checkpoint.getUncompressedOffset() >= previous + 200_000L, checkpoint.toString());
+            Assert.assertTrue(checkpoint.getBits() >= 0 && checkpoint.getBits() < 8);
+            Assert.assertEquals(checkpoint.getWindow().length,
+                    Math.min(GzipIndex.WINDOW_SIZE, checkpoint.getUncompressedOffset()));
+            previous = checkpoint.getUncompressedOffset();
+        }
+    }
+
+    public void checkpointListenerReceivesResumableCheckpoints() throws IOException {
+        final byte[] data = lines(30_000, 8L);
+        final byte[] compressed = gzip(data, Deflater.DEFAULT_COMPRESSION);
+        final List<GzipIndex.Checkpoint> checkpoints = new ArrayList<>();
+
+        try (InputStream in = new GzipIndexingInputStream(new ByteArrayInputStream(compressed),
+                100_000L, MantaBufferPool.disabled(), checkpoints::add)) {
+            Assert.assertTrue(Arrays.equals(ByteStreams.toByteArray(in), data), "Decompressed data differs");
+        }
+
+        Assert.assertTrue(checkpoints.size() > 1, "Expected several checkpoints");
+
+        for (GzipIndex.Checkpoint checkpoint : checkpoints) {
+            final InputStream remaining = new ByteArrayInputStream(compressed,
+                    (int) checkpoint.getCompressedOffset(), compressed.length);
+
+            try (InputStream in = new GzipCheckpointInputStream(remaining, checkpoint.getBits(),
+                    checkpoint.getWindow(), MantaBufferPool.disabled())) {
+                Assert.assertTrue(Arrays.equals(ByteStreams.toByteArray(in), Arrays.copyOfRange(data,
+                        (int) checkpoint.getUncompressedOffset(), data.length)), checkpoint.toString());
+            }
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class, expectedExceptionsMessageRegExp = ".*checksum.*")
+    public void rejectsChecksumMismatch() throws IOException {
+        final byte[] data = lines(100, 6L);
+        final byte[] compressed = gzip(data, Deflater.DEFAULT_COMPRESSION);
+        compressed[compressed.length - 8] ^= 1;
+
+        index(compressed, data, 1_000L);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void rejectsTruncatedStream() throws IOException {
+        final byte[] data = lines(100, 7L);
+        final byte[] compressed = gzip(data, Deflater.DEFAULT_COMPRESSION);
+
+        index(Arrays.copyOf(compressed, compressed.length / 2), data, 1_000L);
+    }
+}
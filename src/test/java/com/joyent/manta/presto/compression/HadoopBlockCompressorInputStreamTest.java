@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import io.airlift.compress.Compressor;
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.lzo.LzoCompressor;
+import io.airlift.compress.snappy.SnappyCompressor;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BiFunction;
+
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.lines;
+
+@Test
+public class HadoopBlockCompressorInputStreamTest {
+    private final MantaBufferPool pool = new MantaBufferPool(16_777_216L, 0L);
+
+    /**
+     * Writes data in the framing of Hadoop's BlockCompressorStream with
+     * blocks of at most the specified size, each compressed in chunks.
+     */
+    private static byte[] hadoop(final Compressor compressor, final byte[] data,
+                                 final int blockSize, final int chunkSize) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (int block = 0; block < data.length; block += blockSize) {
+            final int blockLength = Math.min(blockSize, data.length - block);
+            writeInt(out, blockLength);
+
+            for (int chunk = block; chunk < block + blockLength; chunk += chunkSize) {
+                final int chunkLength = Math.min(chunkSize, block + blockLength - chunk);
+                final byte[] compressed = new byte[compressor.maxCompressedLength(chunkLength)];
+                final int compressedLength = compressor.compress(data, chunk, chunkLength,
+                        compressed, 0, compressed.length);
+
+                writeInt(out, compressedLength);
+                out.write(compressed, 0, compressedLength);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private static void writeInt(final ByteArrayOutputStream out, final int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            out.write(value >>> shift);
+        }
+    }
+
+    private void canDecompress(final Compressor compressor,
+                               final BiFunction<InputStream, MantaBufferPool, InputStream> stream)
+            throws IOException {
+        final byte[] data = lines(50_000, 1L);
+        final byte[] compressed = hadoop(compressor, data, 262_144, 65_536);
+
+        try (InputStream in = stream.apply(new ByteArrayInputStream(compressed), pool)) {
+            Assert.assertTrue(Arrays.equals(ByteStreams.toByteArray(in), data));
+        }
+    }
+
+    public void canDecompressSnappy() throws IOException {
+        canDecompress(new SnappyCompressor(), HadoopBlockCompressorInputStream::snappy);
+    }
+
+    public void canDecompressLz4() throws IOException {
+        canDecompress(new Lz4Compressor(), HadoopBlockCompressorInputStream::lz4);
+    }
+
+    public void canDecompressLzo() throws IOException {
+        canDecompress(new LzoCompressor(), HadoopBlockCompressorInputStream::lzo);
+    }
+
+    public void canDecompressSnappyWrittenByHadoop() throws IOException {
+        final byte[] compressed;
+        try (InputStream in = Thread.currentThread().getContextClassLoader()
+                .getResourceAsStream("test-data/compressed/hello-world.txt.snappy")) {
+            compressed = ByteStreams.toByteArray(in);
+        }
+
+        try (InputStream in = HadoopBlockCompressorInputStream.snappy(
+                new ByteArrayInputStream(compressed), pool)) {
+            Assert.assertEquals(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8),
+                    "Hello World");
+        }
+    }
+
+    public void emptyStreamHasNoData() throws IOException {
+        try (InputStream in = HadoopBlockCompressorInputStream.snappy(new ByteArrayInputStream(new byte[0]), pool)) {
+            Assert.assertEquals(in.read(), -1);
+        }
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void truncatedStreamFails() throws IOException {
+        final byte[] compressed = hadoop(new Lz4Compressor(), lines(1_000, 2L), 65_536, 16_384);
+
+        try (InputStream in = HadoopBlockCompressorInputStream.lz4(
+                new ByteArrayInputStream(compressed, 0, compressed.length - 10), pool)) {
+            ByteStreams.toByteArray(in);
+        }
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void corruptChunkFails() throws IOException {
+        final byte[] compressed = hadoop(new SnappyCompressor(), lines(1_000, 3L), 65_536, 65_536);
+        // Overwrites the start of the first chunk's data with bytes that can't be a Snappy literal
+        Arrays.fill(compressed, 8, 20, (byte) 0xFF);
+
+        try (InputStream in = HadoopBlockCompressorInputStream.snappy(new ByteArrayInputStream(compressed), pool)) {
+            ByteStreams.toByteArray(in);
+        }
+    }
+
+    public void closeReturnsBuffers() throws IOException {
+        final MantaBufferPool closing = new MantaBufferPool(16_777_216L, 0L);
+        final byte[] compressed = hadoop(new LzoCompressor(), lines(100, 4L), 65_536, 65_536);
+
+        final InputStream in = HadoopBlockCompressorInputStream.lzo(new ByteArrayInputStream(compressed), closing);
+        Assert.assertTrue(in.read() >= 0);
+        in.close();
+        in.close();
+
+        Assert.assertEquals(closing.getHeapRetainedBuffers(), 2L);
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import io.airlift.compress.lz4.Lz4Compressor;
+import org.apache.commons.compress.compressors.lz4.XXHash32;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.concat;
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.lines;
+
+@Test
+public class Lz4FrameCompressorInputStreamTest {
+    private static final int BLOCK_INDEPENDENCE = 0x20;
+    private static final int BLOCK_CHECKSUM = 0x10;
+    private static final int CONTENT_SIZE = 0x08;
+    private static final int CONTENT_CHECKSUM = 0x04;
+
+    private final MantaBufferPool pool = new MantaBufferPool(16_777_216L, 0L);
+
+    /**
+     * Writes a frame holding the passed blocks as they are, flagging the
+     * ones marked as uncompressed.
+     */
+    private static byte[] frame(final int flags, final int blockSizeId, final List<byte[]> blocks,
+                                final List<Boolean> uncompressed, final byte[] content) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, Lz4FrameCompressorInputStream.FRAME_MAGIC);
+
+        final ByteArrayOutputStream descriptor = new ByteArrayOutputStream();
+        descriptor.write(0x40 | flags);
+        descriptor.write(blockSizeId << 4);
+
+        if ((flags & CONTENT_SIZE) != 0) {
+            writeInt(descriptor, content.length);
+            writeInt(descriptor, 0);
+        }
+
+        final byte[] descriptorBytes = descriptor.toByteArray();
+        out.write(descriptorBytes, 0, descriptorBytes.length);
+        out.write((int) (xxhash(descriptorBytes, descriptorBytes.length) >> 8));
+
+        for (int i = 0; i < blocks.size(); i++) {
+            final byte[] block = blocks.get(i);
+            int length = block.length;
+
+            if (uncompressed.get(i)) {
+                length |= 0x80000000;
+            }
+
+            writeInt(out, length);
+            out.write(block, 0, block.length);
+
+            if ((flags & BLOCK_CHECKSUM) != 0) {
+                writeInt(out, (int) xxhash(block, block.length));
+            }
+        }
+
+        writeInt(out, 0);
+
+        if ((flags & CONTENT_CHECKSUM) != 0) {
+            writeInt(out, (int) xxhash(content, content.length));
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes a frame of independent blocks compressed by aircompressor.
+     */
+    private static byte[] lz4(final byte[] data, final int flags, final int blockSizeId) {
+        final Lz4Compressor compressor = new Lz4Compressor();
+        final int blockSize = 1 << (8 + 2 * blockSizeId);
+        final List<byte[]> blocks = new ArrayList<>();
+        final List<Boolean> uncompressed = new ArrayList<>();
+
+        for (int offset = 0; offset < data.length; offset += blockSize) {
+            final int length = Math.min(blockSize, data.length - offset);
+            final byte[] compressed = new byte[compressor.maxCompressedLength(length)];
+            final int compressedLength = compressor.compress(data, offset, length, compressed, 0, compressed.length);
+
+            if (compressedLength < length) {
+                blocks.add(Arrays.copyOf(compressed, compressedLength));
+                uncompressed.add(false);
+            } else {
+                blocks.add(Arrays.copyOfRange(data, offset, offset + length));
+                uncompressed.add(true);
+            }
+        }
+
+        return frame(flags | BLOCK_INDEPENDENCE, blockSizeId, blocks, uncompressed, data);
+    }
+
+    /**
+     * Writes a block that copies bytes written before it, starting the
+     * specified distance back, and ends with the required literals.
+     */
+    private static byte[] copyBlock(final int distance, final int length, final byte[] literals) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0x0F);
+        out.write(distance);
+        out.write(distance >>> 8);
+
+        int remaining = length - 4 - 15;
+        for (; remaining >= 255; remaining -= 255) {
+            out.write(255);
+        }
+        out.write(remaining);
+
+        out.write(literals.length << 4);
+        out.write(literals, 0, literals.length);
+
+        return out.toByteArray();
+    }
+
+    private static void writeInt(final ByteArrayOutputStream out, final int value) {
+        for (int i = 0; i < 4; i++) {
+            out.write(value >>> (i * 8));
+        }
+    }
+
+    private static long xxhash(final byte[] data, final int length) {
+        final XXHash32 hash = new XXHash32();
+        hash.update(data, 0, length);
+        return hash.getValue();
+    }
+
+    private byte[] decompress(final byte[] compressed) throws IOException {
+        try (InputStream in = new Lz4FrameCompressorInputStream(new ByteArrayInputStream(compressed), pool)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    public void decompressesIndependentBlocks() throws IOException {
+        final byte[] data = lines(50_000, 1L);
+        final byte[] compressed = lz4(data, BLOCK_CHECKSUM | CONTENT_SIZE | CONTENT_CHECKSUM, 4);
+
+        Assert.assertTrue(Arrays.equals(decompress(compressed), data));
+    }
+
+    public void decompressesLargeBlocks() throws IOException {
+        final byte[] data = lines(200_000, 2L);
+        final byte[] compressed = lz4(data, CONTENT_CHECKSUM, 6);
+
+        Assert.assertTrue(Arrays.equals(decompress(compressed), data));
+    }
+
+    public void decompressesIncompressibleData() throws IOException {
+        final byte[] data = new byte[200_000];
+        new Random(3L).nextBytes(data);
+        final byte[] compressed = lz4(data, BLOCK_CHECKSUM | CONTENT_CHECKSUM, 4);
+
+        Assert.assertTrue(Arrays.equals(decompress(compressed), data));
+    }
+
+    public void decompressesLinkedBlocks() throws IOException {
+        final byte[] tail = {'t', 'a', 'i', 'l', '\n'};
+        final List<byte[]> blocks = new ArrayList<>();
+        final List<Boolean> uncompressed = new ArrayList<>();
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final Random random = new Random(4L);
+
+        // Enough 64KiB blocks that the window is slid several times
+        for (int i = 0; i < 6; i++) {
+            final byte[] literal = new byte[65_536];
+            random.nextBytes(literal);
+            blocks.add(literal);
+            uncompressed.add(true);
+            content.write(literal, 0, literal.length);
+
+            // Copies from as far back as a match can reach
+            blocks.add(copyBlock(65_535, 60_000, tail));
+            uncompressed.add(false);
+            content.write(literal, 1, 60_000);
+            content.write(tail, 0, tail.length);
+        }
+
+        final byte[] data = content.toByteArray();
+        final byte[] compressed = frame(BLOCK_CHECKSUM | CONTENT_CHECKSUM, 4, blocks, uncompressed, data);
+
+        Assert.assertTrue(Arrays.equals(decompress(compressed), data));
+    }
+
+    public void decompressesOverlappingMatches() throws IOException {
+        final byte[] first = {'a', 'b', 'c'};
+        final byte[] tail = {'t', 'a', 'i', 'l', '\n'};
+        final byte[] data = concat("abcabcabcabcabcabcabcab".getBytes(StandardCharsets.UTF_8), tail);
+        final byte[] compressed = frame(CONTENT_CHECKSUM, 4,
+                Arrays.asList(first, copyBlock(3, 20, tail)), Arrays.asList(true, false), data);
+
+        Assert.assertTrue(Arrays.equals(decompress(compressed), data));
+    }
+
+    public void decompressesConcatenatedFramesAndSkipsSkippableFrames() throws IOException {
+        final byte[] first = lines(10_000, 5L);
+        final byte[] second = lines(20_000, 6L);
+        final byte[] skippable = {0x50, 0x2A, 0x4D, 0x18, 3, 0, 0, 0, 1, 2, 3};
+
+        final byte[] compressed = concat(lz4(first, CONTENT_CHECKSUM, 4), skippable, lz4(second, 0, 5));
+
+        Assert.assertTrue(Arrays.equals(decompress(compressed), concat(first, second)));
+    }
+
+    public void emptyStreamHasNoData() throws IOException {
+        Assert.assertEquals(decompress(new byte[0]).length, 0);
+        Assert.assertEquals(decompress(lz4(new byte[0], CONTENT_CHECKSUM, 4)).length, 0);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void corruptContentFailsChecksum() throws IOException {
+        final byte[] compressed = lz4(lines(1_000, 7L), CONTENT_CHECKSUM, 4);
+        compressed[compressed.length - 1] ^= 0x55;
+
+        decompress(compressed);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void corruptBlockFailsChecksum() throws IOException {
+        final byte[] compressed = lz4(lines(1_000, 8L), BLOCK_CHECKSUM, 4);
+        // Flips a byte of the checksum that follows the only block
+        compressed[compressed.length - 5] ^= 0x55;
+
+        decompress(compressed);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void corruptHeaderFailsChecksum() throws IOException {
+        final byte[] compressed = lz4(lines(10, 9L), 0, 4);
+        compressed[5] ^= 0x30;
+
+        decompress(compressed);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void unknownMagicNumberFails() throws IOException {
+        decompress(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void truncatedStreamFails() throws IOException {
+        final byte[] compressed = lz4(lines(1_000, 10L), CONTENT_CHECKSUM, 4);
+
+        decompress(Arrays.copyOf(compressed, compressed.length - 10));
+    }
+
+    public void closeReturnsBuffers() throws IOException {
+        final MantaBufferPool closing = new MantaBufferPool(16_777_216L, 0L);
+        final byte[] compressed = lz4(lines(100, 11L), 0, 4);
+
+        final InputStream in = new Lz4FrameCompressorInputStream(new ByteArrayInputStream(compressed), closing);
+        Assert.assertTrue(in.read() >= 0);
+        in.close();
+        in.close();
+
+        Assert.assertTrue(closing.getHeapRetainedBuffers() > 0L);
+    }
+}
@@ -9,10 +9,11 @@ package com.joyent.manta.presto.compression;
 
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
+import com.joyent.manta.client.MantaObjectResponse;
+import com.joyent.manta.http.MantaHttpHeaders;
 import org.apache.commons.compress.compressors.CompressorOutputStream;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.testng.Assert;
-import org.testng.SkipException;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
@@ -22,11 +23,16 @@ import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 
 import static com.joyent.manta.presto.compression.MantaCompressionType.BZIP2;
+import static com.joyent.manta.presto.compression.MantaCompressionType.FRAMED_SNAPPY;
 import static com.joyent.manta.presto.compression.MantaCompressionType.GZIP;
+import static com.joyent.manta.presto.compression.MantaCompressionType.HADOOP_LZ4;
+import static com.joyent.manta.presto.compression.MantaCompressionType.HADOOP_LZO;
 import static com.joyent.manta.presto.compression.MantaCompressionType.HADOOP_SNAPPY;
 import static com.joyent.manta.presto.compression.MantaCompressionType.LZ4;
+import static com.joyent.manta.presto.compression.MantaCompressionType.LZ4_FRAMED;
 import static com.joyent.manta.presto.compression.MantaCompressionType.XERIAL_SNAPPY;
 import static com.joyent.manta.presto.compression.MantaCompressionType.XZ;
+import static com.joyent.manta.presto.compression.MantaCompressionType.ZSTD;
 
 @Test
 public class MantaCompressionTypeTest {
@@ -61,18 +67,139 @@ public class MantaCompressionTypeTest {
             expected = ByteStreams.toByteArray(in);
         }
 
-        try {
-            canDecompress(HADOOP_SNAPPY, expected);
-        } catch (UnsupportedOperationException e) {
-            throw new SkipException("Native libraries need to be loaded in "
-                    + "order to use decompression algorithm");
-        }
+        canDecompress(HADOOP_SNAPPY, expected);
+    }
+
+    public void hadoopCodecsAreLookedUpByExtension() {
+        Assert.assertEquals(MantaCompressionType.valueOfExtension("snappy"), HADOOP_SNAPPY);
+        Assert.assertEquals(MantaCompressionType.valueOfExtension("hlz4"), HADOOP_LZ4);
+        Assert.assertEquals(MantaCompressionType.valueOfExtension("lzo_deflate"), HADOOP_LZO);
     }
 
     public void canDecompressXz() throws Exception {
         canDecompress(XZ, compressedTestString(XZ));
     }
 
+    public void canDecompressZstd() throws Exception {
+        final String resourcePath = "test-data/compressed/hello-world.txt.zst";
+        final byte[] expected;
+        try (InputStream in = classLoader.getResourceAsStream(resourcePath)) {
+            expected = ByteStreams.toByteArray(in);
+        }
+
+        canDecompress(ZSTD, expected);
+    }
+
+    public void zstdIsLookedUpByExtension() {
+        Assert.assertEquals(MantaCompressionType.valueOfExtension("zst"), ZSTD);
+    }
+
+    public void canDecompressFramedSnappy() throws Exception {
+        canDecompress(FRAMED_SNAPPY, compressedTestString(FRAMED_SNAPPY));
+    }
+
+    public void canDecompressLz4Framed() throws Exception {
+        canDecompress(LZ4_FRAMED, compressedTestString(LZ4_FRAMED));
+    }
+
+    public void sharedExtensionIsResolvedByMagicNumber() throws Exception {
+        final MantaObjectResponse object = new MantaObjectResponse("/user/stor/events.json.lz4");
+        Assert.assertEquals(MantaCompressionType.valueOfExtension("lz4"), LZ4);
+
+        final byte[] framed = compressedTestString(LZ4_FRAMED);
+        Assert.assertEquals(MantaCompressionType.detect(object, framed, framed.length), LZ4_FRAMED);
+
+        final byte[] block = compressedTestString(LZ4);
+        Assert.assertEquals(MantaCompressionType.detect(object, block, block.length), LZ4);
+
+        for (byte[] compressed : new byte[][] {framed, block}) {
+            try (InputStream in = MantaCompressionType.wrapMantaStreamIfCompressed(object,
+                    new ByteArrayInputStream(compressed))) {
+                Assert.assertEquals(CharStreams.toString(new InputStreamReader(in, StandardCharsets.UTF_8)),
+                        "Hello World");
+            }
+        }
+    }
+
+    public void detectsAlgorithmsByMagicNumber() throws Exception {
+        for (MantaCompressionType type : new MantaCompressionType[] {BZIP2, GZIP, XZ, FRAMED_SNAPPY, LZ4_FRAMED}) {
+            final byte[] compressed = compressedTestString(type);
+            Assert.assertEquals(MantaCompressionType.valueOfMagic(compressed, compressed.length), type);
+        }
+
+        final byte[] zstd;
+        try (InputStream in = classLoader.getResourceAsStream("test-data/compressed/hello-world.txt.zst")) {
+            zstd = ByteStreams.toByteArray(in);
+        }
+
+        Assert.assertEquals(MantaCompressionType.valueOfMagic(zstd, zstd.length), ZSTD);
+
+        final byte[] plain = "{\"a\":1}\n".getBytes(StandardCharsets.UTF_8);
+        Assert.assertNull(MantaCompressionType.valueOfMagic(plain, plain.length));
+        Assert.assertNull(MantaCompressionType.valueOfMagic(new byte[] {0x1f}, 1));
+    }
+
+    public void detectsAlgorithmsByHeaders() {
+        final MantaHttpHeaders encoded = new MantaHttpHeaders();
+        encoded.setContentEncoding("identity, GZIP");
+        Assert.assertEquals(MantaCompressionType.valueOfHeaders(
+                new MantaObjectResponse("/user/stor/events.json", encoded)), GZIP);
+
+        final MantaHttpHeaders typed = new MantaHttpHeaders();
+        typed.setContentType("application/x-bzip2; charset=binary");
+        Assert.assertEquals(MantaCompressionType.valueOfHeaders(
+                new MantaObjectResponse("/user/stor/events.json", typed)), BZIP2);
+
+        final MantaHttpHeaders plain = new MantaHttpHeaders();
+        plain.setContentType("application/x-json-stream");
+        Assert.assertNull(MantaCompressionType.valueOfHeaders(
+                new MantaObjectResponse("/user/stor/events.json", plain)));
+    }
+
+    public void headersAreCheckedAgainstMagicNumber() throws Exception {
+        final MantaHttpHeaders headers = new MantaHttpHeaders();
+        headers.setContentEncoding("gzip");
+        final MantaObjectResponse object = new MantaObjectResponse("/user/stor/events.json", headers);
+
+        final byte[] xz = compressedTestString(XZ);
+        Assert.assertEquals(MantaCompressionType.detect(object, xz, xz.length), XZ);
+
+        final byte[] plain = "Hello World".getBytes(StandardCharsets.UTF_8);
+        Assert.assertNull(MantaCompressionType.detect(object, plain, plain.length));
+    }
+
+    public void extensionTakesPrecedence() throws Exception {
+        final byte[] gzip = compressedTestString(GZIP);
+        Assert.assertEquals(MantaCompressionType.detect(
+                new MantaObjectResponse("/user/stor/events.json.bz2"), gzip, gzip.length), BZIP2);
+    }
+
+    public void wrapsObjectsWithoutCompressionExtension() throws Exception {
+        final MantaObjectResponse object = new MantaObjectResponse("/user/stor/events-2017.json");
+
+        for (MantaCompressionType type : new MantaCompressionType[] {BZIP2, GZIP, XZ, FRAMED_SNAPPY}) {
+            try (InputStream in = MantaCompressionType.wrapMantaStreamIfCompressed(object,
+                    new ByteArrayInputStream(compressedTestString(type)))) {
+                Assert.assertEquals(CharStreams.toString(new InputStreamReader(in, StandardCharsets.UTF_8)),
+                        "Hello World", type.name());
+            }
+        }
+    }
+
+    public void leavesUncompressedObjectsIntact() throws Exception {
+        final byte[] data = "Hello World".getBytes(StandardCharsets.UTF_8);
+
+        try (InputStream in = MantaCompressionType.wrapMantaStreamIfCompressed(
+                new MantaObjectResponse("/user/stor/events.json"), new ByteArrayInputStream(data))) {
+            Assert.assertEquals(ByteStreams.toByteArray(in), data);
+        }
+
+        try (InputStream in = MantaCompressionType.wrapMantaStreamIfCompressed(
+                new MantaObjectResponse("/user/stor/events.json"), new ByteArrayInputStream(new byte[0]))) {
+            Assert.assertEquals(in.read(), -1);
+        }
+    }
+
     private byte[] compressedTestString(MantaCompressionType compressionType) throws Exception {
         final String expected = "Hello World";
         byte[] expectedBytes = expected.getBytes(StandardCharsets.UTF_8);
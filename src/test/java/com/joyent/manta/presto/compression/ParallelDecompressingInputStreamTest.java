@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.concat;
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.gzip;
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.lines;
+
+@Test
+public class ParallelDecompressingInputStreamTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterClass
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] bzip2(final byte[] data, final int blockSize) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(out, blockSize)) {
+            bzip2.write(data);
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes data as BGZF members of at most the specified number of
+     * uncompressed bytes, followed by the empty end of file member.
+     */
+    private static byte[] bgzf(final byte[] data, final int memberSize) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (int offset = 0; offset <= data.length; offset += memberSize) {
+            final int length = Math.min(memberSize, data.length - offset);
+            final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+
+            final byte[] deflated = new byte[length + 1024];
+            final int deflatedLength = deflater.deflate(deflated);
+            deflater.end();
+
+            final CRC32 crc = new CRC32();
+            crc.update(data, offset, length);
+
+            final int blockSize = 18 + deflatedLength + 8;
+            out.write(new byte[] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0,
+                    (byte) (blockSize - 1), (byte) ((blockSize - 1) >>> 8)}, 0, 18);
+            out.write(deflated, 0, deflatedLength);
+            writeInt(out, (int) crc.getValue());
+            writeInt(out, length);
+
+            if (length == 0) {
+                break;
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private static void writeInt(final ByteArrayOutputStream out, final int value) {
+        for (int i = 0; i < 4; i++) {
+            out.write(value >>> (i * 8));
+        }
+    }
+
+    private static byte[] readSmallReads(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[777];
+
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+
+        return out.toByteArray();
+    }
+
+    public void decompressesBzip2Blocks() throws IOException {
+        final byte[] data = lines(200_000, 1L);
+        final byte[] compressed = bzip2(data, 1);
+        Assert.assertTrue(compressed.length > 2 * ParallelDecompressingInputStream.UNIT_SIZE,
+                "Expected several units");
+
+        try (InputStream in = ParallelDecompressingInputStream.bzip2(new ByteArrayInputStream(compressed),
+                executor, 3, MantaBufferPool.disabled())) {
+            Assert.assertTrue(Arrays.equals(readSmallReads(in), data));
+        }
+    }
+
+    public void decompressesConcatenatedBzip2Streams() throws IOException {
+        final byte[] first = lines(30_000, 2L);
+        final byte[] second = lines(3, 3L);
+        final byte[] third = lines(40_000, 4L);
+        final byte[] compressed = concat(bzip2(first, 9), bzip2(second, 1), bzip2(third, 1));
+
+        try (InputStream in = ParallelDecompressingInputStream.bzip2(new ByteArrayInputStream(compressed),
+                executor, 1, MantaBufferPool.disabled())) {
+            Assert.assertTrue(Arrays.equals(ByteStreams.toByteArray(in), concat(first, second, third)));
+        }
+    }
+
+    public void decompressesBgzfMembers() throws IOException {
+        final byte[] data = lines(100_000, 5L);
+        final byte[] compressed = bgzf(data, 65_280);
+
+        Assert.assertTrue(ParallelDecompressingInputStream.isBgzfHeader(compressed, compressed.length));
+
+        try (InputStream in = ParallelDecompressingInputStream.bgzf(new ByteArrayInputStream(compressed),
+                executor, 4, MantaBufferPool.disabled())) {
+            Assert.assertTrue(Arrays.equals(readSmallReads(in), data));
+        }
+    }
+
+    public void reportsBzip2UnitsThatCanBeResumed() throws IOException {
+        final byte[] data = lines(200_000, 9L);
+        final byte[] compressed = bzip2(data, 1);
+        final List<long[]> units = new ArrayList<>();
+
+        try (ParallelDecompressingInputStream in = ParallelDecompressingInputStream.bzip2(
+                new ByteArrayInputStream(compressed), executor, 2, MantaBufferPool.disabled())) {
+            in.setUnitListener((uncompressed, offset) -> units.add(new long[] {uncompressed, offset}));
+            Assert.assertTrue(Arrays.equals(readSmallReads(in), data));
+        }
+
+        Assert.assertTrue(units.size() > 2, "Expected several units");
+        Assert.assertEquals(units.get(0), new long[] {0L, 0L});
+
+        for (long[] unit : units.subList(1, units.size())) {
+            Assert.assertEquals(unit[1] % ParallelDecompressingInputStream.UNIT_SIZE, 0L);
+
+            try (InputStream in = ParallelDecompressingInputStream.bzip2(new ByteArrayInputStream(compressed,
+                    (int) unit[1], compressed.length), executor, 2, MantaBufferPool.disabled())) {
+                Assert.assertTrue(Arrays.equals(ByteStreams.toByteArray(in),
+                        Arrays.copyOfRange(data, (int) unit[0], data.length)));
+            }
+        }
+    }
+
+    public void reportsBgzfMembersThatCanBeResumed() throws IOException {
+        final byte[] data = lines(200_000, 10L);
+        final byte[] compressed = bgzf(data, 65_280);
+        final List<long[]> units = new ArrayList<>();
+
+        try (ParallelDecompressingInputStream in = ParallelDecompressingInputStream.bgzf(
+                new ByteArrayInputStream(compressed), executor, 2, MantaBufferPool.disabled())) {
+            in.setUnitListener((uncompressed, offset) -> units.add(new long[] {uncompressed, offset}));
+            Assert.assertTrue(Arrays.equals(readSmallReads(in), data));
+        }
+
+        Assert.assertTrue(units.size() > 2, "Expected several units");
+        Assert.assertEquals(units.get(0), new long[] {0L, 0L});
+
+        for (long[] unit : units) {
+            // Units hold whole members
+            Assert.assertEquals(unit[0] % 65_280L, 0L);
+
+            try (InputStream in = ParallelDecompressingInputStream.bgzf(new ByteArrayInputStream(compressed,
+                    (int) unit[1], compressed.length), executor, 2, MantaBufferPool.disabled())) {
+                Assert.assertTrue(Arrays.equals(ByteStreams.toByteArray(in),
+                        Arrays.copyOfRange(data, (int) unit[0], data.length)));
+            }
+        }
+    }
+
+    public void plainGzipIsNotBgzf() throws IOException {
+        final byte[] compressed = gzip(lines(10, 6L), Deflater.DEFAULT_COMPRESSION);
+
+        Assert.assertFalse(ParallelDecompressingInputStream.isBgzfHeader(compressed, compressed.length));
+        Assert.assertFalse(ParallelDecompressingInputStream.isBgzfHeader(compressed, 10));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void corruptUnitFailsRead() throws IOException {
+        final byte[] data = lines(50_000, 7L);
+        final byte[] compressed = bgzf(data, 65_280);
+        // Corrupts the deflate data of a member well after the first unit
+        compressed[compressed.length - 1000] ^= 0x55;
+
+        try (InputStream in = ParallelDecompressingInputStream.bgzf(new ByteArrayInputStream(compressed),
+                executor, 2, MantaBufferPool.disabled())) {
+            ByteStreams.toByteArray(in);
+        }
+    }
+
+    public void closeBeforeEndStopsReading() throws IOException {
+        final byte[] compressed = bzip2(lines(100_000, 8L), 1);
+
+        final InputStream in = ParallelDecompressingInputStream.bzip2(new ByteArrayInputStream(compressed),
+                executor, 2, MantaBufferPool.disabled());
+        Assert.assertTrue(in.read() >= 0);
+        in.close();
+        in.close();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.concat;
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.gzip;
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.lines;
+
+@Test
+public class PooledGzipCompressorInputStreamTest {
+    private final MantaBufferPool pool = new MantaBufferPool(16_777_216L, 0L);
+
+    private byte[] decompress(final byte[] compressed) throws IOException {
+        try (InputStream in = new PooledGzipCompressorInputStream(new ByteArrayInputStream(compressed), pool)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    public void decompressesMember() throws IOException {
+        final byte[] data = lines(50_000, 1L);
+
+        Assert.assertTrue(Arrays.equals(decompress(gzip(data, Deflater.DEFAULT_COMPRESSION)), data));
+    }
+
+    public void decompressesConcatenatedMembers() throws IOException {
+        final byte[] first = lines(10_000, 2L);
+        final byte[] empty = new byte[0];
+        final byte[] third = lines(20_000, 3L);
+        final byte[] compressed = concat(gzip(first, Deflater.BEST_SPEED), gzip(empty, Deflater.DEFAULT_COMPRESSION),
+                gzip(third, Deflater.NO_COMPRESSION));
+
+        Assert.assertTrue(Arrays.equals(decompress(compressed), concat(first, empty, third)));
+    }
+
+    public void skipsOptionalHeaderFields() throws IOException {
+        final byte[] data = lines(100, 4L);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final GzipParameters parameters = new GzipParameters();
+        parameters.setFilename("events.json");
+        parameters.setComment("written by a test");
+
+        try (GzipCompressorOutputStream gzip = new GzipCompressorOutputStream(out, parameters)) {
+            gzip.write(data);
+        }
+
+        Assert.assertTrue(Arrays.equals(decompress(out.toByteArray()), data));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void corruptTrailerFailsChecksum() throws IOException {
+        final byte[] compressed = gzip(lines(1_000, 5L), Deflater.DEFAULT_COMPRESSION);
+        compressed[compressed.length - 6] ^= 0x55;
+
+        decompress(compressed);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void trailingGarbageFails() throws IOException {
+        decompress(concat(gzip(lines(10, 6L), Deflater.DEFAULT_COMPRESSION), new byte[] {1, 2, 3}));
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void truncatedStreamFails() throws IOException {
+        final byte[] compressed = gzip(lines(1_000, 7L), Deflater.DEFAULT_COMPRESSION);
+
+        decompress(Arrays.copyOf(compressed, compressed.length - 4));
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void emptyStreamFails() throws IOException {
+        decompress(new byte[0]);
+    }
+
+    public void closeReturnsInflaterAndBuffer() throws IOException {
+        final MantaBufferPool closing = new MantaBufferPool(16_777_216L, 0L);
+        final byte[] compressed = gzip(lines(100, 8L), Deflater.DEFAULT_COMPRESSION);
+
+        for (int i = 0; i < 3; i++) {
+            final InputStream in = new PooledGzipCompressorInputStream(new ByteArrayInputStream(compressed), closing);
+            Assert.assertTrue(in.read() >= 0);
+            in.close();
+            in.close();
+        }
+
+        Assert.assertEquals(closing.getInflaterRetained(), 1L);
+        Assert.assertEquals(closing.getInflaterMisses(), 1L);
+        Assert.assertEquals(closing.getInflaterHits(), 2L);
+        Assert.assertEquals(closing.getHeapRetainedBuffers(), 1L);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.concat;
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.lines;
+
+@Test
+public class PooledXzCompressorInputStreamTest {
+    private final MantaBufferPool pool = new MantaBufferPool(67_108_864L, 0L);
+
+    private static byte[] xz(final byte[] data, final int preset) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (XZOutputStream xz = new XZOutputStream(out, new LZMA2Options(preset))) {
+            xz.write(data);
+        }
+
+        return out.toByteArray();
+    }
+
+    private byte[] decompress(final MantaBufferPool bufferPool, final byte[] compressed) throws IOException {
+        try (InputStream in = new PooledXzCompressorInputStream(new ByteArrayInputStream(compressed), bufferPool)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    public void decompressesConcatenatedStreams() throws IOException {
+        final byte[] first = lines(20_000, 1L);
+        final byte[] second = lines(10_000, 2L);
+
+        Assert.assertTrue(Arrays.equals(decompress(pool, concat(xz(first, 1), xz(second, 6))),
+                concat(first, second)));
+    }
+
+    public void reusesDictionaryBuffers() throws IOException {
+        final MantaBufferPool reusing = new MantaBufferPool(67_108_864L, 0L);
+        final byte[] data = lines(1_000, 3L);
+        final byte[] compressed = xz(data, 6);
+
+        Assert.assertTrue(Arrays.equals(decompress(reusing, compressed), data));
+        final long retained = reusing.getHeapRetainedBytes();
+        Assert.assertTrue(retained >= 8_388_608L, "Expected the 8MiB dictionary to be pooled");
+
+        Assert.assertTrue(Arrays.equals(decompress(reusing, compressed), data));
+        Assert.assertEquals(reusing.getHeapRetainedBytes(), retained);
+        Assert.assertTrue(reusing.getHeapHits() > 0L);
+    }
+
+    public void creatingStreamDoesNotRead() throws IOException {
+        final InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Read before first read");
+            }
+        };
+
+        new PooledXzCompressorInputStream(failing, pool).close();
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void truncatedStreamFails() throws IOException {
+        final byte[] compressed = xz(lines(1_000, 4L), 6);
+
+        decompress(pool, Arrays.copyOf(compressed, compressed.length / 2));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void closedStreamFails() throws IOException {
+        final InputStream in = new PooledXzCompressorInputStream(
+                new ByteArrayInputStream(xz(lines(10, 5L), 1)), pool);
+        in.close();
+        in.read();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.compression;
+
+import com.google.common.io.ByteStreams;
+import com.joyent.manta.presto.MantaBufferPool;
+import org.apache.commons.compress.compressors.snappy.FramedSnappyCompressorOutputStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.concat;
+import static com.joyent.manta.presto.compression.GzipIndexingInputStreamTest.lines;
+
+@Test
+public class SnappyFramedCompressorInputStreamTest {
+    private static final byte[] STREAM_IDENTIFIER = {(byte) 0xFF, 6, 0, 0, 's', 'N', 'a', 'P', 'p', 'Y'};
+
+    private final MantaBufferPool pool = new MantaBufferPool(16_777_216L, 0L);
+
+    private static byte[] snappy(final byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (FramedSnappyCompressorOutputStream snappy = new FramedSnappyCompressorOutputStream(out)) {
+            snappy.write(data);
+        }
+
+        return out.toByteArray();
+    }
+
+    private byte[] decompress(final byte[] compressed) throws IOException {
+        try (InputStream in = new SnappyFramedCompressorInputStream(new ByteArrayInputStream(compressed), pool)) {
+            return ByteStreams.toByteArray(in);
+        }
+    }
+
+    public void decompressesCompressedChunks() throws IOException {
+        final byte[] data = lines(50_000, 1L);
+
+        Assert.assertTrue(Arrays.equals(decompress(snappy(data)), data));
+    }
+
+    public void decompressesUncompressedChunks() throws IOException {
+        final byte[] data = "Hello World".getBytes(StandardCharsets.UTF_8);
+        final byte[] chunk = new byte[data.length + 4];
+        System.arraycopy(data, 0, chunk, 4, data.length);
+        final int checksum = maskedChecksum(data);
+
+        for (int i = 0; i < 4; i++) {
+            chunk[i] = (byte) (checksum >>> (i * 8));
+        }
+
+        final byte[] compressed = concat(STREAM_IDENTIFIER, new byte[] {1, (byte) chunk.length, 0, 0}, chunk);
+
+        Assert.assertTrue(Arrays.equals(decompress(compressed), data));
+    }
+
+    public void decompressesIncompressibleData() throws IOException {
+        final byte[] data = new byte[200_000];
+        new Random(2L).nextBytes(data);
+
+        Assert.assertTrue(Arrays.equals(decompress(snappy(data)), data));
+    }
+
+    public void decompressesConcatenatedStreamsAndSkipsPadding() throws IOException {
+        final byte[] first = lines(10_000, 3L);
+        final byte[] second = lines(20_000, 4L);
+        final byte[] padding = {(byte) 0xFE, 3, 0, 0, 0, 0, 0};
+
+        final byte[] compressed = concat(snappy(first), padding, snappy(second));
+
+        Assert.assertTrue(Arrays.equals(decompress(compressed), concat(first, second)));
+    }
+
+    public void emptyStreamHasNoData() throws IOException {
+        Assert.assertEquals(decompress(new byte[0]).length, 0);
+        Assert.assertEquals(decompress(STREAM_IDENTIFIER).length, 0);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void corruptChunkFailsChecksum() throws IOException {
+        final byte[] compressed = snappy(lines(1_000, 5L));
+        // Flips a byte of the masked checksum of the first data chunk
+        compressed[STREAM_IDENTIFIER.length + 4] ^= 0x55;
+
+        decompress(compressed);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void missingStreamIdentifierFails() throws IOException {
+        final byte[] compressed = snappy(lines(10, 6L));
+
+        decompress(Arrays.copyOfRange(compressed, STREAM_IDENTIFIER.length, compressed.length));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void reservedUnskippableChunkFails() throws IOException {
+        decompress(concat(STREAM_IDENTIFIER, new byte[] {2, 0, 0, 0}));
+    }
+
+    @Test(expectedExceptions = EOFException.class)
+    public void truncatedStreamFails() throws IOException {
+        final byte[] compressed = snappy(lines(1_000, 7L));
+
+        decompress(Arrays.copyOf(compressed, compressed.length - 10));
+    }
+
+    public void closeReturnsBuffers() throws IOException {
+        final MantaBufferPool closing = new MantaBufferPool(16_777_216L, 0L);
+
+        final InputStream in = new SnappyFramedCompressorInputStream(
+                new ByteArrayInputStream(snappy(lines(100, 8L))), closing);
+        Assert.assertTrue(in.read() >= 0);
+        in.close();
+        in.close();
+
+        Assert.assertEquals(closing.getHeapRetainedBuffers(), 2L);
+    }
+
+    /**
+     * Reads the masked checksum Apache Compress writes for data that fits
+     * in a single chunk.
+     */
+    private static int maskedChecksum(final byte[] data) throws IOException {
+        final byte[] compressed = snappy(data);
+        int checksum = 0;
+
+        for (int i = 3; i >= 0; i--) {
+            checksum = (checksum << 8) | (compressed[STREAM_IDENTIFIER.length + 4 + i] & 0xFF);
+        }
+
+        return checksum;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.record.json;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+@Test
+public class ByteSubstringMatcherTest {
+    public void canFindNeedleAtStartMiddleAndEnd() {
+        final ByteSubstringMatcher matcher = matcher("abc123");
+
+        Assert.assertTrue(contains(matcher, "abc123 and more"));
+        Assert.assertTrue(contains(matcher, "{\"request_id\":\"abc123\"}"));
+        Assert.assertTrue(contains(matcher, "ends with abc123"));
+        Assert.assertTrue(contains(matcher, "abc123"));
+    }
+
+    public void doesNotFindMissingNeedle() {
+        final ByteSubstringMatcher matcher = matcher("abc123");
+
+        Assert.assertFalse(contains(matcher, "abc12"));
+        Assert.assertFalse(contains(matcher, "abc124 abd123 bc123"));
+        Assert.assertFalse(contains(matcher, ""));
+    }
+
+    public void onlySearchesWithinRegion() {
+        final ByteSubstringMatcher matcher = matcher("needle");
+        final byte[] haystack = "needle-hay-needle".getBytes(StandardCharsets.UTF_8);
+
+        Assert.assertFalse(matcher.isContainedIn(haystack, 1, 10));
+        Assert.assertTrue(matcher.isContainedIn(haystack, 11, 6));
+        Assert.assertFalse(matcher.isContainedIn(haystack, 11, 5));
+    }
+
+    public void canMatchNonAsciiBytes() {
+        final ByteSubstringMatcher matcher = new ByteSubstringMatcher(new byte[] {(byte) 0xff, (byte) 0x80});
+        final byte[] haystack = new byte[] {0x00, (byte) 0xff, (byte) 0xff, (byte) 0x80, 0x01};
+
+        Assert.assertTrue(matcher.isContainedIn(haystack, 0, haystack.length));
+    }
+
+    public void agreesWithNaiveSearch() {
+        final Random random = new Random(42L);
+
+        for (int run = 0; run < 1_000; run++) {
+            final byte[] haystack = randomBytes(random, random.nextInt(64));
+            final byte[] needle = randomBytes(random, 1 + random.nextInt(4));
+            final ByteSubstringMatcher matcher = new ByteSubstringMatcher(needle);
+
+            Assert.assertEquals(matcher.isContainedIn(haystack, 0, haystack.length),
+                    naiveContains(haystack, needle));
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void rejectsEmptyNeedle() {
+        new ByteSubstringMatcher(new byte[0]);
+    }
+
+    private static ByteSubstringMatcher matcher(final String needle) {
+        return new ByteSubstringMatcher(needle.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean contains(final ByteSubstringMatcher matcher, final String haystack) {
+        final byte[] bytes = haystack.getBytes(StandardCharsets.UTF_8);
+        return matcher.isContainedIn(bytes, 0, bytes.length);
+    }
+
+    private static byte[] randomBytes(final Random random, final int length) {
+        final byte[] bytes = new byte[length];
+
+        // Small alphabet so that matches are frequent
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(3));
+        }
+
+        return bytes;
+    }
+
+    private static boolean naiveContains(final byte[] haystack, final byte[] needle) {
+        outer:
+        for (int i = 0; i + needle.length <= haystack.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.record.json;
+
+import com.facebook.presto.spi.type.BigintType;
+import com.facebook.presto.spi.type.VarcharType;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.joyent.manta.presto.column.MantaColumn;
+import com.joyent.manta.presto.exceptions.MantaPrestoIllegalArgumentException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+@Test
+public class JsonColumnExtractorTest {
+    private static final String ACCESS_LOG =
+            "{\"time\":\"2018-03-16T19:01:37.201Z\",\"req\":{\"method\":\"GET\","
+            + "\"headers\":{\"host\":\"example.com\",\"user-agent\":\"curl\"}},"
+            + "\"res\":{\"statusCode\":200,\"headers\":{}},\"tags\":[\"a\",\"b\"]}\n"
+            + "{\"time\":\"2018-03-16T19:01:38.000Z\",\"req\":{\"method\":\"PUT\"},"
+            + "\"res\":null,\"tags\":[]}\n";
+
+    private final ObjectReader reader = new MantaJsonDataFileObjectMapperProvider()
+            .get().readerFor(ObjectNode.class);
+
+    public void canExtractDottedAndPointerPaths() throws IOException {
+        final List<MantaColumn> columns = ImmutableList.of(
+                new MantaColumn("time", VarcharType.VARCHAR, null),
+                new MantaColumn("host", VarcharType.VARCHAR, null, null, false, "req.headers.host"),
+                new MantaColumn("status", BigintType.BIGINT, null, null, false, "/res/statusCode"),
+                new MantaColumn("firstTag", VarcharType.VARCHAR, null, null, false, "/tags/0"));
+        final JsonColumnExtractor extractor = new JsonColumnExtractor(reader, columns,
+                Collections.emptyMap());
+        final JsonNode[] row = new JsonNode[columns.size()];
+
+        try (JsonParser parser = reader.getFactory().createParser(ACCESS_LOG)) {
+            Assert.assertTrue(extractor.readRow(parser, row));
+            Assert.assertEquals(row[0].asText(), "2018-03-16T19:01:37.201Z");
+            Assert.assertEquals(row[1].asText(), "example.com");
+            Assert.assertEquals(row[2].asLong(), 200L);
+            Assert.assertEquals(row[3].asText(), "a");
+
+            Assert.assertTrue(extractor.readRow(parser, row));
+            Assert.assertEquals(row[0].asText(), "2018-03-16T19:01:38.000Z");
+            Assert.assertTrue(row[1].isNull(), "Missing nested paths should be null");
+            Assert.assertTrue(row[2].isNull(), "Paths through null values should be null");
+            Assert.assertTrue(row[3].isNull(), "Missing array elements should be null");
+
+            Assert.assertFalse(extractor.readRow(parser, row));
+        }
+    }
+
+    public void canExtractParentAndChildOfSameObject() throws IOException {
+        final List<MantaColumn> columns = ImmutableList.of(
+                new MantaColumn("method", VarcharType.VARCHAR, null, null, false, "req.method"),
+                new MantaColumn("req", VarcharType.VARCHAR, null),
+                new MantaColumn("agent", VarcharType.VARCHAR, null, null, false, "/req/headers/user-agent"));
+        final JsonColumnExtractor extractor = new JsonColumnExtractor(reader, columns,
+                Collections.emptyMap());
+        final JsonNode[] row = new JsonNode[columns.size()];
+
+        try (JsonParser parser = reader.getFactory().createParser(ACCESS_LOG)) {
+            Assert.assertTrue(extractor.readRow(parser, row));
+            Assert.assertEquals(row[0].asText(), "GET");
+            Assert.assertTrue(row[1].isObject());
+            Assert.assertEquals(row[1].get("method").asText(), "GET");
+            Assert.assertEquals(row[2].asText(), "curl");
+        }
+    }
+
+    public void constantValuesAreNotReadFromData() throws IOException {
+        final List<MantaColumn> columns = ImmutableList.of(
+                new MantaColumn("time", VarcharType.VARCHAR, null),
+                new MantaColumn("partition", VarcharType.VARCHAR, null));
+        final JsonColumnExtractor extractor = new JsonColumnExtractor(reader, columns,
+                ImmutableMap.of("partition", "2018"));
+        final JsonNode[] row = new JsonNode[columns.size()];
+
+        try (JsonParser parser = reader.getFactory().createParser(ACCESS_LOG)) {
+            Assert.assertTrue(extractor.readRow(parser, row));
+            Assert.assertEquals(row[1].asText(), "2018");
+        }
+    }
+
+    public void canSkipRows() throws IOException {
+        final List<MantaColumn> columns = ImmutableList.of(
+                new MantaColumn("method", VarcharType.VARCHAR, null, null, false, "req.method"));
+        final JsonColumnExtractor extractor = new JsonColumnExtractor(reader, columns,
+                Collections.emptyMap());
+        final JsonNode[] row = new JsonNode[columns.size()];
+
+        try (JsonParser parser = reader.getFactory().createParser(ACCESS_LOG)) {
+            Assert.assertTrue(extractor.skipRow(parser));
+            Assert.assertTrue(extractor.readRow(parser, row));
+            Assert.assertEquals(row[0].asText(), "PUT");
+            Assert.assertFalse(extractor.skipRow(parser));
+        }
+    }
+
+    public void canReadRowsWrappedInTopLevelArray() throws IOException {
+        final List<MantaColumn> columns = ImmutableList.of(
+                new MantaColumn("method", VarcharType.VARCHAR, null, null, false, "req.method"));
+        final JsonColumnExtractor extractor = new JsonColumnExtractor(reader, columns,
+                Collections.emptyMap());
+        final JsonNode[] row = new JsonNode[columns.size()];
+        final String wrapped = "[" + ACCESS_LOG.trim().replace("\n", ",\n") + "]";
+
+        try (JsonParser parser = reader.getFactory().createParser(wrapped)) {
+            Assert.assertTrue(extractor.readRow(parser, row));
+            Assert.assertEquals(row[0].asText(), "GET");
+            Assert.assertTrue(JsonColumnExtractor.isInRootArray(parser));
+            Assert.assertTrue(extractor.readRow(parser, row));
+            Assert.assertEquals(row[0].asText(), "PUT");
+            Assert.assertFalse(extractor.readRow(parser, row));
+        }
+
+        try (JsonParser parser = reader.getFactory().createParser(wrapped)) {
+            Assert.assertTrue(extractor.skipRow(parser));
+            Assert.assertTrue(extractor.skipRow(parser));
+            Assert.assertFalse(extractor.skipRow(parser));
+        }
+
+        try (JsonParser parser = reader.getFactory().createParser("[]")) {
+            Assert.assertFalse(extractor.readRow(parser, row));
+        }
+    }
+
+    @Test(expectedExceptions = MantaPrestoIllegalArgumentException.class)
+    public void missingTopLevelColumnsAreErrors() throws IOException {
+        final List<MantaColumn> columns = ImmutableList.of(
+                new MantaColumn("missing", VarcharType.VARCHAR, null));
+        final JsonColumnExtractor extractor = new JsonColumnExtractor(reader, columns,
+                Collections.emptyMap());
+        final JsonNode[] row = new JsonNode[columns.size()];
+
+        try (JsonParser parser = reader.getFactory().createParser(ACCESS_LOG)) {
+            extractor.readRow(parser, row);
+        }
+    }
+
+    public void dottedPathsAreEquivalentToPointers() {
+        Assert.assertEquals(MantaColumn.parsePath("req.headers.host").toString(),
+                "/req/headers/host");
+        Assert.assertEquals(MantaColumn.parsePath("a/b.c~d").toString(),
+                "/a~1b/c~0d");
+        Assert.assertEquals(MantaColumn.parsePath("/res/statusCode").toString(),
+                "/res/statusCode");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void emptyPathSegmentsAreRejected() {
+        MantaColumn.parsePath("req..host");
+    }
+}
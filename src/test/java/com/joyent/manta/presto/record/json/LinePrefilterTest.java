@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.record.json;
+
+import com.facebook.presto.spi.predicate.Domain;
+import com.facebook.presto.spi.predicate.Range;
+import com.facebook.presto.spi.predicate.ValueSet;
+import com.facebook.presto.spi.type.BigintType;
+import com.facebook.presto.spi.type.VarcharType;
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.Slices;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+
+@Test
+public class LinePrefilterTest {
+    public void singleValueRequiresWholeValue() {
+        final LinePrefilter prefilter = LinePrefilter.create(new Domain[] {
+                Domain.singleValue(VarcharType.VARCHAR, Slices.utf8Slice("abc123"))
+        });
+
+        Assert.assertNotNull(prefilter);
+        Assert.assertTrue(mayMatch(prefilter, "{\"request_id\":\"abc123\"}"));
+        Assert.assertFalse(mayMatch(prefilter, "{\"request_id\":\"abc124\"}"));
+    }
+
+    public void anyOfMultipleValuesMayMatch() {
+        final LinePrefilter prefilter = LinePrefilter.create(new Domain[] {
+                Domain.multipleValues(VarcharType.VARCHAR, ImmutableList.of(
+                        Slices.utf8Slice("GET"), Slices.utf8Slice("PUT")))
+        });
+
+        Assert.assertNotNull(prefilter);
+        Assert.assertTrue(mayMatch(prefilter, "{\"method\":\"PUT\"}"));
+        Assert.assertFalse(mayMatch(prefilter, "{\"method\":\"POST\"}"));
+    }
+
+    public void rangeRequiresCommonPrefixOfBounds() {
+        final LinePrefilter prefilter = LinePrefilter.create(new Domain[] {
+                Domain.create(ValueSet.ofRanges(Range.range(VarcharType.VARCHAR,
+                        Slices.utf8Slice("host-100"), true, Slices.utf8Slice("host-199"), true)), false)
+        });
+
+        Assert.assertNotNull(prefilter);
+        Assert.assertTrue(mayMatch(prefilter, "{\"host\":\"host-150\"}"));
+        Assert.assertFalse(mayMatch(prefilter, "{\"host\":\"host-200\"}"));
+    }
+
+    public void allColumnsMustMatch() {
+        final LinePrefilter prefilter = LinePrefilter.create(new Domain[] {
+                Domain.singleValue(VarcharType.VARCHAR, Slices.utf8Slice("alpha")),
+                null,
+                Domain.singleValue(VarcharType.VARCHAR, Slices.utf8Slice("beta"))
+        });
+
+        Assert.assertNotNull(prefilter);
+        Assert.assertTrue(mayMatch(prefilter, "{\"a\":\"alpha\",\"b\":\"beta\"}"));
+        Assert.assertFalse(mayMatch(prefilter, "{\"a\":\"alpha\",\"b\":\"gamma\"}"));
+    }
+
+    public void linesWithEscapesAreNeverRejected() {
+        final LinePrefilter prefilter = LinePrefilter.create(new Domain[] {
+                Domain.singleValue(VarcharType.VARCHAR, Slices.utf8Slice("a<b&c"))
+        });
+
+        Assert.assertNotNull(prefilter);
+        Assert.assertTrue(mayMatch(prefilter, "{\"expr\":\"a<b&c\"}"));
+        // HTML safe encoders escape the characters of the value
+        Assert.assertTrue(mayMatch(prefilter, "{\"expr\":\"a\\u003cb\\u0026c\"}"));
+        Assert.assertFalse(mayMatch(prefilter, "{\"expr\":\"a>b\"}"));
+    }
+
+    public void noPrefilterForUnusableDomains() {
+        Assert.assertNull(LinePrefilter.create(new Domain[] {
+                Domain.singleValue(BigintType.BIGINT, 200L),
+                Domain.singleValue(VarcharType.VARCHAR, Slices.utf8Slice("a/b")),
+                Domain.singleValue(VarcharType.VARCHAR, Slices.utf8Slice("say \"hi\"")),
+                Domain.singleValue(VarcharType.VARCHAR, Slices.utf8Slice("café")),
+                Domain.singleValue(VarcharType.VARCHAR, Slices.utf8Slice("200")),
+                Domain.create(ValueSet.of(VarcharType.VARCHAR, Slices.utf8Slice("abc")), true),
+                Domain.create(ValueSet.ofRanges(Range.greaterThan(VarcharType.VARCHAR,
+                        Slices.utf8Slice("abc"))), false),
+                null
+        }));
+    }
+
+    private static boolean mayMatch(final LinePrefilter prefilter, final String line) {
+        final byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return prefilter.mayMatch(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.record.json;
+
+import com.google.common.collect.ImmutableList;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+@Test
+public class LineReaderTest {
+    public void canReadLinesWithMixedTerminators() throws IOException {
+        final String text = "one\ntwo\r\n\nthree";
+
+        Assert.assertEquals(readAll(text, 4), ImmutableList.of("one", "two", "", "three"));
+    }
+
+    public void canReadLinesLongerThanBuffer() throws IOException {
+        final StringBuilder longLine = new StringBuilder();
+
+        for (int i = 0; i < 100; i++) {
+            longLine.append("0123456789");
+        }
+
+        final String text = "short\n" + longLine + "\nlast\n";
+
+        Assert.assertEquals(readAll(text, 8), ImmutableList.of("short", longLine.toString(), "last"));
+    }
+
+    public void countsBytesConsumed() throws IOException {
+        final byte[] bytes = "ab\r\ncd\nef".getBytes(StandardCharsets.UTF_8);
+        final LineReader reader = new LineReader(new ByteArrayInputStream(bytes), 3);
+
+        Assert.assertTrue(reader.readLine());
+        Assert.assertEquals(reader.getBytesConsumed(), 4L);
+        Assert.assertTrue(reader.readLine());
+        Assert.assertEquals(reader.getBytesConsumed(), 7L);
+        Assert.assertTrue(reader.readLine());
+        Assert.assertEquals(reader.getBytesConsumed(), bytes.length);
+        Assert.assertFalse(reader.readLine());
+    }
+
+    public void canDetectBlankLines() throws IOException {
+        final byte[] bytes = " \t \nx\n".getBytes(StandardCharsets.UTF_8);
+        final LineReader reader = new LineReader(new ByteArrayInputStream(bytes));
+
+        Assert.assertTrue(reader.readLine());
+        Assert.assertTrue(reader.isBlankLine());
+        Assert.assertTrue(reader.readLine());
+        Assert.assertFalse(reader.isBlankLine());
+    }
+
+    private static List<String> readAll(final String text, final int bufferSize) throws IOException {
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        final LineReader reader = new LineReader(new ByteArrayInputStream(bytes), bufferSize);
+        final List<String> lines = new ArrayList<>();
+
+        while (reader.readLine()) {
+            lines.add(new String(reader.getBuffer(), reader.getLineOffset(),
+                    reader.getLineLength(), StandardCharsets.UTF_8));
+        }
+
+        return lines;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.record.json;
+
+import com.facebook.presto.spi.type.VarcharType;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.joyent.manta.client.MantaObject;
+import com.joyent.manta.presto.MantaCountingInputStream;
+import com.joyent.manta.presto.MantaRetryPolicy;
+import com.joyent.manta.presto.column.MantaColumn;
+import com.joyent.manta.presto.exceptions.MantaPrestoIllegalArgumentException;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@Test
+public class MantaJsonLineCountingRecordCursorTest {
+    private static final MantaColumn DAY = new MantaColumn("day", VarcharType.VARCHAR, null);
+
+    public void canCountLines() {
+        String data = "{\"a\":1}\n{\"a\":2}\n{\"a\":3}\n";
+        Assert.assertEquals(countRows(data), 3L);
+    }
+
+    public void canCountLastLineWithoutTerminator() {
+        String data = "{\"a\":1}\n{\"a\":2}";
+        Assert.assertEquals(countRows(data), 2L);
+    }
+
+    public void skipsBlankLines() {
+        String data = "\n{\"a\":1}\r\n  \n\t\r\n{\"a\":2}\n   ";
+        Assert.assertEquals(countRows(data), 2L);
+    }
+
+    public void canCountEmptyStream() {
+        Assert.assertEquals(countRows(""), 0L);
+    }
+
+    public void canCountLinesSpanningBuffers() {
+        final String line = "{\"value\":\"" + Strings.repeat("x", 1_000) + "\"}\n";
+        final int expected = 1_000;
+        Assert.assertEquals(countRows(Strings.repeat(line, expected)), expected);
+    }
+
+    public void returnsPartitionValues() {
+        String data = "{\"a\":1}\n{\"a\":2}\n";
+
+        try (MantaJsonLineCountingRecordCursor cursor = newCursor(null, stream(data),
+                ImmutableList.of(DAY), ImmutableMap.of("day", "2018-03-16"))) {
+            int rows = 0;
+
+            while (cursor.advanceNextPosition()) {
+                Assert.assertFalse(cursor.isNull(0));
+                Assert.assertEquals(cursor.getSlice(0).toStringUtf8(), "2018-03-16");
+                rows++;
+            }
+
+            Assert.assertEquals(rows, 2);
+            Assert.assertEquals(cursor.getCompletedBytes(), data.length());
+        }
+    }
+
+    @Test(expectedExceptions = MantaPrestoIllegalArgumentException.class)
+    public void wontAcceptColumnsWithoutPartitionValues() {
+        newCursor(null, stream("{}"), ImmutableList.of(DAY), Collections.emptyMap());
+    }
+
+    public void canResumeAfterSocketTimeout() {
+        final String line = "{\"value\":\"" + Strings.repeat("x", 1_000) + "\"}\n";
+        final byte[] data = Strings.repeat(line, 1_000).getBytes(StandardCharsets.UTF_8);
+        final int failAfter = 300_000;
+
+        InputStream failing = new FilterInputStream(new ByteArrayInputStream(data, 0, failAfter)) {
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int read = super.read(b, off, len);
+
+                if (read < 0) {
+                    throw new SocketTimeoutException("timeout");
+                }
+
+                return read;
+            }
+        };
+
+        long rows = 0L;
+
+        try (MantaJsonLineCountingRecordCursor cursor = newCursor(
+                position -> countingStream(new ByteArrayInputStream(data, (int) (long) position,
+                        data.length - (int) (long) position)),
+                countingStream(failing), Collections.emptyList(), Collections.emptyMap())) {
+            while (cursor.advanceNextPosition()) {
+                rows++;
+            }
+        }
+
+        Assert.assertEquals(rows, 1_000L);
+    }
+
+    private static long countRows(final String data) {
+        long rows = 0L;
+
+        try (MantaJsonLineCountingRecordCursor cursor = newCursor(null, stream(data),
+                Collections.emptyList(), Collections.emptyMap())) {
+            while (cursor.advanceNextPosition()) {
+                rows++;
+            }
+        }
+
+        return rows;
+    }
+
+    private static MantaCountingInputStream stream(final String data) {
+        return countingStream(new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static MantaCountingInputStream countingStream(final InputStream in) {
+        MantaObject object = mock(MantaObject.class);
+        when(object.getPath()).thenReturn("/user/stor/file.json");
+        return new MantaCountingInputStream(in, object);
+    }
+
+    private static MantaJsonLineCountingRecordCursor newCursor(
+            final LongFunction<MantaCountingInputStream> recreator,
+            final MantaCountingInputStream in,
+            final List<MantaColumn> columns,
+            final Map<String, String> constants) {
+        return new MantaJsonLineCountingRecordCursor(recreator, columns,
+                "/user/stor/file.json", null, in, constants, new MantaRetryPolicy());
+    }
+}
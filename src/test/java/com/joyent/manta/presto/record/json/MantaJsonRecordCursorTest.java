@@ -7,8 +7,14 @@
  */
 package com.joyent.manta.presto.record.json;
 
+import com.facebook.presto.spi.predicate.Domain;
+import com.facebook.presto.spi.predicate.Range;
+import com.facebook.presto.spi.predicate.TupleDomain;
+import com.facebook.presto.spi.predicate.ValueSet;
+import com.facebook.presto.spi.type.BigintType;
 import com.facebook.presto.spi.type.DateType;
 import com.facebook.presto.spi.type.TimestampType;
+import com.facebook.presto.spi.type.VarcharType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
@@ -16,19 +22,31 @@ import com.fasterxml.jackson.databind.node.LongNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 import com.joyent.manta.client.MantaObject;
 import com.joyent.manta.presto.MantaCountingInputStream;
+import com.joyent.manta.presto.MantaRetryPolicy;
 import com.joyent.manta.presto.column.MantaColumn;
+import com.joyent.manta.presto.exceptions.MantaPrestoRuntimeException;
+import io.airlift.slice.Slices;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.LongFunction;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -175,8 +193,242 @@ public class MantaJsonRecordCursorTest {
         Assert.assertEquals(actual, expected);
     }
 
+    // ROW PREDICATES
+
+    private static final String ROWS =
+            "{\"id\":\"a\",\"status\":200,\"req\":{\"host\":\"x.com\"}}\n"
+            + "{\"id\":\"b\",\"status\":404,\"req\":{}}\n"
+            + "{\"id\":\"c\",\"status\":500,\"req\":{\"host\":\"y.com\"}}\n"
+            + "{\"id\":\"d\",\"status\":200}\n";
+
+    private static final MantaColumn ID = new MantaColumn("id", VarcharType.VARCHAR, null);
+    private static final MantaColumn STATUS = new MantaColumn("status", BigintType.BIGINT, null);
+    private static final MantaColumn HOST = new MantaColumn("host", VarcharType.VARCHAR,
+            null, null, false, "req.host");
+
+    public void rowsOutsideOfSingleValueDomainAreSkipped() {
+        final TupleDomain<MantaColumn> predicate = TupleDomain.withColumnDomains(ImmutableMap.of(
+                STATUS, Domain.singleValue(BigintType.BIGINT, 200L)));
+
+        Assert.assertEquals(readIds(predicate), ImmutableList.of("a", "d"));
+    }
+
+    public void rowsOutsideOfRangeDomainAreSkipped() {
+        final TupleDomain<MantaColumn> predicate = TupleDomain.withColumnDomains(ImmutableMap.of(
+                STATUS, Domain.create(ValueSet.ofRanges(
+                        Range.greaterThan(BigintType.BIGINT, 300L)), false)));
+
+        Assert.assertEquals(readIds(predicate), ImmutableList.of("b", "c"));
+    }
+
+    public void rowsOutsideOfVarcharDomainAreSkipped() {
+        final TupleDomain<MantaColumn> predicate = TupleDomain.withColumnDomains(ImmutableMap.of(
+                HOST, Domain.singleValue(VarcharType.VARCHAR, Slices.utf8Slice("y.com"))));
+
+        Assert.assertEquals(readIds(predicate), ImmutableList.of("c"));
+    }
+
+    public void rowsWithoutRequiredBytesAreSkippedBeforeParsing() {
+        final TupleDomain<MantaColumn> predicate = TupleDomain.withColumnDomains(ImmutableMap.of(
+                ID, Domain.multipleValues(VarcharType.VARCHAR, ImmutableList.of(
+                        Slices.utf8Slice("b"), Slices.utf8Slice("d")))));
+
+        Assert.assertEquals(readIds(predicate), ImmutableList.of("b", "d"));
+    }
+
+    public void prefilterCandidatesAreStillTestedAgainstDomain() {
+        // "x.com" appears in the line of row "a" but only as a host
+        final TupleDomain<MantaColumn> predicate = TupleDomain.withColumnDomains(ImmutableMap.of(
+                ID, Domain.singleValue(VarcharType.VARCHAR, Slices.utf8Slice("x.com"))));
+
+        Assert.assertEquals(readIds(predicate), Collections.emptyList());
+    }
+
+    public void escapedRowsArentSkippedByPrefilter() {
+        final String rows = "{\"id\":\"a<b\",\"status\":200}\n"
+                + "{\"id\":\"a\\u003cb\",\"status\":200}\n"
+                + "{\"id\":\"ab\",\"status\":200}\n";
+        final TupleDomain<MantaColumn> predicate = TupleDomain.withColumnDomains(ImmutableMap.of(
+                ID, Domain.singleValue(VarcharType.VARCHAR, Slices.utf8Slice("a<b"))));
+
+        Assert.assertEquals(readIds(rows, predicate, true), ImmutableList.of("a<b", "a<b"));
+    }
+
+    public void prettyPrintedRowsAreReadWithPredicateWhenNotLineDelimited() {
+        final String rows = "{\n  \"id\": \"a\",\n  \"status\": 200\n}\n"
+                + "{\"id\":\"b\",\"status\":500} {\"id\":\"c\",\"status\":200}\n";
+        final TupleDomain<MantaColumn> predicate = TupleDomain.withColumnDomains(ImmutableMap.of(
+                ID, Domain.multipleValues(VarcharType.VARCHAR, ImmutableList.of(
+                        Slices.utf8Slice("a"), Slices.utf8Slice("c")))));
+
+        Assert.assertEquals(readIds(rows, predicate, false), ImmutableList.of("a", "c"));
+    }
+
+    public void skippedRowsAreCounted() {
+        final TupleDomain<MantaColumn> predicate = TupleDomain.withColumnDomains(ImmutableMap.of(
+                STATUS, Domain.singleValue(BigintType.BIGINT, 200L)));
+
+        try (MantaJsonRecordCursor cursor = predicateInstance(ROWS, predicate, true)) {
+            while (cursor.advanceNextPosition()) {
+                Assert.assertEquals(cursor.getLong(1), 200L);
+            }
+
+            Assert.assertEquals(cursor.getRowsFiltered(), 2L);
+        }
+    }
+
+    public void missingNestedValuesAreTestedAsNull() {
+        final TupleDomain<MantaColumn> predicate = TupleDomain.withColumnDomains(ImmutableMap.of(
+                HOST, Domain.onlyNull(VarcharType.VARCHAR)));
+
+        Assert.assertEquals(readIds(predicate), ImmutableList.of("b", "d"));
+    }
+
+    public void noRowsAreReadWhenPredicateMatchesNone() {
+        Assert.assertEquals(readIds(TupleDomain.none()), Collections.emptyList());
+    }
+
+    public void allRowsAreReadWithoutPredicate() {
+        Assert.assertEquals(readIds(TupleDomain.all()), ImmutableList.of("a", "b", "c", "d"));
+    }
+
+    public void rowsWrappedInTopLevelArrayAreRead() {
+        final String rows = "[\n" + ROWS.trim().replace("\n", ",\n") + "\n]\n";
+
+        Assert.assertEquals(readIds(rows, TupleDomain.all(), false), ImmutableList.of("a", "b", "c", "d"));
+        Assert.assertEquals(readIds("[]", TupleDomain.all(), false), Collections.emptyList());
+    }
+
     // UTILITY METHODS
 
+    // RESUMING AFTER SOCKET TIMEOUTS
+
+    public void resumesParsedStreamAfterLastConsumedRow() {
+        final List<Long> positions = new ArrayList<>();
+        final List<String> ids = readIdsWithTimeout(TupleDomain.all(), positions);
+
+        Assert.assertEquals(ids, ImmutableList.of("a", "b", "c", "d"));
+        Assert.assertEquals(positions, ImmutableList.of((long) ROWS.indexOf('\n')));
+    }
+
+    public void resumesPrefilteredStreamAfterLastConsumedLine() {
+        final TupleDomain<MantaColumn> predicate = TupleDomain.withColumnDomains(ImmutableMap.of(
+                ID, Domain.multipleValues(VarcharType.VARCHAR,
+                        ImmutableList.of(Slices.utf8Slice("a"), Slices.utf8Slice("c")))));
+        final List<Long> positions = new ArrayList<>();
+        final List<String> ids = readIdsWithTimeout(predicate, positions);
+
+        Assert.assertEquals(ids, ImmutableList.of("a", "c"));
+        Assert.assertEquals(positions, ImmutableList.of((long) ROWS.indexOf('\n') + 1));
+    }
+
+    public void rowsWithinTopLevelArrayAreNotResumed() {
+        final String rows = ROWS.replaceFirst("\n", ",\n");
+        final List<Long> positions = new ArrayList<>();
+
+        try {
+            readIdsWithTimeout("[" + rows, TupleDomain.all(), positions);
+            Assert.fail("Expected the timeout to be rethrown");
+        } catch (MantaPrestoRuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof UncheckedIOException);
+        }
+
+        Assert.assertEquals(positions, Collections.emptyList());
+    }
+
+    private List<String> readIdsWithTimeout(final TupleDomain<MantaColumn> predicate,
+                                            final List<Long> positions) {
+        return readIdsWithTimeout(ROWS, predicate, positions);
+    }
+
+    private List<String> readIdsWithTimeout(final String rows,
+                                            final TupleDomain<MantaColumn> predicate,
+                                            final List<Long> positions) {
+        MantaJsonDataFileObjectMapperProvider mapperProvider = new MantaJsonDataFileObjectMapperProvider();
+        ObjectMapper mapper = mapperProvider.get();
+
+        MantaObject object = mock(MantaObject.class);
+        when(object.getPath()).thenReturn("/user/stor/file.json");
+        final byte[] data = rows.getBytes(StandardCharsets.UTF_8);
+        // Fail part way through the second row
+        final int failAfter = rows.indexOf('\n') + 10;
+
+        InputStream failing = new FilterInputStream(new ByteArrayInputStream(data, 0, failAfter)) {
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int read = super.read(b, off, len);
+
+                if (read < 0) {
+                    throw new SocketTimeoutException("timeout");
+                }
+
+                return read;
+            }
+        };
+
+        LongFunction<MantaCountingInputStream> recreator = position -> {
+            positions.add(position);
+            InputStream in = new ByteArrayInputStream(data);
+
+            try {
+                ByteStreams.skipFully(in, position);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            return new MantaCountingInputStream(in, object);
+        };
+
+        ObjectReader streamingReader = mapper.readerFor(ObjectNode.class);
+        final List<String> ids = new ArrayList<>();
+
+        try (MantaJsonRecordCursor cursor = new MantaJsonRecordCursor(recreator,
+                ImmutableList.of(ID, STATUS, HOST), "", 0L,
+                new MantaCountingInputStream(failing, object),
+                streamingReader, Collections.emptyMap(), predicate, true, new MantaRetryPolicy())) {
+            while (cursor.advanceNextPosition()) {
+                ids.add(cursor.getSlice(0).toStringUtf8());
+            }
+        }
+
+        return ids;
+    }
+
+    private List<String> readIds(final TupleDomain<MantaColumn> predicate) {
+        return readIds(ROWS, predicate, true);
+    }
+
+    private List<String> readIds(final String rows, final TupleDomain<MantaColumn> predicate,
+                                 final boolean lineDelimited) {
+        final List<String> ids = new ArrayList<>();
+
+        try (MantaJsonRecordCursor cursor = predicateInstance(rows, predicate, lineDelimited)) {
+            while (cursor.advanceNextPosition()) {
+                ids.add(cursor.getSlice(0).toStringUtf8());
+            }
+        }
+
+        return ids;
+    }
+
+    private MantaJsonRecordCursor predicateInstance(final String rows,
+                                                    final TupleDomain<MantaColumn> predicate,
+                                                    final boolean lineDelimited) {
+        MantaJsonDataFileObjectMapperProvider mapperProvider = new MantaJsonDataFileObjectMapperProvider();
+        ObjectMapper mapper = mapperProvider.get();
+
+        MantaObject object = mock(MantaObject.class);
+        when(object.getPath()).thenReturn("/user/stor/file.json");
+        InputStream inputStream = new ByteArrayInputStream(rows.getBytes(StandardCharsets.UTF_8));
+        ObjectReader streamingReader = mapper.readerFor(ObjectNode.class);
+
+        return new MantaJsonRecordCursor(null,
+                ImmutableList.of(ID, STATUS, HOST), "", 0L,
+                new MantaCountingInputStream(inputStream, object),
+                streamingReader, Collections.emptyMap(), predicate, lineDelimited,
+                new MantaRetryPolicy());
+    }
+
     private MantaJsonRecordCursor mockInstance(List<MantaColumn> columns) {
         MantaJsonDataFileObjectMapperProvider mapperProvider = new MantaJsonDataFileObjectMapperProvider();
         ObjectMapper mapper = mapperProvider.get();
@@ -56,6 +56,19 @@ public class MantaLogicalTableTest {
         }
     }
 
+    public void canDeserializeLineDelimitedFlag() throws IOException {
+        final String resourcePath = basePath + "line-delimited.json";
+
+        try (InputStream input = classLoader.getResourceAsStream(resourcePath)) {
+            MantaLogicalTable expected = new MantaLogicalTable("logical-table-1",
+                    "/user/stor/json-examples",
+                    MantaDataFileType.NDJSON, null, null, true);
+            MantaLogicalTable actual = mapper.readValue(input, MantaLogicalTable.class);
+            Assert.assertEquals(expected, actual);
+            Assert.assertTrue(actual.isLineDelimited());
+        }
+    }
+
     public void canDeserializeFromJsonWithDirectoryFilter() throws IOException {
         final String resourcePath = basePath + "with-directory-filters.json";
 
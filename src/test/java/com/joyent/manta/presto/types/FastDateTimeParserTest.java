@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2018, Joyent, Inc. All rights reserved.
+ *
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ */
+package com.joyent.manta.presto.types;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+@Test
+public class FastDateTimeParserTest {
+    // ISO-8601
+
+    public void canParseIso8601WithMilliseconds() {
+        assertIsoParsesLikeJdk("2018-03-16T19:01:37.201Z");
+    }
+
+    public void canParseIso8601WithoutFraction() {
+        assertIsoParsesLikeJdk("2018-03-16T19:01:37Z");
+    }
+
+    public void canParseIso8601WithNanoseconds() {
+        assertIsoParsesLikeJdk("2018-03-16T19:01:37.123456789Z");
+    }
+
+    public void canParseIso8601BeforeEpoch() {
+        assertIsoParsesLikeJdk("1969-12-31T23:59:59.999Z");
+    }
+
+    public void canParseIso8601LeapDay() {
+        assertIsoParsesLikeJdk("2016-02-29T00:00:00Z");
+    }
+
+    public void iso8601OffsetsAreLeftToFormatter() {
+        // ISO_INSTANT rejects numeric offsets on Java 8, so the fast path must not accept them
+        assertIsoAgreesWithJdk("2018-03-16T19:01:37.201-07:00");
+        assertIsoAgreesWithJdk("2018-03-16T19:01:37.201-0700");
+        assertIsoAgreesWithJdk("2018-03-16T19:01:37+01");
+        assertIsoAgreesWithJdk("2018-03-16T19:01:37.201+00:00");
+
+        final FastDateTimeParser parser = FastDateTimeParser.iso8601();
+        Assert.assertEquals(parser.parseEpochMillis("2018-03-16T19:01:37.201-07:00"),
+                FastDateTimeParser.UNPARSEABLE);
+    }
+
+    public void canParseIso8601AsEpochDay() {
+        final FastDateTimeParser parser = FastDateTimeParser.iso8601();
+        Assert.assertEquals(parser.parseEpochDay("2018-03-16T19:01:37.201Z"), 17606L);
+        Assert.assertEquals(parser.parseEpochDay("1969-12-31T23:59:59.999Z"), -1L);
+    }
+
+    public void memoizedSecondsDoNotLeakBetweenValues() {
+        final FastDateTimeParser parser = FastDateTimeParser.iso8601();
+        final String[] values = new String[] {
+                "2018-03-16T19:01:37.201Z",
+                "2018-03-16T19:01:37.202Z",
+                "2018-03-16T19:01:37Z",
+                "2018-03-16T19:01:38.001Z",
+                "2018-03-16T19:01:38.999Z",
+                "2018-03-16T19:01:37.201Z"
+        };
+
+        for (String value : values) {
+            final long expected = OffsetDateTime.parse(value).toInstant().toEpochMilli();
+            Assert.assertEquals(parser.parseEpochMillis(value), expected, value);
+        }
+    }
+
+    public void returnsUnparseableForUnexpectedIso8601Shapes() {
+        final FastDateTimeParser parser = FastDateTimeParser.iso8601();
+
+        Assert.assertEquals(parser.parseEpochMillis("2018-03-16 19:01:37Z"), FastDateTimeParser.UNPARSEABLE);
+        Assert.assertEquals(parser.parseEpochMillis("2018-02-30T19:01:37Z"), FastDateTimeParser.UNPARSEABLE);
+        Assert.assertEquals(parser.parseEpochMillis("2018-03-16T23:59:60Z"), FastDateTimeParser.UNPARSEABLE);
+        Assert.assertEquals(parser.parseEpochMillis("2018-03-16T19:01:37"), FastDateTimeParser.UNPARSEABLE);
+        Assert.assertEquals(parser.parseEpochMillis("2018-03-16T19:01:37.Z"), FastDateTimeParser.UNPARSEABLE);
+        Assert.assertEquals(parser.parseEpochMillis("garbage"), FastDateTimeParser.UNPARSEABLE);
+        Assert.assertEquals(parser.parseEpochMillis(""), FastDateTimeParser.UNPARSEABLE);
+    }
+
+    // CUSTOM PATTERNS
+
+    public void canParseDatePattern() {
+        final FastDateTimeParser parser = FastDateTimeParser.ofPattern("yyyy-MM-dd", false);
+        Assert.assertNotNull(parser);
+        Assert.assertEquals(parser.parseEpochDay("2018-03-16"), 17606L);
+        Assert.assertEquals(parser.parseEpochDay("2018-03-17"), 17607L);
+    }
+
+    public void canParseCompactDatePattern() {
+        final FastDateTimeParser parser = FastDateTimeParser.ofPattern("yyyyMMdd", false);
+        Assert.assertNotNull(parser);
+        Assert.assertEquals(parser.parseEpochDay("20180316"), 17606L);
+    }
+
+    public void canParseTimestampPatternWithOffset() {
+        final String pattern = "yyyy-MM-dd HH:mm:ss.SSSXXX";
+        final FastDateTimeParser parser = FastDateTimeParser.ofPattern(pattern, true);
+        Assert.assertNotNull(parser);
+
+        final DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
+
+        for (String value : new String[] {"2018-03-16 19:01:37.201Z",
+                                          "2018-03-16 19:01:37.999+05:30",
+                                          "2018-03-16 19:01:37.000-08:00"}) {
+            final long expected = Instant.from(formatter.parse(value)).toEpochMilli();
+            Assert.assertEquals(parser.parseEpochMillis(value), expected, value);
+        }
+    }
+
+    public void canParseQuotedLiteralsInPattern() {
+        final String pattern = "yyyy-MM-dd'T'HH:mm:ssX";
+        final FastDateTimeParser parser = FastDateTimeParser.ofPattern(pattern, true);
+        Assert.assertNotNull(parser);
+
+        final String value = "2018-03-16T19:01:37+01";
+        final long expected = Instant.from(DateTimeFormatter.ofPattern(pattern).parse(value)).toEpochMilli();
+        Assert.assertEquals(parser.parseEpochMillis(value), expected);
+    }
+
+    public void dateColumnsUseLocalDateEvenWithOffset() {
+        final String pattern = "yyyy-MM-dd'T'HH:mm:ssXXX";
+        final FastDateTimeParser parser = FastDateTimeParser.ofPattern(pattern, false);
+        Assert.assertNotNull(parser);
+
+        final String value = "2018-03-16T23:30:00-05:00";
+        final long expected = LocalDate.from(DateTimeFormatter.ofPattern(pattern).parse(value)).toEpochDay();
+        Assert.assertEquals(parser.parseEpochDay(value), expected);
+    }
+
+    public void unsupportedPatternsAreNotCompiled() {
+        Assert.assertNull(FastDateTimeParser.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz", true));
+        Assert.assertNull(FastDateTimeParser.ofPattern("yyyy-MM-dd[ HH:mm]", false));
+        Assert.assertNull(FastDateTimeParser.ofPattern("yy-MM-dd", false));
+        Assert.assertNull(FastDateTimeParser.ofPattern("MM-dd", false));
+        Assert.assertNull(FastDateTimeParser.ofPattern("ss.SSS yyyy-MM-dd", false));
+    }
+
+    public void timestampPatternsWithoutOffsetAreNotCompiled() {
+        Assert.assertNull(FastDateTimeParser.ofPattern("yyyy-MM-dd HH:mm:ss", true));
+        Assert.assertNotNull(FastDateTimeParser.ofPattern("yyyy-MM-dd HH:mm:ss", false));
+    }
+
+    public void returnsUnparseableWhenInputDoesNotMatchPattern() {
+        final FastDateTimeParser parser = FastDateTimeParser.ofPattern("yyyy-MM-dd", false);
+        Assert.assertNotNull(parser);
+        Assert.assertEquals(parser.parseEpochDay("2018/03/16"), FastDateTimeParser.UNPARSEABLE);
+        Assert.assertEquals(parser.parseEpochDay("2018-03-16 "), FastDateTimeParser.UNPARSEABLE);
+        Assert.assertEquals(parser.parseEpochDay("2018-13-16"), FastDateTimeParser.UNPARSEABLE);
+    }
+
+    // UTILITY METHODS
+
+    /**
+     * Asserts that the fast parser either leaves a value to the formatter or
+     * parses it to the same instant as {@link DateTimeFormatter#ISO_INSTANT}.
+     */
+    private static void assertIsoAgreesWithJdk(final String value) {
+        final FastDateTimeParser parser = FastDateTimeParser.iso8601();
+        final long actual = parser.parseEpochMillis(value);
+
+        if (actual == FastDateTimeParser.UNPARSEABLE) {
+            return;
+        }
+
+        try {
+            final long expected = Instant.from(DateTimeFormatter.ISO_INSTANT.parse(value)).toEpochMilli();
+            Assert.assertEquals(actual, expected, value);
+        } catch (DateTimeParseException e) {
+            Assert.fail("Fast parser accepted a value rejected by ISO_INSTANT: " + value);
+        }
+    }
+
+    private static void assertIsoParsesLikeJdk(final String value) {
+        final FastDateTimeParser parser = FastDateTimeParser.iso8601();
+        final long expected = Instant.from(DateTimeFormatter.ISO_INSTANT.parse(value)).toEpochMilli();
+
+        Assert.assertEquals(parser.parseEpochMillis(value), expected);
+        // Second pass hits the memoized seconds
+        Assert.assertEquals(parser.parseEpochMillis(value), expected);
+    }
+}